@@ -0,0 +1,72 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import java.nio.charset.StandardCharsets;
+
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+
+/**
+ * A compiled stylesheet, kept as the bytes to send with their entity tag.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class CompiledCss {
+
+	/** the UTF-8 encoded CSS. */
+	private final byte[] bytes;
+
+	/** the quoted entity tag, the SHA-1 of the bytes. */
+	private final String etag;
+
+	/**
+	 * Create a compiled stylesheet.
+	 *
+	 * @param css the CSS
+	 */
+	public CompiledCss(final String css) {
+		this.bytes = css.getBytes(StandardCharsets.UTF_8);
+		this.etag = '"' + Digests.sha1Hex(this.bytes) + '"';
+	}
+
+	/**
+	 * Get the CSS.
+	 *
+	 * @return the UTF-8 encoded CSS, not to be modified
+	 */
+	public byte[] getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Get the entity tag.
+	 *
+	 * @return the quoted entity tag
+	 */
+	public String getEtag() {
+		return this.etag;
+	}
+
+	/**
+	 * Get the size.
+	 *
+	 * @return the number of bytes
+	 */
+	public int getLength() {
+		return this.bytes.length;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded cache of compiled stylesheets that evicts the least recently
+ * used stylesheet. Concurrent requests for a missing stylesheet wait for a
+ * single compilation instead of each compiling it.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssCache {
+
+	/** the maximum number of stylesheets. */
+	private final int maxEntries;
+
+	/** the stylesheets in access order, guarded by itself. */
+	private final Map<String, CompiledCss> entries;
+
+	/** the running compilations by key. */
+	private final ConcurrentMap<String, FutureTask<CompiledCss>> compiling = new ConcurrentHashMap<>();
+
+	/** number of compilations. */
+	private final AtomicInteger compiles = new AtomicInteger();
+
+	/**
+	 * Create a cache.
+	 *
+	 * @param maxEntries the maximum number of stylesheets to keep
+	 */
+	public CssCache(final int maxEntries) {
+		this.maxEntries = maxEntries;
+		this.entries = new LinkedHashMap<String, CompiledCss>(16, 0.75f, true) {
+			/** serial version. */
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CompiledCss> eldest) {
+				return this.size() > CssCache.this.maxEntries;
+			}
+		};
+	}
+
+	/**
+	 * Get a stylesheet, compiling it if it is not cached. If the same
+	 * stylesheet is being compiled already, wait for that compilation.
+	 *
+	 * @param key the key of the template and its variables
+	 * @param compiler compiles the stylesheet
+	 * @return the stylesheet
+	 * @throws IOException if the compilation fails, failures are not cached
+	 */
+	public CompiledCss get(final String key, final Callable<CompiledCss> compiler)
+	        throws IOException {
+		synchronized (this.entries) {
+			final CompiledCss css = this.entries.get(key);
+			if (css != null) {
+				return css;
+			}
+		}
+		final FutureTask<CompiledCss> task = new FutureTask<>(compiler);
+		final FutureTask<CompiledCss> running = this.compiling.putIfAbsent(key, task);
+		if (running != null) {
+			return result(running);
+		}
+		try {
+			// another compilation may have finished between the lookup and putIfAbsent
+			synchronized (this.entries) {
+				final CompiledCss css = this.entries.get(key);
+				if (css != null) {
+					return css;
+				}
+			}
+			this.compiles.incrementAndGet();
+			task.run();
+			final CompiledCss css = result(task);
+			synchronized (this.entries) {
+				this.entries.put(key, css);
+			}
+			return css;
+		} finally {
+			this.compiling.remove(key, task);
+		}
+	}
+
+	/**
+	 * Get the number of cached stylesheets.
+	 *
+	 * @return the number of stylesheets
+	 */
+	public int size() {
+		synchronized (this.entries) {
+			return this.entries.size();
+		}
+	}
+
+	/**
+	 * Get the number of compilations.
+	 *
+	 * @return the number of compilations
+	 */
+	public int getCompiles() {
+		return this.compiles.get();
+	}
+
+	/**
+	 * Wait for the result of a compilation.
+	 *
+	 * @param task the compilation
+	 * @return the stylesheet
+	 * @throws IOException if the compilation failed
+	 */
+	private static CompiledCss result(final FutureTask<CompiledCss> task)
+	        throws IOException {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				} catch (InterruptedException e) {
+					// the compilation runs on another request's thread, finish waiting
+					interrupted = true;
+				}
+			}
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.regex.Pattern;
+
+import org.jruby.embed.EvalFailedException;
+import org.jruby.embed.ScriptingContainer;
+
+import nl.geodienstencentrum.maven.plugin.sass.SassRuntimeFactory;
+
+/**
+ * Compiles SCSS with a pool of JRuby runtimes, so stylesheets can be
+ * compiled concurrently. Runtimes are started when needed, up to the size
+ * of the pool, and kept for later compilations.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SassCompiler implements Closeable {
+
+	/** a Sass variable name, without {@code $}. */
+	private static final Pattern NAME = Pattern.compile("[A-Za-z_][A-Za-z0-9_-]*");
+
+	/**
+	 * characters that would end a variable declaration, or escape the
+	 * character after them.
+	 */
+	private static final Pattern UNSAFE = Pattern.compile("[;{}\\\\\\r\\n]|/[*/]");
+
+	/** compiles the source in the globals. */
+	private static final String COMPILE = "Sass::Engine.new($sass_source, "
+	        + ":syntax => :scss, :style => $sass_style.to_sym, :cache => false, "
+	        + ":filename => $sass_filename, :load_paths => $sass_load_paths.to_a).render";
+
+	/** creates the runtimes. */
+	private final SassRuntimeFactory factory = new SassRuntimeFactory();
+
+	/** the size of the pool. */
+	private final int size;
+
+	/**
+	 * the idle runtimes, guarded by {@link #runtimes}, which is notified
+	 * when a runtime is returned or the compiler is closed.
+	 */
+	private final Deque<ScriptingContainer> idle = new ArrayDeque<>();
+
+	/** all runtimes, guarded by itself. */
+	private final List<ScriptingContainer> runtimes = new ArrayList<>();
+
+	/** whether the compiler is closed, guarded by {@link #runtimes}. */
+	private boolean closed;
+
+	/**
+	 * Create a compiler.
+	 *
+	 * @param size the maximum number of runtimes
+	 */
+	public SassCompiler(final int size) {
+		if (size < 1) {
+			throw new IllegalArgumentException("At least one runtime is needed.");
+		}
+		this.size = size;
+	}
+
+	/**
+	 * Compile SCSS, waiting for a runtime if all runtimes are busy.
+	 *
+	 * @param source the SCSS
+	 * @param filename the name of the template, for error messages
+	 * @param variables the variables to set before the source, by name
+	 *            without {@code $}, overriding {@code !default} values
+	 * @param loadPaths the directories to resolve imports against
+	 * @param style the output style, eg. {@code compressed}
+	 * @return the CSS
+	 * @throws IOException if the SCSS does not compile
+	 * @throws IllegalArgumentException if a variable is not a plain value
+	 */
+	public String compile(final String source, final String filename,
+	        final Map<String, String> variables, final List<String> loadPaths,
+	        final String style) throws IOException {
+		final String themed = declare(variables) + source;
+		final ScriptingContainer runtime = this.acquire();
+		try {
+			runtime.put("$sass_source", themed);
+			runtime.put("$sass_filename", filename);
+			runtime.put("$sass_style", style);
+			runtime.put("$sass_load_paths", loadPaths);
+			return String.valueOf(runtime.runScriptlet(COMPILE));
+		} catch (EvalFailedException e) {
+			throw new IOException("Compilation of " + filename + " failed: "
+			        + e.getMessage(), e);
+		} finally {
+			this.release(runtime);
+		}
+	}
+
+	/**
+	 * Terminate the runtimes. Compilations waiting for a runtime fail, the
+	 * runtimes of running compilations are terminated when they finish.
+	 */
+	@Override
+	public void close() {
+		synchronized (this.runtimes) {
+			this.closed = true;
+			for (final ScriptingContainer runtime : this.idle) {
+				runtime.terminate();
+			}
+			this.runtimes.removeAll(this.idle);
+			this.idle.clear();
+			this.runtimes.notifyAll();
+		}
+	}
+
+	/**
+	 * Get the number of started runtimes.
+	 *
+	 * @return the number of runtimes
+	 */
+	public int getRuntimes() {
+		synchronized (this.runtimes) {
+			return this.runtimes.size();
+		}
+	}
+
+	/**
+	 * Create the variable declarations.
+	 *
+	 * @param variables the variables by name
+	 * @return the declarations
+	 * @throws IllegalArgumentException if a name or value is not safe to
+	 *             declare, eg. contains a {@code ;}
+	 */
+	static String declare(final Map<String, String> variables) {
+		final StringBuilder declarations = new StringBuilder();
+		for (final Entry<String, String> variable : variables.entrySet()) {
+			if (!NAME.matcher(variable.getKey()).matches()) {
+				throw new IllegalArgumentException("Invalid Sass variable name: "
+				        + variable.getKey());
+			}
+			if (variable.getValue() == null || variable.getValue().trim().isEmpty()
+			        || UNSAFE.matcher(variable.getValue()).find()) {
+				throw new IllegalArgumentException("Invalid value for Sass variable $"
+				        + variable.getKey());
+			}
+			declarations.append('$').append(variable.getKey()).append(": ")
+			        .append(variable.getValue()).append(";\n");
+		}
+		return declarations.toString();
+	}
+
+	/**
+	 * Return a runtime to the pool.
+	 *
+	 * @param runtime the runtime
+	 */
+	private void release(final ScriptingContainer runtime) {
+		synchronized (this.runtimes) {
+			if (this.closed) {
+				this.runtimes.remove(runtime);
+				runtime.terminate();
+			} else {
+				this.idle.push(runtime);
+				this.runtimes.notifyAll();
+			}
+		}
+	}
+
+	/**
+	 * Take an idle runtime, start one if the pool is not full, or wait.
+	 *
+	 * @return a runtime for the current thread only
+	 * @throws IOException if the compiler is closed, also while waiting, or
+	 *             the thread is interrupted
+	 */
+	ScriptingContainer acquire() throws IOException {
+		final ScriptingContainer runtime;
+		synchronized (this.runtimes) {
+			while (true) {
+				if (this.closed) {
+					throw new IOException("The Sass compiler is closed.");
+				}
+				if (!this.idle.isEmpty()) {
+					return this.idle.pop();
+				}
+				if (this.runtimes.size() < this.size) {
+					runtime = this.factory.create();
+					this.runtimes.add(runtime);
+					break;
+				}
+				try {
+					this.runtimes.wait();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException("Interrupted waiting for a Sass runtime.");
+				}
+			}
+		}
+		try {
+			final StringBuilder sassScript = new StringBuilder();
+			SassRuntimeFactory.appendRubygems(sassScript, Collections.<String>emptyList());
+			sassScript.append("require 'sass'\n");
+			runtime.runScriptlet(sassScript.toString());
+		} catch (EvalFailedException e) {
+			synchronized (this.runtimes) {
+				this.runtimes.remove(runtime);
+				// another thread may start a runtime instead
+				this.runtimes.notifyAll();
+			}
+			runtime.terminate();
+			throw new IOException("Could not load Sass.", e);
+		}
+		return runtime;
+	}
+}
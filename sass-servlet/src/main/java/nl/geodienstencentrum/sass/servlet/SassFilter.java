@@ -0,0 +1,252 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import nl.geodienstencentrum.maven.plugin.sass.EntityTags;
+
+/**
+ * Serves {@code .css} requests by compiling the SCSS template with the same
+ * path in the templates directory, eg. {@code /css/theme.css} from
+ * {@code /WEB-INF/sass/css/theme.scss}. Requests without a template are
+ * passed on. Variables for the request, eg. the theme of a tenant, are
+ * read from the {@link #VARIABLES} request attribute, set by an earlier
+ * filter; they override the {@code !default} values of the template.
+ * Stylesheets are cached by template and variables in a bounded LRU cache
+ * and served with an entity tag, so browsers revalidate with a 304.
+ * Templates are not expected to change while the application runs, and
+ * must be deployed unpacked, the filter fails to start otherwise.
+ * <p>
+ * Init parameters:
+ * <ul>
+ * <li>{@code templates}: the templates directory, default
+ * {@code /WEB-INF/sass}</li>
+ * <li>{@code style}: the output style, default {@code compressed}</li>
+ * <li>{@code cacheSize}: the number of stylesheets to cache, default 64</li>
+ * <li>{@code runtimes}: the number of concurrent compilations, default 2</li>
+ * </ul>
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SassFilter implements Filter {
+
+	/**
+	 * Request attribute with the Sass variables, a
+	 * {@code Map<String, String>} of names without {@code $} to values.
+	 */
+	public static final String VARIABLES = SassFilter.class.getName() + ".variables";
+
+	/** the servlet context. */
+	private ServletContext context;
+
+	/** the templates directory, a context path. */
+	private String templates;
+
+	/** the templates directory on disk. */
+	private String root;
+
+	/** the output style. */
+	private String style;
+
+	/** the cached stylesheets. */
+	private CssCache cache;
+
+	/** the compiler. */
+	private SassCompiler compiler;
+
+	@Override
+	public void init(final FilterConfig config) throws ServletException {
+		this.context = config.getServletContext();
+		this.templates = parameter(config, "templates", "/WEB-INF/sass");
+		this.style = parameter(config, "style", "compressed");
+		this.root = this.context.getRealPath(this.templates);
+		if (this.root == null) {
+			throw new ServletException("The templates of " + config.getFilterName()
+			        + " are not in a directory, " + this.templates
+			        + " should be deployed unpacked.");
+		}
+		try {
+			this.cache = new CssCache(Integer.parseInt(parameter(config, "cacheSize", "64")));
+			this.compiler = new SassCompiler(Integer.parseInt(parameter(config, "runtimes",
+			        "2")));
+		} catch (IllegalArgumentException e) {
+			throw new ServletException("Invalid configuration of " + config.getFilterName(), e);
+		}
+	}
+
+	@Override
+	public void doFilter(final ServletRequest req, final ServletResponse res,
+	        final FilterChain chain) throws IOException, ServletException {
+		if (!(req instanceof HttpServletRequest)) {
+			chain.doFilter(req, res);
+			return;
+		}
+		final HttpServletRequest request = (HttpServletRequest) req;
+		final HttpServletResponse response = (HttpServletResponse) res;
+		String path = request.getServletPath();
+		if (request.getPathInfo() != null) {
+			path += request.getPathInfo();
+		}
+		final File template = this.getTemplate(path);
+		if (template == null) {
+			chain.doFilter(req, res);
+			return;
+		}
+
+		final SortedMap<String, String> variables = getVariables(request);
+		final CompiledCss css;
+		try {
+			css = this.cache.get(key(path, variables), new Callable<CompiledCss>() {
+				@Override
+				public CompiledCss call() throws IOException {
+					return new CompiledCss(compile(template, variables));
+				}
+			});
+		} catch (IOException | IllegalArgumentException e) {
+			this.context.log("Could not compile " + template, e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR,
+			        "Could not compile " + path);
+			return;
+		}
+
+		response.setHeader("ETag", css.getEtag());
+		if (EntityTags.matches(request.getHeader("If-None-Match"), css.getEtag())) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType("text/css;charset=UTF-8");
+		response.setContentLength(css.getLength());
+		try (OutputStream out = response.getOutputStream()) {
+			out.write(css.getBytes());
+		}
+	}
+
+	@Override
+	public void destroy() {
+		this.compiler.close();
+	}
+
+	/**
+	 * Find the template of a request.
+	 *
+	 * @param path the request path
+	 * @return the template or {@code null} if there is none
+	 */
+	private File getTemplate(final String path) {
+		if (!path.endsWith(".css") || path.contains("..")) {
+			return null;
+		}
+		final String real = this.context.getRealPath(this.templates
+		        + path.substring(0, path.length() - ".css".length()) + ".scss");
+		if (real == null) {
+			return null;
+		}
+		final File template = new File(real);
+		if (!template.isFile() || template.getName().startsWith("_")) {
+			return null;
+		}
+		return template;
+	}
+
+	/**
+	 * Compile a template.
+	 *
+	 * @param template the template
+	 * @param variables the variables
+	 * @return the CSS
+	 * @throws IOException if the template does not compile
+	 */
+	private String compile(final File template, final Map<String, String> variables)
+	        throws IOException {
+		final String source = new String(Files.readAllBytes(template.toPath()),
+		        StandardCharsets.UTF_8);
+		return this.compiler.compile(source, template.getPath(), variables,
+		        Arrays.asList(template.getParent(), this.root), this.style);
+	}
+
+	/**
+	 * Get the cache key of a stylesheet. Names and values are prefixed with
+	 * their length, so no combination of variables can produce the key of
+	 * another.
+	 *
+	 * @param path the request path
+	 * @param variables the variables, sorted by name
+	 * @return the key
+	 */
+	static String key(final String path, final SortedMap<String, String> variables) {
+		final StringBuilder key = new StringBuilder(path);
+		for (final Map.Entry<String, String> variable : variables.entrySet()) {
+			key.append('|').append(variable.getKey().length()).append(':')
+			        .append(variable.getKey()).append(String.valueOf(variable.getValue()).length())
+			        .append(':').append(variable.getValue());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Get the variables of a request.
+	 *
+	 * @param request the request
+	 * @return the variables, sorted by name for a stable cache key
+	 */
+	@SuppressWarnings("unchecked")
+	private static SortedMap<String, String> getVariables(final HttpServletRequest request) {
+		final Object variables = request.getAttribute(VARIABLES);
+		if (variables instanceof Map) {
+			return new TreeMap<>((Map<String, String>) variables);
+		}
+		return new TreeMap<>(Collections.<String, String>emptyMap());
+	}
+
+	/**
+	 * Get an init parameter.
+	 *
+	 * @param config the filter configuration
+	 * @param name the name
+	 * @param defaultValue the value if the parameter is not set
+	 * @return the value
+	 */
+	private static String parameter(final FilterConfig config, final String name,
+	        final String defaultValue) {
+		final String value = config.getInitParameter(name);
+		if (value == null || value.trim().isEmpty()) {
+			return defaultValue;
+		}
+		return value.trim();
+	}
+}
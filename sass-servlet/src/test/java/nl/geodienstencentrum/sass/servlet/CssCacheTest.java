@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.sass.servlet.CssCache }.
+ *
+ * @author mprins
+ */
+public class CssCacheTest {
+
+	/**
+	 * The least recently used stylesheet is evicted.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testEviction() throws Exception {
+		final CssCache cache = new CssCache(2);
+		final CompiledCss a = cache.get("a", compiled("a {}"));
+		cache.get("b", compiled("b {}"));
+		assertSame("a is cached", a, cache.get("a", compiled("a {}")));
+		cache.get("c", compiled("c {}"));
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.getCompiles());
+
+		assertSame("a was used after b", a, cache.get("a", compiled("a {}")));
+		cache.get("b", compiled("b {}"));
+		assertEquals("b was evicted", 4, cache.getCompiles());
+	}
+
+	/**
+	 * A burst of requests for the same stylesheet compiles it once.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testSingleFlight() throws Exception {
+		final CssCache cache = new CssCache(10);
+		final CountDownLatch compiling = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		final Callable<CompiledCss> slow = new Callable<CompiledCss>() {
+			@Override
+			public CompiledCss call() throws Exception {
+				compiling.countDown();
+				release.await();
+				return new CompiledCss("theme {}");
+			}
+		};
+		final ExecutorService requests = Executors.newFixedThreadPool(8);
+		try {
+			final List<Future<CompiledCss>> results = new ArrayList<>();
+			results.add(requests.submit(request(cache, slow)));
+			compiling.await(5, TimeUnit.SECONDS);
+			for (int i = 0; i < 7; i++) {
+				results.add(requests.submit(request(cache, slow)));
+			}
+			// give the other requests time to wait for the compilation
+			Thread.sleep(100L);
+			release.countDown();
+			final CompiledCss first = results.get(0).get(5, TimeUnit.SECONDS);
+			for (final Future<CompiledCss> result : results) {
+				assertSame(first, result.get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(1, cache.getCompiles());
+		} finally {
+			requests.shutdownNow();
+		}
+	}
+
+	/**
+	 * Failures are passed to the waiting requests and are not cached.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testFailure() throws Exception {
+		final CssCache cache = new CssCache(10);
+		final Callable<CompiledCss> failing = new Callable<CompiledCss>() {
+			@Override
+			public CompiledCss call() throws IOException {
+				throw new IOException("Invalid CSS");
+			}
+		};
+		for (int i = 0; i < 2; i++) {
+			try {
+				cache.get("broken", failing);
+				fail("the compilation should fail");
+			} catch (IOException e) {
+				assertEquals("Invalid CSS", e.getMessage());
+			}
+		}
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getCompiles());
+	}
+
+	/**
+	 * Entity tags are derived from the content.
+	 */
+	@Test
+	public void testEtag() {
+		assertEquals(new CompiledCss("a {}").getEtag(), new CompiledCss("a {}").getEtag());
+		assertEquals(42, new CompiledCss("a {}").getEtag().length());
+	}
+
+	/**
+	 * Create a compilation.
+	 *
+	 * @param css the result
+	 * @return the compilation
+	 */
+	private static Callable<CompiledCss> compiled(final String css) {
+		return new Callable<CompiledCss>() {
+			@Override
+			public CompiledCss call() {
+				return new CompiledCss(css);
+			}
+		};
+	}
+
+	/**
+	 * Create a request for a stylesheet.
+	 *
+	 * @param cache the cache
+	 * @param compiler the compilation
+	 * @return the request
+	 */
+	private static Callable<CompiledCss> request(final CssCache cache,
+	        final Callable<CompiledCss> compiler) {
+		return new Callable<CompiledCss>() {
+			@Override
+			public CompiledCss call() throws IOException {
+				return cache.get("theme", compiler);
+			}
+		};
+	}
+}
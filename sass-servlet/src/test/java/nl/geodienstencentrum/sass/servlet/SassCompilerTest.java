@@ -0,0 +1,177 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.jruby.embed.ScriptingContainer;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.sass.servlet.SassCompiler }.
+ *
+ * @author mprins
+ */
+public class SassCompilerTest {
+
+	/** the test templates. */
+	private static final File TEMPLATES = new File("src/test/resources/sass");
+
+	/** the compiler, shared as starting a runtime takes a while. */
+	private static SassCompiler compiler;
+
+	/**
+	 * Create the compiler.
+	 */
+	@BeforeClass
+	public static void setUp() {
+		compiler = new SassCompiler(2);
+	}
+
+	/**
+	 * Close the compiler.
+	 */
+	@AfterClass
+	public static void tearDown() {
+		compiler.close();
+	}
+
+	/**
+	 * Variables override the defaults of the template.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testCompileTheme() throws Exception {
+		final Map<String, String> variables = new LinkedHashMap<>();
+		variables.put("brand", "#123456");
+		final String css = this.compile(variables);
+		assertTrue(css, css.startsWith(".header{color:#123456;"));
+		assertEquals(1, compiler.getRuntimes());
+
+		final String plain = this.compile(Collections.<String, String>emptyMap());
+		assertTrue(plain, plain.startsWith(".header{"));
+		assertFalse(plain, plain.contains("#123456"));
+		assertEquals("the runtime is reused", 1, compiler.getRuntimes());
+	}
+
+	/**
+	 * Invalid SCSS fails with the Sass message.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testCompileError() throws Exception {
+		try {
+			compiler.compile(".a { color: $missing; }", "broken.scss",
+			        Collections.<String, String>emptyMap(), Collections.<String>emptyList(),
+			        "compressed");
+			fail("an undefined variable should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("missing"));
+		}
+	}
+
+	/**
+	 * Closing the compiler fails the compilations waiting for a runtime.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test(timeout = 60000)
+	public void testCloseWakesWaiting() throws Exception {
+		final SassCompiler single = new SassCompiler(1);
+		final ScriptingContainer busy = single.acquire();
+		final AtomicReference<Exception> failure = new AtomicReference<>();
+		final Thread waiting = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					single.compile(".a { b: c; }", "a.scss", Collections.<String, String>emptyMap(),
+					        Collections.<String>emptyList(), "compressed");
+				} catch (IOException e) {
+					failure.set(e);
+				}
+			}
+		});
+		waiting.start();
+		while (waiting.getState() != Thread.State.WAITING) {
+			Thread.sleep(10);
+		}
+		single.close();
+		waiting.join();
+		assertTrue(String.valueOf(failure.get()), failure.get().getMessage().contains("closed"));
+		busy.terminate();
+	}
+
+	/**
+	 * Variables are declared before the template, unsafe values are
+	 * rejected.
+	 */
+	@Test
+	public void testDeclare() {
+		final Map<String, String> variables = new TreeMap<>();
+		variables.put("brand", "#ff0000");
+		variables.put("font-stack", "'Open Sans', sans-serif");
+		assertEquals("$brand: #ff0000;\n$font-stack: 'Open Sans', sans-serif;\n",
+		        SassCompiler.declare(variables));
+
+		for (final String value : new String[] {"red; } body { display: none", "red\n",
+		        "red /* */", "red\\3b", ""}) {
+			try {
+				SassCompiler.declare(Collections.singletonMap("brand", value));
+				fail("should reject " + value);
+			} catch (IllegalArgumentException e) {
+				assertTrue(e.getMessage().contains("$brand"));
+			}
+		}
+		try {
+			SassCompiler.declare(Collections.singletonMap("a: 1; $b", "red"));
+			fail("should reject the name");
+		} catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage().contains("name"));
+		}
+	}
+
+	/**
+	 * Compile the test theme.
+	 *
+	 * @param variables the variables
+	 * @return the CSS
+	 * @throws IOException if any
+	 */
+	private String compile(final Map<String, String> variables) throws IOException {
+		final File theme = new File(TEMPLATES, "theme.scss");
+		final List<String> loadPaths = Collections.singletonList(TEMPLATES.getAbsolutePath());
+		return compiler.compile(new String(Files.readAllBytes(theme.toPath()),
+		        StandardCharsets.UTF_8), theme.getPath(), variables, loadPaths, "compressed");
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.sass.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.sass.servlet.SassFilter }.
+ *
+ * @author mprins
+ */
+public class SassFilterTest {
+
+	/**
+	 * Cache keys of different variables never collide.
+	 */
+	@Test
+	public void testKey() {
+		final SortedMap<String, String> one = new TreeMap<>();
+		one.put("a", "x|1:by");
+		final SortedMap<String, String> two = new TreeMap<>();
+		two.put("a", "x");
+		two.put("b", "y");
+		assertFalse(SassFilter.key("/theme.css", one).equals(SassFilter.key("/theme.css", two)));
+		assertEquals("/theme.css|1:a1:x|1:b1:y", SassFilter.key("/theme.css", two));
+		assertEquals("/theme.css", SassFilter.key("/theme.css", new TreeMap<String, String>()));
+	}
+
+	/**
+	 * The filter does not start when the templates are not on disk, eg. in
+	 * a packed war.
+	 */
+	@Test
+	public void testInitPacked() {
+		final ServletContext context = (ServletContext) Proxy.newProxyInstance(
+		        ServletContext.class.getClassLoader(), new Class<?>[] {ServletContext.class},
+		        new InvocationHandler() {
+			        @Override
+			        public Object invoke(final Object proxy, final Method method,
+			                final Object[] args) {
+				        // getRealPath returns null for a packed war
+				        return null;
+			        }
+		        });
+		final FilterConfig config = (FilterConfig) Proxy.newProxyInstance(
+		        FilterConfig.class.getClassLoader(), new Class<?>[] {FilterConfig.class},
+		        new InvocationHandler() {
+			        @Override
+			        public Object invoke(final Object proxy, final Method method,
+			                final Object[] args) {
+				        if ("getServletContext".equals(method.getName())) {
+					        return context;
+				        }
+				        return "getFilterName".equals(method.getName()) ? "sass" : null;
+			        }
+		        });
+		try {
+			new SassFilter().init(config);
+			fail("should not start without templates directory");
+		} catch (ServletException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("/WEB-INF/sass"));
+		}
+	}
+}
@@ -28,14 +28,23 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.jar.JarEntry;
+import java.util.concurrent.TimeUnit;
 import java.util.jar.JarFile;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.model.FileSet;
@@ -45,13 +54,31 @@ import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.shared.utils.io.IOUtil;
-import org.jruby.embed.LocalContextScope;
+import org.codehaus.plexus.util.SelectorUtils;
+import org.jruby.RubyInstanceConfig.CompileMode;
+import org.jruby.RubyInstanceConfig.ProfilingMode;
 import org.jruby.embed.ScriptingContainer;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
+import nl.geodienstencentrum.maven.plugin.sass.compiler.ClasspathImporter;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompileStatistics;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.ConfigurationFingerprint;
 import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerCallback;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerListener;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.EntryPoint;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FingerprintStore;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents.Type;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.ImageFunctions;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.ImportGraph;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.LoadPathIndex;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.MarkupIndex;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.SassFunction;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.SassFunctions;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.TraceRecorder;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.TraceRecorder.Span;
 
 /**
  * Base for batching Sass Mojos.
@@ -59,6 +86,22 @@ import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerCallback;
  */
 public abstract class AbstractSassMojo extends AbstractMojo {
 
+	/** the system property JRuby reads the invokedynamic setting from. */
+	private static final String INVOKE_DYNAMIC_PROPERTY = "jruby.compile.invokedynamic";
+
+	/** the load paths of Compass, as set when Compass is loaded up front. */
+	private static final String COMPASS_LOAD_PATHS = "Compass.configuration.sass_load_paths";
+
+	/**
+	 * Sass options that are set from the template locations and don't
+	 * change the compiled CSS.
+	 */
+	private static final List<String> DERIVED_OPTIONS = Arrays.asList(
+	        "template_location", "css_location", "cache_location");
+
+	/** a single or double quoted string in a Ruby expression. */
+	private static final Pattern QUOTED = Pattern.compile("'([^']*)'|\"([^\"]*)\"");
+
 	/**
 	 * Build directory for the plugin.
 	 *
@@ -245,6 +288,334 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 	@Parameter(defaultValue = "false")
 	private boolean skip;
 
+	/**
+	 * Number of threads used to compile the Sass templates. With more than
+	 * one thread the entry points are distributed over that many JRuby
+	 * runtimes, longest compile first, based on the durations recorded in
+	 * {@code ${project.build.directory}/sass-compile-stats.properties} or the
+	 * template size when there is no history yet.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "1", property = "sass.compilerThreads")
+	private int compilerThreads = 1;
+
+	/**
+	 * JRuby compile mode, one of {@code JIT} (compile hot methods),
+	 * {@code FORCE} (compile everything before running) or {@code OFF}
+	 * (interpret only). Defaults to JRuby's own default ({@code JIT}).
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.jrubyCompileMode")
+	private CompileMode jrubyCompileMode;
+
+	/**
+	 * Number of calls after which JRuby compiles a method in {@code JIT}
+	 * mode. Defaults to JRuby's own default.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.jrubyJitThreshold")
+	private Integer jrubyJitThreshold;
+
+	/**
+	 * Use invokedynamic for JRuby compiled code. JRuby reads the
+	 * {@code jruby.compile.invokedynamic} system property once, so this is
+	 * set while the first runtime of the plugin boots and then restored; it
+	 * applies to all later runtimes of the plugin in the Maven JVM, eg. of
+	 * other modules, and a different value for a later execution is ignored
+	 * with a warning.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.jrubyInvokeDynamic")
+	private Boolean jrubyInvokeDynamic;
+
+	/**
+	 * Enable JRuby's ObjectSpace tracing. This is off by default in JRuby
+	 * and slows down object allocation considerably.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.jrubyObjectSpace")
+	private Boolean jrubyObjectSpace;
+
+	/**
+	 * Treat all string literals as frozen, as if every Ruby file started with
+	 * the {@code frozen_string_literal: true} magic comment.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.jrubyFrozenStringLiteral")
+	private Boolean jrubyFrozenStringLiteral;
+
+	/**
+	 * Extract the JRuby home and the bundled Sass, Compass and scss-lint gems
+	 * to {@code runtimeCacheDirectory} once, and load them from the file
+	 * system instead of from the plugin's classpath. This speeds up the
+	 * {@code require}s considerably.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.extractRuntime")
+	private boolean extractRuntime;
+
+	/**
+	 * Directory for the extracted runtimes, see {@code extractRuntime}. Each
+	 * plugin version is extracted in its own sub directory; a runtime that
+	 * changed, eg. a rebuilt snapshot, replaces the earlier one of the
+	 * version.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "${user.home}/.m2/sass-maven-plugin",
+	        property = "sass.runtimeCacheDirectory")
+	private File runtimeCacheDirectory;
+
+	/**
+	 * Version of this plugin, names the extracted runtime directory.
+	 */
+	@Parameter(defaultValue = "${plugin.version}", readonly = true)
+	private String pluginVersion;
+
+	/**
+	 * Load Compass and the configured {@code gems} only when a template
+	 * imports them, instead of up front. The templates are scanned for
+	 * imports before compiling; Bourbon is only extracted when a template
+	 * imports it. Note that Compass functions, such as {@code image-url()},
+	 * are only available after Compass is loaded through an import.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.lazyLoadLibraries")
+	private boolean lazyLoadLibraries;
+
+	/**
+	 * Record the phases of the build, such as scanning, booting JRuby,
+	 * loading libraries and compiling each template, and write them to
+	 * {@code ${project.build.directory}/sass-trace.json} in Chrome
+	 * trace-event format. Open the file in {@code chrome://tracing} or
+	 * <a href="https://ui.perfetto.dev">Perfetto</a>.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.trace")
+	private boolean trace;
+
+	/**
+	 * Emit JDK Flight Recorder events for booting JRuby, evaluating the
+	 * script and compiling each template, carrying the template path, bytes
+	 * in and out and success. Needs Java 11 or later and a running
+	 * recording, eg. {@code MAVEN_OPTS=-XX:StartFlightRecording}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.flightRecorderEvents")
+	private boolean flightRecorderEvents;
+
+	/**
+	 * Templates to profile, as patterns matched against the template path,
+	 * eg. {@code **&#x0002F;main.scss}. Matching templates are always
+	 * compiled, one at a time in a separate JRuby runtime with JRuby's
+	 * profiler on and the Sass cache off. A flat and a graph profile of each
+	 * template are written to {@code ${project.build.directory}/sass-profile/}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.profile")
+	private String[] profileTemplates = new String[0];
+
+	/**
+	 * Resolve imports from the jars and directories of the compile
+	 * classpath, eg. SCSS published in a dependency, without extracting
+	 * them. Imports are resolved below the {@code classpathImportRoots}
+	 * after the template locations and load paths.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.classpathImports")
+	private boolean classpathImports;
+
+	/**
+	 * Directories inside the classpath elements to resolve imports against,
+	 * an empty root is the top level. Defaults to the top level and
+	 * {@code META-INF/resources}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] classpathImportRoots = new String[] {"", "META-INF/resources"};
+
+	/**
+	 * The compile classpath of the project, used by {@code classpathImports}.
+	 */
+	@Parameter(defaultValue = "${project.compileClasspathElements}", readonly = true)
+	private List<String> classpathElements = Collections.emptyList();
+
+	/**
+	 * Answer the lookups of Sass's filesystem importer from an in-memory
+	 * index of the template locations and load paths, instead of probing
+	 * the filesystem for every variant of every import. Each directory is
+	 * listed once per build; in watch mode created and deleted files update
+	 * the index.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.indexLoadPaths")
+	private boolean indexLoadPaths;
+
+	/**
+	 * Replace the Compass image helpers {@code image-width},
+	 * {@code image-height} and {@code inline-image} with Java
+	 * implementations that read each image once per build, however often it
+	 * is used. Images are resolved against {@code imagesDirectory}. The
+	 * functions are also available without Compass.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.javaFunctions")
+	private boolean javaFunctions;
+
+	/**
+	 * The directory the images of the {@code javaFunctions} are resolved
+	 * against. Defaults to the {@code images_path} of the Compass
+	 * configuration when {@code useCompass} is set, from when Compass is
+	 * loaded, and to {@code ${basedir}/src/main/webapp} otherwise.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private File imagesDirectory;
+
+	/**
+	 * Class names of additional Sass functions implemented in Java, eg. from
+	 * a dependency of the plugin. The classes implement
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.SassFunction}
+	 * and have a public no argument constructor.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] sassFunctions = new String[0];
+
+	/**
+	 * Additional output styles. Each template is parsed once and evaluated
+	 * and rendered in every style, eg. a compressed {@code .min.css} next to
+	 * the expanded CSS:
+	 *
+	 * <pre>
+	 * &lt;outputStyles&gt;
+	 *     &lt;outputStyle&gt;
+	 *         &lt;style&gt;compressed&lt;/style&gt;
+	 *     &lt;/outputStyle&gt;
+	 * &lt;/outputStyles&gt;
+	 * </pre>
+	 *
+	 * The additional stylesheets are written without source map.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private List<OutputStyle> outputStyles = Collections.emptyList();
+
+	/**
+	 * How source maps are written, one of {@code NONE} (eg. for a production
+	 * profile), {@code EXTERNAL} (a {@code .map} file next to each
+	 * stylesheet), {@code INLINE} (a base64 data URL in each stylesheet,
+	 * including the sources) or {@code LAZY} (only for use with
+	 * {@code serve}: the stylesheets it serves refer to a {@code .map} file,
+	 * which it creates and writes when it is requested; the stylesheets
+	 * written by {@code update-stylesheets} and {@code watch} have no source
+	 * map and no reference to one). Overrides the {@code sourcemap} Sass
+	 * option; if not set the Sass options decide, and {@code serve} serves
+	 * no source maps.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(property = "sass.sourcemapMode")
+	private SourcemapMode sourcemapMode;
+
+	/**
+	 * Have {@code update-stylesheets} remove the selectors that need a
+	 * class name, id or element name which does not occur in the markup and
+	 * templates of the project, eg. the unused parts of Bourbon or Compass.
+	 * Stylesheets are pruned after they are compiled, including the
+	 * additional output styles; their source maps are removed, as the
+	 * mappings would no longer match. Without any markup files nothing is
+	 * pruned and a warning is logged. A change of the words used in the
+	 * markup compiles and prunes all stylesheets again.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.prune")
+	private boolean prune;
+
+	/**
+	 * The directories with the markup and templates to prune against,
+	 * defaults to {@code src/main/webapp}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private File[] pruneMarkupDirectories;
+
+	/**
+	 * Ant style patterns of the markup and template files, relative to the
+	 * markup directories. Scripts are included as they may add classes.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] pruneMarkupIncludes = new String[] {"**/*.html", "**/*.htm",
+	        "**/*.xhtml", "**/*.jsp", "**/*.jspx", "**/*.jspf", "**/*.tag", "**/*.tagx",
+	        "**/*.ftl", "**/*.vm", "**/*.js"};
+
+	/**
+	 * Regular expressions matching the whole of the class names, ids and
+	 * element names to keep, eg. classes only added by a server side
+	 * library: {@code ol-.*}. Also used for the critical CSS of
+	 * {@code update-stylesheets}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] pruneSafelist = new String[0];
+
+	/** the project base directory. */
+	@Parameter(defaultValue = "${basedir}", readonly = true)
+	private File basedir;
+
+	/**
+	 * Whether the first runtime of the plugin was started with invokedynamic,
+	 * {@code null} before the first runtime.
+	 */
+	private static Boolean startedInvokeDynamic;
+
+	/** whether the ignored {@code jrubyInvokeDynamic} was reported. */
+	private boolean invokeDynamicWarned;
+
+	/** the extracted runtime, if {@code extractRuntime} is used. */
+	private File runtimeHome;
+
+	/** importer for the classpath, if {@code classpathImports} is used. */
+	private ClasspathImporter classpathImporter;
+
+	/** index of the load paths, if {@code indexLoadPaths} is used. */
+	private LoadPathIndex loadPathIndex;
+
+	/** the Java Sass functions, if any are used. */
+	private SassFunctions functions;
+
+	/** the image functions of {@code javaFunctions}, {@code null} if not used. */
+	private ImageFunctions imageFunctions;
+
+	/** the words of the markup, if {@code prune} is used. */
+	private MarkupIndex markupIndex;
+
+	/** recorder for the trace of this execution. */
+	private TraceRecorder traceRecorder;
+
 	/**
 	 * Execute the Sass Compilation Ruby Script.
 	 *
@@ -261,21 +632,215 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 			return;
 		}
 
-		final Log log = this.getLog();
-		log.debug("Execute Sass Ruby script:\n\n" + sassScript + "\n\n");
+		final CompilerCallback compilerCallback = this.createCompilerCallback();
+		this.runSassScript(sassScript, compilerCallback);
+		this.checkCompilerCallback(compilerCallback);
+	}
 
-		final ScriptingContainer scriptingContainer = new ScriptingContainer(LocalContextScope.SINGLETHREAD);
-		final CompilerCallback compilerCallback = new CompilerCallback(log);
+	/**
+	 * Keep parsed templates in memory in front of the file cache, for
+	 * runtimes that compile more than once.
+	 *
+	 * @param sassScript
+	 *            the script to append to
+	 */
+	protected void buildMemoryCacheScript(final StringBuilder sassScript) {
+		sassScript.append("unless Sass::Plugin.options[:cache] == false\n");
+		sassScript.append("  Sass::Plugin.options[:cache_store] = Sass::CacheStores::Chain.new(")
+		        .append("Sass::CacheStores::Memory.new, ")
+		        .append("Sass::CacheStores::Filesystem.new(Sass::Plugin.options[:cache_location]))\n");
+		sassScript.append("end\n");
+	}
 
-		scriptingContainer.setHomeDirectory("uri:classloader://META-INF/jruby.home");
-		scriptingContainer.put("$compiler_callback", compilerCallback);
-		scriptingContainer.runScriptlet(sassScript);
+	/**
+	 * Create the callback for a Sass compilation, goals can override this to
+	 * handle compiler events.
+	 *
+	 * @return a new callback
+	 */
+	protected CompilerCallback createCompilerCallback() {
+		return new CompilerCallback(this.getLog());
+	}
 
+	/**
+	 * Fail the build if the callback saw compilation errors and
+	 * {@code failOnError} is set.
+	 *
+	 * @param compilerCallback
+	 *            the callback of a finished compilation
+	 * @throws MojoFailureException
+	 *             when there were errors
+	 */
+	protected void checkCompilerCallback(final CompilerCallback compilerCallback)
+	        throws MojoFailureException {
 		if (this.failOnError && compilerCallback.hadError()) {
 			throw new MojoFailureException(
 			   "Sass compilation encountered errors (see above for details).");
 		}
+	}
+
+	/**
+	 * Run a Sass Ruby Script in a new JRuby runtime, reporting to the given
+	 * callback. Safe to call concurrently, each call uses its own runtime.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 * @param compilerCallback
+	 *            callback for the Sass compiler events
+	 */
+	protected void runSassScript(final String sassScript,
+	        final CompilerCallback compilerCallback) {
+		this.runSassScript(sassScript, compilerCallback, false);
+	}
+
+	/**
+	 * Run a Sass Ruby Script in a new JRuby runtime, reporting to the given
+	 * callback. Safe to call concurrently, each call uses its own runtime.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 * @param compilerCallback
+	 *            callback for the Sass compiler events
+	 * @param profile
+	 *            enable the {@code JRuby::Profiler} API in the runtime
+	 * @return the runtime, to run more scripts in on the same thread
+	 */
+	protected ScriptingContainer runSassScript(final String sassScript,
+	        final CompilerCallback compilerCallback, final boolean profile) {
+		final Log log = this.getLog();
+		log.debug("Execute Sass Ruby script:\n\n" + sassScript + "\n\n");
+
+		final TraceRecorder recorder = this.getTraceRecorder();
+		final FlightRecorderEvents events = this.getFlightRecorderEvents();
+		compilerCallback.setTraceRecorder(recorder);
+		compilerCallback.setFlightRecorderEvents(events);
+		final ScriptingContainer scriptingContainer;
+		final FlightRecorderEvents.Event boot = events.begin(Type.RUNTIME_BOOT);
+		try (Span span = recorder.begin("boot JRuby", "jruby")) {
+			scriptingContainer = this.createScriptingContainer();
+			if (profile) {
+				scriptingContainer.getProvider().getRubyInstanceConfig()
+				        .setProfilingMode(ProfilingMode.API);
+			}
+			if (recorder.isEnabled() || boot.isRecording()) {
+				// the runtime is started lazily, start it now to time it
+				scriptingContainer.getProvider().getRuntime();
+			}
+		}
+		boot.success(true).commit();
+		scriptingContainer.put("$compiler_callback", compilerCallback);
+		if (this.classpathImporter != null) {
+			scriptingContainer.put("$classpath_importer", this.classpathImporter);
+		}
+		if (this.loadPathIndex != null) {
+			scriptingContainer.put("$load_path_index", this.loadPathIndex);
+		}
+		if (this.functions != null) {
+			scriptingContainer.put("$sass_functions", this.functions);
+		}
+		if (this.imageFunctions != null) {
+			scriptingContainer.put("$image_functions", this.imageFunctions);
+		}
+		if (!this.outputStyles.isEmpty()) {
+			scriptingContainer.put("$output_styles", this.outputStyles);
+			scriptingContainer.put("$output_roots", this.getDestinations());
+		}
+		final FlightRecorderEvents.Event evaluation = events.begin(Type.SCRIPT_EVALUATION)
+		        .bytesIn(sassScript.length());
+		boolean success = false;
+		try (Span span = recorder.begin("run Sass script", "jruby")) {
+			scriptingContainer.runScriptlet(sassScript);
+			success = !compilerCallback.hadError();
+		} finally {
+			evaluation.success(success).commit();
+		}
+
 		log.debug("\n");
+		return scriptingContainer;
+	}
+
+	/**
+	 * Create a new JRuby runtime, configured with the JRuby tuning
+	 * parameters. The first runtime of the plugin is booted here if
+	 * {@code jrubyInvokeDynamic} is set, as JRuby reads that setting while it
+	 * boots.
+	 *
+	 * @return a new scripting container
+	 */
+	protected ScriptingContainer createScriptingContainer() {
+		synchronized (AbstractSassMojo.class) {
+			if (startedInvokeDynamic == null) {
+				startedInvokeDynamic = this.jrubyInvokeDynamic != null ? this.jrubyInvokeDynamic
+				        : Boolean.getBoolean(INVOKE_DYNAMIC_PROPERTY);
+				if (this.jrubyInvokeDynamic != null) {
+					final String previous = System.getProperty(INVOKE_DYNAMIC_PROPERTY);
+					System.setProperty(INVOKE_DYNAMIC_PROPERTY,
+					        this.jrubyInvokeDynamic.toString());
+					try {
+						final ScriptingContainer scriptingContainer = this
+						        .configureScriptingContainer();
+						scriptingContainer.getProvider().getRuntime();
+						return scriptingContainer;
+					} finally {
+						if (previous == null) {
+							System.clearProperty(INVOKE_DYNAMIC_PROPERTY);
+						} else {
+							System.setProperty(INVOKE_DYNAMIC_PROPERTY, previous);
+						}
+					}
+				}
+			} else if (this.jrubyInvokeDynamic != null
+			        && !this.jrubyInvokeDynamic.equals(startedInvokeDynamic)
+			        && !this.invokeDynamicWarned) {
+				this.invokeDynamicWarned = true;
+				this.getLog().warn("JRuby already runs with invokedynamic "
+				        + (startedInvokeDynamic ? "on" : "off")
+				        + " in this JVM, jrubyInvokeDynamic is ignored.");
+			}
+		}
+		return this.configureScriptingContainer();
+	}
+
+	/**
+	 * Create a new JRuby runtime, configured with the JRuby tuning
+	 * parameters other than invokedynamic.
+	 *
+	 * @return a new scripting container
+	 */
+	private ScriptingContainer configureScriptingContainer() {
+		final SassRuntimeFactory factory = new SassRuntimeFactory();
+		final File extracted = this.getRuntimeHome();
+		if (extracted != null) {
+			factory.setHomeDirectory(new File(extracted, "jruby.home").getPath());
+		}
+		factory.setCompileMode(this.jrubyCompileMode);
+		factory.setJitThreshold(this.jrubyJitThreshold);
+		factory.setObjectSpace(this.jrubyObjectSpace);
+		factory.setFrozenStringLiteral(this.jrubyFrozenStringLiteral);
+		return factory.create();
+	}
+
+	/**
+	 * Gets the extracted runtime, extracting it on first use.
+	 *
+	 * @return the runtime directory or {@code null} when the runtime is
+	 *         loaded from the classpath
+	 */
+	protected synchronized File getRuntimeHome() {
+		if (!this.extractRuntime || this.runtimeHome != null) {
+			return this.runtimeHome;
+		}
+		try {
+			this.runtimeHome = new RuntimeCache(this.runtimeCacheDirectory, this.getLog())
+			        .extract(this.pluginVersion,
+			                ScriptingContainer.class.getProtectionDomain().getCodeSource().getLocation(),
+			                AbstractSassMojo.class.getProtectionDomain().getCodeSource().getLocation());
+		} catch (IOException e) {
+			this.getLog().warn("Could not extract the JRuby runtime, using the classpath: "
+			        + e.getMessage());
+			this.extractRuntime = false;
+		}
+		return this.runtimeHome;
 	}
 
 	/**
@@ -288,33 +853,41 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 	 */
 	protected void buildBasicSassScript(final StringBuilder sassScript)
 	        throws MojoExecutionException {
-		final Log log = this.getLog();
+		try (Span span = this.getTraceRecorder().begin("build Ruby script", "script")) {
+			this.appendBasicSassScript(sassScript);
+		}
+	}
 
-		sassScript.append("require 'rubygems'\n");
-		if (this.gemPaths.length > 0) {
-			sassScript.append("env = { 'GEM_PATH' => [\n");
-			for (final String gemPath : this.gemPaths) {
-				sassScript.append("    '").append(gemPath).append("',\n");
-			}
+	/**
+	 * Appends the basic sass script.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 * @throws MojoExecutionException
+	 *             the mojo execution exception
+	 */
+	private void appendBasicSassScript(final StringBuilder sassScript)
+	        throws MojoExecutionException {
+		final Log log = this.getLog();
 
-			final String gemPath = System.getenv("GEM_PATH");
-			if (gemPath != null) {
-				for (final String p : gemPath.split(File.pathSeparator)) {
-					sassScript.append("    '").append(p).append("',\n");
-				}
-			}
-			/* remove trailing comma+\n */
-			sassScript.setLength(sassScript.length() - 2);
-			// TODO
-			// quick fix for the deprecation message coming from Gem.paths, this should be cleaned up; 
-			// there's a round trip of splitting into array in java and then unsplitting the array in ruby...
-			// see #118
-			sassScript.append("\n].uniq.join(File::PATH_SEPARATOR) }\n");
-			sassScript.append("Gem.paths = env\n");
+		final List<String> allGemPaths = new ArrayList<>();
+		final File extracted = this.getRuntimeHome();
+		if (extracted != null) {
+			allGemPaths.add(FilenameUtils.separatorsToUnix(
+			        new File(extracted, "gems").getPath()));
 		}
+		allGemPaths.addAll(Arrays.asList(this.gemPaths));
+		SassRuntimeFactory.appendRubygems(sassScript, allGemPaths);
 
-		for (final String gem : this.gems) {
-			sassScript.append("require '").append(gem).append("'\n");
+		Set<String> imported = Collections.emptySet();
+		if (this.lazyLoadLibraries) {
+			imported = this.getLibraryImports();
+		} else if (this.gems.length > 0) {
+			sassScript.append("started = Time.now\n");
+			for (final String gem : this.gems) {
+				sassScript.append("require '").append(gem).append("'\n");
+			}
+			this.appendLibraryLoaded(sassScript, "gems");
 		}
 
 		sassScript.append("require 'sass/plugin'\n");
@@ -323,19 +896,12 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		if (this.useCompass) {
 			log.info("Running with Compass enabled.");
 			log.warn("Compass support is deprecated, it will be removed in version 3.0, see https://github.com/GeoDienstenCentrum/sass-maven-plugin/issues/77");
-			sassScript.append("require 'compass'\n");
-			sassScript.append("require 'compass/exec'\n");
-			sassScript.append("require 'compass/core'\n");
-			sassScript.append("require 'compass/import-once'\n");
-			if (compassConfigFile != null) {
-				sassScript.append("Compass.add_project_configuration '")
-				        .append(compassConfigFile.getAbsolutePath())
-				        .append("'\n");
-			} else {
-				sassScript.append("Compass.add_project_configuration \n");
+			if (!this.lazyLoadLibraries) {
+				sassScript.append("started = Time.now\n");
+				this.appendCompassRequires(sassScript);
+				this.appendLibraryLoaded(sassScript, "compass");
+				this.sassOptions.put("load_paths", COMPASS_LOAD_PATHS);
 			}
-			this.sassOptions.put("load_paths",
-			        "Compass.configuration.sass_load_paths");
 		}
 
 		// Get all template locations from resources and set option
@@ -363,8 +929,13 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		}
 
 		// Add the plugin configuration options
+		final Map<String, String> options = new LinkedHashMap<>(this.sassOptions);
+		if (this.sourcemapMode != null) {
+			options.put("sourcemap",
+			        this.sourcemapMode.getSassOption(this.sassOptions.get("sourcemap")));
+		}
 		sassScript.append("Sass::Plugin.options.merge!(\n");
-		for (final Iterator<Entry<String, String>> entryItr = this.sassOptions
+		for (final Iterator<Entry<String, String>> entryItr = options
 		        .entrySet().iterator(); entryItr.hasNext();) {
 			final Entry<String, String> optEntry = entryItr.next();
 			final String opt = optEntry.getKey();
@@ -386,10 +957,29 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 			        .append(location.getValue()).append("')\n");
 		}
 
-		if (this.useBourbon) {
+		this.appendRubyPatches(sassScript);
+
+		if (this.javaFunctions || this.sassFunctions.length > 0) {
+			this.buildFunctionsScript(sassScript);
+		}
+
+		if (this.classpathImports) {
+			this.buildClasspathImporterScript(sassScript);
+		}
+
+		if (this.lazyLoadLibraries) {
+			this.buildLazyLibraryScript(sassScript, imported);
+		}
+
+		if (this.useBourbon && this.lazyLoadLibraries
+		        && !imported.contains("bourbon")) {
+			log.info("No template imports Bourbon, skipping it.");
+		} else if (this.useBourbon) {
 			log.info("Running with Bourbon enabled.");
 			final String bDest = this.buildDirectory + "/bourbon";
-			this.extractBourbonResources(bDest);
+			try (Span span = this.getTraceRecorder().begin("extract Bourbon", "library")) {
+				this.extractBourbonResources(bDest);
+			}
 			// sassScript.append("require 'bourbon'\n");
 			sassScript.append("Sass::Plugin.add_template_location('")
                     .append(bDest)
@@ -398,6 +988,8 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		}
 
 		// set up sass compiler callback for reporting
+		sassScript
+		        .append("Sass::Plugin.on_compilation_starting {|template, css| $compiler_callback.compilationStarting(template, css) }\n");
 		sassScript
 		        .append("Sass::Plugin.on_compilation_error {|error, template, css| $compiler_callback.compilationError(error.message, template, css) }\n");
 		sassScript
@@ -413,7 +1005,7 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		if (log.isDebugEnabled()) {
 			sassScript.append("require 'pp'\n");
 			sassScript.append("pp Sass::Plugin.options\n");
-			if (this.useCompass) {
+			if (this.useCompass && !this.lazyLoadLibraries) {
 				sassScript.append("pp Compass.base_directory\n");
 				sassScript.append("pp Compass::Core.base_directory\n");
 				sassScript.append("pp Compass::configuration\n");
@@ -421,12 +1013,723 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		}
 	}
 
+	/**
+	 * Appends the patches of the Sass compiler for the configured features.
+	 * Several patches wrap the same Sass methods, the {@link RubyPatch}
+	 * constants set the order they are applied in.
+	 *
+	 * @param sassScript
+	 *            the sass script, after the options are merged
+	 * @throws MojoExecutionException
+	 *             if an output style is not valid or a patch cannot be read
+	 */
+	private void appendRubyPatches(final StringBuilder sassScript)
+	        throws MojoExecutionException {
+		final Set<RubyPatch> patches = EnumSet.noneOf(RubyPatch.class);
+		if (this.getTraceRecorder().isEnabled()) {
+			patches.add(RubyPatch.WRITE_TRACE);
+		}
+		if (this.indexLoadPaths) {
+			if (this.loadPathIndex == null) {
+				this.loadPathIndex = new LoadPathIndex();
+			}
+			patches.add(RubyPatch.LOAD_PATH_INDEX);
+		}
+		if (!this.outputStyles.isEmpty()) {
+			for (final OutputStyle outputStyle : this.outputStyles) {
+				outputStyle.validate();
+			}
+			patches.add(RubyPatch.OUTPUT_STYLES);
+		}
+		if (this.sourcemapMode == SourcemapMode.INLINE) {
+			patches.add(RubyPatch.INLINE_SOURCEMAP);
+		} else if (this.sourcemapMode == SourcemapMode.LAZY) {
+			patches.add(RubyPatch.LAZY_SOURCEMAP);
+		}
+		try {
+			RubyPatch.append(sassScript, patches);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not read the Sass compiler patches", e);
+		}
+	}
+
+	/**
+	 * Appends the requires and project configuration of Compass.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 */
+	private void appendCompassRequires(final StringBuilder sassScript) {
+		sassScript.append("require 'compass'\n");
+		sassScript.append("require 'compass/exec'\n");
+		sassScript.append("require 'compass/core'\n");
+		sassScript.append("require 'compass/import-once'\n");
+		if (compassConfigFile != null) {
+			sassScript.append("Compass.add_project_configuration '")
+			        .append(compassConfigFile.getAbsolutePath())
+			        .append("'\n");
+		} else {
+			sassScript.append("Compass.add_project_configuration \n");
+		}
+		if (this.javaFunctions && this.imagesDirectory == null) {
+			sassScript.append("$image_functions.setImagesDirectory(")
+			        .append("java.io.File.new(Compass.configuration.images_path)) ")
+			        .append("if $image_functions && Compass.configuration.images_path\n");
+		}
+	}
+
+	/**
+	 * Appends the report of the load time of a library, measured from the
+	 * Ruby variable {@code started}.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 * @param name
+	 *            the library name
+	 */
+	private void appendLibraryLoaded(final StringBuilder sassScript,
+	        final String name) {
+		sassScript.append("$compiler_callback.libraryLoaded('").append(name)
+		        .append("', ((Time.now - started) * 1000).round)\n");
+	}
+
+	/**
+	 * Appends the Ruby methods of the Java Sass functions to
+	 * {@code Sass::Script::Functions}, calling the {@link SassFunctions}
+	 * passed to the runtime as {@code $sass_functions}. Methods defined on
+	 * the module itself take precedence over the Compass helpers, which are
+	 * included from a module.
+	 *
+	 * @param sassScript
+	 *            the sass script
+	 * @throws MojoExecutionException
+	 *             when a function class cannot be loaded
+	 */
+	private void buildFunctionsScript(final StringBuilder sassScript)
+	        throws MojoExecutionException {
+		if (this.functions == null) {
+			final SassFunctions registry = new SassFunctions();
+			if (this.javaFunctions) {
+				File images = this.imagesDirectory;
+				if (images == null) {
+					images = new File(this.basedir, "src/main/webapp");
+				}
+				this.imageFunctions = new ImageFunctions(images);
+				registry.registerAll(this.imageFunctions.getFunctions());
+			}
+			for (final String className : this.sassFunctions) {
+				try {
+					registry.register(className);
+				} catch (ReflectiveOperationException | ClassCastException e) {
+					throw new MojoExecutionException("Could not create Sass function "
+					        + className, e);
+				}
+			}
+			this.functions = registry;
+		}
+
+		sassScript.append("module Sass::Script::Functions\n");
+		sassScript.append("  def java_sass_function(name, args)\n");
+		sassScript.append("    args = args.map {|arg| ")
+		        .append("arg.is_a?(Sass::Script::Value::String) ? arg.value : ")
+		        .append("(arg.nil? ? nil : arg.to_s) }\n");
+		sassScript.append("    value = $sass_functions.call(name, args.to_java(:string))\n");
+		sassScript.append("    if value.isNumber\n");
+		sassScript.append("      Sass::Script::Value::Number.new(value.getNumber, ")
+		        .append("value.getUnit.nil? ? [] : [value.getUnit])\n");
+		sassScript.append("    else\n");
+		sassScript.append("      Sass::Script::Value::String.new(value.getText, ")
+		        .append("value.isQuoted ? :string : :identifier)\n");
+		sassScript.append("    end\n");
+		sassScript.append("  rescue Java::JavaIo::IOException => e\n");
+		sassScript.append("    raise Sass::SyntaxError.new(e.message)\n");
+		sassScript.append("  end\n");
+		sassScript.append("  private :java_sass_function\n");
+		for (final SassFunction function : this.functions.getFunctions()) {
+			final String method = SassFunctions.getMethodName(function);
+			final String[] parameters = function.getParameters();
+			final StringBuilder signature = new StringBuilder();
+			final StringBuilder arguments = new StringBuilder();
+			for (int i = 0; i < parameters.length; i++) {
+				final String parameter = parameters[i].replace('-', '_');
+				if (i > 0) {
+					signature.append(", ");
+					arguments.append(", ");
+				}
+				signature.append(parameter);
+				if (i >= function.getRequiredParameters()) {
+					signature.append(" = nil");
+				}
+				arguments.append(parameter);
+			}
+			sassScript.append("  def ").append(method).append('(').append(signature)
+			        .append(")\n");
+			sassScript.append("    java_sass_function('").append(function.getName())
+			        .append("', [").append(arguments).append("])\n");
+			sassScript.append("  end\n");
+			for (int arity = function.getRequiredParameters(); arity <= parameters.length;
+			        arity++) {
+				sassScript.append("  declare :").append(method).append(", [");
+				for (int i = 0; i < arity; i++) {
+					if (i > 0) {
+						sassScript.append(", ");
+					}
+					sassScript.append(':').append(parameters[i].replace('-', '_'));
+				}
+				sassScript.append("]\n");
+			}
+		}
+		sassScript.append("end\n");
+	}
+
+	/**
+	 * Gets the load path index.
+	 *
+	 * @return the index, {@code null} unless {@code indexLoadPaths} is used
+	 *         and the basic script was built
+	 */
+	protected LoadPathIndex getLoadPathIndex() {
+		return this.loadPathIndex;
+	}
+
+	/**
+	 * Log how many filesystem probes the load path index saved, if
+	 * {@code indexLoadPaths} is used.
+	 */
+	protected void reportLoadPathIndex() {
+		if (this.loadPathIndex == null || this.loadPathIndex.getLookups() == 0) {
+			return;
+		}
+		this.getLog().info("Answered " + this.loadPathIndex.getLookups()
+		        + " import lookups from " + this.loadPathIndex.getListings()
+		        + " indexed directories, saving "
+		        + this.loadPathIndex.getProbesSaved() + " filesystem probes.");
+	}
+
+	/**
+	 * Appends an importer that resolves imports from the classpath, backed by
+	 * a {@link ClasspathImporter} that is passed to the runtime as
+	 * {@code $classpath_importer}. The importer is added to the end of the
+	 * load paths.
+	 *
+	 * @param sassScript
+	 *            the sass script, after the options are merged
+	 * @throws MojoExecutionException
+	 *             when the classpath cannot be indexed
+	 */
+	private void buildClasspathImporterScript(final StringBuilder sassScript)
+	        throws MojoExecutionException {
+		try {
+			this.classpathImporter = ClasspathImporter.get(this.classpathElements,
+			        Arrays.asList(this.classpathImportRoots));
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not index the classpath", e);
+		}
+		this.getLog().info("Resolving imports from " + this.classpathImporter.size()
+		        + " Sass files on the classpath.");
+
+		sassScript.append("class ClasspathImporter < Sass::Importers::Base\n");
+		sassScript.append("  def initialize(index)\n");
+		sassScript.append("    @index = index\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def find_relative(uri, base, options)\n");
+		sassScript.append("    engine(@index.resolveRelative(uri, base), options)\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def find(uri, options)\n");
+		sassScript.append("    engine(@index.resolve(uri), options)\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def mtime(uri, options)\n");
+		sassScript.append("    key = @index.resolve(uri)\n");
+		sassScript.append("    Time.at(@index.lastModified(key) / 1000.0) if key\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def key(uri, options)\n");
+		sassScript.append("    key = @index.resolve(uri) || uri\n");
+		sassScript.append("    ['classpath:' + File.dirname(key), File.basename(key)]\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def directories_to_watch\n");
+		sassScript.append("    []\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def watched_file?(file)\n");
+		sassScript.append("    false\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def to_s\n");
+		sassScript.append("    'classpath'\n");
+		sassScript.append("  end\n");
+		sassScript.append("  private\n");
+		sassScript.append("  def engine(key, options)\n");
+		sassScript.append("    return nil unless key\n");
+		sassScript.append("    options[:syntax] = @index.getSyntax(key).to_sym\n");
+		sassScript.append("    options[:filename] = '")
+		        .append(ClasspathImporter.PREFIX).append("' + key\n");
+		sassScript.append("    options[:importer] = self\n");
+		sassScript.append("    Sass::Engine.new(@index.read(key), options)\n");
+		sassScript.append("  end\n");
+		sassScript.append("end\n");
+		sassScript.append("Sass::Plugin.options[:load_paths] = ")
+		        .append("(Sass::Plugin.options[:load_paths] || []) + ")
+		        .append("[ClasspathImporter.new($classpath_importer)]\n");
+	}
+
+	/**
+	 * Appends an importer that loads Compass and the configured gems when a
+	 * template first imports them. The importer is added as the last load
+	 * path, so it is only asked for imports that no template location
+	 * resolves. Imports starting with {@code compass} load Compass, any
+	 * other unresolved import loads the gems.
+	 *
+	 * @param sassScript
+	 *            the sass script, after the options are merged
+	 * @param imported
+	 *            the root names of the imports the templates don't resolve
+	 */
+	private void buildLazyLibraryScript(final StringBuilder sassScript,
+	        final Set<String> imported) {
+		final Log log = this.getLog();
+		if (!this.useCompass && this.gems.length == 0) {
+			return;
+		}
+
+		final Set<String> other = new HashSet<>(imported);
+		other.remove("compass");
+		other.remove("bourbon");
+		if (this.useCompass && !imported.contains("compass")) {
+			log.info("No template imports Compass, it will not be loaded"
+			        + this.savedTime("compass") + ".");
+		}
+		if (this.gems.length > 0 && other.isEmpty()) {
+			log.info("No template imports any of the gems " + Arrays.toString(this.gems)
+			        + ", they will not be loaded" + this.savedTime("gems") + ".");
+		}
+
+		sassScript.append("class LazyLibraryImporter < Sass::Importers::Base\n");
+		sassScript.append("  def initialize(loaders)\n");
+		sassScript.append("    @loaders = loaders\n");
+		sassScript.append("    @importers = {}\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def find(uri, options)\n");
+		sassScript.append("    importers(uri).each do |importer|\n");
+		sassScript.append("      found = importer.find(uri, options)\n");
+		sassScript.append("      return found if found\n");
+		sassScript.append("    end\n");
+		sassScript.append("    nil\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def find_relative(uri, base, options)\n");
+		sassScript.append("    nil\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def mtime(uri, options)\n");
+		sassScript.append("    importers(uri).each do |importer|\n");
+		sassScript.append("      found = importer.mtime(uri, options)\n");
+		sassScript.append("      return found if found\n");
+		sassScript.append("    end\n");
+		sassScript.append("    nil\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def key(uri, options)\n");
+		sassScript.append("    [self.class.name, uri]\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def to_s\n");
+		sassScript.append("    'lazily loaded libraries'\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def directories_to_watch\n");
+		sassScript.append("    []\n");
+		sassScript.append("  end\n");
+		sassScript.append("  def watched_file?(filename)\n");
+		sassScript.append("    false\n");
+		sassScript.append("  end\n");
+		sassScript.append("  private\n");
+		sassScript.append("  def importers(uri)\n");
+		sassScript.append("    name = uri.split('/').first\n");
+		sassScript.append("    name = 'gems' unless @loaders.key?(name) || @importers.key?(name)\n");
+		sassScript.append("    loader = @loaders.delete(name)\n");
+		sassScript.append("    if loader\n");
+		sassScript.append("      started = Time.now\n");
+		sassScript.append("      @importers[name] = loader.call.map {|path| path.is_a?(Sass::Importers::Base) ? path : Sass::Importers::Filesystem.new(path.to_s) }\n");
+		sassScript.append("      $compiler_callback.libraryLoaded(name, ((Time.now - started) * 1000).round)\n");
+		sassScript.append("    end\n");
+		sassScript.append("    @importers[name] || []\n");
+		sassScript.append("  end\n");
+		sassScript.append("end\n");
+
+		sassScript.append("$lazy_libraries = LazyLibraryImporter.new({\n");
+		if (this.useCompass) {
+			sassScript.append("  'compass' => lambda {\n");
+			this.appendCompassRequires(sassScript);
+			sassScript.append("    Compass.configuration.sass_load_paths\n");
+			sassScript.append("  },\n");
+		}
+		if (this.gems.length > 0) {
+			// gems register their stylesheets with Sass or with Compass
+			sassScript.append("  'gems' => lambda {\n");
+			sassScript.append("    paths = Sass.load_paths.dup\n");
+			sassScript.append("    frameworks = defined?(Compass::Frameworks) ? Compass::Frameworks::ALL.dup : []\n");
+			for (final String gem : this.gems) {
+				sassScript.append("    require '").append(gem).append("'\n");
+			}
+			sassScript.append("    added = Sass.load_paths - paths\n");
+			sassScript.append("    added += (Compass::Frameworks::ALL - frameworks).map {|f| f.stylesheets_directory } if defined?(Compass::Frameworks)\n");
+			sassScript.append("    added\n");
+			sassScript.append("  },\n");
+		}
+		sassScript.append("})\n");
+		sassScript.append("Sass::Plugin.options[:load_paths] = ")
+		        .append("(Sass::Plugin.options[:load_paths] || []) + [$lazy_libraries]\n");
+	}
+
+	/**
+	 * Gets the root names of the imports of all entry points that don't
+	 * resolve to a file in the template locations, eg. {@code compass} for
+	 * {@code @import "compass/css3"}.
+	 *
+	 * @return the root names
+	 * @throws MojoExecutionException
+	 *             when the templates cannot be read
+	 */
+	private Set<String> getLibraryImports() throws MojoExecutionException {
+		final ImportGraph importGraph = this.createImportGraph();
+		final Set<String> roots = new TreeSet<>();
+		for (final EntryPoint entryPoint : this.getEntryPoints()) {
+			try {
+				for (final String uri : importGraph.dependencies(
+				        new File(entryPoint.getTemplate())).getUnresolved()) {
+					roots.add(uri.split("/")[0]);
+				}
+			} catch (IOException e) {
+				throw new MojoExecutionException("Could not scan the imports of "
+				        + entryPoint.getTemplate(), e);
+			}
+		}
+		this.getLog().debug("Library imports of the templates: " + roots);
+		return roots;
+	}
+
+	/**
+	 * Creates an import graph with the template locations and the literal
+	 * paths of the {@code load_paths} Sass option as load paths.
+	 *
+	 * @return the import graph
+	 */
+	protected ImportGraph createImportGraph() {
+		final List<File> loadPaths = new ArrayList<>();
+		for (final Entry<String, String> location : this.collectTemplateLocations()) {
+			loadPaths.add(new File(location.getKey()));
+		}
+		final String option = this.sassOptions.get("load_paths");
+		if (option != null) {
+			final Matcher matcher = QUOTED.matcher(option);
+			while (matcher.find()) {
+				String path = matcher.group(1);
+				if (path == null) {
+					path = matcher.group(2);
+				}
+				loadPaths.add(new File(path));
+			}
+		}
+		return new ImportGraph(loadPaths);
+	}
+
+	/**
+	 * Computes the configuration fingerprint of each entry point. It covers
+	 * the Sass options, the template locations, the Compass configuration and
+	 * the gems, and the plugin and installed gem versions. Bourbon only
+	 * counts for the entry points that import it; Compass and the gems can
+	 * add Sass functions and count for all.
+	 *
+	 * @param entryPoints
+	 *            the entry points
+	 * @param importGraph
+	 *            the import graph to find the imports of the entry points
+	 * @return the fingerprint by entry point
+	 * @throws MojoExecutionException
+	 *             when a template or the Compass configuration cannot be read
+	 */
+	protected Map<EntryPoint, String> getConfigurationFingerprints(
+	        final List<EntryPoint> entryPoints, final ImportGraph importGraph)
+	        throws MojoExecutionException {
+		final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint();
+		fingerprint.add("pluginVersion", this.pluginVersion);
+		for (final Entry<String, String> option : this.sassOptions.entrySet()) {
+			// buildBasicSassScript adds the Compass load paths to the options
+			if (!DERIVED_OPTIONS.contains(option.getKey())
+			        && !COMPASS_LOAD_PATHS.equals(option.getValue())) {
+				fingerprint.add("sassOptions." + option.getKey(), option.getValue());
+			}
+		}
+		fingerprint.add("templateLocations", this.collectTemplateLocations());
+		fingerprint.add("useCompass", this.useCompass);
+		fingerprint.add("gems", Arrays.toString(this.gems));
+		fingerprint.add("gemPaths", Arrays.toString(this.gemPaths));
+		fingerprint.add("sassFunctions", Arrays.toString(this.sassFunctions));
+		fingerprint.add("javaFunctions", this.javaFunctions);
+		if (!this.outputStyles.isEmpty()) {
+			fingerprint.add("outputStyles", this.outputStyles.toString());
+		}
+		if (this.sourcemapMode != null) {
+			fingerprint.add("sourcemapMode", this.sourcemapMode.name());
+		}
+		if (this.prune) {
+			fingerprint.add("pruneSafelist", Arrays.toString(this.pruneSafelist));
+			fingerprint.add("markup", this.getMarkupIndex().digest());
+		}
+		if (this.javaFunctions) {
+			fingerprint.add("imagesDirectory", this.imagesDirectory);
+		}
+		for (final String gemPath : this.gemPaths) {
+			final String[] installed = new File(gemPath, "gems").list();
+			if (installed != null) {
+				Arrays.sort(installed);
+				fingerprint.add("installedGems." + gemPath, Arrays.toString(installed));
+			}
+		}
+		try {
+			if (this.classpathImports) {
+				fingerprint.add("classpathImportRoots",
+				        Arrays.toString(this.classpathImportRoots));
+				for (final String element : this.classpathElements) {
+					fingerprint.add("classpath." + element, ClasspathImporter.stamp(element));
+				}
+			}
+			if (this.useCompass) {
+				fingerprint.addFile("compassConfigFile", this.compassConfigFile);
+			}
+			final String withoutBourbon = fingerprint.digest();
+			final String withBourbon = fingerprint.copy()
+			        .add("useBourbon", this.useBourbon).digest();
+
+			final Map<EntryPoint, String> result = new HashMap<>();
+			for (final EntryPoint entryPoint : entryPoints) {
+				final Set<String> imports = importGraph.dependencies(
+				        new File(entryPoint.getTemplate())).getUnresolved();
+				boolean bourbon = false;
+				for (final String uri : imports) {
+					bourbon |= uri.split("/")[0].equals("bourbon");
+				}
+				if (bourbon) {
+					result.put(entryPoint, withBourbon);
+				} else {
+					result.put(entryPoint, withoutBourbon);
+				}
+			}
+			return result;
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+			        "Could not compute the configuration fingerprint", e);
+		}
+	}
+
+	/**
+	 * Create a listener that records the configuration fingerprint and the
+	 * imported partials of each CSS file that compiled successfully.
+	 *
+	 * @param fingerprints the current configuration fingerprints
+	 * @param fingerprintStore the store to record them in
+	 * @param importGraph the import graph to look up the partials in
+	 * @return the listener
+	 */
+	protected CompilerListener createFingerprintListener(
+	        final Map<EntryPoint, String> fingerprints,
+	        final FingerprintStore fingerprintStore, final ImportGraph importGraph) {
+		final Map<String, String> byCss = new HashMap<>();
+		for (final Map.Entry<EntryPoint, String> entry : fingerprints.entrySet()) {
+			byCss.put(entry.getKey().getCss(), entry.getValue());
+		}
+		return new CompilerListener() {
+			@Override
+			public void templateCompiled(final String template, final String css,
+			        final long startNanos, final long durationNanos,
+			        final boolean success) {
+				final String fingerprint = byCss.get(css);
+				if (success && fingerprint != null) {
+					fingerprintStore.put(css, fingerprint);
+					try {
+						fingerprintStore.putImports(css,
+						        importGraph.dependencies(new File(template)).getFiles());
+					} catch (IOException e) {
+						AbstractSassMojo.this.getLog().debug("Imports of " + template
+						        + " are not recorded.", e);
+					}
+				}
+			}
+		};
+	}
+
+	/**
+	 * Describe the time saved by not loading a library, based on the load
+	 * time recorded by an earlier build.
+	 *
+	 * @param name
+	 *            the library name
+	 * @return the description, empty if there is no history
+	 */
+	private String savedTime(final String name) {
+		final Long millis = new CompileStatistics(new File(this.buildDirectory,
+		        CompileStatistics.FILE_NAME), this.getLog()).getLibraryDuration(name);
+		if (millis == null) {
+			return "";
+		}
+		return ", saving about " + millis + " ms";
+	}
+
+	/**
+	 * Appends the statements that compile exactly the given entry points,
+	 * instead of everything in the template locations. The template
+	 * locations set up by {@link #buildBasicSassScript(StringBuilder)} are
+	 * turned into load paths so imports keep resolving. The entry points are
+	 * kept in the Ruby variable {@code $entry_points}.
+	 *
+	 * @param sassScript
+	 *            the sass script, containing the basic sass script
+	 * @param entryPoints
+	 *            the entry points to compile
+	 */
+	protected void buildEntryPointScript(final StringBuilder sassScript,
+	        final List<EntryPoint> entryPoints) {
+		this.appendEntryPointLoadPaths(sassScript);
+		sassScript.append("$entry_points = [\n");
+		for (final EntryPoint entryPoint : entryPoints) {
+			sassScript.append("    ['").append(entryPoint.getTemplate())
+			        .append("', '").append(entryPoint.getCss()).append("'],\n");
+		}
+		sassScript.append("]\n");
+		sassScript.append("Sass::Plugin.update_stylesheets($entry_points)\n");
+	}
+
+	/**
+	 * Appends the statements that compile each of the given entry points
+	 * under {@code JRuby::Profiler}, writing a flat and a graph profile per
+	 * entry point. The script must run in a runtime with the profiler API
+	 * enabled, see {@link #runSassScript(String, CompilerCallback, boolean)}.
+	 * The Sass cache is turned off so parsing is part of the profile.
+	 *
+	 * @param sassScript
+	 *            the sass script, containing the basic sass script
+	 * @param entryPoints
+	 *            the entry points to profile
+	 * @param profileDirectory
+	 *            directory for the profiles
+	 * @return the profile file name, without extension, by entry point
+	 */
+	protected Map<EntryPoint, String> buildProfileScript(final StringBuilder sassScript,
+	        final List<EntryPoint> entryPoints, final File profileDirectory) {
+		final Map<EntryPoint, String> names = new LinkedHashMap<>();
+		final Set<String> used = new HashSet<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			final String base = FilenameUtils.getBaseName(entryPoint.getTemplate());
+			String name = base;
+			for (int i = 2; !used.add(name); i++) {
+				name = base + "-" + i;
+			}
+			names.put(entryPoint, name);
+		}
+
+		this.appendEntryPointLoadPaths(sassScript);
+		sassScript.append("Sass::Plugin.options[:cache] = false\n");
+		sassScript.append("require 'jruby/profiler'\n");
+		sassScript.append("$profiled = [\n");
+		for (final Entry<EntryPoint, String> entry : names.entrySet()) {
+			sassScript.append("    ['").append(entry.getKey().getTemplate())
+			        .append("', '").append(entry.getKey().getCss()).append("', '")
+			        .append(FilenameUtils.separatorsToUnix(
+			                new File(profileDirectory, entry.getValue()).getPath()))
+			        .append("'],\n");
+		}
+		sassScript.append("]\n");
+		sassScript.append("$profiled.each do |template, css, profile|\n");
+		sassScript.append("  profile_data = JRuby::Profiler.profile do\n");
+		sassScript.append("    Sass::Plugin.update_stylesheets([[template, css]])\n");
+		sassScript.append("  end\n");
+		sassScript.append("  { 'flat' => JRuby::Profiler::FlatProfilePrinter,\n");
+		sassScript.append("    'graph' => JRuby::Profiler::GraphProfilePrinter }.each do |kind, printer|\n");
+		sassScript.append("    out = java.io.PrintStream.new(")
+		        .append("java.io.FileOutputStream.new(\"#{profile}.#{kind}.txt\"))\n");
+		sassScript.append("    begin\n");
+		sassScript.append("      printer.new(profile_data).printProfile(out)\n");
+		sassScript.append("    ensure\n");
+		sassScript.append("      out.close\n");
+		sassScript.append("    end\n");
+		sassScript.append("  end\n");
+		sassScript.append("end\n");
+		return names;
+	}
+
+	/**
+	 * Appends the statements that turn the template locations into load
+	 * paths, so imports keep resolving when the entry points are passed
+	 * explicitly.
+	 *
+	 * @param sassScript
+	 *            the sass script, containing the basic sass script
+	 */
+	private void appendEntryPointLoadPaths(final StringBuilder sassScript) {
+		sassScript.append("Sass::Plugin.options[:load_paths] = ")
+		        .append("Sass::Plugin.template_location_array.map {|l| l.first } + ")
+		        .append("(Sass::Plugin.options[:load_paths] || [])\n");
+		sassScript.append("Sass::Plugin.options[:template_location] = []\n");
+	}
+
+	/**
+	 * Gets the entry points selected by {@code profileTemplates}.
+	 *
+	 * @param entryPoints
+	 *            all entry points
+	 * @return the entry points to profile
+	 */
+	protected List<EntryPoint> getProfiledEntryPoints(final List<EntryPoint> entryPoints) {
+		final List<EntryPoint> profiled = new ArrayList<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			// patterns are relative, match them against the path without root
+			String template = FilenameUtils.separatorsToUnix(entryPoint.getTemplate());
+			template = template.substring(FilenameUtils.getPrefixLength(template));
+			for (final String pattern : this.profileTemplates) {
+				if (SelectorUtils.matchPath(pattern.trim(), template, "/", true)) {
+					profiled.add(entryPoint);
+					break;
+				}
+			}
+		}
+		return profiled;
+	}
+
+	/**
+	 * Gets the entry points, the Sass templates that compile to a CSS file,
+	 * of all template locations. Nested template locations are not walked
+	 * separately.
+	 *
+	 * @return the entry points
+	 * @throws MojoExecutionException
+	 *             when the template locations cannot be read
+	 */
+	protected List<EntryPoint> getEntryPoints() throws MojoExecutionException {
+		final List<Entry<String, String>> templateLocations = this
+		        .collectTemplateLocations();
+		try (Span span = this.getTraceRecorder().begin("scan entry points", "scan")) {
+			return EntryPoint.scan(templateLocations);
+		} catch (IOException e) {
+			throw new MojoExecutionException(
+			        "Could not scan the template locations", e);
+		}
+	}
+
 	/**
 	 * Gets the template locations.
 	 *
 	 * @return the template locations
 	 */
 	private Iterator<Entry<String, String>> getTemplateLocations() {
+		final List<Entry<String, String>> locations = this
+		        .collectTemplateLocations();
+		for (final Entry<String, String> entry : locations) {
+			this.getLog().info("Queueing Sass template for compile: "
+			        + entry.getKey() + " => " + entry.getValue());
+		}
+		return locations.iterator();
+	}
+
+	/**
+	 * Collects the template locations of the resources, or of the short
+	 * configuration when there are no resources.
+	 *
+	 * @return the template locations and their CSS locations
+	 */
+	private List<Entry<String, String>> collectTemplateLocations() {
 		final Log log = this.getLog();
 		List<Resource> resList = this.resources;
 
@@ -461,15 +1764,12 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		}
 
 		final List<Entry<String, String>> locations = new ArrayList<Entry<String, String>>();
-		for (final Resource source : resList) {
-			for (final Entry<String, String> entry : source
-			        .getDirectoriesAndDestinations(log).entrySet()) {
-				log.info("Queueing Sass template for compile: "
-				        + entry.getKey() + " => " + entry.getValue());
-				locations.add(entry);
+		try (Span span = this.getTraceRecorder().begin("scan template locations", "scan")) {
+			for (final Resource source : resList) {
+				locations.addAll(source.getDirectoriesAndDestinations(log).entrySet());
 			}
 		}
-		return locations.iterator();
+		return locations;
 	}
 
 	/**
@@ -530,6 +1830,88 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		return this.resources;
 	}
 
+	/**
+	 * Gets the output root directories, the destinations of the resources
+	 * or of the short configuration.
+	 *
+	 * @return the destination directories
+	 */
+	protected List<File> getDestinations() {
+		final List<File> destinations = new ArrayList<>();
+		if (this.resources.isEmpty()) {
+			destinations.add(this.destination);
+		} else {
+			for (final Resource resource : this.resources) {
+				destinations.add(resource.destination);
+			}
+		}
+		return destinations;
+	}
+
+	/**
+	 * Gets the words of the markup to prune against, reading the markup the
+	 * first time.
+	 *
+	 * @return the index, {@code null} if {@code prune} is not used
+	 * @throws MojoExecutionException when the markup cannot be read
+	 */
+	protected synchronized MarkupIndex getMarkupIndex() throws MojoExecutionException {
+		if (!this.prune || this.markupIndex != null) {
+			return this.markupIndex;
+		}
+		List<File> directories = Collections.singletonList(
+		        new File(this.basedir, "src/main/webapp"));
+		if (this.pruneMarkupDirectories != null && this.pruneMarkupDirectories.length > 0) {
+			directories = Arrays.asList(this.pruneMarkupDirectories);
+		}
+		try (Span span = this.getTraceRecorder().begin("index markup", "scan")) {
+			final long started = System.nanoTime();
+			this.markupIndex = MarkupIndex.scan(directories,
+			        this.pruneMarkupIncludes, Runtime.getRuntime().availableProcessors());
+			this.getLog().info("Indexed " + this.markupIndex.getFiles() + " markup files in "
+			        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms.");
+			return this.markupIndex;
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not read the markup to prune against", e);
+		}
+	}
+
+	/**
+	 * Gets the names to keep when pruning.
+	 *
+	 * @return the safelist patterns
+	 * @throws MojoExecutionException when a pattern is not valid
+	 */
+	protected List<Pattern> getPruneSafelist() throws MojoExecutionException {
+		final List<Pattern> safelist = new ArrayList<>();
+		try {
+			for (final String pattern : this.pruneSafelist) {
+				safelist.add(Pattern.compile(pattern));
+			}
+		} catch (PatternSyntaxException e) {
+			throw new MojoExecutionException("Invalid pruneSafelist pattern", e);
+		}
+		return safelist;
+	}
+
+	/**
+	 * Gets the additional output styles.
+	 *
+	 * @return the output styles
+	 */
+	protected List<OutputStyle> getOutputStyles() {
+		return this.outputStyles;
+	}
+
+	/**
+	 * Gets the source map mode.
+	 *
+	 * @return the source map mode, or {@code null} if the Sass options decide
+	 */
+	protected SourcemapMode getSourcemapMode() {
+		return this.sourcemapMode;
+	}
+
 	/**
 	 * Compass enabled accessor.
 	 * @return the useCompass
@@ -541,6 +1923,55 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 		return this.useCompass;
 	}
 
+	/**
+	 * Gets the trace recorder of this execution, enabled when {@code trace}
+	 * is set.
+	 *
+	 * @return the trace recorder
+	 */
+	protected synchronized TraceRecorder getTraceRecorder() {
+		if (this.traceRecorder == null) {
+			this.traceRecorder = new TraceRecorder(this.trace);
+		}
+		return this.traceRecorder;
+	}
+
+	/**
+	 * Gets the Flight Recorder events, enabled when
+	 * {@code flightRecorderEvents} is set and the Java runtime supports it.
+	 *
+	 * @return the Flight Recorder events
+	 */
+	protected FlightRecorderEvents getFlightRecorderEvents() {
+		return FlightRecorderEvents.create(this.flightRecorderEvents, this.getLog());
+	}
+
+	/**
+	 * Write the trace of this execution, if enabled, and start a new one.
+	 */
+	protected synchronized void writeTrace() {
+		final TraceRecorder recorder = this.getTraceRecorder();
+		this.traceRecorder = null;
+		if (!recorder.isEnabled()) {
+			return;
+		}
+		final File traceFile = new File(this.buildDirectory, TraceRecorder.FILE_NAME);
+		try {
+			recorder.write(traceFile);
+			this.getLog().info("Wrote " + recorder.size() + " trace events to " + traceFile);
+		} catch (IOException e) {
+			this.getLog().warn("Could not write trace " + traceFile + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Gems accessor.
+	 * @return the gems to load
+	 */
+	protected String[] getGems() {
+		return this.gems;
+	}
+
 	/**
 	 * skip accessor.
 	 * @return whether to skip execution or not
@@ -556,4 +1987,12 @@ public abstract class AbstractSassMojo extends AbstractMojo {
 	protected File getSassSourceDirectory() {
 		return this.sassSourceDirectory;
 	}
+
+	/**
+	 * Compiler threads accessor.
+	 * @return the number of compiler threads, at least 1
+	 */
+	protected int getCompilerThreads() {
+		return Math.max(1, this.compilerThreads);
+	}
 }
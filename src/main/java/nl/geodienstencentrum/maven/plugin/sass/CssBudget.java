@@ -0,0 +1,178 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import nl.geodienstencentrum.maven.plugin.sass.compiler.StylesheetStats;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Limits on the weight of the stylesheets matching a pattern. Sizes are
+ * bytes, optionally with a {@code kB} or {@code MB} unit of 1024 and
+ * 1024 * 1024 bytes, eg. {@code 200kB}.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssBudget {
+
+	/** a size with an optional unit. */
+	private static final Pattern SIZE = Pattern.compile("(\\d+)\\s*(b|k|kb|m|mb)?");
+
+	/**
+	 * The stylesheets the budget applies to, an Ant style pattern relative
+	 * to the CSS destination, eg. <code>themes/**&#47;*.css</code>.
+	 */
+	protected String files = "**/*.css";
+
+	/** The maximum size. */
+	protected String maxSize;
+
+	/** The maximum gzipped size. */
+	protected String maxGzipSize;
+
+	/** The maximum number of style rules. */
+	protected Integer maxRules;
+
+	/** The maximum number of selectors. */
+	protected Integer maxSelectors;
+
+	/** The maximum nesting depth, 1 allows no rules in at-rules. */
+	protected Integer maxDepth;
+
+	/**
+	 * Create a budget, for the plugin configuration.
+	 */
+	public CssBudget() {
+		// fields are set by the plugin configuration
+	}
+
+	/**
+	 * Create a budget for the sizes.
+	 *
+	 * @param files
+	 *            the pattern of the stylesheets
+	 * @param maxSize
+	 *            the maximum size or {@code null}
+	 * @param maxGzipSize
+	 *            the maximum gzipped size or {@code null}
+	 */
+	public CssBudget(final String files, final String maxSize, final String maxGzipSize) {
+		this.files = files;
+		this.maxSize = maxSize;
+		this.maxGzipSize = maxGzipSize;
+	}
+
+	/**
+	 * Checks the configuration.
+	 *
+	 * @throws MojoExecutionException
+	 *             if a size is not valid
+	 */
+	public void validate() throws MojoExecutionException {
+		parseSize(this.maxSize);
+		parseSize(this.maxGzipSize);
+	}
+
+	/**
+	 * Whether the budget applies to a stylesheet.
+	 *
+	 * @param path
+	 *            the path of the stylesheet relative to its destination,
+	 *            using {@code /}
+	 * @return {@code true} if the path matches the pattern
+	 */
+	public boolean matches(final String path) {
+		return SelectorUtils.matchPath(this.files, path, "/", true);
+	}
+
+	/**
+	 * Check a stylesheet against the budget.
+	 *
+	 * @param stats
+	 *            the statistics of the stylesheet
+	 * @return a description of each exceeded limit, empty if the stylesheet
+	 *         is within budget
+	 * @throws MojoExecutionException
+	 *             if a size is not valid
+	 */
+	public List<String> check(final StylesheetStats stats) throws MojoExecutionException {
+		final List<String> exceeded = new ArrayList<>();
+		exceed(exceeded, stats, "size", stats.getSize(), parseSize(this.maxSize));
+		exceed(exceeded, stats, "gzip size", stats.getGzipSize(), parseSize(this.maxGzipSize));
+		exceed(exceeded, stats, "rules", stats.getRules(), this.maxRules);
+		exceed(exceeded, stats, "selectors", stats.getSelectors(), this.maxSelectors);
+		exceed(exceeded, stats, "nesting depth", stats.getMaxDepth(), this.maxDepth);
+		return exceeded;
+	}
+
+	/**
+	 * Add a description if a value exceeds its limit.
+	 *
+	 * @param exceeded
+	 *            the descriptions
+	 * @param stats
+	 *            the statistics of the stylesheet
+	 * @param name
+	 *            the name of the value
+	 * @param value
+	 *            the value
+	 * @param limit
+	 *            the limit or {@code null} if there is none
+	 */
+	private void exceed(final List<String> exceeded, final StylesheetStats stats,
+	        final String name, final long value, final Number limit) {
+		if (limit != null && value > limit.longValue()) {
+			exceeded.add(stats.getPath() + ": " + name + " " + value
+			        + " exceeds the budget of " + limit + " (" + this.files + ")");
+		}
+	}
+
+	/**
+	 * Parse a size.
+	 *
+	 * @param size
+	 *            the size, eg. {@code 200kB}, or {@code null}
+	 * @return the number of bytes or {@code null}
+	 * @throws MojoExecutionException
+	 *             if the size is not valid
+	 */
+	static Long parseSize(final String size) throws MojoExecutionException {
+		if (size == null) {
+			return null;
+		}
+		final Matcher matcher = SIZE.matcher(size.trim().toLowerCase(Locale.ROOT));
+		if (!matcher.matches()) {
+			throw new MojoExecutionException("Invalid CSS budget size '" + size
+			        + "', expected eg. 4096, 200kB or 1MB.");
+		}
+		long bytes = Long.parseLong(matcher.group(1));
+		final String unit = matcher.group(2);
+		if (unit != null && unit.startsWith("k")) {
+			bytes *= 1024;
+		} else if (unit != null && unit.startsWith("m")) {
+			bytes *= 1024 * 1024;
+		}
+		return bytes;
+	}
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * A group of compiled stylesheets concatenated into one bundle, so a page
+ * loads one stylesheet instead of several.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssBundle {
+
+	/** The path of the bundle relative to its destination, eg. {@code portal.css}. */
+	protected String name;
+
+	/**
+	 * The stylesheets of the bundle, in order: paths or Ant style patterns
+	 * relative to the CSS destination, eg. {@code theme/base.css} and
+	 * <code>theme/**&#47;*.css</code>. The stylesheets matching a pattern
+	 * are added by path; a stylesheet is only added once.
+	 */
+	protected String[] files;
+
+	/** Where to write the bundle, defaults to the first CSS destination. */
+	protected File destination;
+
+	/**
+	 * Create a bundle, for the plugin configuration.
+	 */
+	public CssBundle() {
+		// fields are set by the plugin configuration
+	}
+
+	/**
+	 * Create a bundle.
+	 *
+	 * @param name
+	 *            the path of the bundle
+	 * @param files
+	 *            the paths or patterns of the stylesheets
+	 * @param destination
+	 *            the destination, or {@code null} for the first CSS
+	 *            destination
+	 */
+	public CssBundle(final String name, final String[] files, final File destination) {
+		this.name = name;
+		this.files = files;
+		this.destination = destination;
+	}
+
+	/**
+	 * Checks the configuration.
+	 *
+	 * @throws MojoExecutionException
+	 *             if the name or the files are missing
+	 */
+	public void validate() throws MojoExecutionException {
+		if (this.name == null || this.name.trim().isEmpty()) {
+			throw new MojoExecutionException("A CSS bundle needs a name, eg. portal.css.");
+		}
+		if (this.files == null || this.files.length == 0) {
+			throw new MojoExecutionException("CSS bundle " + this.name
+			        + " needs the files to bundle.");
+		}
+	}
+
+	/**
+	 * Gets the bundle file.
+	 *
+	 * @param destinations
+	 *            the CSS destinations
+	 * @return the bundle
+	 */
+	public File getTarget(final List<File> destinations) {
+		final File root = this.destination != null ? this.destination : destinations.get(0);
+		return new File(root, this.name);
+	}
+
+	/**
+	 * Gets the stylesheets of the bundle.
+	 *
+	 * @param outputs
+	 *            the compiled stylesheets by their path relative to the CSS
+	 *            destination, using {@code /}, sorted
+	 * @return the stylesheets in bundle order
+	 */
+	public List<File> getMembers(final Map<String, File> outputs) {
+		final Set<File> members = new LinkedHashSet<>();
+		for (final String pattern : this.files) {
+			for (final Map.Entry<String, File> output : outputs.entrySet()) {
+				if (SelectorUtils.matchPath(pattern.trim(), output.getKey(), "/", true)) {
+					members.add(output.getValue());
+				}
+			}
+		}
+		return new ArrayList<>(members);
+	}
+
+	/**
+	 * Gets the destination.
+	 *
+	 * @return the destination, or {@code null} for the first CSS destination
+	 */
+	public File getDestination() {
+		return this.destination;
+	}
+
+	@Override
+	public String toString() {
+		return this.name + ":" + Arrays.toString(this.files);
+	}
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Hex encoded digests, used for fingerprints, cache keys and entity tags.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class Digests {
+
+	/** the hex digits. */
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	/**
+	 * Utility class.
+	 */
+	private Digests() {
+	}
+
+	/**
+	 * Create a SHA-1 digest.
+	 *
+	 * @return a new digest
+	 */
+	public static MessageDigest sha1() {
+		return create("SHA-1");
+	}
+
+	/**
+	 * Create a SHA-256 digest.
+	 *
+	 * @return a new digest
+	 */
+	public static MessageDigest sha256() {
+		return create("SHA-256");
+	}
+
+	/**
+	 * Hash bytes with SHA-1.
+	 *
+	 * @param bytes the bytes
+	 * @return the lower case hex encoded hash
+	 */
+	public static String sha1Hex(final byte[] bytes) {
+		return hex(sha1().digest(bytes));
+	}
+
+	/**
+	 * Hash bytes with SHA-256.
+	 *
+	 * @param bytes the bytes
+	 * @return the lower case hex encoded hash
+	 */
+	public static String sha256Hex(final byte[] bytes) {
+		return hex(sha256().digest(bytes));
+	}
+
+	/**
+	 * Hex encode bytes.
+	 *
+	 * @param bytes the bytes, eg. a digest
+	 * @return lower case hex
+	 */
+	public static String hex(final byte[] bytes) {
+		final char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Create a digest.
+	 *
+	 * @param algorithm the algorithm
+	 * @return a new digest
+	 */
+	private static MessageDigest create(final String algorithm) {
+		try {
+			return MessageDigest.getInstance(algorithm);
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM is required to support SHA-1 and SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+/**
+ * Conditional requests on entity tags, used by {@code serve} and the
+ * servlet filter to answer {@code 304 Not Modified}.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class EntityTags {
+
+	/** the prefix of a weak entity tag. */
+	private static final String WEAK = "W/";
+
+	/**
+	 * Utility class.
+	 */
+	private EntityTags() {
+	}
+
+	/**
+	 * Check an {@code If-None-Match} header against the entity tag of the
+	 * current response, using the weak comparison: the header may list
+	 * several tags, weak tags match their strong equivalent, eg. after a
+	 * proxy or gzip filter made them weak, and {@code *} matches any tag.
+	 *
+	 * @param ifNoneMatch the header, or {@code null}
+	 * @param etag the quoted entity tag of the response
+	 * @return {@code true} if the client has the current response
+	 */
+	public static boolean matches(final String ifNoneMatch, final String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		final String current = opaque(etag);
+		for (final String tag : ifNoneMatch.split(",")) {
+			final String trimmed = tag.trim();
+			if ("*".equals(trimmed) || opaque(trimmed).equals(current)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get an entity tag without weak prefix.
+	 *
+	 * @param tag the entity tag
+	 * @return the quoted tag
+	 */
+	private static String opaque(final String tag) {
+		return tag.startsWith(WEAK) ? tag.substring(WEAK.length()) : tag;
+	}
+}
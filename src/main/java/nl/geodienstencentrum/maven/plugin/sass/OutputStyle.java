@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+
+/**
+ * An additional output style, rendered from the same compiled stylesheet as
+ * the regular CSS, eg. a compressed {@code .min.css} next to the expanded
+ * CSS.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class OutputStyle {
+
+	/** the output styles Sass can render. */
+	private static final List<String> STYLES = Arrays.asList("nested", "expanded",
+	        "compact", "compressed");
+
+	/** The Sass output style: nested, expanded, compact or compressed. */
+	protected String style;
+
+	/**
+	 * Replaces the {@code .css} extension of the stylesheet, defaults to
+	 * {@code .min.css} for the compressed style and {@code .<style>.css}
+	 * for the others.
+	 */
+	protected String suffix;
+
+	/**
+	 * Where to put the stylesheets of this style, keeping their path
+	 * relative to the CSS destination. Defaults to next to the regular CSS.
+	 */
+	protected File destination;
+
+	/**
+	 * Create an output style, for the plugin configuration.
+	 */
+	public OutputStyle() {
+		// fields are set by the plugin configuration
+	}
+
+	/**
+	 * Create an output style.
+	 *
+	 * @param style
+	 *            the Sass output style
+	 * @param suffix
+	 *            the suffix, or {@code null} for the default
+	 * @param destination
+	 *            the destination, or {@code null} to write next to the CSS
+	 */
+	public OutputStyle(final String style, final String suffix, final File destination) {
+		this.style = style;
+		this.suffix = suffix;
+		this.destination = destination;
+	}
+
+	/**
+	 * Gets the Sass output style.
+	 *
+	 * @return the style
+	 */
+	public String getStyle() {
+		return this.style;
+	}
+
+	/**
+	 * Gets the suffix replacing the {@code .css} extension.
+	 *
+	 * @return the configured or default suffix
+	 */
+	public String getSuffix() {
+		if (this.suffix != null) {
+			return this.suffix;
+		}
+		if ("compressed".equals(this.style)) {
+			return ".min.css";
+		}
+		return "." + this.style + ".css";
+	}
+
+	/**
+	 * Gets the destination.
+	 *
+	 * @return the destination, {@code null} if the stylesheets are written
+	 *         next to the CSS
+	 */
+	public File getDestination() {
+		return this.destination;
+	}
+
+	/**
+	 * Checks the configuration.
+	 *
+	 * @throws MojoExecutionException
+	 *             if the style is unknown or the stylesheets would overwrite
+	 *             the regular CSS
+	 */
+	public void validate() throws MojoExecutionException {
+		if (!STYLES.contains(this.style)) {
+			throw new MojoExecutionException("Unknown output style '" + this.style
+			        + "', expected one of " + STYLES);
+		}
+		if (this.destination == null && ".css".equals(this.getSuffix())) {
+			throw new MojoExecutionException("The " + this.style
+			        + " output style needs a suffix or a destination,"
+			        + " it would overwrite the CSS.");
+		}
+	}
+
+	/**
+	 * Gets the file to write this style of a stylesheet to.
+	 *
+	 * @param css
+	 *            the regular CSS file
+	 * @param roots
+	 *            the CSS destinations, to find the path of the CSS relative
+	 *            to the destination of this style
+	 * @return the file name
+	 */
+	public String getTarget(final String css, final List<File> roots) {
+		final File file = new File(css);
+		String name = file.getName();
+		if (name.endsWith(".css")) {
+			name = name.substring(0, name.length() - ".css".length());
+		}
+		name += this.getSuffix();
+		if (this.destination == null) {
+			return new File(file.getParentFile(), name).getPath();
+		}
+
+		final Path parent = file.getAbsoluteFile().toPath().normalize().getParent();
+		for (final File root : roots) {
+			final Path rootPath = root.getAbsoluteFile().toPath().normalize();
+			if (parent.startsWith(rootPath)) {
+				final File directory = new File(this.destination,
+				        rootPath.relativize(parent).toString());
+				return new File(directory, name).getPath();
+			}
+		}
+		return new File(this.destination, name).getPath();
+	}
+
+	@Override
+	public String toString() {
+		return this.style + ":" + this.getSuffix() + ":" + this.destination;
+	}
+}
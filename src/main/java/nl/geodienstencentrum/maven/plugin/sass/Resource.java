@@ -26,7 +26,6 @@ import java.util.Map;
 import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.model.FileSet;
 import org.apache.maven.plugin.logging.Log;
-import org.codehaus.plexus.util.DirectoryScanner;
 import org.codehaus.plexus.util.StringUtils;
 
 /**
@@ -67,20 +66,13 @@ public class Resource {
 		}
 
 		// Scan for directories
-		final DirectoryScanner scanner = new DirectoryScanner();
-		scanner.setBasedir(sourceDirectory);
-		scanner.setIncludes(this.source.getIncludes().toArray(
-		        new String[this.source.getIncludes().size()]));
-		scanner.setExcludes(this.source.getExcludes().toArray(
-		        new String[this.source.getExcludes().size()]));
-
-		scanner.addDefaultExcludes();
-		scanner.scan();
+		final ResourceScanner scanner = new ResourceScanner(sourceDirectory,
+		        this.source.getIncludes(), this.source.getExcludes());
 
 		result.put(FilenameUtils.separatorsToUnix(sourceDirectory.toString()),
 		        FilenameUtils.separatorsToUnix(this.destination.toString()));
 
-		for (final String included : scanner.getIncludedDirectories()) {
+		for (final String included : scanner.getIncludedDirectories(log)) {
 			if (!included.isEmpty()) {
 				final String subdir = StringUtils.difference(
 				        sourceDirectory.toString(), included);
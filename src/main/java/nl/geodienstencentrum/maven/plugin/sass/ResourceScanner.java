@@ -0,0 +1,378 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.AbstractScanner;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Finds the directories below a base directory that match a set of include
+ * and exclude patterns, with the semantics of plexus'
+ * {@code DirectoryScanner} including its default excludes. Sub directories
+ * are listed in parallel. Scans are cached for the lifetime of the JVM and
+ * reused as long as none of the scanned directories changed its
+ * modification time, so repeated scans of an unchanged tree don't list the
+ * directories again.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class ResourceScanner {
+
+	/**
+	 * a scan is not cached if a directory was modified this close to the
+	 * scan, the modification time may not have the resolution to see a next
+	 * change.
+	 */
+	private static final long MODIFICATION_RESOLUTION = 2000L;
+
+	/** cached scans by base directory and patterns. */
+	private static final ConcurrentMap<String, Scan> CACHE = new ConcurrentHashMap<>();
+
+	/** pool for listing the directories. */
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	/** the base directory. */
+	private final File basedir;
+
+	/** normalised include patterns. */
+	private final String[] includes;
+
+	/** normalised exclude patterns, including the default excludes. */
+	private final String[] excludes;
+
+	/**
+	 * Create a scanner.
+	 *
+	 * @param basedir the base directory
+	 * @param includes include patterns, all directories if empty
+	 * @param excludes exclude patterns, in addition to the default excludes
+	 */
+	public ResourceScanner(final File basedir, final List<String> includes,
+	        final List<String> excludes) {
+		this.basedir = basedir.getAbsoluteFile();
+		final List<String> include = new ArrayList<>();
+		for (final String pattern : includes) {
+			include.add(normalizePattern(pattern));
+		}
+		if (include.isEmpty()) {
+			include.add("**");
+		}
+		final List<String> exclude = new ArrayList<>();
+		for (final String pattern : excludes) {
+			exclude.add(normalizePattern(pattern));
+		}
+		for (final String pattern : AbstractScanner.DEFAULTEXCLUDES) {
+			exclude.add(normalizePattern(pattern));
+		}
+		this.includes = include.toArray(new String[include.size()]);
+		this.excludes = exclude.toArray(new String[exclude.size()]);
+	}
+
+	/**
+	 * Get the included directories, reusing an earlier scan if the tree did
+	 * not change.
+	 *
+	 * @param log the maven logging instance to use for messages
+	 * @return sorted paths relative to the base directory, using the
+	 *         platform separator
+	 */
+	public List<String> getIncludedDirectories(final Log log) {
+		final String key = this.basedir + "|" + Arrays.toString(this.includes)
+		        + "|" + Arrays.toString(this.excludes);
+		final Scan cached = CACHE.get(key);
+		if (cached != null && cached.isCurrent()) {
+			log.debug("Using the cached scan of " + this.basedir);
+			return cached.directories;
+		}
+
+		final Scan scan = this.scan();
+		if (scan.isCacheable()) {
+			CACHE.put(key, scan);
+		} else {
+			CACHE.remove(key);
+		}
+		log.debug("Scanned " + scan.modified.size() + " directories of "
+		        + this.basedir);
+		return scan.directories;
+	}
+
+	/**
+	 * Forget all cached scans.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+	}
+
+	/**
+	 * Scan the base directory.
+	 *
+	 * @return the scan
+	 */
+	private Scan scan() {
+		final Scan scan = new Scan();
+		final Queue<String> found = new ConcurrentLinkedQueue<>();
+		Path real;
+		try {
+			real = this.basedir.toPath().toRealPath();
+		} catch (IOException e) {
+			real = this.basedir.toPath().toAbsolutePath().normalize();
+		}
+		POOL.invoke(new Walker(this.basedir.toPath(), real, null, "", found, scan.modified));
+		final List<String> directories = new ArrayList<>(found);
+		Collections.sort(directories);
+		scan.directories = Collections.unmodifiableList(directories);
+		return scan;
+	}
+
+	/**
+	 * Test if a directory is included.
+	 *
+	 * @param name path relative to the base directory
+	 * @return {@code true} if an include pattern matches
+	 */
+	private boolean isIncluded(final String name) {
+		for (final String pattern : this.includes) {
+			if (SelectorUtils.matchPath(pattern, name, true)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test if a directory is excluded.
+	 *
+	 * @param name path relative to the base directory
+	 * @return {@code true} if an exclude pattern matches
+	 */
+	private boolean isExcluded(final String name) {
+		for (final String pattern : this.excludes) {
+			if (SelectorUtils.matchPath(pattern, name, true)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Test if a directory may contain included directories.
+	 *
+	 * @param name path relative to the base directory
+	 * @return {@code true} if the start of an include pattern matches
+	 */
+	private boolean couldHoldIncluded(final String name) {
+		for (final String pattern : this.includes) {
+			if (SelectorUtils.matchPatternStart(pattern, name, true)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Normalise a pattern the way {@code AbstractScanner} does; platform
+	 * separators and a trailing separator meaning everything below.
+	 *
+	 * @param pattern the pattern
+	 * @return the normalised pattern
+	 */
+	private static String normalizePattern(final String pattern) {
+		String result = pattern.trim();
+		if (result.startsWith("%regex[")) {
+			return result;
+		}
+		result = result.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+		if (result.endsWith(File.separator)) {
+			result += "**";
+		}
+		return result;
+	}
+
+	/**
+	 * Lists a directory and forks a walker for each sub directory that is,
+	 * or may contain, an included directory. A symbolic link to a directory
+	 * the walk is already in is not followed, so link loops end.
+	 */
+	private final class Walker extends RecursiveAction {
+
+		/** serialVersionUID. */
+		private static final long serialVersionUID = 1L;
+
+		/** the directory. */
+		private final Path dir;
+
+		/** the real path of the directory. */
+		private final Path real;
+
+		/** the walker of the parent directory, or {@code null}. */
+		private final Walker parent;
+
+		/** the directory relative to the base directory. */
+		private final String name;
+
+		/** included directories found. */
+		private final Queue<String> found;
+
+		/** modification times of the listed directories. */
+		private final Map<Path, Long> modified;
+
+		/**
+		 * Create a walker.
+		 *
+		 * @param dir the directory
+		 * @param real the real path of the directory
+		 * @param parent the walker of the parent directory, or {@code null}
+		 * @param name the directory relative to the base directory
+		 * @param found included directories found
+		 * @param modified modification times of the listed directories
+		 */
+		Walker(final Path dir, final Path real, final Walker parent, final String name,
+		        final Queue<String> found, final Map<Path, Long> modified) {
+			this.dir = dir;
+			this.real = real;
+			this.parent = parent;
+			this.name = name;
+			this.found = found;
+			this.modified = modified;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		protected void compute() {
+			final List<Walker> walkers = new ArrayList<>();
+			try {
+				// read the time before listing, so a change while listing
+				// invalidates the scan
+				this.modified.put(this.dir,
+				        Files.getLastModifiedTime(this.dir).toMillis());
+				try (DirectoryStream<Path> children = Files.newDirectoryStream(this.dir)) {
+					for (final Path child : children) {
+						if (!Files.isDirectory(child)) {
+							continue;
+						}
+						String childName = child.getFileName().toString();
+						if (!this.name.isEmpty()) {
+							childName = this.name + File.separator + childName;
+						}
+						final boolean included = isIncluded(childName);
+						if (included && !isExcluded(childName)) {
+							this.found.add(childName);
+						}
+						if (included || couldHoldIncluded(childName)) {
+							final Path childReal = Files.isSymbolicLink(child)
+							        ? child.toRealPath() : this.real.resolve(child.getFileName());
+							if (!this.isWalking(childReal)) {
+								walkers.add(new Walker(child, childReal, this, childName,
+								        this.found, this.modified));
+							}
+						}
+					}
+				}
+			} catch (IOException e) {
+				// unreadable, like DirectoryScanner skip it; the missing
+				// modification time keeps the scan out of the cache
+				this.modified.put(this.dir, -1L);
+				return;
+			}
+			invokeAll(walkers);
+		}
+
+		/**
+		 * Test if this walker or one of its parents walks a directory.
+		 *
+		 * @param path the real path of the directory
+		 * @return {@code true} if the directory is being walked
+		 */
+		private boolean isWalking(final Path path) {
+			for (Walker walker = this; walker != null; walker = walker.parent) {
+				if (walker.real.equals(path)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * The result of a scan.
+	 */
+	private static final class Scan {
+
+		/** the time the scan started. */
+		private final long started = System.currentTimeMillis();
+
+		/** modification times of the listed directories. */
+		private final Map<Path, Long> modified = new ConcurrentHashMap<>();
+
+		/** the included directories. */
+		private List<String> directories;
+
+		/**
+		 * Test if the scan can be reused later.
+		 *
+		 * @return {@code false} if a directory could not be read or was
+		 *         modified just before the scan
+		 */
+		boolean isCacheable() {
+			for (final Long time : this.modified.values()) {
+				if (time < 0 || time + MODIFICATION_RESOLUTION > this.started) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Test if none of the listed directories changed.
+		 *
+		 * @return {@code true} if the scan is still valid
+		 */
+		boolean isCurrent() {
+			for (final Map.Entry<Path, Long> entry : this.modified.entrySet()) {
+				try {
+					if (Files.getLastModifiedTime(entry.getKey()).toMillis()
+					        != entry.getValue()) {
+						return false;
+					}
+				} catch (IOException e) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * A patch of the Sass compiler, a Ruby resource next to this class. The
+ * patches wrap Sass methods with {@code alias_method}, and several wrap the
+ * same method, eg. {@code Sass::Plugin::Compiler#update_stylesheet}. They
+ * are applied in the order of the constants, so a later patch wraps the
+ * earlier ones.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+enum RubyPatch {
+	/**
+	 * timing of the written files, applied first so that the files the
+	 * other patches hold back or leave out are not timed.
+	 */
+	WRITE_TRACE("write_trace.rb"),
+	/** lookup of imported files in the {@link LoadPathIndex}. */
+	LOAD_PATH_INDEX("load_path_index.rb"),
+	/** rendering of the additional output styles of each stylesheet. */
+	OUTPUT_STYLES("output_styles.rb"),
+	/**
+	 * inlining of the source maps, applied after the output styles so it
+	 * holds back the CSS until the source map of the regular stylesheet is
+	 * rendered.
+	 */
+	INLINE_SOURCEMAP("inline_sourcemap.rb"),
+	/** removal of the source maps of an earlier build. */
+	LAZY_SOURCEMAP("lazy_sourcemap.rb");
+
+	/** the name of the Ruby resource. */
+	private final String resource;
+
+	/**
+	 * Create a patch.
+	 *
+	 * @param resource the name of the Ruby resource
+	 */
+	RubyPatch(final String resource) {
+		this.resource = resource;
+	}
+
+	/**
+	 * Get the name of the Ruby resource.
+	 *
+	 * @return the name, relative to this class
+	 */
+	String getResource() {
+		return this.resource;
+	}
+
+	/**
+	 * Append patches in their order.
+	 *
+	 * @param sassScript the sass script
+	 * @param patches the patches to append
+	 * @throws IOException if a patch cannot be read
+	 */
+	static void append(final StringBuilder sassScript, final Set<RubyPatch> patches)
+	        throws IOException {
+		for (final RubyPatch patch : values()) {
+			if (!patches.contains(patch)) {
+				continue;
+			}
+			try (InputStream in = RubyPatch.class.getResourceAsStream(patch.resource)) {
+				if (in == null) {
+					throw new IOException("Missing Sass compiler patch " + patch.resource);
+				}
+				sassScript.append(new String(IOUtils.toByteArray(in), StandardCharsets.UTF_8));
+			}
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.Enumeration;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Extracts the JRuby home and the bundled gems to the file system once, so
+ * JRuby loads them from disk instead of through {@code uri:classloader}
+ * resource lookups. The extracted runtime lives in a directory named by the
+ * plugin version and a checksum of its sources. It is extracted to a
+ * temporary directory that is renamed when complete, under a file lock, so
+ * an extracted runtime is never changed while another build may use it.
+ * When a new runtime of a version is extracted, the runtimes that earlier
+ * sources of the version were extracted to are removed under the same lock,
+ * so a snapshot version does not collect a runtime per build.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class RuntimeCache {
+
+	/** location of the JRuby home in the jruby-complete jar. */
+	public static final String JRUBY_HOME = "META-INF/jruby.home";
+
+	/** guards extraction between threads of this JVM. */
+	private static final Object LOCK = new Object();
+
+	/** gem directories in the plugin jar. */
+	private static final String[] GEM_DIRS = {"gems/", "specifications/"};
+
+	/** parent directory of the versioned runtimes. */
+	private final File directory;
+
+	/** maven logging instance. */
+	private final Log log;
+
+	/**
+	 * Create a runtime cache.
+	 *
+	 * @param directory parent directory for the extracted runtimes
+	 * @param log the maven logging instance to use for messages
+	 */
+	public RuntimeCache(final File directory, final Log log) {
+		this.directory = directory;
+		this.log = log;
+	}
+
+	/**
+	 * Make sure the runtime is extracted.
+	 *
+	 * @param version version used to name the runtime directory, or
+	 *            {@code null} if unknown
+	 * @param jrubyLocation location of the jruby-complete jar
+	 * @param gemsLocation location (jar or directory) of the bundled gems
+	 * @return the runtime directory, containing {@code jruby.home} and
+	 *         {@code gems}
+	 * @throws IOException if the runtime cannot be extracted
+	 */
+	public File extract(final String version, final URL jrubyLocation,
+	        final URL gemsLocation) throws IOException {
+		final File jruby = toFile(jrubyLocation);
+		final File gems = toFile(gemsLocation);
+		final File parent = new File(this.directory, version == null ? "unversioned" : version);
+		final File runtime = new File(parent, checksum(jruby, gems).substring(0, 16));
+
+		synchronized (LOCK) {
+			parent.mkdirs();
+			try (FileChannel channel = FileChannel.open(new File(parent, ".lock").toPath(),
+			        StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+			        FileLock lock = channel.lock()) {
+				// only complete extractions are renamed to the runtime directory
+				if (runtime.isDirectory()) {
+					this.log.debug("Using extracted JRuby runtime " + runtime);
+					return runtime;
+				}
+
+				this.log.info("Extracting JRuby runtime and gems to " + runtime);
+				final File partial = Files.createTempDirectory(parent.toPath(), ".extracting")
+				        .toFile();
+				try {
+					copy(jruby, JRUBY_HOME + "/", new File(partial, "jruby.home"));
+					for (final String dir : GEM_DIRS) {
+						copy(gems, dir, new File(partial, "gems/" + dir));
+					}
+					Files.move(partial.toPath(), runtime.toPath(),
+					        StandardCopyOption.ATOMIC_MOVE);
+				} finally {
+					FileUtils.deleteDirectory(partial);
+				}
+				this.deleteStale(parent, runtime);
+				return runtime;
+			}
+		}
+	}
+
+	/**
+	 * Delete the runtimes of earlier sources of a version, and extractions
+	 * that did not complete. Called holding the lock of the version.
+	 *
+	 * @param parent the directory of the version
+	 * @param runtime the current runtime, which is kept
+	 */
+	private void deleteStale(final File parent, final File runtime) {
+		final File[] siblings = parent.listFiles();
+		if (siblings == null) {
+			return;
+		}
+		for (final File sibling : siblings) {
+			if (!sibling.isDirectory() || sibling.equals(runtime)) {
+				continue;
+			}
+			try {
+				FileUtils.deleteDirectory(sibling);
+				this.log.debug("Deleted stale JRuby runtime " + sibling);
+			} catch (IOException e) {
+				// eg. a file still open in another build on Windows
+				this.log.warn("Could not delete stale JRuby runtime " + sibling + ": "
+				        + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Checksum over the name, size and modification time of the sources.
+	 *
+	 * @param sources the jars or directories
+	 * @return hex encoded checksum
+	 * @throws IOException if a directory cannot be walked
+	 */
+	private static String checksum(final File... sources) throws IOException {
+		final MessageDigest digest = Digests.sha1();
+		for (final File source : sources) {
+			if (source.isDirectory()) {
+				for (final String dir : GEM_DIRS) {
+					final Path root = new File(source, dir).toPath();
+					if (!Files.isDirectory(root)) {
+						continue;
+					}
+					Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+						@Override
+						public FileVisitResult visitFile(final Path file,
+						        final BasicFileAttributes attrs) {
+							update(digest, file.toString(), attrs.size(),
+							        attrs.lastModifiedTime().toMillis());
+							return FileVisitResult.CONTINUE;
+						}
+					});
+				}
+			} else {
+				update(digest, source.getAbsolutePath(), source.length(),
+				        source.lastModified());
+			}
+		}
+		return Digests.hex(digest.digest());
+	}
+
+	/**
+	 * Add a file to the digest.
+	 *
+	 * @param digest the digest
+	 * @param name file name
+	 * @param size file size
+	 * @param modified modification time
+	 */
+	private static void update(final MessageDigest digest, final String name,
+	        final long size, final long modified) {
+		digest.update((name + ':' + size + ':' + modified + '\n')
+		        .getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Copy everything below a prefix of a jar or directory.
+	 *
+	 * @param source jar file or directory
+	 * @param prefix path prefix, ending with a slash
+	 * @param destination destination directory
+	 * @throws IOException if any occurs copying
+	 */
+	private static void copy(final File source, final String prefix,
+	        final File destination) throws IOException {
+		if (source.isDirectory()) {
+			final File dir = new File(source, prefix);
+			if (dir.isDirectory()) {
+				FileUtils.copyDirectory(dir, destination);
+			}
+			return;
+		}
+		try (JarFile jar = new JarFile(source)) {
+			for (final Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements();) {
+				final JarEntry entry = entries.nextElement();
+				if (!entry.getName().startsWith(prefix)) {
+					continue;
+				}
+				final File file = new File(destination,
+				        entry.getName().substring(prefix.length()));
+				if (entry.isDirectory()) {
+					file.mkdirs();
+				} else {
+					file.getParentFile().mkdirs();
+					try (InputStream in = jar.getInputStream(entry)) {
+						Files.copy(in, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Convert a code source location to a file.
+	 *
+	 * @param location the location
+	 * @return the jar file or classes directory
+	 * @throws IOException if the location is not a file
+	 */
+	private static File toFile(final URL location) throws IOException {
+		try {
+			return new File(location.toURI());
+		} catch (URISyntaxException | IllegalArgumentException e) {
+			throw new IOException("Not a file location: " + location, e);
+		}
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.jruby.RubyInstanceConfig.CompileMode;
+import org.jruby.embed.LocalContextScope;
+import org.jruby.embed.ScriptingContainer;
+
+/**
+ * Creates the JRuby runtimes that run Sass, for the Maven plugin as well as
+ * for the servlet filter, and builds the start of their scripts. Settings
+ * that are not set keep the JRuby default.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SassRuntimeFactory {
+
+	/** the JRuby home in {@code jruby-complete}. */
+	public static final String CLASSPATH_HOME = "uri:classloader://META-INF/jruby.home";
+
+	/** the JRuby home directory. */
+	private String homeDirectory = CLASSPATH_HOME;
+
+	/** the compile mode, or {@code null}. */
+	private CompileMode compileMode;
+
+	/** the JIT threshold, or {@code null}. */
+	private Integer jitThreshold;
+
+	/** whether ObjectSpace is enabled, or {@code null}. */
+	private Boolean objectSpace;
+
+	/** whether string literals are frozen, or {@code null}. */
+	private Boolean frozenStringLiteral;
+
+	/**
+	 * Set the JRuby home directory.
+	 *
+	 * @param homeDirectory the directory, defaults to {@link #CLASSPATH_HOME}
+	 */
+	public void setHomeDirectory(final String homeDirectory) {
+		this.homeDirectory = homeDirectory;
+	}
+
+	/**
+	 * Set the compile mode.
+	 *
+	 * @param compileMode the compile mode, or {@code null}
+	 */
+	public void setCompileMode(final CompileMode compileMode) {
+		this.compileMode = compileMode;
+	}
+
+	/**
+	 * Set the number of calls before a method is compiled.
+	 *
+	 * @param jitThreshold the threshold, or {@code null}
+	 */
+	public void setJitThreshold(final Integer jitThreshold) {
+		this.jitThreshold = jitThreshold;
+	}
+
+	/**
+	 * Set whether ObjectSpace is enabled.
+	 *
+	 * @param objectSpace {@code true} to enable, or {@code null}
+	 */
+	public void setObjectSpace(final Boolean objectSpace) {
+		this.objectSpace = objectSpace;
+	}
+
+	/**
+	 * Set whether string literals are frozen.
+	 *
+	 * @param frozenStringLiteral {@code true} to freeze, or {@code null}
+	 */
+	public void setFrozenStringLiteral(final Boolean frozenStringLiteral) {
+		this.frozenStringLiteral = frozenStringLiteral;
+	}
+
+	/**
+	 * Create a runtime for a single thread. The runtime boots when it runs
+	 * its first script.
+	 *
+	 * @return a new scripting container
+	 */
+	public ScriptingContainer create() {
+		final ScriptingContainer scriptingContainer = new ScriptingContainer(
+		        LocalContextScope.SINGLETHREAD);
+		scriptingContainer.setHomeDirectory(this.homeDirectory);
+		if (this.compileMode != null) {
+			scriptingContainer.setCompileMode(this.compileMode);
+		}
+		if (this.jitThreshold != null) {
+			scriptingContainer.setJitThreshold(this.jitThreshold);
+		}
+		if (this.objectSpace != null) {
+			scriptingContainer.setObjectSpaceEnabled(this.objectSpace);
+		}
+		if (this.frozenStringLiteral != null) {
+			scriptingContainer.getProvider().getRubyInstanceConfig()
+			        .setFrozenStringLiteral(this.frozenStringLiteral);
+		}
+		return scriptingContainer;
+	}
+
+	/**
+	 * Append the loading of Rubygems, looking up gems in the given paths
+	 * and the {@code GEM_PATH} environment variable. The paths are joined
+	 * here, without duplicates, so Rubygems gets the {@code GEM_PATH} string
+	 * it expects.
+	 *
+	 * @param sassScript the script
+	 * @param gemPaths the gem paths, using {@code /}, may be empty
+	 */
+	public static void appendRubygems(final StringBuilder sassScript,
+	        final List<String> gemPaths) {
+		sassScript.append("require 'rubygems'\n");
+		if (gemPaths.isEmpty()) {
+			return;
+		}
+		final Set<String> allGemPaths = new LinkedHashSet<>(gemPaths);
+		final String gemPath = System.getenv("GEM_PATH");
+		if (gemPath != null) {
+			for (final String p : gemPath.split(File.pathSeparator)) {
+				if (!p.isEmpty()) {
+					allGemPaths.add(p);
+				}
+			}
+		}
+		final StringBuilder joined = new StringBuilder();
+		for (final String p : allGemPaths) {
+			if (joined.length() > 0) {
+				joined.append(File.pathSeparatorChar);
+			}
+			joined.append(p.replace("\\", "\\\\").replace("'", "\\'"));
+		}
+		sassScript.append("Gem.paths = { 'GEM_PATH' => '").append(joined).append("' }\n");
+	}
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+/**
+ * How the source maps of the compiled stylesheets are written.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public enum SourcemapMode {
+	/** no source maps, eg. for a production profile. */
+	NONE,
+	/** a {@code .map} file next to each stylesheet, Sass's default. */
+	EXTERNAL,
+	/**
+	 * the source map, including the sources, base64 encoded in a data URL at
+	 * the end of each stylesheet, without {@code .map} file.
+	 */
+	INLINE,
+	/**
+	 * for the {@code serve} goal: each stylesheet it serves refers to its
+	 * {@code .map} file, but the source map is only created and written when
+	 * it is requested. Without {@code serve} nothing would write the source
+	 * map, so the stylesheets compiled by the other goals have no source map
+	 * reference.
+	 */
+	LAZY;
+
+	/**
+	 * Gets the value of the {@code sourcemap} Sass option for this mode.
+	 *
+	 * @param configured
+	 *            the {@code sourcemap} option of the Sass options, or
+	 *            {@code null}
+	 * @return the option
+	 */
+	public String getSassOption(final String configured) {
+		switch (this) {
+		case EXTERNAL:
+			// keep the configured URL type, eg. :file
+			return configured == null || ":none".equals(configured.trim()) ? ":auto"
+			        : configured;
+		case INLINE:
+			return ":inline";
+		default:
+			// serve adds the lazy references
+			return ":none";
+		}
+	}
+}
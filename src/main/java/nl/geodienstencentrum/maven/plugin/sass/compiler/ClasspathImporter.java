@@ -0,0 +1,479 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+
+/**
+ * Resolves Sass imports from the jars and directories of a classpath, such
+ * as the project's dependencies, without extracting them. The Sass and SCSS
+ * files of all classpath elements are indexed in memory; imports are looked
+ * up below a set of roots, eg. {@code META-INF/resources}. When multiple
+ * elements have the same file the first one wins, as on a classpath.
+ * Contents are cached and read again when a file in a directory changed.
+ * The latest index of each classpath is cached for the lifetime of the JVM
+ * and reused while the {@link #stamp(String) stamp} of no element changed,
+ * so it is shared by parallel and later compilations.
+ *
+ * <p>
+ * The importer is used from Ruby by a {@code Sass::Importers::Base}
+ * subclass, see {@code AbstractSassMojo}. Files are identified by a key,
+ * their path inside the classpath element; Sass knows them by the file name
+ * {@code classpath:<key>}.
+ * </p>
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class ClasspathImporter {
+
+	/** prefix of the file names of the imported files. */
+	public static final String PREFIX = "classpath:";
+
+	/** the maximum number of cached classpaths, eg. of the modules of a build. */
+	private static final int MAX_CACHED = 32;
+
+	/** cached importers by classpath. */
+	private static final ConcurrentMap<String, ClasspathImporter> CACHE = new ConcurrentHashMap<>();
+
+	/** the stamps of the classpath elements when they were indexed. */
+	private final List<String> stamps;
+
+	/** the import roots, without leading or trailing slash. */
+	private final List<String> roots;
+
+	/** indexed files by key. */
+	private final Map<String, Source> index;
+
+	/** contents of the files that were read, by key. */
+	private final ConcurrentMap<String, Content> contents = new ConcurrentHashMap<>();
+
+	/**
+	 * Create an importer.
+	 *
+	 * @param stamps the stamps of the classpath elements
+	 * @param roots the import roots
+	 * @param index indexed files by key
+	 */
+	private ClasspathImporter(final List<String> stamps, final List<String> roots,
+	        final Map<String, Source> index) {
+		this.stamps = stamps;
+		this.roots = roots;
+		this.index = index;
+	}
+
+	/**
+	 * Get the importer of a classpath, reusing the index if no element
+	 * changed.
+	 *
+	 * @param elements jars and directories
+	 * @param roots directories inside the elements to resolve imports
+	 *            against, {@code ""} for the top level
+	 * @return the importer
+	 * @throws IOException if a jar cannot be read
+	 */
+	public static ClasspathImporter get(final List<String> elements,
+	        final List<String> roots) throws IOException {
+		final String key = roots + "|" + elements;
+		final List<String> stamps = new ArrayList<>();
+		for (final String element : elements) {
+			stamps.add(stamp(element));
+		}
+		ClasspathImporter importer = CACHE.get(key);
+		if (importer == null || !importer.stamps.equals(stamps)) {
+			importer = create(stamps, elements, roots);
+			if (CACHE.size() >= MAX_CACHED && !CACHE.containsKey(key)) {
+				CACHE.clear();
+			}
+			CACHE.put(key, importer);
+		}
+		return importer;
+	}
+
+	/**
+	 * Get a stamp of a classpath element that changes when a Sass file in
+	 * it changes. For a jar these are its modification time and size, for
+	 * a directory the paths and modification times of its Sass files, as
+	 * editing a nested file does not change the directory itself.
+	 *
+	 * @param element a jar or directory
+	 * @return the stamp
+	 * @throws IOException if a directory cannot be walked
+	 */
+	public static String stamp(final String element) throws IOException {
+		final File file = new File(element);
+		if (!file.isDirectory()) {
+			return file.lastModified() + ":" + file.length();
+		}
+		final MessageDigest digest = Digests.sha1();
+		final Path dir = file.toPath();
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path path,
+			        final BasicFileAttributes attrs) {
+				final String name = FilenameUtils.separatorsToUnix(
+				        dir.relativize(path).toString());
+				if (isSass(name)) {
+					digest.update((name + ':' + attrs.lastModifiedTime().toMillis() + '\n')
+					        .getBytes(StandardCharsets.UTF_8));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return Digests.hex(digest.digest());
+	}
+
+	/**
+	 * Forget all cached indexes.
+	 */
+	public static void clearCache() {
+		CACHE.clear();
+	}
+
+	/**
+	 * Index a classpath.
+	 *
+	 * @param stamps the stamps of the elements
+	 * @param elements jars and directories
+	 * @param roots the import roots
+	 * @return the importer
+	 * @throws IOException if a jar cannot be read
+	 */
+	private static ClasspathImporter create(final List<String> stamps,
+	        final List<String> elements, final List<String> roots) throws IOException {
+		final List<String> normalized = new ArrayList<>();
+		for (final String root : roots) {
+			String r = FilenameUtils.separatorsToUnix(root.trim());
+			while (r.startsWith("/")) {
+				r = r.substring(1);
+			}
+			while (r.endsWith("/")) {
+				r = r.substring(0, r.length() - 1);
+			}
+			normalized.add(r);
+		}
+
+		final Map<String, Source> index = new HashMap<>();
+		for (final String element : elements) {
+			final File file = new File(element);
+			if (file.isDirectory()) {
+				indexDirectory(file.toPath(), index);
+			} else if (file.isFile()) {
+				indexJar(file, index);
+			}
+		}
+		return new ClasspathImporter(stamps, Collections.unmodifiableList(normalized),
+		        Collections.unmodifiableMap(index));
+	}
+
+	/**
+	 * Index the Sass files of a jar.
+	 *
+	 * @param jar the jar
+	 * @param index the index to add to, existing keys are kept
+	 * @throws IOException if the jar cannot be read
+	 */
+	private static void indexJar(final File jar, final Map<String, Source> index)
+	        throws IOException {
+		try (ZipFile zip = new ZipFile(jar)) {
+			for (final Enumeration<? extends ZipEntry> entries = zip.entries();
+			        entries.hasMoreElements();) {
+				final ZipEntry entry = entries.nextElement();
+				if (!entry.isDirectory() && isSass(entry.getName())
+				        && !index.containsKey(entry.getName())) {
+					index.put(entry.getName(), new Source(jar, entry.getName(), entry.getTime()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Index the Sass files of a directory.
+	 *
+	 * @param dir the directory
+	 * @param index the index to add to, existing keys are kept
+	 * @throws IOException if the directory cannot be read
+	 */
+	private static void indexDirectory(final Path dir, final Map<String, Source> index)
+	        throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+			        final BasicFileAttributes attrs) {
+				final String key = FilenameUtils.separatorsToUnix(
+				        dir.relativize(file).toString());
+				if (isSass(key) && !index.containsKey(key)) {
+					index.put(key, new Source(file.toFile(), null,
+					        attrs.lastModifiedTime().toMillis()));
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Test if a file is a Sass or SCSS file.
+	 *
+	 * @param name the file name
+	 * @return {@code true} for a Sass file
+	 */
+	private static boolean isSass(final String name) {
+		return name.endsWith(".scss") || name.endsWith(".sass");
+	}
+
+	/**
+	 * Get the number of indexed files.
+	 *
+	 * @return the number of files
+	 */
+	public int size() {
+		return this.index.size();
+	}
+
+	/**
+	 * Resolve an import against the roots.
+	 *
+	 * @param uri the import as written, or the file name of an imported file
+	 * @return the key of the file or {@code null} if it was not found
+	 */
+	public String resolve(final String uri) {
+		if (uri.startsWith(PREFIX)) {
+			final String key = uri.substring(PREFIX.length());
+			if (this.index.containsKey(key)) {
+				return key;
+			}
+			return null;
+		}
+		for (final String root : this.roots) {
+			String dir = "";
+			if (!root.isEmpty()) {
+				dir = root + "/";
+			}
+			final String key = this.find(dir, uri);
+			if (key != null) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Resolve an import relative to an imported file.
+	 *
+	 * @param uri the import as written
+	 * @param base the file name of the importing file
+	 * @return the key of the file or {@code null} if it was not found
+	 */
+	public String resolveRelative(final String uri, final String base) {
+		if (!base.startsWith(PREFIX)) {
+			return null;
+		}
+		final String key = base.substring(PREFIX.length());
+		return this.find(key.substring(0, key.lastIndexOf('/') + 1), uri);
+	}
+
+	/**
+	 * Look up the candidates of an import in a directory.
+	 *
+	 * @param dir the directory, empty or ending with a slash
+	 * @param uri the import
+	 * @return the key of the file or {@code null} if it was not found
+	 */
+	private String find(final String dir, final String uri) {
+		for (final String candidate : ImportGraph.candidates(uri)) {
+			final String key = FilenameUtils.normalize(dir + candidate, true);
+			if (key != null && this.index.containsKey(key)) {
+				return key;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read an indexed file, again if the file changed since it was read.
+	 *
+	 * @param key the key of the file
+	 * @return the content
+	 * @throws IOException if the file cannot be read
+	 */
+	public String read(final String key) throws IOException {
+		final Source source = this.index.get(key);
+		if (source == null) {
+			throw new IOException("Not on the classpath: " + key);
+		}
+		final long lastModified = source.getLastModified();
+		Content content = this.contents.get(key);
+		if (content == null || content.lastModified != lastModified) {
+			content = new Content(source.read(), lastModified);
+			this.contents.put(key, content);
+		}
+		return content.text;
+	}
+
+	/**
+	 * Get the modification time of an indexed file.
+	 *
+	 * @param key the key of the file
+	 * @return modification time in milliseconds, 0 if unknown
+	 */
+	public long lastModified(final String key) {
+		final Source source = this.index.get(key);
+		if (source == null) {
+			return 0L;
+		}
+		return source.getLastModified();
+	}
+
+	/**
+	 * Get the syntax of an indexed file.
+	 *
+	 * @param key the key of the file
+	 * @return {@code sass} or {@code scss}
+	 */
+	public String getSyntax(final String key) {
+		if (key.endsWith(".sass")) {
+			return "sass";
+		}
+		return "scss";
+	}
+
+	/**
+	 * Get a description of the file an indexed file was read from.
+	 *
+	 * @param key the key of the file
+	 * @return the jar and entry or the file
+	 */
+	public String getLocation(final String key) {
+		final Source source = this.index.get(key);
+		if (source == null) {
+			return null;
+		}
+		if (source.entry == null) {
+			return source.file.getPath();
+		}
+		return source.file.getPath() + "!/" + source.entry;
+	}
+
+	/**
+	 * An indexed file.
+	 */
+	private static final class Source {
+
+		/** the jar or file. */
+		private final File file;
+
+		/** the jar entry, {@code null} for a file. */
+		private final String entry;
+
+		/** modification time in milliseconds of a jar entry. */
+		private final long lastModified;
+
+		/**
+		 * Create a source.
+		 *
+		 * @param file the jar or file
+		 * @param entry the jar entry, {@code null} for a file
+		 * @param lastModified modification time in milliseconds
+		 */
+		Source(final File file, final String entry, final long lastModified) {
+			this.file = file;
+			this.entry = entry;
+			this.lastModified = lastModified;
+		}
+
+		/**
+		 * Get the modification time, of the file itself for a file as it
+		 * may have changed since it was indexed.
+		 *
+		 * @return modification time in milliseconds
+		 */
+		long getLastModified() {
+			if (this.entry == null) {
+				return this.file.lastModified();
+			}
+			return this.lastModified;
+		}
+
+		/**
+		 * Read the content.
+		 *
+		 * @return the content
+		 * @throws IOException if it cannot be read
+		 */
+		String read() throws IOException {
+			if (this.entry == null) {
+				return new String(Files.readAllBytes(this.file.toPath()),
+				        StandardCharsets.UTF_8);
+			}
+			try (ZipFile zip = new ZipFile(this.file)) {
+				final ZipEntry zipEntry = zip.getEntry(this.entry);
+				if (zipEntry == null) {
+					throw new IOException("No " + this.entry + " in " + this.file);
+				}
+				try (InputStream in = zip.getInputStream(zipEntry)) {
+					return IOUtils.toString(in, StandardCharsets.UTF_8);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The content of a file that was read.
+	 */
+	private static final class Content {
+
+		/** the content. */
+		private final String text;
+
+		/** modification time in milliseconds when it was read. */
+		private final long lastModified;
+
+		/**
+		 * Create a content.
+		 *
+		 * @param text the content
+		 * @param lastModified modification time in milliseconds
+		 */
+		Content(final String text, final long lastModified) {
+			this.text = text;
+			this.lastModified = lastModified;
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Distributes entry points over a number of workers, longest job first. The
+ * expected cost of an entry point is its historical compile duration; if
+ * there is no history the size of the template is used, scaled by the
+ * average duration per byte of the templates that do have history.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CompileScheduler {
+
+	/** compile history. */
+	private final CompileStatistics statistics;
+
+	/**
+	 * Create a scheduler.
+	 *
+	 * @param statistics the compile history to use
+	 */
+	public CompileScheduler(final CompileStatistics statistics) {
+		this.statistics = statistics;
+	}
+
+	/**
+	 * Estimate the compile cost of the entry points.
+	 *
+	 * @param entryPoints the entry points
+	 * @return the estimated cost by entry point, in milliseconds when there is
+	 *         any history, otherwise in bytes
+	 */
+	public Map<EntryPoint, Double> estimate(final List<EntryPoint> entryPoints) {
+		long knownMillis = 0;
+		long knownBytes = 0;
+		for (final EntryPoint entryPoint : entryPoints) {
+			final Long duration = this.statistics.getDuration(entryPoint.getTemplate());
+			if (duration != null) {
+				knownMillis += duration;
+				knownBytes += entryPoint.getTemplateSize();
+			}
+		}
+		double millisPerByte = 1d;
+		if (knownMillis > 0 && knownBytes > 0) {
+			millisPerByte = (double) knownMillis / knownBytes;
+		}
+
+		final Map<EntryPoint, Double> costs = new HashMap<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			final Long duration = this.statistics.getDuration(entryPoint.getTemplate());
+			if (duration != null) {
+				costs.put(entryPoint, duration.doubleValue());
+			} else {
+				costs.put(entryPoint, entryPoint.getTemplateSize() * millisPerByte);
+			}
+		}
+		return costs;
+	}
+
+	/**
+	 * Split the entry points in at most {@code workers} batches with about
+	 * equal total cost (longest processing time first). Each batch is ordered
+	 * longest first.
+	 *
+	 * @param entryPoints the entry points to schedule
+	 * @param workers number of workers
+	 * @return the non-empty batches
+	 */
+	public List<List<EntryPoint>> schedule(final List<EntryPoint> entryPoints,
+	        final int workers) {
+		final Map<EntryPoint, Double> costs = this.estimate(entryPoints);
+		final List<EntryPoint> sorted = new ArrayList<>(entryPoints);
+		Collections.sort(sorted, new Comparator<EntryPoint>() {
+			@Override
+			public int compare(final EntryPoint a, final EntryPoint b) {
+				return Double.compare(costs.get(b), costs.get(a));
+			}
+		});
+
+		final int size = Math.max(1, Math.min(workers, sorted.size()));
+		final List<List<EntryPoint>> batches = new ArrayList<>(size);
+		final double[] load = new double[size];
+		for (int i = 0; i < size; i++) {
+			batches.add(new ArrayList<EntryPoint>());
+		}
+		for (final EntryPoint entryPoint : sorted) {
+			int least = 0;
+			for (int i = 1; i < size; i++) {
+				if (load[i] < load[least]) {
+					least = i;
+				}
+			}
+			batches.get(least).add(entryPoint);
+			load[least] += costs.get(entryPoint);
+		}
+
+		final List<List<EntryPoint>> result = new ArrayList<>(size);
+		for (final List<EntryPoint> batch : batches) {
+			if (!batch.isEmpty()) {
+				result.add(batch);
+			}
+		}
+		return result;
+	}
+}
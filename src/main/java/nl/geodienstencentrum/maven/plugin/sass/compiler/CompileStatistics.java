@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static nl.geodienstencentrum.maven.plugin.sass.compiler.PathPropertiesStore.key;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Historical compile durations of the entry points and load times of the
+ * libraries, persisted in a properties file in the build directory. Used to
+ * schedule the longest compiles first when compiling in parallel and to
+ * report the time saved by not loading a library.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CompileStatistics implements CompilerListener {
+
+	/** name of the statistics file in the build directory. */
+	public static final String FILE_NAME = "sass-compile-stats.properties";
+
+	/** key prefix of the library load times. */
+	private static final String LIBRARY = "library:";
+
+	/** duration in milliseconds by template. */
+	private final PathPropertiesStore durations;
+
+	/**
+	 * Create statistics backed by a file, reading the existing history if
+	 * present.
+	 *
+	 * @param file the statistics file
+	 * @param log the maven logging instance to use for messages
+	 */
+	public CompileStatistics(final File file, final Log log) {
+		this.durations = new PathPropertiesStore(file, "compile statistics",
+		        "Sass compile durations (ms)", log);
+	}
+
+	/**
+	 * Get the last recorded compile duration of a template.
+	 *
+	 * @param template the template
+	 * @return duration in milliseconds or {@code null} if there is no history
+	 */
+	public Long getDuration(final String template) {
+		return this.get(key(template));
+	}
+
+	/**
+	 * Get a recorded duration.
+	 *
+	 * @param key the property key
+	 * @return duration in milliseconds or {@code null}
+	 */
+	private Long get(final String key) {
+		final String value = this.durations.get(key);
+		if (value == null) {
+			return null;
+		}
+		try {
+			return Long.valueOf(value);
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Record the compile duration of a template.
+	 *
+	 * @param template the template
+	 * @param millis the duration in milliseconds
+	 */
+	public void record(final String template, final long millis) {
+		this.durations.put(key(template), Long.toString(millis));
+	}
+
+	/**
+	 * Get the last recorded load time of a library.
+	 *
+	 * @param name the library name, eg. {@code compass}
+	 * @return load time in milliseconds or {@code null} if there is no history
+	 */
+	public Long getLibraryDuration(final String name) {
+		return this.get(LIBRARY + name);
+	}
+
+	/**
+	 * Record the load time of a library.
+	 *
+	 * @param name the library name
+	 * @param millis the load time in milliseconds
+	 */
+	public void recordLibrary(final String name, final long millis) {
+		this.durations.put(LIBRARY + name, Long.toString(millis));
+	}
+
+	/**
+	 * Record the load times of the libraries loaded by a compiler run.
+	 *
+	 * @param compilerCallback the callback of the run
+	 */
+	public void recordLibraries(final CompilerCallback compilerCallback) {
+		for (final Map.Entry<String, Long> library : compilerCallback
+		        .getLibraryLoadTimes().entrySet()) {
+			this.recordLibrary(library.getKey(), library.getValue());
+		}
+	}
+
+	/**
+	 * {@inheritDoc} Successful compiles are recorded.
+	 */
+	@Override
+	public void templateCompiled(final String template, final String css,
+	        final long startNanos, final long durationNanos,
+	        final boolean success) {
+		if (success) {
+			this.record(template, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+		}
+	}
+
+	/**
+	 * Write the statistics file.
+	 */
+	public void save() {
+		this.durations.save();
+	}
+}
@@ -19,6 +19,15 @@
  */
 package nl.geodienstencentrum.maven.plugin.sass.compiler;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
 import org.apache.maven.plugin.logging.Log;
 
 /**
@@ -30,6 +39,20 @@ public class CompilerCallback {
 	private boolean compileError;
 	/** maven logging instance. */
 	private final Log log;
+	/** listeners for compilation results. */
+	private final List<CompilerListener> listeners = new ArrayList<>();
+	/** start time of the templates being compiled. */
+	private final Map<String, Long> started = new HashMap<>();
+	/** load time in milliseconds of the libraries, eg. Compass. */
+	private final Map<String, Long> libraryLoadTimes = new LinkedHashMap<>();
+	/** recorder for the trace of the compilation. */
+	private TraceRecorder traceRecorder = new TraceRecorder(false);
+	/** Flight Recorder events of the compilation. */
+	private FlightRecorderEvents flightRecorderEvents = FlightRecorderEvents.create(false, null);
+	/** Flight Recorder events of the templates being compiled. */
+	private final Map<String, FlightRecorderEvents.Event> compileEvents = new HashMap<>();
+	/** server to push updated stylesheets to the browsers, may be {@code null}. */
+	private LiveReloadServer liveReloadServer;
 
 	/**
 	 * Instantiates a new compiler callback.
@@ -41,6 +64,67 @@ public class CompilerCallback {
 		this.log = log;
 	}
 
+	/**
+	 * Add a listener for compilation results.
+	 *
+	 * @param listener
+	 *            the listener to add
+	 */
+	public void addListener(final CompilerListener listener) {
+		this.listeners.add(listener);
+	}
+
+	/**
+	 * Set the recorder for the trace of library loads, template compiles
+	 * and output writes.
+	 *
+	 * @param traceRecorder
+	 *            the recorder
+	 */
+	public void setTraceRecorder(final TraceRecorder traceRecorder) {
+		this.traceRecorder = traceRecorder;
+	}
+
+	/**
+	 * Set the Flight Recorder events to emit an event per template compile
+	 * with.
+	 *
+	 * @param flightRecorderEvents
+	 *            the events
+	 */
+	public void setFlightRecorderEvents(final FlightRecorderEvents flightRecorderEvents) {
+		this.flightRecorderEvents = flightRecorderEvents;
+	}
+
+	/**
+	 * Set the server to push updated stylesheets to the browsers with.
+	 *
+	 * @param liveReloadServer
+	 *            the server, {@code null} to push nothing
+	 */
+	public void setLiveReloadServer(final LiveReloadServer liveReloadServer) {
+		this.liveReloadServer = liveReloadServer;
+	}
+
+	/**
+	 * Handle {@code on_compilation_starting} event.
+	 *
+	 * @param template
+	 *            the template
+	 * @param css
+	 *            the css
+	 * @see <a
+	 *      href="http://sass-lang.com/docs/yardoc/Sass/Plugin/Compiler.html#on_compilation_starting-instance_method">
+	 *            on_compilation_starting</a>
+	 */
+	public void compilationStarting(final String template, final String css) {
+		this.started.put(template, System.nanoTime());
+		if (this.flightRecorderEvents.isEnabled()) {
+			this.compileEvents.put(template, this.flightRecorderEvents
+			        .begin(FlightRecorderEvents.Type.TEMPLATE_COMPILE));
+		}
+	}
+
 	/**
 	 * Handle {@code on_compilation_error} event.
 	 *
@@ -58,6 +142,7 @@ public class CompilerCallback {
 		this.log.error("Compilation of template " + template + " failed: "
 				+ error);
 		this.compileError = true;
+		this.fireTemplateCompiled(template, css, false);
 	}
 
 	/**
@@ -73,6 +158,28 @@ public class CompilerCallback {
 	 */
 	public void updatedStylesheeet(final String template, final String css) {
 		this.log.info("    >> " + template + " => " + css);
+		this.fireTemplateCompiled(template, css, true);
+		if (this.liveReloadServer != null) {
+			this.liveReloadServer.stylesheetUpdated(css);
+		}
+	}
+
+	/**
+	 * Handle writing an additional output style of a stylesheet.
+	 *
+	 * @param template
+	 *            the template
+	 * @param css
+	 *            the stylesheet in the additional style
+	 * @param style
+	 *            the output style
+	 */
+	public void outputStyleWritten(final String template, final String css,
+	        final String style) {
+		this.log.info("    >> " + template + " => " + css + " (" + style + ")");
+		if (this.liveReloadServer != null) {
+			this.liveReloadServer.stylesheetUpdated(css);
+		}
 	}
 
 	/**
@@ -86,6 +193,7 @@ public class CompilerCallback {
 	 */
 	public void templateModified(final String template) {
 		this.log.info("File Change detected " + template);
+		this.fileChanged(template);
 	}
 
 	/**
@@ -99,6 +207,7 @@ public class CompilerCallback {
 	 */
 	public void templateCreated(final String template) {
 		this.log.info("New File detected " + template);
+		this.fileChanged(template);
 	}
 
 	/**
@@ -112,6 +221,98 @@ public class CompilerCallback {
 	 */
 	public void templateDeleted(final String template) {
 		this.log.info("File Delete detected " + template);
+		this.fileChanged(template);
+	}
+
+	/**
+	 * Tell the live reload server when a file was saved.
+	 *
+	 * @param template
+	 *            the changed, created or deleted file
+	 */
+	private void fileChanged(final String template) {
+		if (this.liveReloadServer != null) {
+			this.liveReloadServer.fileChanged(new File(template));
+		}
+	}
+
+	/**
+	 * Handle loading of a library, such as Compass or the configured gems.
+	 *
+	 * @param name
+	 *            the library name
+	 * @param millis
+	 *            the time it took to load the library in milliseconds
+	 */
+	public void libraryLoaded(final String name, final long millis) {
+		this.log.info("Loaded " + name + " in " + millis + " ms");
+		this.libraryLoadTimes.put(name, millis);
+		final long nanos = TimeUnit.MILLISECONDS.toNanos(millis);
+		this.traceRecorder.record("require " + name, "library",
+		        System.nanoTime() - nanos, nanos, Collections.<String, String>emptyMap());
+	}
+
+	/**
+	 * Handle writing of a CSS or source map file by the Sass compiler.
+	 *
+	 * @param file
+	 *            the file written
+	 * @param startNanos
+	 *            {@link System#nanoTime()} when writing started
+	 * @param durationNanos
+	 *            the time it took to write the file in nanoseconds
+	 */
+	public void outputWritten(final String file, final long startNanos,
+	        final long durationNanos) {
+		this.traceRecorder.record("write " + new File(file).getName(), "write",
+		        startNanos, durationNanos, Collections.singletonMap("file", file));
+	}
+
+	/**
+	 * Get the load times of the libraries loaded so far.
+	 *
+	 * @return load time in milliseconds by library name
+	 */
+	public Map<String, Long> getLibraryLoadTimes() {
+		return Collections.unmodifiableMap(this.libraryLoadTimes);
+	}
+
+	/**
+	 * Notify the listeners that compilation of a template finished.
+	 *
+	 * @param template
+	 *            the template
+	 * @param css
+	 *            the css
+	 * @param success
+	 *            whether the compilation succeeded
+	 */
+	private void fireTemplateCompiled(final String template, final String css,
+	        final boolean success) {
+		final long now = System.nanoTime();
+		final Long start = this.started.remove(template);
+		if (start == null) {
+			// no matching on_compilation_starting event was seen
+			return;
+		}
+		for (final CompilerListener listener : this.listeners) {
+			listener.templateCompiled(template, css, start, now - start, success);
+		}
+		final FlightRecorderEvents.Event event = this.compileEvents.remove(template);
+		if (event != null && event.isRecording()) {
+			long bytesOut = 0;
+			if (css != null) {
+				bytesOut = new File(css).length();
+			}
+			event.template(template).bytesIn(new File(template).length())
+			        .bytesOut(bytesOut).success(success).commit();
+		}
+		final Map<String, String> args = new LinkedHashMap<>();
+		args.put("template", template);
+		args.put("css", String.valueOf(css));
+		args.put("success", Boolean.toString(success));
+		this.traceRecorder.record("compile " + new File(template).getName(),
+		        "compile", start, now - start, args);
 	}
 
 	/**
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+/**
+ * Receives the per template results of a Sass compilation from the
+ * {@link CompilerCallback}.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public interface CompilerListener {
+
+	/**
+	 * Called when compilation of a template finished.
+	 *
+	 * @param template the template
+	 * @param css the css output, may be {@code null} on error
+	 * @param startNanos {@link System#nanoTime()} when compilation started
+	 * @param durationNanos duration of the compilation in nanoseconds
+	 * @param success {@code false} when the compilation failed
+	 */
+	void templateCompiled(String template, String css, long startNanos,
+	        long durationNanos, boolean success);
+}
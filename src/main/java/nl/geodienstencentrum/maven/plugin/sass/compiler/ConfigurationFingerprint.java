@@ -0,0 +1,93 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.TreeMap;
+
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+
+/**
+ * A stable fingerprint of the configuration that determines the content of
+ * the compiled CSS. The parts are named and hashed in name order using
+ * SHA-256, so the fingerprint does not depend on the order they were added
+ * in.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class ConfigurationFingerprint {
+
+	/** the parts by name. */
+	private final Map<String, String> parts = new TreeMap<>();
+
+	/**
+	 * Add a part.
+	 *
+	 * @param name the name of the part
+	 * @param value the value, {@code null} is allowed
+	 * @return this fingerprint
+	 */
+	public ConfigurationFingerprint add(final String name, final Object value) {
+		this.parts.put(name, String.valueOf(value));
+		return this;
+	}
+
+	/**
+	 * Add the content of a file as a part.
+	 *
+	 * @param name the name of the part
+	 * @param file the file, {@code null} is allowed
+	 * @return this fingerprint
+	 * @throws IOException if the file exists but cannot be read
+	 */
+	public ConfigurationFingerprint addFile(final String name, final File file)
+	        throws IOException {
+		if (file == null || !file.isFile()) {
+			return this.add(name, file);
+		}
+		return this.add(name, Digests.sha256Hex(Files.readAllBytes(file.toPath())));
+	}
+
+	/**
+	 * Create a copy to add more parts to.
+	 *
+	 * @return the copy
+	 */
+	public ConfigurationFingerprint copy() {
+		final ConfigurationFingerprint copy = new ConfigurationFingerprint();
+		copy.parts.putAll(this.parts);
+		return copy;
+	}
+
+	/**
+	 * Compute the fingerprint.
+	 *
+	 * @return hex encoded SHA-256 of the parts
+	 */
+	public String digest() {
+		final StringBuilder content = new StringBuilder();
+		for (final Map.Entry<String, String> part : this.parts.entrySet()) {
+			content.append(part.getKey()).append('=').append(part.getValue())
+			        .append('\n');
+		}
+		return Digests.sha256Hex(content.toString().getBytes(StandardCharsets.UTF_8));
+	}
+}
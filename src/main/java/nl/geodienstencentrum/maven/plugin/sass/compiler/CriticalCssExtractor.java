@@ -0,0 +1,452 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+
+/**
+ * Extracts the rules of the stylesheets of HTML pages that the initial
+ * markup of a page can match, to inline in the page. A page's stylesheets
+ * are found from its {@code <link rel="stylesheet">} elements and pruned
+ * using a {@link CssPruner} on the words of the page, leaving out its
+ * scripts and comments; there is no browser, so the split is by name and
+ * does not know what is above the fold. The page loads its linked
+ * stylesheets later, unchanged: the later rules of a stylesheet may
+ * override a critical rule, and a rule of which some selectors are
+ * critical would lose the others, so only the complete stylesheets keep
+ * their cascade. Relative {@code url()} and {@code @import} references of
+ * the critical CSS are rewritten against the link of their stylesheet, as
+ * the inlined CSS resolves them against the page. Pages are processed in
+ * parallel.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CriticalCssExtractor {
+
+	/** a link element. */
+	private static final Pattern LINK = Pattern.compile("<link\\b[^>]*>",
+	        Pattern.CASE_INSENSITIVE);
+
+	/** the rel attribute of a stylesheet link. */
+	private static final Pattern STYLESHEET = Pattern.compile(
+	        "\\brel\\s*=\\s*[\"']?[^\"'>]*\\bstylesheet\\b", Pattern.CASE_INSENSITIVE);
+
+	/** the href attribute of a link. */
+	private static final Pattern HREF = Pattern.compile(
+	        "\\bhref\\s*=\\s*(?:\"([^\"]*)\"|'([^']*)'|([^\\s>]+))", Pattern.CASE_INSENSITIVE);
+
+	/** the parts of a page that are not its initial markup. */
+	private static final Pattern NOT_MARKUP = Pattern.compile(
+	        "<!--.*?-->|<(script|style)\\b.*?</\\1\\s*>",
+	        Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+
+	/** a source map reference, which does not apply to a part. */
+	private static final Pattern SOURCE_MAP = Pattern.compile(
+	        "/\\*# sourceMappingURL=[^*]*\\*/\\s*");
+
+	/** the reference of a {@code url()} or of an {@code @import} string. */
+	private static final Pattern REFERENCE = Pattern.compile(
+	        "(url\\(\\s*[\"']?|@import\\s+[\"'])([^\"')\\s]+)", Pattern.CASE_INSENSITIVE);
+
+	/** a reference that does not depend on the location of the CSS. */
+	private static final Pattern NOT_RELATIVE = Pattern.compile(
+	        "[A-Za-z][A-Za-z0-9+.-]*:.*|[/#].*");
+
+	/** the directories of the compiled stylesheets. */
+	private final List<File> roots;
+
+	/** names that are critical even if a page does not use them. */
+	private final List<Pattern> safelist;
+
+	/** the directory to write the critical CSS to. */
+	private final File outputDirectory;
+
+	/**
+	 * Create an extractor.
+	 *
+	 * @param roots the directories of the compiled stylesheets, the links of
+	 *            the pages are resolved against
+	 * @param safelist regular expressions matching the whole of class
+	 *            names, ids or element names that are always critical
+	 * @param outputDirectory the directory to write the CSS to
+	 */
+	public CriticalCssExtractor(final List<File> roots, final List<Pattern> safelist,
+	        final File outputDirectory) {
+		this.roots = roots;
+		this.safelist = safelist;
+		this.outputDirectory = outputDirectory;
+	}
+
+	/**
+	 * Extract the critical CSS of the pages in a directory. For a page
+	 * {@code portal/index.html} the critical CSS is written to
+	 * {@code portal/index.critical.css} in the output directory.
+	 *
+	 * @param directory the directory of the pages, skipped if missing
+	 * @param includes Ant style patterns of the pages, relative to the
+	 *            directory
+	 * @param threads number of threads to process pages with
+	 * @return the pages, in the order they were found
+	 * @throws IOException if a page or stylesheet cannot be read or the CSS
+	 *             cannot be written
+	 */
+	public List<Page> extract(final File directory, final String[] includes,
+	        final int threads) throws IOException {
+		final List<Callable<Page>> tasks = new ArrayList<>();
+		for (final String path : pages(directory, includes)) {
+			tasks.add(new Callable<Page>() {
+				@Override
+				public Page call() throws IOException {
+					return extract(path, new String(Files.readAllBytes(
+					        new File(directory, path).toPath()), StandardCharsets.UTF_8));
+				}
+			});
+		}
+
+		final List<Page> pages = new ArrayList<>();
+		if (tasks.isEmpty()) {
+			return pages;
+		}
+		final ExecutorService executor = Executors.newFixedThreadPool(
+		        Math.max(1, Math.min(threads, tasks.size())));
+		try {
+			for (final Future<Page> future : executor.invokeAll(tasks)) {
+				pages.add(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted extracting critical CSS", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return pages;
+	}
+
+	/**
+	 * Extract the critical CSS of a page.
+	 *
+	 * @param path the path of the page, relative to its directory
+	 * @param html the page
+	 * @return the page, without stylesheets if none of its links resolve to
+	 *         a compiled stylesheet
+	 * @throws IOException if a stylesheet cannot be read or the CSS cannot
+	 *             be written
+	 */
+	Page extract(final String path, final String html) throws IOException {
+		final Page page = new Page(path);
+		final StringBuilder critical = new StringBuilder();
+		final CssPruner pruner = new CssPruner(markup(html), this.safelist);
+		for (final String href : stylesheets(html)) {
+			final File css = this.resolve(href);
+			if (css == null) {
+				continue;
+			}
+			final byte[] bytes = Files.readAllBytes(css.toPath());
+			final String text = new String(bytes, StandardCharsets.UTF_8);
+			final CssPruner.Pruned pruned = pruner.prune(text);
+			append(critical, relocate(pruned.getCss(), href));
+			page.stylesheets++;
+			page.size += bytes.length;
+			page.rules += pruned.getRules();
+			page.deferredRules += pruned.getRemovedRules();
+		}
+		if (page.stylesheets == 0) {
+			return page;
+		}
+
+		final String name = FilenameUtils.removeExtension(path);
+		page.critical = this.write(name + ".critical.css", critical);
+		return page;
+	}
+
+	/**
+	 * Find the pages.
+	 *
+	 * @param directory the directory of the pages
+	 * @param includes the patterns of the pages
+	 * @return the paths of the pages relative to the directory, using
+	 *         {@code /}
+	 * @throws IOException if the directory cannot be read
+	 */
+	private static List<String> pages(final File directory, final String[] includes)
+	        throws IOException {
+		final List<String> pages = new ArrayList<>();
+		if (!directory.isDirectory()) {
+			return pages;
+		}
+		final Path root = directory.toPath();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+			        final BasicFileAttributes attrs) {
+				final String relative = FilenameUtils.separatorsToUnix(
+				        root.relativize(file).toString());
+				for (final String include : includes) {
+					if (SelectorUtils.matchPath(include, relative, "/", true)) {
+						pages.add(relative);
+						break;
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		return pages;
+	}
+
+	/**
+	 * Get the words of the initial markup of a page, leaving out comments,
+	 * scripts and style elements.
+	 *
+	 * @param html the page
+	 * @return the index
+	 */
+	static MarkupIndex markup(final String html) {
+		final Set<String> words = new HashSet<>();
+		MarkupIndex.index(NOT_MARKUP.matcher(html).replaceAll(" "), words);
+		return new MarkupIndex(words, 1);
+	}
+
+	/**
+	 * Get the stylesheet links of a page.
+	 *
+	 * @param html the page
+	 * @return the {@code href} of each stylesheet link, in order
+	 */
+	static List<String> stylesheets(final String html) {
+		final List<String> hrefs = new ArrayList<>();
+		final Matcher link = LINK.matcher(NOT_MARKUP.matcher(html).replaceAll(" "));
+		while (link.find()) {
+			if (!STYLESHEET.matcher(link.group()).find()) {
+				continue;
+			}
+			final Matcher href = HREF.matcher(link.group());
+			if (href.find()) {
+				for (int g = 1; g <= 3; g++) {
+					if (href.group(g) != null) {
+						hrefs.add(href.group(g));
+						break;
+					}
+				}
+			}
+		}
+		return hrefs;
+	}
+
+	/**
+	 * Find the compiled stylesheet of a link. The link matches the
+	 * stylesheet whose path relative to a root is the longest end of the
+	 * link, so context paths and template expressions before it do not
+	 * matter.
+	 *
+	 * @param href the link, the query and fragment are ignored
+	 * @return the stylesheet, or {@code null} if there is none
+	 */
+	File resolve(final String href) {
+		String path = href.replaceFirst("[?#].*", "");
+		if (path.contains("://")) {
+			path = path.substring(path.indexOf("://") + 3);
+		}
+		while (!path.isEmpty()) {
+			for (final File root : this.roots) {
+				final File css = new File(root, path);
+				if (css.isFile()) {
+					return css;
+				}
+			}
+			final int slash = path.indexOf('/');
+			if (slash < 0) {
+				break;
+			}
+			path = path.substring(slash + 1);
+		}
+		return null;
+	}
+
+	/**
+	 * Rewrite the relative references of CSS against the link of its
+	 * stylesheet, eg. {@code url(img/logo.png)} of the stylesheet
+	 * {@code ../css/main.css} becomes {@code url(../css/img/logo.png)}.
+	 * Absolute URLs and paths, fragments and data URIs are left as is.
+	 *
+	 * @param css the CSS of the stylesheet
+	 * @param href the link of the stylesheet, as written in the page
+	 * @return the CSS, for the location of the page
+	 */
+	static String relocate(final String css, final String href) {
+		final String link = href.replaceFirst("[?#].*", "");
+		final String base = link.substring(0, link.lastIndexOf('/') + 1);
+		if (base.isEmpty()) {
+			return css;
+		}
+		final Matcher reference = REFERENCE.matcher(css);
+		final StringBuffer out = new StringBuffer();
+		while (reference.find()) {
+			final String url = reference.group(2);
+			reference.appendReplacement(out, Matcher.quoteReplacement(reference.group(1)
+			        + (NOT_RELATIVE.matcher(url).matches() ? url : base + url)));
+		}
+		reference.appendTail(out);
+		return out.toString();
+	}
+
+	/**
+	 * Append the part of a stylesheet.
+	 *
+	 * @param out the parts
+	 * @param css the part, without its source map reference
+	 */
+	private static void append(final StringBuilder out, final String css) {
+		final String part = SOURCE_MAP.matcher(css).replaceAll("").trim();
+		if (part.isEmpty()) {
+			return;
+		}
+		if (out.length() > 0) {
+			out.append('\n');
+		}
+		out.append(part).append('\n');
+	}
+
+	/**
+	 * Write CSS to the output directory.
+	 *
+	 * @param name the relative path of the file
+	 * @param css the CSS
+	 * @return the size in bytes
+	 * @throws IOException if the file cannot be written
+	 */
+	private long write(final String name, final CharSequence css) throws IOException {
+		final File file = new File(this.outputDirectory, name);
+		file.getParentFile().mkdirs();
+		final byte[] bytes = css.toString().getBytes(StandardCharsets.UTF_8);
+		Files.write(file.toPath(), bytes);
+		return bytes.length;
+	}
+
+	/**
+	 * The critical CSS of a page.
+	 */
+	public static final class Page {
+
+		/** the path of the page, relative to its directory. */
+		private final String path;
+
+		/** the number of stylesheets of the page. */
+		private int stylesheets;
+
+		/** the number of style rules of the stylesheets. */
+		private int rules;
+
+		/** the number of style rules that are deferred entirely. */
+		private int deferredRules;
+
+		/** the size of the critical CSS in bytes. */
+		private long critical;
+
+		/** the size of the linked stylesheets in bytes. */
+		private long size;
+
+		/**
+		 * Create a page.
+		 *
+		 * @param path the path of the page
+		 */
+		Page(final String path) {
+			this.path = path;
+		}
+
+		/**
+		 * Get the path of the page.
+		 *
+		 * @return the path relative to the directory of the pages
+		 */
+		public String getPath() {
+			return this.path;
+		}
+
+		/**
+		 * Get the number of compiled stylesheets the page links to.
+		 *
+		 * @return the number of stylesheets, 0 if no CSS was written
+		 */
+		public int getStylesheets() {
+			return this.stylesheets;
+		}
+
+		/**
+		 * Get the number of style rules of the stylesheets.
+		 *
+		 * @return the number of rules
+		 */
+		public int getRules() {
+			return this.rules;
+		}
+
+		/**
+		 * Get the number of style rules of which no selector is critical.
+		 *
+		 * @return the number of rules
+		 */
+		public int getDeferredRules() {
+			return this.deferredRules;
+		}
+
+		/**
+		 * Get the size of the critical CSS.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getCritical() {
+			return this.critical;
+		}
+
+		/**
+		 * Get the size of the stylesheets the page links to, which it loads
+		 * after the critical CSS.
+		 *
+		 * @return the size in bytes
+		 */
+		public long getSize() {
+			return this.size;
+		}
+	}
+}
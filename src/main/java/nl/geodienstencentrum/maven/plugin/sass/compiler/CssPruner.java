@@ -0,0 +1,610 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Removes the selectors from a compiled stylesheet that cannot match the
+ * markup, because they need a class name, id or element name that does not
+ * occur in it. Rules without selectors left are removed, as are
+ * {@code @media}, {@code @supports} and {@code @document} blocks without
+ * rules left. Other at-rules, such as {@code @font-face} and
+ * {@code @keyframes}, are kept. Pruning is conservative: selectors with
+ * escaped names are kept, and pseudo classes, attribute selectors and the
+ * arguments of {@code :not()} do not count.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssPruner {
+
+	/** the at-rules containing style rules. */
+	private static final List<String> CONDITIONAL = Arrays.asList("media", "supports",
+	        "document");
+
+	/** the source map reference at the end of a stylesheet. */
+	private static final Pattern SOURCE_MAP = Pattern.compile(
+	        "/\\*# sourceMappingURL=[^\\s*]+\\s*\\*/\\s*\\z");
+
+	/** the markup. */
+	private final MarkupIndex index;
+
+	/** names that are kept even if the markup does not use them. */
+	private final List<Pattern> safelist;
+
+	/**
+	 * Create a pruner.
+	 *
+	 * @param index the words of the markup
+	 * @param safelist regular expressions matching the whole of class
+	 *            names, ids or element names to keep
+	 */
+	public CssPruner(final MarkupIndex index, final List<Pattern> safelist) {
+		this.index = index;
+		this.safelist = safelist;
+	}
+
+	/**
+	 * Prune a stylesheet.
+	 *
+	 * @param css the stylesheet
+	 * @return the pruned stylesheet and what was removed
+	 */
+	public Pruned prune(final String css) {
+		final Pruned pruned = new Pruned();
+		final Output kept = new Output(css.length());
+		final Output removed = new Output(css.length() / 2);
+		this.block(css, 0, css.length(), kept, removed, pruned);
+		pruned.css = kept.text.toString();
+		pruned.remainder = removed.text.toString();
+		return pruned;
+	}
+
+	/**
+	 * Remove the source map reference at the end of a stylesheet. The
+	 * mappings no longer match a pruned stylesheet, so they are left out
+	 * rather than pointing browsers and bundles at the wrong sources.
+	 *
+	 * @param css the stylesheet
+	 * @return the stylesheet without source map reference, ending with a
+	 *         newline if it had a reference
+	 */
+	public static String withoutSourceMap(final String css) {
+		final Matcher reference = SOURCE_MAP.matcher(css);
+		if (!reference.find()) {
+			return css;
+		}
+		final String text = css.substring(0, reference.start());
+		return text.endsWith("\n") ? text : text + "\n";
+	}
+
+	/**
+	 * Prune the statements of a block.
+	 *
+	 * @param css the stylesheet
+	 * @param start the start of the block content
+	 * @param end the end of the block content
+	 * @param kept the statements that can match, appended to
+	 * @param removed the statements that cannot match, appended to
+	 * @param pruned the counts, updated
+	 */
+	private void block(final String css, final int start, final int end,
+	        final Output kept, final Output removed, final Pruned pruned) {
+		int i = start;
+		while (i < end) {
+			final int prelude = skipTrivia(css, i, end);
+			final int brace = find(css, prelude, end);
+			if (brace >= end || css.charAt(brace) == '}') {
+				// trailing whitespace and comments, eg. the source map URL
+				kept.text.append(css, i, end);
+				if (css.substring(i, end).trim().isEmpty()) {
+					removed.text.append(css, i, end);
+				}
+				break;
+			}
+			if (css.charAt(brace) == ';') {
+				kept.text.append(css, i, brace + 1);
+				removed.text.append(css, i, brace + 1);
+				i = brace + 1;
+				continue;
+			}
+			final int close = matching(css, brace, end);
+			if (close >= end) {
+				kept.text.append(css, i, end);
+				break;
+			}
+
+			if (css.charAt(prelude) == '@') {
+				if (CONDITIONAL.contains(atRuleName(css, prelude))) {
+					final Output innerKept = new Output(close - brace);
+					final Output innerRemoved = new Output(close - brace);
+					this.block(css, brace + 1, close, innerKept, innerRemoved, pruned);
+					kept.appendBlock(css, i, brace, innerKept);
+					removed.appendBlock(css, i, brace, innerRemoved);
+				} else {
+					kept.text.append(css, i, close + 1);
+					kept.statements++;
+				}
+			} else {
+				this.rule(css, i, prelude, brace, close, kept, removed, pruned);
+			}
+			i = close + 1;
+		}
+	}
+
+	/**
+	 * Split the selectors of a style rule into those that can match and
+	 * those that cannot.
+	 *
+	 * @param css the stylesheet
+	 * @param start the start of the leading whitespace and comments
+	 * @param prelude the start of the selectors
+	 * @param brace the index of the opening brace
+	 * @param close the index of the closing brace
+	 * @param kept the rule with the selectors that can match, if any
+	 * @param removed the rule with the selectors that cannot match, if any
+	 * @param pruned the counts, updated
+	 */
+	private void rule(final String css, final int start, final int prelude,
+	        final int brace, final int close, final Output kept, final Output removed,
+	        final Pruned pruned) {
+		final String selectorList = css.substring(prelude, brace);
+		pruned.rules++;
+		final List<String> selectors = new ArrayList<>();
+		final String separator = split(selectorList.trim(), selectors);
+		final List<String> matching = new ArrayList<>();
+		final List<String> unused = new ArrayList<>();
+		for (final String selector : selectors) {
+			if (this.canMatch(selector)) {
+				matching.add(selector);
+			} else {
+				unused.add(selector);
+			}
+		}
+		pruned.removedSelectors += unused.size();
+		if (matching.isEmpty()) {
+			pruned.removedRules++;
+		}
+		int trailing = selectorList.length();
+		while (trailing > 0 && Character.isWhitespace(selectorList.charAt(trailing - 1))) {
+			trailing--;
+		}
+		final String whitespace = selectorList.substring(trailing);
+		kept.appendRule(css, start, prelude, matching, separator, whitespace, brace, close);
+		removed.appendRule(css, start, prelude, unused, separator, whitespace, brace, close);
+	}
+
+	/**
+	 * Whether a selector can match the markup.
+	 *
+	 * @param selector the selector
+	 * @return {@code false} if the selector needs a name the markup does not
+	 *         use
+	 */
+	boolean canMatch(final String selector) {
+		if (selector.indexOf('\\') >= 0) {
+			// an escaped name cannot be looked up in the markup
+			return true;
+		}
+		boolean compoundStart = true;
+		int i = 0;
+		while (i < selector.length()) {
+			final char c = selector.charAt(i);
+			if (c == '[') {
+				i = skipTo(selector, i, '[', ']');
+				compoundStart = false;
+			} else if (c == '(') {
+				i = skipTo(selector, i, '(', ')');
+			} else if (c == ':') {
+				while (i < selector.length() && selector.charAt(i) == ':') {
+					i++;
+				}
+				i = name(selector, i);
+				compoundStart = false;
+			} else if (c == '.' || c == '#') {
+				final int end = name(selector, i + 1);
+				if (end > i + 1 && !this.used(selector.substring(i + 1, end))) {
+					return false;
+				}
+				i = end;
+				compoundStart = false;
+			} else if (Character.isWhitespace(c) || c == '>' || c == '+' || c == '~') {
+				compoundStart = true;
+				i++;
+			} else if (compoundStart && MarkupIndex.isNameChar(c)) {
+				final int end = name(selector, i);
+				final String element = selector.substring(i, end).toLowerCase(Locale.ROOT);
+				if (end < selector.length() && selector.charAt(end) == '|') {
+					// a namespace prefix
+					i = end + 1;
+					continue;
+				}
+				if (!this.used(element)) {
+					return false;
+				}
+				i = end;
+				compoundStart = false;
+			} else {
+				compoundStart = false;
+				i++;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Whether the markup uses a name or the name is safelisted.
+	 *
+	 * @param name the class name, id or element name
+	 * @return {@code true} if the name may be used
+	 */
+	private boolean used(final String name) {
+		if (this.index.contains(name)) {
+			return true;
+		}
+		for (final Pattern pattern : this.safelist) {
+			if (pattern.matcher(name).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Split a selector list at the commas outside parentheses and brackets.
+	 *
+	 * @param selectorList the selector list
+	 * @param selectors the selectors, added to
+	 * @return the first separator, a comma with the whitespace after it
+	 */
+	private static String split(final String selectorList, final List<String> selectors) {
+		String separator = ",";
+		int depth = 0;
+		int start = 0;
+		for (int i = 0; i < selectorList.length(); i++) {
+			final char c = selectorList.charAt(i);
+			if (c == '"' || c == '\'') {
+				i = skipString(selectorList, i, selectorList.length()) - 1;
+			} else if (c == '(' || c == '[') {
+				depth++;
+			} else if (c == ')' || c == ']') {
+				depth--;
+			} else if (c == ',' && depth == 0) {
+				if (selectors.isEmpty()) {
+					int after = i + 1;
+					while (after < selectorList.length()
+					        && Character.isWhitespace(selectorList.charAt(after))) {
+						after++;
+					}
+					separator = selectorList.substring(i, after);
+				}
+				selectors.add(selectorList.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		selectors.add(selectorList.substring(start).trim());
+		return separator;
+	}
+
+	/**
+	 * Get the lower case name of an at-rule, without vendor prefix.
+	 *
+	 * @param css the stylesheet
+	 * @param at the index of the {@code @}
+	 * @return the name
+	 */
+	private static String atRuleName(final String css, final int at) {
+		final String name = css.substring(at + 1, name(css, at + 1)).toLowerCase(Locale.ROOT);
+		if (name.startsWith("-") && name.indexOf('-', 1) > 0) {
+			return name.substring(name.indexOf('-', 1) + 1);
+		}
+		return name;
+	}
+
+	/**
+	 * Skip whitespace and comments.
+	 *
+	 * @param css the stylesheet
+	 * @param start the index to start at
+	 * @param end the end of the block
+	 * @return the index of the next statement
+	 */
+	private static int skipTrivia(final String css, final int start, final int end) {
+		int i = start;
+		while (i < end) {
+			if (Character.isWhitespace(css.charAt(i))) {
+				i++;
+			} else if (css.startsWith("/*", i)) {
+				final int close = css.indexOf("*/", i + 2);
+				i = close < 0 ? end : close + 2;
+			} else {
+				break;
+			}
+		}
+		return Math.min(i, end);
+	}
+
+	/**
+	 * Find the end of a prelude.
+	 *
+	 * @param css the stylesheet
+	 * @param start the start of the prelude
+	 * @param end the end of the block
+	 * @return the index of the {@code {}, {@code ;} or {@code }} ending the
+	 *         prelude, or {@code end}
+	 */
+	private static int find(final String css, final int start, final int end) {
+		int depth = 0;
+		int i = start;
+		while (i < end) {
+			final char c = css.charAt(i);
+			if (c == '"' || c == '\'') {
+				i = skipString(css, i, end);
+				continue;
+			} else if (css.startsWith("/*", i)) {
+				final int close = css.indexOf("*/", i + 2);
+				i = close < 0 ? end : close + 2;
+				continue;
+			} else if (c == '(' || c == '[') {
+				depth++;
+			} else if (c == ')' || c == ']') {
+				depth--;
+			} else if (depth <= 0 && (c == '{' || c == ';' || c == '}')) {
+				return i;
+			}
+			i++;
+		}
+		return end;
+	}
+
+	/**
+	 * Find the closing brace of a block.
+	 *
+	 * @param css the stylesheet
+	 * @param open the index of the opening brace
+	 * @param end the end of the enclosing block
+	 * @return the index of the closing brace, or {@code end}
+	 */
+	private static int matching(final String css, final int open, final int end) {
+		int depth = 0;
+		int i = open;
+		while (i < end) {
+			final char c = css.charAt(i);
+			if (c == '"' || c == '\'') {
+				i = skipString(css, i, end);
+				continue;
+			} else if (css.startsWith("/*", i)) {
+				final int close = css.indexOf("*/", i + 2);
+				i = close < 0 ? end : close + 2;
+				continue;
+			} else if (c == '{') {
+				depth++;
+			} else if (c == '}' && --depth == 0) {
+				return i;
+			}
+			i++;
+		}
+		return end;
+	}
+
+	/**
+	 * Find the end of a string.
+	 *
+	 * @param css the text
+	 * @param start the index of the opening quote
+	 * @param end the end of the text to search
+	 * @return the index after the closing quote
+	 */
+	private static int skipString(final String css, final int start, final int end) {
+		final char quote = css.charAt(start);
+		int i = start + 1;
+		while (i < end && css.charAt(i) != quote) {
+			if (css.charAt(i) == '\\') {
+				i++;
+			}
+			i++;
+		}
+		return Math.min(i + 1, end);
+	}
+
+	/**
+	 * Skip a bracketed part of a selector.
+	 *
+	 * @param selector the selector
+	 * @param start the index of the opening bracket
+	 * @param open the opening bracket
+	 * @param close the closing bracket
+	 * @return the index after the closing bracket
+	 */
+	private static int skipTo(final String selector, final int start, final char open,
+	        final char close) {
+		int depth = 0;
+		int i = start;
+		while (i < selector.length()) {
+			final char c = selector.charAt(i);
+			if (c == '"' || c == '\'') {
+				i = skipString(selector, i, selector.length());
+				continue;
+			} else if (c == open) {
+				depth++;
+			} else if (c == close && --depth == 0) {
+				return i + 1;
+			}
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Find the end of a name.
+	 *
+	 * @param text the text
+	 * @param start the start of the name
+	 * @return the index after the name
+	 */
+	private static int name(final String text, final int start) {
+		int i = start;
+		while (i < text.length() && MarkupIndex.isNameChar(text.charAt(i))) {
+			i++;
+		}
+		return i;
+	}
+
+	/**
+	 * Part of a stylesheet being pruned.
+	 */
+	private static final class Output {
+
+		/** the statements. */
+		private final StringBuilder text;
+
+		/**
+		 * the number of statements, other than {@code @charset} and
+		 * {@code @import}.
+		 */
+		private int statements;
+
+		/**
+		 * Create an output.
+		 *
+		 * @param capacity the expected length
+		 */
+		Output(final int capacity) {
+			this.text = new StringBuilder(capacity);
+		}
+
+		/**
+		 * Append a style rule, unless it has no selectors.
+		 *
+		 * @param css the stylesheet
+		 * @param start the start of the leading whitespace and comments
+		 * @param prelude the start of the selectors
+		 * @param selectors the selectors
+		 * @param separator the separator of the selectors
+		 * @param whitespace the whitespace after the selectors
+		 * @param brace the index of the opening brace
+		 * @param close the index of the closing brace
+		 */
+		void appendRule(final String css, final int start, final int prelude,
+		        final List<String> selectors, final String separator,
+		        final String whitespace, final int brace, final int close) {
+			if (selectors.isEmpty()) {
+				return;
+			}
+			this.text.append(css, start, prelude);
+			for (int s = 0; s < selectors.size(); s++) {
+				if (s > 0) {
+					this.text.append(separator);
+				}
+				this.text.append(selectors.get(s));
+			}
+			this.text.append(whitespace).append(css, brace, close + 1);
+			this.statements++;
+		}
+
+		/**
+		 * Append an at-rule block, unless it has no statements.
+		 *
+		 * @param css the stylesheet
+		 * @param start the start of the leading whitespace and comments
+		 * @param brace the index of the opening brace
+		 * @param inner the statements of the block
+		 */
+		void appendBlock(final String css, final int start, final int brace,
+		        final Output inner) {
+			if (inner.statements == 0) {
+				return;
+			}
+			this.text.append(css, start, brace + 1).append(inner.text).append('}');
+			this.statements++;
+		}
+	}
+
+	/**
+	 * A pruned stylesheet.
+	 */
+	public static final class Pruned {
+
+		/** the pruned stylesheet. */
+		private String css;
+
+		/** the rules and selectors that were removed. */
+		private String remainder;
+
+		/** the number of style rules. */
+		private int rules;
+
+		/** the number of style rules removed. */
+		private int removedRules;
+
+		/** the number of selectors removed. */
+		private int removedSelectors;
+
+		/**
+		 * Get the pruned stylesheet.
+		 *
+		 * @return the stylesheet
+		 */
+		public String getCss() {
+			return this.css;
+		}
+
+		/**
+		 * Get what was removed: the rules with the selectors that cannot
+		 * match, in their {@code @media} blocks. Other at-rules are only
+		 * part of the pruned stylesheet.
+		 *
+		 * @return the removed part of the stylesheet
+		 */
+		public String getRemainder() {
+			return this.remainder;
+		}
+
+		/**
+		 * Get the number of style rules before pruning.
+		 *
+		 * @return the number of rules
+		 */
+		public int getRules() {
+			return this.rules;
+		}
+
+		/**
+		 * Get the number of style rules removed.
+		 *
+		 * @return the number of rules
+		 */
+		public int getRemovedRules() {
+			return this.removedRules;
+		}
+
+		/**
+		 * Get the number of selectors removed, including those of the
+		 * removed rules.
+		 *
+		 * @return the number of selectors
+		 */
+		public int getRemovedSelectors() {
+			return this.removedSelectors;
+		}
+	}
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * A Sass template that is compiled into its own CSS file, as opposed to a
+ * partial that is only imported.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class EntryPoint {
+
+	/** the Sass template. */
+	private final String template;
+
+	/** the CSS output file. */
+	private final String css;
+
+	/**
+	 * Create an entry point.
+	 *
+	 * @param template the Sass template
+	 * @param css the CSS output file
+	 */
+	public EntryPoint(final String template, final String css) {
+		this.template = FilenameUtils.separatorsToUnix(template);
+		this.css = FilenameUtils.separatorsToUnix(css);
+	}
+
+	/**
+	 * Find the entry points in a template location the way
+	 * {@code Sass::Plugin::Compiler#file_list} does; all non-partial
+	 * {@code .scss} and {@code .sass} files, recursively, skipping hidden
+	 * files and directories.
+	 *
+	 * @param templateLocation the template location
+	 * @param cssLocation the CSS location for the template location
+	 * @return the sorted entry points, empty if the location does not exist
+	 * @throws IOException if any occurs while walking the template location
+	 */
+	public static List<EntryPoint> scan(final String templateLocation,
+	        final String cssLocation) throws IOException {
+		return scan(Collections.<Entry<String, String>>singletonList(
+		        new SimpleImmutableEntry<>(templateLocation, cssLocation)));
+	}
+
+	/**
+	 * Find the entry points of a number of, possibly nested, template
+	 * locations. The result is the same as scanning every location on its
+	 * own, but only the outermost locations are walked, once; each template
+	 * found is mapped to the CSS location of every template location that
+	 * contains it.
+	 *
+	 * @param templateLocations the template locations and their CSS
+	 *            locations
+	 * @return the entry points, sorted by template
+	 * @throws IOException if any occurs while walking the template locations
+	 */
+	public static List<EntryPoint> scan(
+	        final List<Entry<String, String>> templateLocations) throws IOException {
+		final Map<Path, List<Entry<String, String>>> locations = new HashMap<>();
+		for (final Entry<String, String> location : templateLocations) {
+			final Path path = new File(location.getKey()).toPath()
+			        .toAbsolutePath().normalize();
+			if (!locations.containsKey(path)) {
+				locations.put(path, new ArrayList<Entry<String, String>>());
+			}
+			locations.get(path).add(location);
+		}
+		// the locations and their parents, hidden directories on the way
+		// to a location are walked
+		final Set<Path> required = new HashSet<>();
+		for (final Path path : locations.keySet()) {
+			Path p = path;
+			while (p != null && required.add(p)) {
+				p = p.getParent();
+			}
+		}
+
+		final Set<EntryPoint> entryPoints = new HashSet<>();
+		for (final Path root : minimalRoots(locations.keySet())) {
+			if (!Files.isDirectory(root)) {
+				continue;
+			}
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult preVisitDirectory(final Path dir,
+				        final BasicFileAttributes attrs) {
+					if (isHidden(dir) && !required.contains(dir)) {
+						return FileVisitResult.SKIP_SUBTREE;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(final Path file,
+				        final BasicFileAttributes attrs) {
+					if (attrs.isRegularFile()
+					        && isTemplate(file.getFileName().toString())) {
+						addEntryPoints(file, root, locations, entryPoints);
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		}
+
+		final List<EntryPoint> result = new ArrayList<>(entryPoints);
+		Collections.sort(result, new Comparator<EntryPoint>() {
+			@Override
+			public int compare(final EntryPoint a, final EntryPoint b) {
+				final int byTemplate = a.template.compareTo(b.template);
+				if (byTemplate != 0) {
+					return byTemplate;
+				}
+				return a.css.compareTo(b.css);
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * Add the entry points of a template for each template location that
+	 * contains it, up to the first hidden directory.
+	 *
+	 * @param file the template
+	 * @param root the outermost template location being walked
+	 * @param locations the template locations by path
+	 * @param entryPoints the entry points to add to
+	 */
+	private static void addEntryPoints(final Path file, final Path root,
+	        final Map<Path, List<Entry<String, String>>> locations,
+	        final Set<EntryPoint> entryPoints) {
+		for (Path dir = file.getParent(); dir != null && dir.startsWith(root);
+		        dir = dir.getParent()) {
+			final List<Entry<String, String>> here = locations.get(dir);
+			if (here != null) {
+				final String relativePath = FilenameUtils.separatorsToUnix(
+				        dir.relativize(file).toString());
+				for (final Entry<String, String> location : here) {
+					entryPoints.add(new EntryPoint(
+					        location.getKey() + "/" + relativePath,
+					        location.getValue() + "/"
+					                + FilenameUtils.removeExtension(relativePath)
+					                + ".css"));
+				}
+			}
+			if (isHidden(dir)) {
+				// Sass does not look into hidden directories
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Reduce a set of directories to those that are not inside another one.
+	 *
+	 * @param paths the absolute, normalised directories
+	 * @return the outermost directories, sorted
+	 */
+	static List<Path> minimalRoots(final Set<Path> paths) {
+		final List<Path> roots = new ArrayList<>();
+		for (final Path path : paths) {
+			boolean nested = false;
+			for (Path p = path.getParent(); p != null && !nested; p = p.getParent()) {
+				nested = paths.contains(p);
+			}
+			if (!nested) {
+				roots.add(path);
+			}
+		}
+		Collections.sort(roots);
+		return roots;
+	}
+
+	/**
+	 * Test whether a file name is a Sass entry point, that is a non-partial
+	 * {@code .scss} or {@code .sass} file.
+	 *
+	 * @param name the file name
+	 * @return {@code true} for an entry point
+	 */
+	public static boolean isTemplate(final String name) {
+		return !name.startsWith("_") && !name.startsWith(".")
+		        && (name.endsWith(".scss") || name.endsWith(".sass"));
+	}
+
+	/**
+	 * Test whether a path is hidden from Ruby's {@code Dir.glob}.
+	 *
+	 * @param path the path
+	 * @return {@code true} when the name starts with a dot
+	 */
+	private static boolean isHidden(final Path path) {
+		return path.getFileName() != null
+		        && path.getFileName().toString().startsWith(".");
+	}
+
+	/**
+	 * Get the Sass template.
+	 *
+	 * @return the template path, using unix separators
+	 */
+	public String getTemplate() {
+		return this.template;
+	}
+
+	/**
+	 * Get the CSS output.
+	 *
+	 * @return the css path, using unix separators
+	 */
+	public String getCss() {
+		return this.css;
+	}
+
+	/**
+	 * Get the size of the template.
+	 *
+	 * @return the size of the template in bytes, 0 if it does not exist
+	 */
+	public long getTemplateSize() {
+		return new File(this.template).length();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean equals(final Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof EntryPoint)) {
+			return false;
+		}
+		final EntryPoint other = (EntryPoint) obj;
+		return this.template.equals(other.template)
+		        && this.css.equals(other.css);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int hashCode() {
+		return 31 * this.template.hashCode() + this.css.hashCode();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return this.template + " => " + this.css;
+	}
+}
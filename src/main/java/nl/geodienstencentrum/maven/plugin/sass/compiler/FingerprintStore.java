@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static nl.geodienstencentrum.maven.plugin.sass.compiler.PathPropertiesStore.key;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * The configuration fingerprints the CSS files were compiled with, persisted
+ * in a properties file in the build directory.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class FingerprintStore {
+
+	/** name of the fingerprint file in the build directory. */
+	public static final String FILE_NAME = "sass-fingerprints.properties";
+
+	/** prefix of the keys of the partials a CSS file was compiled from. */
+	private static final String IMPORTS = "imports:";
+
+	/** fingerprint by CSS file. */
+	private final PathPropertiesStore fingerprints;
+
+	/**
+	 * Create a store backed by a file, reading the existing fingerprints if
+	 * present.
+	 *
+	 * @param file the fingerprint file
+	 * @param log the maven logging instance to use for messages
+	 */
+	public FingerprintStore(final File file, final Log log) {
+		this.fingerprints = new PathPropertiesStore(file, "fingerprints",
+		        "Sass configuration fingerprints", log);
+	}
+
+	/**
+	 * Get the fingerprint a CSS file was compiled with.
+	 *
+	 * @param css the CSS file
+	 * @return the fingerprint or {@code null} if unknown
+	 */
+	public String get(final String css) {
+		return this.fingerprints.get(key(css));
+	}
+
+	/**
+	 * Record the fingerprint a CSS file was compiled with.
+	 *
+	 * @param css the CSS file
+	 * @param fingerprint the fingerprint
+	 */
+	public void put(final String css, final String fingerprint) {
+		this.fingerprints.put(key(css), fingerprint);
+	}
+
+	/**
+	 * Get the partials a CSS file was compiled from.
+	 *
+	 * @param css the CSS file
+	 * @return the paths of the imported files, empty if unknown
+	 */
+	public List<String> getImports(final String css) {
+		final String imports = this.fingerprints.get(IMPORTS + key(css));
+		if (imports == null || imports.isEmpty()) {
+			return Collections.emptyList();
+		}
+		return Arrays.asList(imports.split(File.pathSeparator));
+	}
+
+	/**
+	 * Record the partials a CSS file was compiled from.
+	 *
+	 * @param css the CSS file
+	 * @param imports the imported files
+	 */
+	public void putImports(final String css, final Collection<File> imports) {
+		final StringBuilder paths = new StringBuilder();
+		for (final File file : imports) {
+			if (paths.length() > 0) {
+				paths.append(File.pathSeparator);
+			}
+			paths.append(file.getAbsolutePath());
+		}
+		this.fingerprints.put(IMPORTS + key(css), paths.toString());
+	}
+
+	/**
+	 * Write the fingerprint file.
+	 */
+	public void save() {
+		this.fingerprints.save();
+	}
+}
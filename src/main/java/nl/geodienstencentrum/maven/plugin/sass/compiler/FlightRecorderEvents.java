@@ -0,0 +1,376 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Emits JDK Flight Recorder events for the phases of the plugin, so Sass
+ * work can be correlated with GC and I/O in a recording. The plugin is built
+ * for Java 7, so the event types are created at runtime through
+ * {@code jdk.jfr.EventFactory} (Java 11 and later); on older runtimes, or
+ * when not enabled, no events are emitted and {@link #begin(Type)} returns a
+ * shared no-op event. The no-op event is also returned, without creating a
+ * Flight Recorder event, while no recording wants the type of event.
+ *
+ * <p>
+ * Each event carries the template (or other input) path, the bytes read and
+ * written and whether the phase succeeded. The events are in the
+ * {@code Maven / Sass} category and named
+ * {@code nl.geodienstencentrum.sass.<Type>}, eg.
+ * {@code nl.geodienstencentrum.sass.TemplateCompile}.
+ * </p>
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class FlightRecorderEvents {
+
+	/** the event types. */
+	public enum Type {
+		/** creating and starting a JRuby runtime. */
+		RUNTIME_BOOT("RuntimeBoot", "Sass Runtime Boot"),
+		/** evaluating a Ruby script. */
+		SCRIPT_EVALUATION("ScriptEvaluation", "Sass Script Evaluation"),
+		/** compiling a template. */
+		TEMPLATE_COMPILE("TemplateCompile", "Sass Template Compile"),
+		/** running scss-lint. */
+		LINT("Lint", "scss-lint Run"),
+		/** transforming the scss-lint results into the site report. */
+		LINT_REPORT("LintReport", "scss-lint Report Transform");
+
+		/** name of the event type, without the prefix. */
+		private final String eventName;
+
+		/** human readable label of the event type. */
+		private final String label;
+
+		/**
+		 * Create a type.
+		 *
+		 * @param eventName name of the event type, without the prefix
+		 * @param label human readable label
+		 */
+		Type(final String eventName, final String label) {
+			this.eventName = eventName;
+			this.label = label;
+		}
+
+		/**
+		 * Get the full name of the event type.
+		 *
+		 * @return the name
+		 */
+		public String getEventName() {
+			return PREFIX + this.eventName;
+		}
+	}
+
+	/** prefix of the event type names. */
+	public static final String PREFIX = "nl.geodienstencentrum.sass.";
+
+	/** arguments of a method without parameters. */
+	private static final Object[] NO_ARGS = new Object[0];
+
+	/** the event returned when no event is recorded. */
+	private static final Event NO_EVENT = new Event(null);
+
+	/** events that are not emitted. */
+	private static final FlightRecorderEvents DISABLED = new FlightRecorderEvents(null);
+
+	/** the registered event types, created on first use. */
+	private static FlightRecorderEvents registered;
+
+	/**
+	 * the {@code jdk.jfr.EventFactory} by event type, {@code null} if
+	 * disabled.
+	 */
+	private final Map<Type, Object> factories;
+
+	/** the {@code jdk.jfr.EventType} by event type. */
+	private final Map<Type, Object> eventTypes = new EnumMap<>(Type.class);
+
+	/** {@code EventType.isEnabled()}. */
+	private Method typeEnabled;
+
+	/** {@code EventFactory.newEvent()}. */
+	private Method newEvent;
+
+	/** {@code Event.isEnabled()}. */
+	private Method isEnabled;
+
+	/** {@code Event.begin()}. */
+	private Method begin;
+
+	/** {@code Event.set(int, Object)}. */
+	private Method set;
+
+	/** {@code Event.commit()}. */
+	private Method commit;
+
+	/**
+	 * Create the events.
+	 *
+	 * @param factories the event factory by type, {@code null} if disabled
+	 */
+	private FlightRecorderEvents(final Map<Type, Object> factories) {
+		this.factories = factories;
+	}
+
+	/**
+	 * Get the events.
+	 *
+	 * @param enabled whether to emit events
+	 * @param log the maven logging instance to use for messages
+	 * @return the events, disabled if not enabled or if the runtime has no
+	 *         Flight Recorder API
+	 */
+	public static synchronized FlightRecorderEvents create(final boolean enabled,
+	        final Log log) {
+		if (!enabled) {
+			return DISABLED;
+		}
+		if (registered == null) {
+			try {
+				registered = register();
+			} catch (ReflectiveOperationException | RuntimeException e) {
+				log.warn("Flight Recorder events are not available on this Java runtime: " + e);
+				registered = DISABLED;
+			}
+		}
+		return registered;
+	}
+
+	/**
+	 * Test if events are emitted.
+	 *
+	 * @return {@code true} if events are emitted
+	 */
+	public boolean isEnabled() {
+		return this.factories != null;
+	}
+
+	/**
+	 * Begin an event on the current thread. The event must be committed on
+	 * the same thread.
+	 *
+	 * @param type the type of event
+	 * @return the event, a no-op event if disabled or no recording wants it
+	 */
+	public Event begin(final Type type) {
+		if (this.factories == null) {
+			return NO_EVENT;
+		}
+		try {
+			if (!(Boolean) this.typeEnabled.invoke(this.eventTypes.get(type), NO_ARGS)) {
+				return NO_EVENT;
+			}
+			final Object event = this.newEvent.invoke(this.factories.get(type), NO_ARGS);
+			if (!(Boolean) this.isEnabled.invoke(event, NO_ARGS)) {
+				return NO_EVENT;
+			}
+			this.begin.invoke(event, NO_ARGS);
+			return new Event(this, event);
+		} catch (IllegalAccessException | InvocationTargetException e) {
+			return NO_EVENT;
+		}
+	}
+
+	/**
+	 * Register the event types with the Flight Recorder.
+	 *
+	 * @return the events
+	 * @throws ReflectiveOperationException if the Flight Recorder API is not
+	 *             available
+	 */
+	private static FlightRecorderEvents register() throws ReflectiveOperationException {
+		final Class<?> factoryClass = Class.forName("jdk.jfr.EventFactory");
+		final Class<?> eventClass = Class.forName("jdk.jfr.Event");
+		final Constructor<?> annotation = Class.forName("jdk.jfr.AnnotationElement")
+		        .getConstructor(Class.class, Object.class);
+		final Constructor<?> field = Class.forName("jdk.jfr.ValueDescriptor")
+		        .getConstructor(Class.class, String.class);
+		final Method create = factoryClass.getMethod("create", List.class, List.class);
+
+		final List<Object> fields = Arrays.asList(
+		        field.newInstance(String.class, "template"),
+		        field.newInstance(long.class, "bytesIn"),
+		        field.newInstance(long.class, "bytesOut"),
+		        field.newInstance(boolean.class, "success"));
+		final Map<Type, Object> factories = new EnumMap<>(Type.class);
+		for (final Type type : Type.values()) {
+			final List<Object> annotations = new ArrayList<>();
+			annotations.add(annotation.newInstance(annotationType("jdk.jfr.Name"),
+			        type.getEventName()));
+			annotations.add(annotation.newInstance(annotationType("jdk.jfr.Label"),
+			        type.label));
+			annotations.add(annotation.newInstance(annotationType("jdk.jfr.Category"),
+			        new String[] {"Maven", "Sass"}));
+			factories.put(type, create.invoke(null, annotations, fields));
+		}
+
+		final FlightRecorderEvents events = new FlightRecorderEvents(factories);
+		final Method getEventType = factoryClass.getMethod("getEventType");
+		for (final Map.Entry<Type, Object> factory : factories.entrySet()) {
+			events.eventTypes.put(factory.getKey(), getEventType.invoke(factory.getValue()));
+		}
+		events.typeEnabled = Class.forName("jdk.jfr.EventType").getMethod("isEnabled");
+		events.newEvent = factoryClass.getMethod("newEvent");
+		events.isEnabled = eventClass.getMethod("isEnabled");
+		events.begin = eventClass.getMethod("begin");
+		events.set = eventClass.getMethod("set", int.class, Object.class);
+		events.commit = eventClass.getMethod("commit");
+		return events;
+	}
+
+	/**
+	 * Load an annotation type.
+	 *
+	 * @param name the class name
+	 * @return the annotation type
+	 * @throws ClassNotFoundException if not available
+	 */
+	private static Class<? extends Annotation> annotationType(final String name)
+	        throws ClassNotFoundException {
+		return Class.forName(name).asSubclass(Annotation.class);
+	}
+
+	/**
+	 * An event that has begun. The setters return the event, so an event
+	 * can be filled and committed in one statement.
+	 */
+	public static final class Event {
+
+		/** the events, {@code null} for the no-op event. */
+		private final FlightRecorderEvents events;
+
+		/** the {@code jdk.jfr.Event}. */
+		private final Object event;
+
+		/**
+		 * Create the no-op event.
+		 *
+		 * @param events {@code null}
+		 */
+		private Event(final FlightRecorderEvents events) {
+			this(events, null);
+		}
+
+		/**
+		 * Create an event.
+		 *
+		 * @param events the events
+		 * @param event the {@code jdk.jfr.Event}
+		 */
+		private Event(final FlightRecorderEvents events, final Object event) {
+			this.events = events;
+			this.event = event;
+		}
+
+		/**
+		 * Test if the event is recorded, to skip computing expensive
+		 * values otherwise.
+		 *
+		 * @return {@code false} for the no-op event
+		 */
+		public boolean isRecording() {
+			return this.events != null;
+		}
+
+		/**
+		 * Set the template or other input path.
+		 *
+		 * @param template the path
+		 * @return this event
+		 */
+		public Event template(final String template) {
+			return this.set(0, template);
+		}
+
+		/**
+		 * Set the number of bytes read.
+		 *
+		 * @param bytes the number of bytes
+		 * @return this event
+		 */
+		public Event bytesIn(final long bytes) {
+			return this.set(1, bytes);
+		}
+
+		/**
+		 * Set the number of bytes written.
+		 *
+		 * @param bytes the number of bytes
+		 * @return this event
+		 */
+		public Event bytesOut(final long bytes) {
+			return this.set(2, bytes);
+		}
+
+		/**
+		 * Set whether the phase succeeded.
+		 *
+		 * @param success {@code true} on success
+		 * @return this event
+		 */
+		public Event success(final boolean success) {
+			return this.set(3, success);
+		}
+
+		/**
+		 * End and commit the event.
+		 */
+		public void commit() {
+			if (this.events == null) {
+				return;
+			}
+			try {
+				this.events.commit.invoke(this.event, NO_ARGS);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				// the event is lost, the build goes on
+			}
+		}
+
+		/**
+		 * Set a field.
+		 *
+		 * @param index the index of the field
+		 * @param value the value
+		 * @return this event
+		 */
+		private Event set(final int index, final Object value) {
+			if (this.events == null) {
+				return this;
+			}
+			try {
+				this.events.set.invoke(this.event, index, value);
+			} catch (IllegalAccessException | InvocationTargetException e) {
+				// the field stays empty
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+
+import org.apache.commons.io.FilenameUtils;
+
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+
+/**
+ * Java implementations of the Compass image helpers {@code image-width},
+ * {@code image-height} and {@code inline-image}. Images are resolved
+ * against an images directory, like Compass: an existing file is used as
+ * is, any other path, also one with a leading slash, is relative to the
+ * images directory. Dimensions and data URIs are cached by the
+ * SHA-1 hash of the image, so each image is read for its size and encoded
+ * once, however often and by however many templates it is used; only the
+ * header of an image is decoded to get its size.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class ImageFunctions {
+
+	/** mime types by file extension. */
+	private static final Map<String, String> MIME_TYPES = new HashMap<>();
+
+	static {
+		MIME_TYPES.put("png", "image/png");
+		MIME_TYPES.put("gif", "image/gif");
+		MIME_TYPES.put("jpg", "image/jpeg");
+		MIME_TYPES.put("jpeg", "image/jpeg");
+		MIME_TYPES.put("svg", "image/svg+xml");
+		MIME_TYPES.put("webp", "image/webp");
+		MIME_TYPES.put("bmp", "image/bmp");
+		MIME_TYPES.put("ico", "image/x-icon");
+		MIME_TYPES.put("cur", "image/x-icon");
+	}
+
+	/** the Base64 alphabet. */
+	private static final char[] BASE64 = ("ABCDEFGHIJKLMNOPQRSTUVWXYZ"
+	        + "abcdefghijklmnopqrstuvwxyz0123456789+/").toCharArray();
+
+	/** the directory images are resolved against. */
+	private volatile File imagesDirectory;
+
+	/** image hashes by path, modification time and size. */
+	private final ConcurrentMap<String, String> hashes = new ConcurrentHashMap<>();
+
+	/** width and height by image hash. */
+	private final ConcurrentMap<String, int[]> dimensions = new ConcurrentHashMap<>();
+
+	/** data URIs by image hash and mime type. */
+	private final ConcurrentMap<String, String> dataUris = new ConcurrentHashMap<>();
+
+	/** number of images decoded for their size. */
+	private final AtomicInteger decoded = new AtomicInteger();
+
+	/** number of images encoded as data URI. */
+	private final AtomicInteger encoded = new AtomicInteger();
+
+	/**
+	 * Create the functions.
+	 *
+	 * @param imagesDirectory the directory images are resolved against
+	 */
+	public ImageFunctions(final File imagesDirectory) {
+		this.imagesDirectory = imagesDirectory;
+	}
+
+	/**
+	 * Set the directory images are resolved against, eg. the images path
+	 * of the Compass configuration once it is loaded.
+	 *
+	 * @param imagesDirectory the directory
+	 */
+	public void setImagesDirectory(final File imagesDirectory) {
+		this.imagesDirectory = imagesDirectory;
+	}
+
+	/**
+	 * Get the functions.
+	 *
+	 * @return {@code image-width}, {@code image-height} and
+	 *         {@code inline-image}
+	 */
+	public List<SassFunction> getFunctions() {
+		return Arrays.<SassFunction>asList(new Function("image-width", 1),
+		        new Function("image-height", 1),
+		        new Function("inline-image", 1, "mime-type"));
+	}
+
+	/**
+	 * Get the width of an image.
+	 *
+	 * @param path the image, relative to the images directory
+	 * @return the width in pixels
+	 * @throws IOException if the image cannot be read
+	 */
+	public int getWidth(final String path) throws IOException {
+		return this.getDimensions(path)[0];
+	}
+
+	/**
+	 * Get the height of an image.
+	 *
+	 * @param path the image, relative to the images directory
+	 * @return the height in pixels
+	 * @throws IOException if the image cannot be read
+	 */
+	public int getHeight(final String path) throws IOException {
+		return this.getDimensions(path)[1];
+	}
+
+	/**
+	 * Get the data URI of an image.
+	 *
+	 * @param path the image, relative to the images directory
+	 * @param mimeType the mime type or {@code null} to derive it from the
+	 *            file extension
+	 * @return the data URI
+	 * @throws IOException if the image cannot be read or has an unknown type
+	 */
+	public String getDataUri(final String path, final String mimeType)
+	        throws IOException {
+		final File file = this.resolve(path);
+		String type = mimeType;
+		if (type == null) {
+			type = MIME_TYPES.get(FilenameUtils.getExtension(file.getName())
+			        .toLowerCase(Locale.ROOT));
+			if (type == null) {
+				throw new IOException("A mime type could not be determined for "
+				        + file + ", please specify one explicitly.");
+			}
+		}
+		final String key = this.getHash(file) + '|' + type;
+		String uri = this.dataUris.get(key);
+		if (uri == null) {
+			uri = "data:" + type + ";base64," + base64(Files.readAllBytes(file.toPath()));
+			this.encoded.incrementAndGet();
+			this.dataUris.putIfAbsent(key, uri);
+		}
+		return uri;
+	}
+
+	/**
+	 * Get the number of images decoded for their size.
+	 *
+	 * @return the number of decoded images
+	 */
+	public int getDecoded() {
+		return this.decoded.get();
+	}
+
+	/**
+	 * Get the number of images encoded as data URI.
+	 *
+	 * @return the number of encoded images
+	 */
+	public int getEncoded() {
+		return this.encoded.get();
+	}
+
+	/**
+	 * Get the size of an image.
+	 *
+	 * @param path the image
+	 * @return width and height
+	 * @throws IOException if the image cannot be read
+	 */
+	private int[] getDimensions(final String path) throws IOException {
+		final File file = this.resolve(path);
+		final String hash = this.getHash(file);
+		int[] size = this.dimensions.get(hash);
+		if (size == null) {
+			size = readDimensions(file);
+			this.decoded.incrementAndGet();
+			this.dimensions.putIfAbsent(hash, size);
+		}
+		return size;
+	}
+
+	/**
+	 * Resolve an image path, without query or fragment.
+	 *
+	 * @param path the image
+	 * @return the file
+	 * @throws IOException if there is no such file
+	 */
+	private File resolve(final String path) throws IOException {
+		String name = path;
+		final int end = name.indexOf('?') >= 0 ? name.indexOf('?') : name.indexOf('#');
+		if (end >= 0) {
+			name = name.substring(0, end);
+		}
+		File file = new File(name);
+		if (!file.isAbsolute() || !file.isFile()) {
+			while (name.startsWith("/")) {
+				name = name.substring(1);
+			}
+			file = new File(this.imagesDirectory, name);
+		}
+		if (!file.isFile()) {
+			throw new IOException("Image not found: " + file);
+		}
+		return file;
+	}
+
+	/**
+	 * Get the hash of an image, hashing it again only if it changed.
+	 *
+	 * @param file the image
+	 * @return hex encoded SHA-1 of the content
+	 * @throws IOException if the image cannot be read
+	 */
+	private String getHash(final File file) throws IOException {
+		final String key = file.getAbsolutePath() + '|' + file.lastModified() + '|'
+		        + file.length();
+		String hash = this.hashes.get(key);
+		if (hash == null) {
+			hash = Digests.sha1Hex(Files.readAllBytes(file.toPath()));
+			this.hashes.putIfAbsent(key, hash);
+		}
+		return hash;
+	}
+
+	/**
+	 * Read the size of an image from its header.
+	 *
+	 * @param file the image
+	 * @return width and height
+	 * @throws IOException if the image cannot be read or has an unsupported
+	 *             format
+	 */
+	private static int[] readDimensions(final File file) throws IOException {
+		try (ImageInputStream in = ImageIO.createImageInputStream(
+		        new ByteArrayInputStream(Files.readAllBytes(file.toPath())))) {
+			final Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+			if (!readers.hasNext()) {
+				throw new IOException("Unsupported image format: " + file);
+			}
+			final ImageReader reader = readers.next();
+			try {
+				reader.setInput(in, true, true);
+				return new int[] {reader.getWidth(0), reader.getHeight(0)};
+			} finally {
+				reader.dispose();
+			}
+		}
+	}
+
+	/**
+	 * Base64 encode bytes, Java 7 has no public encoder.
+	 *
+	 * @param bytes the bytes
+	 * @return the encoded bytes, padded
+	 */
+	static String base64(final byte[] bytes) {
+		final StringBuilder out = new StringBuilder((bytes.length + 2) / 3 * 4);
+		for (int i = 0; i < bytes.length; i += 3) {
+			final int remaining = bytes.length - i;
+			int chunk = (bytes[i] & 0xff) << 16;
+			if (remaining > 1) {
+				chunk |= (bytes[i + 1] & 0xff) << 8;
+			}
+			if (remaining > 2) {
+				chunk |= bytes[i + 2] & 0xff;
+			}
+			out.append(BASE64[chunk >> 18 & 0x3f]).append(BASE64[chunk >> 12 & 0x3f]);
+			out.append(remaining > 1 ? BASE64[chunk >> 6 & 0x3f] : '=');
+			out.append(remaining > 2 ? BASE64[chunk & 0x3f] : '=');
+		}
+		return out.toString();
+	}
+
+	/**
+	 * One of the image functions.
+	 */
+	private final class Function implements SassFunction {
+
+		/** the name. */
+		private final String name;
+
+		/** the parameters. */
+		private final String[] parameters;
+
+		/** the number of required parameters. */
+		private final int required;
+
+		/**
+		 * Create a function with an {@code image} parameter.
+		 *
+		 * @param name the name
+		 * @param required the number of required parameters
+		 * @param optional the optional parameters
+		 */
+		Function(final String name, final int required, final String... optional) {
+			this.name = name;
+			this.required = required;
+			this.parameters = new String[optional.length + 1];
+			this.parameters[0] = "image";
+			System.arraycopy(optional, 0, this.parameters, 1, optional.length);
+		}
+
+		@Override
+		public String getName() {
+			return this.name;
+		}
+
+		@Override
+		public String[] getParameters() {
+			return this.parameters.clone();
+		}
+
+		@Override
+		public int getRequiredParameters() {
+			return this.required;
+		}
+
+		@Override
+		public SassValue call(final String[] arguments) throws IOException {
+			switch (this.name) {
+			case "image-width":
+				return SassValue.number(getWidth(arguments[0]), "px");
+			case "image-height":
+				return SassValue.number(getHeight(arguments[0]), "px");
+			default:
+				String mimeType = null;
+				if (arguments.length > 1) {
+					mimeType = arguments[1];
+				}
+				return SassValue.string("url('" + getDataUri(arguments[0], mimeType)
+				        + "')", false);
+			}
+		}
+	}
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The {@code @import} graph of Sass templates, built in Java without
+ * booting JRuby. Imports are resolved the way Sass resolves them: relative
+ * to the importing file first, then against each load path, trying the
+ * partial and non-partial {@code .scss} and {@code .sass} variants. Imports
+ * that can not be resolved, typically those of a library such as Compass,
+ * are kept by name.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class ImportGraph {
+
+	/** {@code @import} directive, up to the end of the statement. */
+	private static final Pattern IMPORT = Pattern.compile("@import\\s+([^;{}\\n]+)");
+
+	/** the load paths. */
+	private final List<File> loadPaths;
+
+	/** parsed imports by file. */
+	private final Map<File, List<String>> imports = new HashMap<>();
+
+	/**
+	 * Create an import graph.
+	 *
+	 * @param loadPaths the load paths, usually the template locations
+	 */
+	public ImportGraph(final List<File> loadPaths) {
+		this.loadPaths = new ArrayList<>(loadPaths);
+	}
+
+	/**
+	 * Get the load paths imports are resolved against.
+	 *
+	 * @return the load paths
+	 */
+	public List<File> getLoadPaths() {
+		return Collections.unmodifiableList(this.loadPaths);
+	}
+
+	/**
+	 * Get the transitive dependencies of a template.
+	 *
+	 * @param template the template
+	 * @return the dependencies
+	 * @throws IOException if a template cannot be read
+	 */
+	public Dependencies dependencies(final File template) throws IOException {
+		final Dependencies dependencies = new Dependencies();
+		final Deque<File> todo = new ArrayDeque<>();
+		final Set<File> seen = new LinkedHashSet<>();
+		todo.add(template.getAbsoluteFile());
+		seen.add(template.getAbsoluteFile());
+		while (!todo.isEmpty()) {
+			final File file = todo.poll();
+			for (final String uri : this.getImports(file)) {
+				final File resolved = this.resolve(uri, file);
+				if (resolved == null) {
+					dependencies.unresolved.add(uri);
+				} else if (seen.add(resolved)) {
+					dependencies.files.add(resolved);
+					todo.add(resolved);
+				}
+			}
+		}
+		return dependencies;
+	}
+
+	/**
+	 * Get the imports of a file, as written.
+	 *
+	 * @param file the file
+	 * @return the imported uris, without the plain CSS imports
+	 * @throws IOException if the file cannot be read
+	 */
+	public synchronized List<String> getImports(final File file) throws IOException {
+		List<String> result = this.imports.get(file);
+		if (result == null) {
+			final String content = new String(Files.readAllBytes(file.toPath()),
+			        StandardCharsets.UTF_8);
+			result = parseImports(content);
+			this.imports.put(file, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Forget the parsed imports of a file, eg. after it changed.
+	 *
+	 * @param file the file
+	 */
+	public synchronized void invalidate(final File file) {
+		this.imports.remove(file.getAbsoluteFile());
+	}
+
+	/**
+	 * Resolve an import.
+	 *
+	 * @param uri the import as written
+	 * @param from the importing file
+	 * @return the imported file or {@code null} if it was not found
+	 */
+	public File resolve(final String uri, final File from) {
+		final List<File> dirs = new ArrayList<>(this.loadPaths.size() + 1);
+		dirs.add(from.getAbsoluteFile().getParentFile());
+		dirs.addAll(this.loadPaths);
+		for (final File dir : dirs) {
+			for (final String candidate : candidates(uri)) {
+				final File file = new File(dir, candidate);
+				if (file.isFile()) {
+					return file.getAbsoluteFile();
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * The file names Sass tries for an import.
+	 *
+	 * @param uri the import
+	 * @return relative file names, in order of preference
+	 */
+	static List<String> candidates(final String uri) {
+		final int slash = uri.lastIndexOf('/');
+		final String dir = uri.substring(0, slash + 1);
+		final String name = uri.substring(slash + 1);
+		final List<String> candidates = new ArrayList<>(4);
+		if (name.endsWith(".scss") || name.endsWith(".sass")) {
+			candidates.add(dir + "_" + name);
+			candidates.add(dir + name);
+		} else {
+			candidates.add(dir + "_" + name + ".scss");
+			candidates.add(dir + name + ".scss");
+			candidates.add(dir + "_" + name + ".sass");
+			candidates.add(dir + name + ".sass");
+		}
+		return candidates;
+	}
+
+	/**
+	 * Parse the {@code @import} directives of a Sass or SCSS template.
+	 *
+	 * @param content the template
+	 * @return the imported uris, without the plain CSS imports
+	 */
+	static List<String> parseImports(final String content) {
+		final List<String> result = new ArrayList<>();
+		final Matcher matcher = IMPORT.matcher(stripComments(content));
+		while (matcher.find()) {
+			for (final String part : splitList(matcher.group(1))) {
+				final String uri = unquote(part.trim());
+				if (uri != null && !isCssImport(uri)) {
+					result.add(uri);
+				}
+			}
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/**
+	 * Test whether an import is a plain CSS import, that Sass leaves alone.
+	 *
+	 * @param uri the import
+	 * @return {@code true} for a CSS import
+	 */
+	private static boolean isCssImport(final String uri) {
+		return uri.isEmpty() || uri.endsWith(".css") || uri.startsWith("http://")
+		        || uri.startsWith("https://") || uri.startsWith("//")
+		        || uri.contains("#{");
+	}
+
+	/**
+	 * Remove the quotes of an import.
+	 *
+	 * @param part one import of a list
+	 * @return the uri or {@code null} for a {@code url()} or an import with a
+	 *         media query
+	 */
+	private static String unquote(final String part) {
+		if (part.startsWith("url(")) {
+			return null;
+		}
+		if (part.startsWith("\"") || part.startsWith("'")) {
+			final int end = part.indexOf(part.charAt(0), 1);
+			if (end < 0 || !part.substring(end + 1).trim().isEmpty()) {
+				// unterminated or followed by a media query
+				return null;
+			}
+			return part.substring(1, end);
+		}
+		if (part.contains(" ")) {
+			return null;
+		}
+		// indented syntax allows unquoted imports
+		return part;
+	}
+
+	/**
+	 * Split a comma separated import list, ignoring commas in strings.
+	 *
+	 * @param list the list
+	 * @return the parts
+	 */
+	private static List<String> splitList(final String list) {
+		final List<String> parts = new ArrayList<>();
+		char quote = 0;
+		int start = 0;
+		for (int i = 0; i < list.length(); i++) {
+			final char c = list.charAt(i);
+			if (quote != 0) {
+				if (c == quote) {
+					quote = 0;
+				}
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+			} else if (c == ',') {
+				parts.add(list.substring(start, i));
+				start = i + 1;
+			}
+		}
+		parts.add(list.substring(start));
+		return parts;
+	}
+
+	/**
+	 * Remove {@code /* *}{@code /} and {@code //} comments, leaving strings
+	 * intact.
+	 *
+	 * @param content the template
+	 * @return the template without comments
+	 */
+	static String stripComments(final String content) {
+		final StringBuilder result = new StringBuilder(content.length());
+		char quote = 0;
+		int i = 0;
+		while (i < content.length()) {
+			final char c = content.charAt(i);
+			char next = 0;
+			if (i + 1 < content.length()) {
+				next = content.charAt(i + 1);
+			}
+			if (quote != 0) {
+				result.append(c);
+				if (c == '\\' && next != 0) {
+					result.append(next);
+					i++;
+				} else if (c == quote || c == '\n') {
+					quote = 0;
+				}
+				i++;
+			} else if (c == '"' || c == '\'') {
+				quote = c;
+				result.append(c);
+				i++;
+			} else if (c == '/' && next == '*') {
+				final int end = content.indexOf("*/", i + 2);
+				if (end < 0) {
+					break;
+				}
+				i = end + 2;
+				result.append(' ');
+			} else if (c == '/' && next == '/' && (i == 0 || content.charAt(i - 1) != ':')) {
+				final int end = content.indexOf('\n', i);
+				if (end < 0) {
+					break;
+				}
+				i = end;
+			} else {
+				result.append(c);
+				i++;
+			}
+		}
+		return result.toString();
+	}
+
+	/**
+	 * The transitive dependencies of a template.
+	 */
+	public static class Dependencies {
+
+		/** imported files. */
+		private final Set<File> files = new LinkedHashSet<>();
+
+		/** imports that could not be resolved to a file. */
+		private final Set<String> unresolved = new LinkedHashSet<>();
+
+		/**
+		 * Get the imported files, directly or indirectly.
+		 *
+		 * @return the files
+		 */
+		public Set<File> getFiles() {
+			return this.files;
+		}
+
+		/**
+		 * Get the imports that could not be resolved to a file, eg. those of
+		 * Compass.
+		 *
+		 * @return the unresolved imports
+		 */
+		public Set<String> getUnresolved() {
+			return this.unresolved;
+		}
+	}
+}
@@ -0,0 +1,309 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The JSON of the trace, the statistics, the live reload events and the
+ * source maps, which are small enough not to need a JSON library.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+final class Json {
+
+	/**
+	 * Utility class.
+	 */
+	private Json() {
+	}
+
+	/**
+	 * Quote a string as JSON.
+	 *
+	 * @param value the string
+	 * @return the quoted string
+	 */
+	static String quote(final String value) {
+		final StringBuilder json = new StringBuilder(value.length() + 2).append('"');
+		for (int i = 0; i < value.length(); i++) {
+			final char c = value.charAt(i);
+			switch (c) {
+			case '"':
+				json.append("\\\"");
+				break;
+			case '\\':
+				json.append("\\\\");
+				break;
+			case '\n':
+				json.append("\\n");
+				break;
+			case '\r':
+				json.append("\\r");
+				break;
+			case '\t':
+				json.append("\\t");
+				break;
+			default:
+				if (c < 0x20) {
+					json.append(String.format("\\u%04x", (int) c));
+				} else {
+					json.append(c);
+				}
+			}
+		}
+		return json.append('"').toString();
+	}
+
+	/**
+	 * Parse JSON, which must be a single value.
+	 *
+	 * @param json the JSON
+	 * @return the value: a map, list, string, double, boolean or
+	 *         {@code null}
+	 * @throws IOException if the JSON is not valid
+	 */
+	static Object parse(final String json) throws IOException {
+		return new Reader(json).read();
+	}
+
+	/**
+	 * A reader of JSON values: objects, arrays, strings, numbers, booleans
+	 * and {@code null}.
+	 */
+	private static final class Reader {
+
+		/** the JSON. */
+		private final String json;
+
+		/** the position. */
+		private int position;
+
+		/**
+		 * Create a reader.
+		 *
+		 * @param json the JSON
+		 */
+		Reader(final String json) {
+			this.json = json;
+		}
+
+		/**
+		 * Read the JSON, which must be a single value.
+		 *
+		 * @return the value
+		 * @throws IOException if the JSON is not valid
+		 */
+		Object read() throws IOException {
+			final Object value = this.value();
+			this.skipWhitespace();
+			if (this.position < this.json.length()) {
+				throw this.error("Unexpected content");
+			}
+			return value;
+		}
+
+		/**
+		 * Read a value.
+		 *
+		 * @return the value: a map, list, string, double, boolean or
+		 *         {@code null}
+		 * @throws IOException if the value is not valid
+		 */
+		private Object value() throws IOException {
+			this.skipWhitespace();
+			if (this.position >= this.json.length()) {
+				throw this.error("Unexpected end");
+			}
+			final char c = this.json.charAt(this.position);
+			if (c == '{') {
+				return this.object();
+			} else if (c == '[') {
+				return this.array();
+			} else if (c == '"') {
+				return this.string();
+			} else if (this.json.startsWith("true", this.position)) {
+				this.position += 4;
+				return Boolean.TRUE;
+			} else if (this.json.startsWith("false", this.position)) {
+				this.position += 5;
+				return Boolean.FALSE;
+			} else if (this.json.startsWith("null", this.position)) {
+				this.position += 4;
+				return null;
+			}
+			final int start = this.position;
+			while (this.position < this.json.length()
+			        && "+-0123456789.eE".indexOf(this.json.charAt(this.position)) >= 0) {
+				this.position++;
+			}
+			try {
+				return Double.valueOf(this.json.substring(start, this.position));
+			} catch (NumberFormatException e) {
+				throw this.error("Unexpected character");
+			}
+		}
+
+		/**
+		 * Read an object.
+		 *
+		 * @return the members
+		 * @throws IOException if the object is not valid
+		 */
+		private Map<String, Object> object() throws IOException {
+			final Map<String, Object> object = new LinkedHashMap<>();
+			this.position++;
+			this.skipWhitespace();
+			if (this.consume('}')) {
+				return object;
+			}
+			do {
+				this.skipWhitespace();
+				if (this.position >= this.json.length()
+				        || this.json.charAt(this.position) != '"') {
+					throw this.error("Expected a member name");
+				}
+				final String name = this.string();
+				this.skipWhitespace();
+				if (!this.consume(':')) {
+					throw this.error("Expected ':'");
+				}
+				object.put(name, this.value());
+				this.skipWhitespace();
+			} while (this.consume(','));
+			if (!this.consume('}')) {
+				throw this.error("Expected '}'");
+			}
+			return object;
+		}
+
+		/**
+		 * Read an array.
+		 *
+		 * @return the values
+		 * @throws IOException if the array is not valid
+		 */
+		private List<Object> array() throws IOException {
+			final List<Object> array = new ArrayList<>();
+			this.position++;
+			this.skipWhitespace();
+			if (this.consume(']')) {
+				return array;
+			}
+			do {
+				array.add(this.value());
+				this.skipWhitespace();
+			} while (this.consume(','));
+			if (!this.consume(']')) {
+				throw this.error("Expected ']'");
+			}
+			return array;
+		}
+
+		/**
+		 * Read a string.
+		 *
+		 * @return the string
+		 * @throws IOException if the string is not valid
+		 */
+		private String string() throws IOException {
+			final StringBuilder string = new StringBuilder();
+			this.position++;
+			while (this.position < this.json.length()) {
+				final char c = this.json.charAt(this.position++);
+				if (c == '"') {
+					return string.toString();
+				} else if (c != '\\') {
+					string.append(c);
+				} else if (this.position < this.json.length()) {
+					final char escaped = this.json.charAt(this.position++);
+					switch (escaped) {
+					case 'b':
+						string.append('\b');
+						break;
+					case 'f':
+						string.append('\f');
+						break;
+					case 'n':
+						string.append('\n');
+						break;
+					case 'r':
+						string.append('\r');
+						break;
+					case 't':
+						string.append('\t');
+						break;
+					case 'u':
+						if (this.position + 4 > this.json.length()) {
+							throw this.error("Truncated escape");
+						}
+						try {
+							string.append((char) Integer.parseInt(
+							        this.json.substring(this.position, this.position + 4), 16));
+						} catch (NumberFormatException e) {
+							throw this.error("Invalid escape");
+						}
+						this.position += 4;
+						break;
+					default:
+						string.append(escaped);
+					}
+				}
+			}
+			throw this.error("Unterminated string");
+		}
+
+		/**
+		 * Skip whitespace.
+		 */
+		private void skipWhitespace() {
+			while (this.position < this.json.length()
+			        && Character.isWhitespace(this.json.charAt(this.position))) {
+				this.position++;
+			}
+		}
+
+		/**
+		 * Consume a character if it is next.
+		 *
+		 * @param c the character
+		 * @return {@code true} if it was consumed
+		 */
+		private boolean consume(final char c) {
+			if (this.position < this.json.length() && this.json.charAt(this.position) == c) {
+				this.position++;
+				return true;
+			}
+			return false;
+		}
+
+		/**
+		 * Create an error.
+		 *
+		 * @param message the message
+		 * @return the error, with the position
+		 */
+		private IOException error(final String message) {
+			return new IOException(message + " at position " + this.position
+			        + " of the JSON");
+		}
+	}
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * A loopback server that pushes updated stylesheets to the browsers of the
+ * watch goal, so the stylesheets are swapped without reloading the page.
+ * Browsers include {@code /livereload.js}, which listens for Server-Sent
+ * Events on {@code /events}. Updates arriving within {@link #BATCH_MILLIS}
+ * of each other are pushed as one event, and the time from the first save
+ * to the push is logged. Only pages served from the loopback address, or
+ * from one of the configured origins, may listen, as the events can carry
+ * the content of the stylesheets.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class LiveReloadServer {
+
+	/** time to wait for more updates before pushing, in milliseconds. */
+	static final long BATCH_MILLIS = 100L;
+
+	/** the client script, a resource next to this class. */
+	private static final String SCRIPT = "livereload.js";
+
+	/** the origin of a page served from the loopback address. */
+	private static final Pattern LOOPBACK = Pattern.compile(
+	        "https?://(localhost|127\\.0\\.0\\.1|\\[::1\\])(:\\d+)?");
+
+	/** the server. */
+	private final HttpServer server;
+
+	/** the directories stylesheet paths are made relative to. */
+	private final List<Path> roots = new ArrayList<>();
+
+	/** whether to push the content of the stylesheets. */
+	private final boolean pushContent;
+
+	/** the other origins of pages allowed to listen. */
+	private final Set<String> origins = new HashSet<>();
+
+	/** maven logging instance. */
+	private final Log log;
+
+	/** the event streams of the connected browsers. */
+	private final List<OutputStream> clients = new CopyOnWriteArrayList<>();
+
+	/** the pushing thread. */
+	private final ScheduledExecutorService pusher = Executors
+	        .newSingleThreadScheduledExecutor();
+
+	/** the handler threads. */
+	private final ExecutorService handlers = Executors.newCachedThreadPool();
+
+	/** the updated stylesheets to push, guarded by {@code this}. */
+	private final Set<File> pending = new LinkedHashSet<>();
+
+	/** {@link System#currentTimeMillis()} of the first save, guarded by {@code this}. */
+	private long firstSave;
+
+	/** {@link System#nanoTime()} of the last update, guarded by {@code this}. */
+	private long lastUpdate;
+
+	/** whether a push is scheduled, guarded by {@code this}. */
+	private boolean scheduled;
+
+	/** milliseconds from save to push of the last push. */
+	private volatile long lastLatency = -1L;
+
+	/** number of pushes. */
+	private volatile int pushes;
+
+	/**
+	 * Create a server, call {@link #start()} to accept browsers.
+	 *
+	 * @param port the port to listen on, 0 for any free port
+	 * @param roots the output directories, stylesheets are pushed with their
+	 *            path relative to the directory that contains them
+	 * @param pushContent {@code true} to push the content of the
+	 *            stylesheets, so browsers don't have to load them again
+	 * @param origins the origins of pages not served from the loopback
+	 *            address that may listen, eg. {@code http://myapp.test:8080}
+	 * @param log the maven logging instance to use for messages
+	 * @throws IOException if the port cannot be opened
+	 */
+	public LiveReloadServer(final int port, final Collection<File> roots,
+	        final boolean pushContent, final Collection<String> origins, final Log log)
+	        throws IOException {
+		this.server = HttpServer.create(new InetSocketAddress(
+		        InetAddress.getLoopbackAddress(), port), 0);
+		for (final File root : roots) {
+			this.roots.add(root.getAbsoluteFile().toPath().normalize());
+		}
+		this.pushContent = pushContent;
+		for (final String origin : origins) {
+			String o = origin.trim();
+			while (o.endsWith("/")) {
+				o = o.substring(0, o.length() - 1);
+			}
+			this.origins.add(o);
+		}
+		this.log = log;
+		this.server.setExecutor(this.handlers);
+		this.server.createContext("/" + SCRIPT, new ScriptHandler());
+		this.server.createContext("/events", new EventsHandler());
+	}
+
+	/**
+	 * Start accepting browsers.
+	 */
+	public void start() {
+		this.server.start();
+		this.log.info("Live reload: add <script src=\"http://127.0.0.1:" + this.getPort()
+		        + "/" + SCRIPT + "\"></script> to your pages.");
+	}
+
+	/**
+	 * Close the connections and stop the server.
+	 */
+	public void stop() {
+		this.pusher.shutdownNow();
+		for (final OutputStream client : this.clients) {
+			close(client);
+		}
+		this.clients.clear();
+		this.server.stop(0);
+		this.handlers.shutdownNow();
+	}
+
+	/**
+	 * Get the port the server listens on.
+	 *
+	 * @return the port
+	 */
+	public int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the number of connected browsers.
+	 *
+	 * @return the number of browsers
+	 */
+	public int getClients() {
+		return this.clients.size();
+	}
+
+	/**
+	 * Get the number of pushes.
+	 *
+	 * @return the number of pushes
+	 */
+	public int getPushes() {
+		return this.pushes;
+	}
+
+	/**
+	 * Get the time from the first save to the push of the last push.
+	 *
+	 * @return milliseconds, -1 if nothing was pushed
+	 */
+	public long getLastLatency() {
+		return this.lastLatency;
+	}
+
+	/**
+	 * Handle a saved template or partial, the save time is the modification
+	 * time of the file.
+	 *
+	 * @param file the changed, created or deleted file
+	 */
+	public synchronized void fileChanged(final File file) {
+		final long now = System.currentTimeMillis();
+		long saved = file.lastModified();
+		if (saved <= 0L || saved > now) {
+			saved = now;
+		}
+		if (this.firstSave == 0L || saved < this.firstSave) {
+			this.firstSave = saved;
+		}
+	}
+
+	/**
+	 * Handle an updated stylesheet, it is pushed once no more updates arrive
+	 * for {@link #BATCH_MILLIS}.
+	 *
+	 * @param css the written stylesheet
+	 */
+	public synchronized void stylesheetUpdated(final String css) {
+		this.pending.add(new File(css).getAbsoluteFile());
+		this.lastUpdate = System.nanoTime();
+		if (this.firstSave == 0L) {
+			this.firstSave = System.currentTimeMillis();
+		}
+		if (!this.scheduled) {
+			this.scheduled = true;
+			this.schedule(BATCH_MILLIS);
+		}
+	}
+
+	/**
+	 * Schedule a push.
+	 *
+	 * @param millis the delay in milliseconds
+	 */
+	private void schedule(final long millis) {
+		this.pusher.schedule(new Runnable() {
+			@Override
+			public void run() {
+				push();
+			}
+		}, millis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Push the pending stylesheets, or wait longer if updates are still
+	 * arriving.
+	 */
+	private void push() {
+		final List<File> stylesheets;
+		final long saved;
+		synchronized (this) {
+			final long quiet = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()
+			        - this.lastUpdate);
+			if (quiet < BATCH_MILLIS) {
+				this.schedule(BATCH_MILLIS - quiet);
+				return;
+			}
+			stylesheets = new ArrayList<>(this.pending);
+			saved = this.firstSave;
+			this.pending.clear();
+			this.firstSave = 0L;
+			this.scheduled = false;
+		}
+
+		final String event = this.event(stylesheets);
+		// counted before sending, a browser may act on the event right away
+		this.lastLatency = System.currentTimeMillis() - saved;
+		this.pushes++;
+		int browsers = 0;
+		for (final OutputStream client : this.clients) {
+			try {
+				send(client, event);
+				browsers++;
+			} catch (IOException e) {
+				// the browser went away
+				this.clients.remove(client);
+				close(client);
+			}
+		}
+		this.log.info("Pushed " + stylesheets.size() + " stylesheets to " + browsers
+		        + " browsers " + this.lastLatency + " ms after save.");
+	}
+
+	/**
+	 * Create the event for updated stylesheets.
+	 *
+	 * @param stylesheets the stylesheets
+	 * @return the event
+	 */
+	String event(final List<File> stylesheets) {
+		final StringBuilder json = new StringBuilder("{\"stylesheets\":[");
+		boolean first = true;
+		for (final File css : stylesheets) {
+			if (!first) {
+				json.append(',');
+			}
+			first = false;
+			json.append("{\"path\":").append(Json.quote(this.relativize(css)));
+			if (this.pushContent) {
+				try {
+					json.append(",\"css\":").append(Json.quote(new String(
+					        Files.readAllBytes(css.toPath()), StandardCharsets.UTF_8)));
+				} catch (IOException e) {
+					// the browser loads the stylesheet itself
+					this.log.debug("Could not read " + css, e);
+				}
+			}
+			json.append('}');
+		}
+		return "event: css\ndata: " + json.append("]}") + "\n\n";
+	}
+
+	/**
+	 * Get the path of a stylesheet for the browser.
+	 *
+	 * @param css the stylesheet
+	 * @return the path relative to its output directory, or the file name
+	 */
+	private String relativize(final File css) {
+		final Path path = css.toPath().normalize();
+		Path relative = path.getFileName();
+		for (final Path root : this.roots) {
+			if (path.startsWith(root) && path.getNameCount() > root.getNameCount()) {
+				relative = root.relativize(path);
+				break;
+			}
+		}
+		return FilenameUtils.separatorsToUnix(relative.toString());
+	}
+
+	/**
+	 * Test if a page may listen to the events.
+	 *
+	 * @param origin the {@code Origin} header of the request, {@code null}
+	 *            if not sent by a page of another origin
+	 * @return {@code true} if the page may listen
+	 */
+	boolean isAllowed(final String origin) {
+		return origin == null || LOOPBACK.matcher(origin).matches()
+		        || this.origins.contains(origin);
+	}
+
+	/**
+	 * Send an event to a browser.
+	 *
+	 * @param client the event stream
+	 * @param event the event
+	 * @throws IOException if the browser went away
+	 */
+	private static void send(final OutputStream client, final String event)
+	        throws IOException {
+		synchronized (client) {
+			client.write(event.getBytes(StandardCharsets.UTF_8));
+			client.flush();
+		}
+	}
+
+	/**
+	 * Close the event stream of a browser.
+	 *
+	 * @param client the event stream
+	 */
+	private static void close(final OutputStream client) {
+		try {
+			client.close();
+		} catch (IOException e) {
+			// the browser went away already
+		}
+	}
+
+	/**
+	 * Serves the client script.
+	 */
+	private static final class ScriptHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			final byte[] script;
+			try (InputStream in = LiveReloadServer.class.getResourceAsStream(SCRIPT)) {
+				script = IOUtils.toByteArray(in);
+			}
+			exchange.getResponseHeaders().set("Content-Type",
+			        "application/javascript; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.sendResponseHeaders(200, script.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(script);
+			}
+		}
+	}
+
+	/**
+	 * Keeps the event stream of a browser open.
+	 */
+	private final class EventsHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			final String origin = exchange.getRequestHeaders().getFirst("Origin");
+			if (!isAllowed(origin)) {
+				log.warn("Live reload: refused a page of " + origin
+				        + ", add it to liveReloadOrigins to allow it.");
+				exchange.sendResponseHeaders(403, -1);
+				exchange.close();
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			if (origin != null) {
+				exchange.getResponseHeaders().set("Access-Control-Allow-Origin", origin);
+				exchange.getResponseHeaders().set("Vary", "Origin");
+			}
+			exchange.sendResponseHeaders(200, 0);
+			final OutputStream client = exchange.getResponseBody();
+			send(client, ": connected\n\n");
+			clients.add(client);
+		}
+	}
+}
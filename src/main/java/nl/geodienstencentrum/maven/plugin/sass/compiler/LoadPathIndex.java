@@ -0,0 +1,235 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FilenameUtils;
+
+/**
+ * Answers the file lookups of Sass's filesystem importer from memory. For
+ * every {@code @import} Sass globs each template location and load path for
+ * {@code _name.sass}, {@code name.sass}, {@code _name.scss} and
+ * {@code name.scss}; most of these probes fail. The index lists the Sass
+ * files of a directory once, the first time it is asked about it, and
+ * answers all later lookups in that directory without touching the
+ * filesystem. Safe to share between the runtimes of a parallel build.
+ *
+ * <p>
+ * Listings are kept until {@link #invalidate(String)} is called for a file
+ * in the directory, eg. from the watch callbacks, or until
+ * {@link #clear()}. Lookups the index can't answer exactly, such as names
+ * with glob characters or names that match more than one file, return
+ * {@code null} so Sass falls back to the filesystem.
+ * </p>
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class LoadPathIndex {
+
+	/** characters with a meaning in a Ruby glob. */
+	private static final String GLOB_CHARACTERS = "*?[]{}\\";
+
+	/** the Sass files by normalized directory. */
+	private final ConcurrentMap<String, Set<String>> directories = new ConcurrentHashMap<>();
+
+	/** number of lookups answered from the index. */
+	private final AtomicLong lookups = new AtomicLong();
+
+	/** number of file probes Sass would have done for those lookups. */
+	private final AtomicLong probes = new AtomicLong();
+
+	/** number of directories listed. */
+	private final AtomicLong listings = new AtomicLong();
+
+	/**
+	 * Find the file of an import, the way Sass's
+	 * {@code Filesystem#find_real_file} does.
+	 *
+	 * @param dir the load path or the directory of the importing file
+	 * @param name the import
+	 * @return the path and syntax ({@code sass} or {@code scss}) of the
+	 *         file, an empty array if there is no such file or {@code null}
+	 *         if the index can't tell
+	 */
+	public String[] find(final String dir, final String name) {
+		if (!isIndexable(name)) {
+			return null;
+		}
+		final List<String> candidates = candidates(name);
+		// keep the directory as given, like Sass does, eg. relative
+		final String lookupDir = FilenameUtils.normalizeNoEndSeparator(
+		        FilenameUtils.separatorsToUnix(dir) + "/"
+		        + FilenameUtils.getPath(FilenameUtils.separatorsToUnix(name)), true);
+		if (lookupDir == null || lookupDir.isEmpty() || lookupDir.endsWith("/")) {
+			// outside, or the root of, the current directory or filesystem
+			return null;
+		}
+		final Set<String> files = this.list(normalize(lookupDir));
+		final List<String> found = new ArrayList<>(1);
+		for (final String candidate : candidates) {
+			if (files.contains(candidate)) {
+				found.add(candidate);
+			}
+		}
+		if (found.size() > 1) {
+			// let Sass warn about the ambiguous import
+			return null;
+		}
+		this.lookups.incrementAndGet();
+		this.probes.addAndGet(candidates.size());
+		if (found.isEmpty()) {
+			return new String[0];
+		}
+		final String file = found.get(0);
+		return new String[] {lookupDir + "/" + file, FilenameUtils.getExtension(file)};
+	}
+
+	/**
+	 * Forget the listing of the directory of a file that was created or
+	 * deleted.
+	 *
+	 * @param file the file
+	 */
+	public void invalidate(final String file) {
+		final String path = normalize(file);
+		this.directories.remove(FilenameUtils.getFullPathNoEndSeparator(path));
+		// a created or deleted directory
+		this.directories.remove(path);
+	}
+
+	/**
+	 * Forget all listings.
+	 */
+	public void clear() {
+		this.directories.clear();
+	}
+
+	/**
+	 * Get the number of lookups answered from the index.
+	 *
+	 * @return the number of lookups
+	 */
+	public long getLookups() {
+		return this.lookups.get();
+	}
+
+	/**
+	 * Get the number of filesystem probes saved: the probes Sass would have
+	 * done for the answered lookups minus the directory listings of the
+	 * index.
+	 *
+	 * @return the number of probes saved
+	 */
+	public long getProbesSaved() {
+		return this.probes.get() - this.listings.get();
+	}
+
+	/**
+	 * Get the number of directories listed.
+	 *
+	 * @return the number of listings
+	 */
+	public long getListings() {
+		return this.listings.get();
+	}
+
+	/**
+	 * Get the Sass files in a directory, listing it if needed.
+	 *
+	 * @param dir the normalized absolute directory
+	 * @return the file names, empty if the directory doesn't exist
+	 */
+	private Set<String> list(final String dir) {
+		Set<String> files = this.directories.get(dir);
+		if (files == null) {
+			this.listings.incrementAndGet();
+			files = new HashSet<>();
+			final String[] names = new File(dir).list();
+			if (names != null) {
+				for (final String fileName : names) {
+					if (fileName.endsWith(".sass") || fileName.endsWith(".scss")) {
+						files.add(fileName);
+					}
+				}
+			}
+			files = Collections.unmodifiableSet(files);
+			this.directories.putIfAbsent(dir, files);
+		}
+		return files;
+	}
+
+	/**
+	 * Test if the index can answer a lookup for an import.
+	 *
+	 * @param name the import
+	 * @return {@code false} for absolute names and names with glob
+	 *         characters
+	 */
+	private static boolean isIndexable(final String name) {
+		if (name.isEmpty() || new File(name).isAbsolute() || name.startsWith("/")) {
+			return false;
+		}
+		for (int i = 0; i < name.length(); i++) {
+			if (GLOB_CHARACTERS.indexOf(name.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The file names Sass tries for an import, in Sass's order.
+	 *
+	 * @param name the import
+	 * @return the file names, without directory
+	 */
+	static List<String> candidates(final String name) {
+		final String base = FilenameUtils.getName(FilenameUtils.separatorsToUnix(name));
+		final List<String> candidates = new ArrayList<>(4);
+		if (base.endsWith(".sass") || base.endsWith(".scss")) {
+			candidates.add("_" + base);
+			candidates.add(base);
+		} else {
+			candidates.add("_" + base + ".sass");
+			candidates.add(base + ".sass");
+			candidates.add("_" + base + ".scss");
+			candidates.add(base + ".scss");
+		}
+		return candidates;
+	}
+
+	/**
+	 * Normalize a path to an absolute path with forward slashes and without
+	 * a trailing slash.
+	 *
+	 * @param path the path
+	 * @return the normalized path
+	 */
+	private static String normalize(final String path) {
+		return FilenameUtils.separatorsToUnix(new File(path).getAbsoluteFile()
+		        .toPath().normalize().toString());
+	}
+}
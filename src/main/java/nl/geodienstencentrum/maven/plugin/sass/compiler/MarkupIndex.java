@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FilenameUtils;
+import org.codehaus.plexus.util.SelectorUtils;
+
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+
+/**
+ * The words used in the markup and templates of a project, the candidates
+ * for the class names, ids and element names the stylesheets can match.
+ * Every word counts, not only the values of {@code class} and {@code id}
+ * attributes, so class names built in scripts or template expressions are
+ * found as long as they appear whole. Files are read in parallel.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class MarkupIndex {
+
+	/** number of files read per task. */
+	private static final int CHUNK_SIZE = 64;
+
+	/** the words, and their lower case for element names. */
+	private final Set<String> words;
+
+	/** the number of files read. */
+	private final int files;
+
+	/**
+	 * Create an index.
+	 *
+	 * @param words the words
+	 * @param files the number of files read
+	 */
+	MarkupIndex(final Set<String> words, final int files) {
+		this.words = words;
+		this.files = files;
+	}
+
+	/**
+	 * Index the markup in directories.
+	 *
+	 * @param directories the directories, missing directories are skipped
+	 * @param includes Ant style patterns of the files to read, relative to
+	 *            the directories
+	 * @param threads number of threads to read files with
+	 * @return the index
+	 * @throws IOException if a file cannot be read
+	 */
+	public static MarkupIndex scan(final Collection<File> directories,
+	        final String[] includes, final int threads) throws IOException {
+		final List<Path> paths = new ArrayList<>();
+		for (final File directory : directories) {
+			if (directory.isDirectory()) {
+				collect(directory.toPath(), includes, paths);
+			}
+		}
+
+		final List<Callable<Set<String>>> tasks = new ArrayList<>();
+		for (int i = 0; i < paths.size(); i += CHUNK_SIZE) {
+			final List<Path> chunk = paths.subList(i, Math.min(i + CHUNK_SIZE, paths.size()));
+			tasks.add(new Callable<Set<String>>() {
+				@Override
+				public Set<String> call() throws IOException {
+					final Set<String> found = new HashSet<>();
+					for (final Path path : chunk) {
+						index(new String(Files.readAllBytes(path), StandardCharsets.UTF_8),
+						        found);
+					}
+					return found;
+				}
+			});
+		}
+
+		final Set<String> words = new HashSet<>();
+		final ExecutorService executor = Executors.newFixedThreadPool(
+		        Math.max(1, Math.min(threads, tasks.size())));
+		try {
+			for (final Future<Set<String>> future : executor.invokeAll(tasks)) {
+				words.addAll(future.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading the markup", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return new MarkupIndex(words, paths.size());
+	}
+
+	/**
+	 * Find the files to read.
+	 *
+	 * @param directory the directory
+	 * @param includes the patterns of the files
+	 * @param paths the files, added to
+	 * @throws IOException if the directory cannot be read
+	 */
+	private static void collect(final Path directory, final String[] includes,
+	        final List<Path> paths) throws IOException {
+		Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file,
+			        final BasicFileAttributes attrs) {
+				final String relative = FilenameUtils.separatorsToUnix(
+				        directory.relativize(file).toString());
+				for (final String include : includes) {
+					if (SelectorUtils.matchPath(include, relative, "/", true)) {
+						paths.add(file);
+						break;
+					}
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	/**
+	 * Add the words of a file.
+	 *
+	 * @param text the content of the file
+	 * @param words the words, added to
+	 */
+	static void index(final String text, final Set<String> words) {
+		int i = 0;
+		while (i < text.length()) {
+			if (!isNameChar(text.charAt(i))) {
+				i++;
+				continue;
+			}
+			final int start = i;
+			while (i < text.length() && isNameChar(text.charAt(i))) {
+				i++;
+			}
+			final String word = text.substring(start, i);
+			words.add(word);
+			words.add(word.toLowerCase(Locale.ROOT));
+		}
+	}
+
+	/**
+	 * Whether a character can be part of a class name, id or element name,
+	 * like {@code [\p{L}\p{N}_-]}. The pruner reads selectors with the same
+	 * definition, so a name with eg. accented letters is found in both.
+	 *
+	 * @param c the character
+	 * @return {@code true} for letters, numbers, {@code -} and {@code _}
+	 */
+	static boolean isNameChar(final char c) {
+		if (c == '-' || c == '_' || Character.isLetter(c)) {
+			return true;
+		}
+		switch (Character.getType(c)) {
+			case Character.DECIMAL_DIGIT_NUMBER:
+			case Character.LETTER_NUMBER:
+			case Character.OTHER_NUMBER:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/**
+	 * Whether a class name, id or lower case element name is used.
+	 *
+	 * @param name the name
+	 * @return {@code true} if the markup contains the name
+	 */
+	public boolean contains(final String name) {
+		return this.words.contains(name);
+	}
+
+	/**
+	 * Get the number of files read.
+	 *
+	 * @return the number of files
+	 */
+	public int getFiles() {
+		return this.files;
+	}
+
+	/**
+	 * Get a digest of the words, which changes when a word is added to or
+	 * removed from the markup, so stylesheets are pruned again.
+	 *
+	 * @return the SHA-256 of the sorted words, hex encoded
+	 */
+	public String digest() {
+		final MessageDigest digest = Digests.sha256();
+		for (final String word : new TreeSet<>(this.words)) {
+			digest.update(word.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+		}
+		return Digests.hex(digest.digest());
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Properties keyed by file path, persisted in a properties file in the build
+ * directory. A file that cannot be read or written is logged and otherwise
+ * ignored, as it only holds the state of an earlier build.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+class PathPropertiesStore {
+
+	/** the properties file. */
+	private final File file;
+
+	/** what the file holds, for messages, eg. {@code fingerprints}. */
+	private final String description;
+
+	/** the comment written at the top of the file. */
+	private final String comment;
+
+	/** maven logging instance. */
+	private final Log log;
+
+	/** the properties. */
+	private final Properties properties = new Properties();
+
+	/**
+	 * Create a store backed by a file, reading the existing properties if
+	 * present.
+	 *
+	 * @param file the properties file
+	 * @param description what the file holds, for messages
+	 * @param comment the comment written at the top of the file
+	 * @param log the maven logging instance to use for messages
+	 */
+	PathPropertiesStore(final File file, final String description, final String comment,
+	        final Log log) {
+		this.file = file;
+		this.description = description;
+		this.comment = comment;
+		this.log = log;
+		if (file.isFile()) {
+			try (InputStream in = new FileInputStream(file)) {
+				this.properties.load(in);
+			} catch (IOException e) {
+				log.warn("Ignoring unreadable " + description + " " + file + ": "
+				        + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Get a property.
+	 *
+	 * @param key the key, see {@link #key(String)}
+	 * @return the value or {@code null} if unknown
+	 */
+	String get(final String key) {
+		return this.properties.getProperty(key);
+	}
+
+	/**
+	 * Set a property.
+	 *
+	 * @param key the key, see {@link #key(String)}
+	 * @param value the value
+	 */
+	void put(final String key, final String value) {
+		this.properties.setProperty(key, value);
+	}
+
+	/**
+	 * Write the properties file.
+	 */
+	void save() {
+		this.file.getParentFile().mkdirs();
+		try (OutputStream out = new FileOutputStream(this.file)) {
+			this.properties.store(out, this.comment);
+		} catch (IOException e) {
+			this.log.warn("Could not write " + this.description + " " + this.file + ": "
+			        + e.getMessage());
+		}
+	}
+
+	/**
+	 * Normalise a path so the paths reported by Sass and the paths of the
+	 * entry points match.
+	 *
+	 * @param path the path of a template or CSS file
+	 * @return normalised absolute path using unix separators
+	 */
+	static String key(final String path) {
+		return FilenameUtils.separatorsToUnix(new File(path).toPath()
+		        .toAbsolutePath().normalize().toString());
+	}
+}
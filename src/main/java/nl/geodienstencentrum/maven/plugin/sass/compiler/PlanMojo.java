@@ -0,0 +1,211 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import nl.geodienstencentrum.maven.plugin.sass.AbstractSassMojo;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+/**
+ * Dry run of {@code update-stylesheets}: lists for each entry point whether
+ * it would be compiled and why, with the expected compile time from earlier
+ * builds. Only the staleness and import analysis is done, JRuby is not
+ * started and no files are written.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+@Mojo(name = "plan", threadSafe = true,
+        requiresDependencyResolution = ResolutionScope.COMPILE)
+public class PlanMojo extends AbstractSassMojo {
+
+	/**
+	 * Log the plan.
+	 *
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 * @throws MojoExecutionException when the files cannot be checked
+	 * @throws MojoFailureException never
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (this.isSkip()) {
+			this.getLog().info("Skip planning Sass compilation");
+			return;
+		}
+		for (final String line : this.createPlan()) {
+			this.getLog().info(line);
+		}
+	}
+
+	/**
+	 * Create the plan.
+	 *
+	 * @return a line per entry point followed by a summary
+	 * @throws MojoExecutionException when the files cannot be checked
+	 */
+	List<String> createPlan() throws MojoExecutionException {
+		final List<EntryPoint> entryPoints = this.getEntryPoints();
+		final ImportGraph importGraph = this.createImportGraph();
+		final Map<EntryPoint, String> fingerprints = this
+		        .getConfigurationFingerprints(entryPoints, importGraph);
+		final FingerprintStore fingerprintStore = new FingerprintStore(
+		        new File(buildDirectory, FingerprintStore.FILE_NAME), this.getLog());
+		final CompileStatistics statistics = new CompileStatistics(
+		        new File(buildDirectory, CompileStatistics.FILE_NAME), this.getLog());
+
+		final List<String> plan = new ArrayList<>();
+		try {
+			final Map<EntryPoint, Staleness> staleness = new StalenessChecker(importGraph)
+			        .check(entryPoints, fingerprints, fingerprintStore);
+			final Map<EntryPoint, Double> costs = new CompileScheduler(statistics)
+			        .estimate(entryPoints);
+			final boolean history = hasHistory(entryPoints, statistics);
+			long total = 0;
+			int stale = 0;
+			for (final Map.Entry<EntryPoint, Staleness> entry : staleness.entrySet()) {
+				final EntryPoint entryPoint = entry.getKey();
+				if (!entry.getValue().isStale()) {
+					plan.add("skip    " + entryPoint.getTemplate() + ": up to date");
+					continue;
+				}
+				stale++;
+				final StringBuilder line = new StringBuilder("compile ")
+				        .append(entryPoint.getTemplate()).append(" -> ")
+				        .append(entryPoint.getCss()).append(": ")
+				        .append(describe(entryPoint, entry.getValue(), importGraph));
+				if (history) {
+					final long millis = Math.round(costs.get(entryPoint));
+					total += millis;
+					line.append(" (~").append(millis).append(" ms");
+					if (statistics.getDuration(entryPoint.getTemplate()) == null) {
+						line.append(", estimated from its size");
+					}
+					line.append(')');
+				}
+				plan.add(line.toString());
+			}
+
+			final StringBuilder summary = new StringBuilder().append(stale)
+			        .append(" of ").append(entryPoints.size())
+			        .append(" Sass templates would be compiled");
+			if (stale > 0 && history) {
+				summary.append(", taking about ").append(total).append(" ms");
+				final long libraries = this.getLibraryCost(statistics);
+				if (libraries > 0) {
+					summary.append(" plus about ").append(libraries)
+					        .append(" ms loading libraries");
+				}
+			} else if (stale > 0) {
+				summary.append(", there is no compile history to estimate the time");
+			}
+			plan.add(summary.append('.').toString());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not check file timestamps", e);
+		}
+		return plan;
+	}
+
+	/**
+	 * Describe why an entry point would be compiled.
+	 *
+	 * @param entryPoint the entry point
+	 * @param staleness its staleness
+	 * @param importGraph the import graph
+	 * @return the reason
+	 * @throws IOException if a template cannot be read
+	 */
+	private static String describe(final EntryPoint entryPoint,
+	        final Staleness staleness, final ImportGraph importGraph)
+	        throws IOException {
+		switch (staleness) {
+		case OUTPUT_MISSING:
+			return "output missing";
+		case CONFIG_CHANGED:
+			return "configuration changed";
+		case TEMPLATE_CHANGED:
+			return "template changed";
+		case PARTIAL_MISSING:
+			return "imported partial removed";
+		case PARTIAL_CHANGED:
+			final long css = new File(entryPoint.getCss()).lastModified();
+			File newest = null;
+			for (final File file : importGraph.dependencies(
+			        new File(entryPoint.getTemplate())).getFiles()) {
+				if (file.lastModified() > css
+				        && (newest == null || file.lastModified() > newest.lastModified())) {
+					newest = file;
+				}
+			}
+			if (newest != null) {
+				return "partial " + newest + " changed";
+			}
+			return "partial changed";
+		default:
+			return staleness.toString();
+		}
+	}
+
+	/**
+	 * Test if any of the entry points was compiled before, otherwise costs
+	 * can't be expressed in time.
+	 *
+	 * @param entryPoints the entry points
+	 * @param statistics compile history
+	 * @return {@code true} if there is a recorded duration
+	 */
+	private static boolean hasHistory(final List<EntryPoint> entryPoints,
+	        final CompileStatistics statistics) {
+		for (final EntryPoint entryPoint : entryPoints) {
+			if (statistics.getDuration(entryPoint.getTemplate()) != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Get the recorded load time of the libraries that are loaded up front.
+	 *
+	 * @param statistics compile history
+	 * @return load time in milliseconds, 0 if unknown
+	 */
+	private long getLibraryCost(final CompileStatistics statistics) {
+		long millis = 0;
+		final List<String> libraries = new ArrayList<>();
+		if (this.isUseCompass()) {
+			libraries.add("compass");
+		}
+		if (this.getGems().length > 0) {
+			libraries.add("gems");
+		}
+		for (final String library : libraries) {
+			final Long duration = statistics.getLibraryDuration(library);
+			if (duration != null) {
+				millis += duration;
+			}
+		}
+		return millis;
+	}
+}
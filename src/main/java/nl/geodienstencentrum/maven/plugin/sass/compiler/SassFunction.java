@@ -0,0 +1,63 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.IOException;
+
+/**
+ * A Sass function implemented in Java. Functions are registered with
+ * {@link SassFunctions} and defined in {@code Sass::Script::Functions}, so
+ * templates call them like any other Sass function. Implementations must be
+ * safe to call from multiple threads.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public interface SassFunction {
+
+	/**
+	 * Get the name templates call the function by.
+	 *
+	 * @return the name, eg. {@code image-width}
+	 */
+	String getName();
+
+	/**
+	 * Get the names of the parameters, the required parameters first.
+	 *
+	 * @return the parameter names, eg. {@code image}
+	 */
+	String[] getParameters();
+
+	/**
+	 * Get the number of required parameters.
+	 *
+	 * @return the number of leading parameters that must be passed
+	 */
+	int getRequiredParameters();
+
+	/**
+	 * Call the function.
+	 *
+	 * @param arguments the arguments; strings without quotes, other values
+	 *            as their CSS text, {@code null} for an omitted optional
+	 *            argument
+	 * @return the result
+	 * @throws IOException if the function fails, the message is reported as
+	 *             a Sass error
+	 */
+	SassValue call(String[] arguments) throws IOException;
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The Java implemented Sass functions of a build. The runtime calls
+ * {@link #call(String, String[])} from the Ruby methods defined for the
+ * registered functions, see {@code AbstractSassMojo}.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SassFunctions {
+
+	/** the functions by name. */
+	private final Map<String, SassFunction> functions = new LinkedHashMap<>();
+
+	/**
+	 * Register a function, replacing a function with the same name.
+	 *
+	 * @param function the function
+	 * @return this registry
+	 */
+	public SassFunctions register(final SassFunction function) {
+		this.functions.put(function.getName(), function);
+		return this;
+	}
+
+	/**
+	 * Register functions.
+	 *
+	 * @param functions the functions
+	 * @return this registry
+	 */
+	public SassFunctions registerAll(final List<SassFunction> functions) {
+		for (final SassFunction function : functions) {
+			this.register(function);
+		}
+		return this;
+	}
+
+	/**
+	 * Register a function by class name. The class must implement
+	 * {@link SassFunction} and have a public no argument constructor.
+	 *
+	 * @param className the class name
+	 * @return this registry
+	 * @throws ReflectiveOperationException if the class cannot be loaded or
+	 *             instantiated
+	 */
+	public SassFunctions register(final String className)
+	        throws ReflectiveOperationException {
+		final Class<? extends SassFunction> type = Class
+		        .forName(className, true, SassFunctions.class.getClassLoader())
+		        .asSubclass(SassFunction.class);
+		return this.register(type.newInstance());
+	}
+
+	/**
+	 * Get the registered functions.
+	 *
+	 * @return the functions, in order of registration
+	 */
+	public Collection<SassFunction> getFunctions() {
+		return Collections.unmodifiableCollection(new ArrayList<>(this.functions.values()));
+	}
+
+	/**
+	 * Test if no functions are registered.
+	 *
+	 * @return {@code true} if there are no functions
+	 */
+	public boolean isEmpty() {
+		return this.functions.isEmpty();
+	}
+
+	/**
+	 * Call a function.
+	 *
+	 * @param name the name of the function
+	 * @param arguments the arguments
+	 * @return the result
+	 * @throws IOException if the function is unknown or fails
+	 */
+	public SassValue call(final String name, final String[] arguments)
+	        throws IOException {
+		final SassFunction function = this.functions.get(name);
+		if (function == null) {
+			throw new IOException("No Java Sass function " + name);
+		}
+		return function.call(arguments);
+	}
+
+	/**
+	 * Get the Ruby method name of a function.
+	 *
+	 * @param function the function
+	 * @return the name with dashes replaced by underscores
+	 */
+	public static String getMethodName(final SassFunction function) {
+		return function.getName().replace('-', '_');
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+/**
+ * The result of a {@link SassFunction}: a number with an optional unit or a
+ * quoted or unquoted string. Converted to a {@code Sass::Script::Value} in
+ * the runtime.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class SassValue {
+
+	/** the number, {@code null} for a string. */
+	private final Double number;
+
+	/** the unit of a number or the text of a string, may be {@code null}. */
+	private final String text;
+
+	/** whether a string is quoted. */
+	private final boolean quoted;
+
+	/**
+	 * Create a value.
+	 *
+	 * @param number the number, {@code null} for a string
+	 * @param text the unit or text
+	 * @param quoted whether a string is quoted
+	 */
+	private SassValue(final Double number, final String text, final boolean quoted) {
+		this.number = number;
+		this.text = text;
+		this.quoted = quoted;
+	}
+
+	/**
+	 * Create a number.
+	 *
+	 * @param number the number
+	 * @param unit the unit, eg. {@code px}, or {@code null}
+	 * @return the value
+	 */
+	public static SassValue number(final double number, final String unit) {
+		return new SassValue(number, unit, false);
+	}
+
+	/**
+	 * Create a string.
+	 *
+	 * @param text the text
+	 * @param quoted {@code true} for a quoted string, {@code false} for an
+	 *            identifier such as {@code url(...)}
+	 * @return the value
+	 */
+	public static SassValue string(final String text, final boolean quoted) {
+		return new SassValue(null, text, quoted);
+	}
+
+	/**
+	 * Test if the value is a number.
+	 *
+	 * @return {@code true} for a number
+	 */
+	public boolean isNumber() {
+		return this.number != null;
+	}
+
+	/**
+	 * Get the number.
+	 *
+	 * @return the number, 0 for a string
+	 */
+	public double getNumber() {
+		if (this.number == null) {
+			return 0d;
+		}
+		return this.number;
+	}
+
+	/**
+	 * Get the unit of a number.
+	 *
+	 * @return the unit, {@code null} for a string or a unitless number
+	 */
+	public String getUnit() {
+		if (this.number == null) {
+			return null;
+		}
+		return this.text;
+	}
+
+	/**
+	 * Get the text of a string.
+	 *
+	 * @return the text, {@code null} for a number
+	 */
+	public String getText() {
+		if (this.number != null) {
+			return null;
+		}
+		return this.text;
+	}
+
+	/**
+	 * Test if the value is a quoted string.
+	 *
+	 * @return {@code true} for a quoted string
+	 */
+	public boolean isQuoted() {
+		return this.quoted;
+	}
+
+	/**
+	 * {@inheritDoc} The CSS text of the value.
+	 */
+	@Override
+	public String toString() {
+		if (this.number != null) {
+			final String value;
+			if (this.number == Math.rint(this.number) && !Double.isInfinite(this.number)) {
+				value = Long.toString(this.number.longValue());
+			} else {
+				value = this.number.toString();
+			}
+			if (this.text == null) {
+				return value;
+			}
+			return value + this.text;
+		}
+		if (this.quoted) {
+			return '"' + this.text + '"';
+		}
+		return this.text;
+	}
+}
@@ -0,0 +1,510 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import nl.geodienstencentrum.maven.plugin.sass.AbstractSassMojo;
+import nl.geodienstencentrum.maven.plugin.sass.Digests;
+import nl.geodienstencentrum.maven.plugin.sass.EntityTags;
+import nl.geodienstencentrum.maven.plugin.sass.SourcemapMode;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.jruby.embed.ScriptingContainer;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Development server that compiles a stylesheet when it is first
+ * requested, instead of compiling every entry point up front. The
+ * stylesheets are served on the loopback interface with their path
+ * relative to the destination, eg. {@code http://127.0.0.1:35731/css/main.css}.
+ * One JRuby runtime is kept warm; compiled CSS is kept in memory by the
+ * hash of the template and its imports, so a stylesheet is only compiled
+ * again after the template or one of its imports changed. With a
+ * {@code sourcemapMode} other than {@code NONE} the source map of a
+ * stylesheet is served with {@code .map} added to its path.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+@Mojo(name = "serve", requiresDependencyResolution = ResolutionScope.COMPILE)
+public class ServeMojo extends AbstractSassMojo {
+
+	/**
+	 * The loopback port to serve the stylesheets on, 0 for any free port.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "35731", property = "sass.servePort")
+	private int servePort;
+
+	/** the server, while serving. */
+	private HttpServer server;
+
+	/** the warm runtime, while serving. */
+	private ScriptingContainer runtime;
+
+	/** the import graph of the templates. */
+	private ImportGraph importGraph;
+
+	/** the entry points by request path. */
+	private final Map<String, EntryPoint> entryPoints = new HashMap<>();
+
+	/** the compiled stylesheets by request path. */
+	private final Map<String, Compiled> compiled = new HashMap<>();
+
+	/** number of compilations. */
+	private int compiles;
+
+	/** released when the server is stopped. */
+	private final CountDownLatch stopped = new CountDownLatch(1);
+
+	/**
+	 * Serve the stylesheets until the thread is interrupted.
+	 *
+	 * @throws MojoExecutionException when the server cannot be started
+	 * @throws MojoFailureException never
+	 * @see org.apache.maven.plugin.Mojo#execute()
+	 */
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		if (this.isSkip()) {
+			return;
+		}
+		this.start();
+		try {
+			this.stopped.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			this.stop();
+		}
+	}
+
+	/**
+	 * Boot the runtime and start the server.
+	 *
+	 * @throws MojoExecutionException when the server cannot be started
+	 */
+	void start() throws MojoExecutionException {
+		final long started = System.nanoTime();
+		this.importGraph = this.createImportGraph();
+		this.scan();
+		final StringBuilder sassBuilder = new StringBuilder();
+		this.buildBasicSassScript(sassBuilder);
+		this.buildMemoryCacheScript(sassBuilder);
+		this.runtime = this.runSassScript(sassBuilder.toString(),
+		        this.createCompilerCallback(), false);
+		try {
+			this.server = HttpServer.create(new InetSocketAddress(
+			        InetAddress.getLoopbackAddress(), this.servePort), 0);
+		} catch (IOException e) {
+			this.runtime.terminate();
+			throw new MojoExecutionException("Could not serve the stylesheets on port "
+			        + this.servePort, e);
+		}
+		// the default executor handles one request at a time, as the runtime must
+		this.server.createContext("/", new StylesheetHandler());
+		this.server.start();
+		this.getLog().info("Serving " + this.entryPoints.size()
+		        + " Sass templates on http://127.0.0.1:" + this.getPort() + "/, started in "
+		        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms.");
+	}
+
+	/**
+	 * Stop the server and the runtime.
+	 */
+	void stop() {
+		if (this.server != null) {
+			this.server.stop(0);
+			this.server = null;
+		}
+		if (this.runtime != null) {
+			this.runtime.terminate();
+			this.runtime = null;
+		}
+		this.stopped.countDown();
+	}
+
+	/**
+	 * Get the port the server listens on.
+	 *
+	 * @return the port
+	 */
+	int getPort() {
+		return this.server.getAddress().getPort();
+	}
+
+	/**
+	 * Get the number of compilations.
+	 *
+	 * @return the number of compilations
+	 */
+	synchronized int getCompiles() {
+		return this.compiles;
+	}
+
+	/**
+	 * Map the entry points to their request paths.
+	 *
+	 * @throws MojoExecutionException when the template locations cannot be
+	 *             read
+	 */
+	private void scan() throws MojoExecutionException {
+		final List<Path> roots = new ArrayList<>();
+		for (final File destination : this.getDestinations()) {
+			roots.add(destination.getAbsoluteFile().toPath().normalize());
+		}
+		this.entryPoints.clear();
+		for (final EntryPoint entryPoint : this.getEntryPoints()) {
+			final Path css = new File(entryPoint.getCss()).getAbsoluteFile().toPath()
+			        .normalize();
+			Path relative = css.getFileName();
+			for (final Path root : roots) {
+				if (css.startsWith(root) && css.getNameCount() > root.getNameCount()) {
+					relative = root.relativize(css);
+					break;
+				}
+			}
+			this.entryPoints.put(FilenameUtils.separatorsToUnix(relative.toString()),
+			        entryPoint);
+		}
+	}
+
+	/**
+	 * Get the compiled stylesheet for a request path, compiling it if the
+	 * template or one of its imports changed.
+	 *
+	 * @param path the request path, without leading slash
+	 * @return the stylesheet or {@code null} if there is no such entry point
+	 * @throws IOException if a template cannot be read
+	 * @throws MojoExecutionException when the template locations cannot be
+	 *             read
+	 */
+	synchronized Compiled get(final String path) throws IOException,
+	        MojoExecutionException {
+		EntryPoint entryPoint = this.entryPoints.get(path);
+		if (!path.endsWith(".css")) {
+			return null;
+		}
+		if (entryPoint == null || !new File(entryPoint.getTemplate()).isFile()) {
+			// templates may have been added or removed
+			this.scan();
+			entryPoint = this.entryPoints.get(path);
+			if (entryPoint == null) {
+				return null;
+			}
+		}
+		final File template = new File(entryPoint.getTemplate()).getAbsoluteFile();
+		Compiled result = this.compiled.get(path);
+		if (result != null) {
+			for (final File file : result.files) {
+				this.importGraph.invalidate(file);
+			}
+		}
+		final Set<File> files = new LinkedHashSet<>();
+		files.add(template);
+		files.addAll(this.importGraph.dependencies(template).getFiles());
+		final String hash = hash(files);
+		if (result != null && result.hash.equals(hash)) {
+			return result;
+		}
+
+		final long started = System.nanoTime();
+		final List<?> output = (List<?>) this.runtime.runScriptlet(
+		        "begin\n"
+		        + this.buildRenderScript(path, template, entryPoint.getCss())
+		        + "rescue Sass::SyntaxError => e\n"
+		        + "  [false, Sass::SyntaxError.exception_to_css(e), e.message]\n"
+		        + "end\n");
+		this.compiles++;
+		final boolean success = Boolean.TRUE.equals(output.get(0));
+		result = new Compiled(hash, files, String.valueOf(output.get(1)), success);
+		if (success && output.size() > 2) {
+			result.sourcemap = String.valueOf(output.get(2)).getBytes(StandardCharsets.UTF_8);
+		}
+		if (result.success) {
+			this.compiled.put(path, result);
+			this.getLog().info("    >> " + template + " => /" + path + " in "
+			        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+		} else {
+			this.compiled.remove(path);
+			this.getLog().error("Compilation of template " + template + " failed: "
+			        + output.get(2));
+		}
+		return result;
+	}
+
+	/**
+	 * Build the Ruby lines that render a template to {@code [true, css]},
+	 * or {@code [true, css, sourcemap]} when the source map is created up
+	 * front. The source maps include the sources, as the templates are not
+	 * served; a lazy source map is kept in the runtime until it is requested.
+	 *
+	 * @param path the request path
+	 * @param template the template
+	 * @param css the CSS file of the entry point
+	 * @return the script
+	 */
+	private String buildRenderScript(final String path, final File template,
+	        final String css) {
+		final SourcemapMode mode = this.getSourcemapMode();
+		final String engine = "Sass::Engine.for_file('" + template + "', "
+		        + "Sass::Plugin.engine_options(:filename => '" + template + "', "
+		        + ":css_filename => '" + css + "', ";
+		if (mode == null || mode == SourcemapMode.NONE) {
+			return "  [true, " + engine + ":sourcemap => :none)).render]\n";
+		}
+		final File sourcemap = new File(css + ".map");
+		final String json = "mapping.to_json(:css_path => '" + css + "', :sourcemap_path => '"
+		        + sourcemap + "', :type => :inline)";
+		final StringBuilder script = new StringBuilder();
+		script.append("  css, mapping = ").append(engine).append(":sourcemap_filename => '")
+		        .append(sourcemap).append("', :sourcemap => :inline)).render_with_sourcemap('")
+		        .append(sourcemap.getName()).append("')\n");
+		switch (mode) {
+		case LAZY:
+			script.append("  ($lazy_sourcemaps ||= {})['").append(path).append("'] = mapping\n");
+			script.append("  [true, css]\n");
+			break;
+		case INLINE:
+			script.append("  [true, Sass::Plugin::Compiler.inline_sourcemap(css, ").append(json)
+			        .append(")]\n");
+			break;
+		default:
+			script.append("  [true, css, ").append(json).append("]\n");
+		}
+		return script.toString();
+	}
+
+	/**
+	 * Get the source map for a request path. A lazy source map is created
+	 * when it is first requested and written next to the CSS file of the
+	 * entry point, so it is also found for the CSS of an earlier
+	 * {@code update-stylesheets}.
+	 *
+	 * @param path the request path of the source map, without leading slash
+	 * @return the source map or {@code null} if the stylesheet has none
+	 * @throws IOException if a template cannot be read or the source map
+	 *             cannot be written
+	 * @throws MojoExecutionException when the template locations cannot be
+	 *             read
+	 */
+	synchronized byte[] getSourcemap(final String path) throws IOException,
+	        MojoExecutionException {
+		final String cssPath = path.substring(0, path.length() - ".map".length());
+		final Compiled result = this.get(cssPath);
+		if (result == null || !result.success) {
+			return null;
+		}
+		if (result.sourcemap == null && this.getSourcemapMode() == SourcemapMode.LAZY) {
+			final long started = System.nanoTime();
+			final String css = this.entryPoints.get(cssPath).getCss();
+			final File sourcemap = new File(css + ".map");
+			result.sourcemap = String.valueOf(this.runtime.runScriptlet(
+			        "$lazy_sourcemaps['" + cssPath + "'].to_json(:css_path => '" + css
+			        + "', :sourcemap_path => '" + sourcemap + "', :type => :inline)"))
+			        .getBytes(StandardCharsets.UTF_8);
+			Files.createDirectories(sourcemap.getAbsoluteFile().getParentFile().toPath());
+			Files.write(sourcemap.toPath(), result.sourcemap);
+			this.getLog().info("    >> /" + path + " => " + sourcemap + " in "
+			        + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) + " ms");
+		}
+		return result.sourcemap;
+	}
+
+	/**
+	 * Hash the content of files.
+	 *
+	 * @param files the files
+	 * @return hex encoded SHA-1 of the paths and contents
+	 * @throws IOException if a file cannot be read
+	 */
+	private static String hash(final Set<File> files) throws IOException {
+		final MessageDigest digest = Digests.sha1();
+		for (final File file : files) {
+			digest.update(file.getPath().getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) 0);
+			digest.update(Files.readAllBytes(file.toPath()));
+		}
+		return Digests.hex(digest.digest());
+	}
+
+	/**
+	 * A compiled stylesheet.
+	 */
+	static final class Compiled {
+
+		/** hash of the template and its imports. */
+		private final String hash;
+
+		/** the template and its imports. */
+		private final Set<File> files;
+
+		/** the CSS, or a stylesheet showing the error in the page. */
+		private final byte[] css;
+
+		/** whether the compilation succeeded. */
+		private final boolean success;
+
+		/** the source map, or {@code null} if none or not created yet. */
+		private byte[] sourcemap;
+
+		/**
+		 * Create a compiled stylesheet.
+		 *
+		 * @param hash hash of the template and its imports
+		 * @param files the template and its imports
+		 * @param css the CSS
+		 * @param success whether the compilation succeeded
+		 */
+		Compiled(final String hash, final Set<File> files, final String css,
+		        final boolean success) {
+			this.hash = hash;
+			this.files = files;
+			this.css = css.getBytes(StandardCharsets.UTF_8);
+			this.success = success;
+		}
+
+		/**
+		 * Get the hash of the template and its imports.
+		 *
+		 * @return the hash
+		 */
+		String getHash() {
+			return this.hash;
+		}
+
+		/**
+		 * Get the CSS.
+		 *
+		 * @return the CSS
+		 */
+		String getCss() {
+			return new String(this.css, StandardCharsets.UTF_8);
+		}
+
+		/**
+		 * Test if the compilation succeeded.
+		 *
+		 * @return {@code true} if the stylesheet compiled
+		 */
+		boolean isSuccess() {
+			return this.success;
+		}
+	}
+
+	/**
+	 * Serves the stylesheets, with the hash as entity tag.
+	 */
+	private final class StylesheetHandler implements HttpHandler {
+
+		@Override
+		public void handle(final HttpExchange exchange) throws IOException {
+			try {
+				final String path = exchange.getRequestURI().getPath().substring(1);
+				if (path.endsWith(".css.map")) {
+					this.serveSourcemap(exchange, path);
+					return;
+				}
+				final Compiled result;
+				try {
+					result = get(path);
+				} catch (MojoExecutionException e) {
+					throw new IOException(e);
+				}
+				if (result == null) {
+					exchange.sendResponseHeaders(404, -1);
+					return;
+				}
+				final String etag = '"' + result.hash + '"';
+				exchange.getResponseHeaders().set("Content-Type", "text/css; charset=utf-8");
+				exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+				exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+				if (result.success) {
+					exchange.getResponseHeaders().set("ETag", etag);
+					if (EntityTags.matches(exchange.getRequestHeaders()
+					        .getFirst("If-None-Match"), etag)) {
+						exchange.sendResponseHeaders(304, -1);
+						return;
+					}
+				}
+				// the error is shown in the page, like Sass does
+				exchange.sendResponseHeaders(200, result.css.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(result.css);
+				}
+			} catch (IOException | RuntimeException e) {
+				getLog().error("Could not serve " + exchange.getRequestURI(), e);
+				throw e;
+			} finally {
+				exchange.close();
+			}
+		}
+
+		/**
+		 * Serves a source map.
+		 *
+		 * @param exchange the exchange
+		 * @param path the request path of the source map
+		 * @throws IOException if the source map cannot be created or sent
+		 */
+		private void serveSourcemap(final HttpExchange exchange, final String path)
+		        throws IOException {
+			final byte[] sourcemap;
+			try {
+				sourcemap = getSourcemap(path);
+			} catch (MojoExecutionException e) {
+				throw new IOException(e);
+			}
+			if (sourcemap == null) {
+				exchange.sendResponseHeaders(404, -1);
+				return;
+			}
+			exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+			exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+			exchange.getResponseHeaders().set("Access-Control-Allow-Origin", "*");
+			exchange.sendResponseHeaders(200, sourcemap.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(sourcemap);
+			}
+		}
+	}
+}
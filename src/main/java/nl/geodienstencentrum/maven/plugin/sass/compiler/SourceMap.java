@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A version 3 source map, with its mappings decoded. Each generated line
+ * has a list of segments of 1, 4 or 5 absolute values: the generated
+ * column, the source index, the original line, the original column and the
+ * name index.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+class SourceMap {
+
+	/** the base 64 digits of the mappings. */
+	private static final String BASE64 =
+	        "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+	/** the generated file. */
+	String file;
+
+	/** the prefix of the sources, or {@code null}. */
+	String sourceRoot;
+
+	/** the sources. */
+	final List<String> sources = new ArrayList<>();
+
+	/** the content of the sources, or {@code null} if not included. */
+	List<String> sourcesContent;
+
+	/** the names. */
+	final List<String> names = new ArrayList<>();
+
+	/** the segments of each generated line. */
+	final List<List<int[]>> lines = new ArrayList<>();
+
+	/**
+	 * Parse a source map.
+	 *
+	 * @param json the source map
+	 * @return the source map
+	 * @throws IOException if the source map is not valid or is an index
+	 *             map
+	 */
+	@SuppressWarnings("unchecked")
+	static SourceMap parse(final String json) throws IOException {
+		final Object value = Json.parse(json);
+		if (!(value instanceof Map)) {
+			throw new IOException("A source map is a JSON object");
+		}
+		final Map<String, Object> object = (Map<String, Object>) value;
+		if (!Double.valueOf(3).equals(object.get("version"))
+		        || !(object.get("mappings") instanceof String)) {
+			throw new IOException("Not a version 3 source map with mappings");
+		}
+		final SourceMap map = new SourceMap();
+		map.file = (String) object.get("file");
+		map.sourceRoot = (String) object.get("sourceRoot");
+		map.sources.addAll(strings(object.get("sources")));
+		if (object.get("sourcesContent") instanceof List) {
+			map.sourcesContent = new ArrayList<>(strings(object.get("sourcesContent")));
+		}
+		map.names.addAll(strings(object.get("names")));
+		map.lines.addAll(decode((String) object.get("mappings")));
+		return map;
+	}
+
+	/**
+	 * Get a list of strings.
+	 *
+	 * @param value the JSON value
+	 * @return the strings, {@code null} for values that are not strings
+	 */
+	private static List<String> strings(final Object value) {
+		final List<String> strings = new ArrayList<>();
+		if (value instanceof List) {
+			for (final Object item : (List<?>) value) {
+				strings.add(item instanceof String ? (String) item : null);
+			}
+		}
+		return strings;
+	}
+
+	/**
+	 * Decode mappings.
+	 *
+	 * @param mappings the base 64 VLQ mappings
+	 * @return the absolute segments of each line
+	 * @throws IOException if the mappings are not valid
+	 */
+	static List<List<int[]>> decode(final String mappings) throws IOException {
+		final List<List<int[]>> lines = new ArrayList<>();
+		// the source, original line, original column and name are relative
+		// to the previous segment, the generated column to the previous
+		// segment on the line
+		final int[] previous = new int[5];
+		List<int[]> line = new ArrayList<>();
+		final int[] position = {0};
+		while (position[0] < mappings.length()) {
+			final char c = mappings.charAt(position[0]);
+			if (c == ';') {
+				lines.add(line);
+				line = new ArrayList<>();
+				previous[0] = 0;
+				position[0]++;
+			} else if (c == ',') {
+				position[0]++;
+			} else {
+				final List<Integer> fields = new ArrayList<>(5);
+				while (position[0] < mappings.length()
+				        && mappings.charAt(position[0]) != ','
+				        && mappings.charAt(position[0]) != ';') {
+					fields.add(vlq(mappings, position));
+				}
+				if (fields.size() != 1 && fields.size() != 4 && fields.size() != 5) {
+					throw new IOException("Invalid source map segment of " + fields.size()
+					        + " fields");
+				}
+				final int[] segment = new int[fields.size()];
+				for (int f = 0; f < segment.length; f++) {
+					previous[f] += fields.get(f);
+					segment[f] = previous[f];
+				}
+				line.add(segment);
+			}
+		}
+		lines.add(line);
+		return lines;
+	}
+
+	/**
+	 * Decode a base 64 VLQ value.
+	 *
+	 * @param mappings the mappings
+	 * @param position the position of the value, advanced past it
+	 * @return the value
+	 * @throws IOException if the value is not valid
+	 */
+	private static int vlq(final String mappings, final int[] position) throws IOException {
+		int value = 0;
+		int shift = 0;
+		int digit;
+		do {
+			if (position[0] >= mappings.length()) {
+				throw new IOException("Truncated source map mappings");
+			}
+			digit = BASE64.indexOf(mappings.charAt(position[0]++));
+			if (digit < 0) {
+				throw new IOException("Invalid character in source map mappings");
+			}
+			value += (digit & 31) << shift;
+			shift += 5;
+		} while ((digit & 32) != 0);
+		return (value & 1) == 1 ? -(value >>> 1) : value >>> 1;
+	}
+
+	/**
+	 * Encode mappings.
+	 *
+	 * @param lines the absolute segments of each line
+	 * @return the base 64 VLQ mappings
+	 */
+	static String encode(final List<List<int[]>> lines) {
+		final StringBuilder mappings = new StringBuilder();
+		final int[] previous = new int[5];
+		for (int l = 0; l < lines.size(); l++) {
+			if (l > 0) {
+				mappings.append(';');
+			}
+			previous[0] = 0;
+			boolean first = true;
+			for (final int[] segment : lines.get(l)) {
+				if (!first) {
+					mappings.append(',');
+				}
+				first = false;
+				for (int f = 0; f < segment.length; f++) {
+					vlq(mappings, segment[f] - previous[f]);
+					previous[f] = segment[f];
+				}
+			}
+		}
+		return mappings.toString();
+	}
+
+	/**
+	 * Encode a base 64 VLQ value.
+	 *
+	 * @param mappings the mappings, appended to
+	 * @param value the value
+	 */
+	private static void vlq(final StringBuilder mappings, final int value) {
+		int rest = value < 0 ? ((-value) << 1) | 1 : value << 1;
+		do {
+			int digit = rest & 31;
+			rest >>>= 5;
+			if (rest > 0) {
+				digit |= 32;
+			}
+			mappings.append(BASE64.charAt(digit));
+		} while (rest > 0);
+	}
+
+	/**
+	 * Format the source map as JSON.
+	 *
+	 * @return the source map
+	 */
+	String toJson() {
+		final StringBuilder json = new StringBuilder("{\n\"version\": 3,\n\"mappings\": ");
+		json.append(Json.quote(encode(this.lines))).append(",\n\"sources\": ");
+		array(json, this.sources);
+		if (this.sourcesContent != null) {
+			json.append(",\n\"sourcesContent\": ");
+			array(json, this.sourcesContent);
+		}
+		json.append(",\n\"names\": ");
+		array(json, this.names);
+		if (this.sourceRoot != null) {
+			json.append(",\n\"sourceRoot\": ").append(Json.quote(this.sourceRoot));
+		}
+		if (this.file != null) {
+			json.append(",\n\"file\": ").append(Json.quote(this.file));
+		}
+		return json.append("\n}\n").toString();
+	}
+
+	/**
+	 * Format strings as a JSON array.
+	 *
+	 * @param json the JSON, appended to
+	 * @param strings the strings, may contain {@code null}
+	 */
+	private static void array(final StringBuilder json, final List<String> strings) {
+		json.append('[');
+		for (int i = 0; i < strings.size(); i++) {
+			if (i > 0) {
+				json.append(", ");
+			}
+			json.append(strings.get(i) == null ? "null" : Json.quote(strings.get(i)));
+		}
+		json.append(']');
+	}
+}
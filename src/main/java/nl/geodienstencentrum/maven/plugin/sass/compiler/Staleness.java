@@ -0,0 +1,46 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+/**
+ * Why an entry point does or does not need to be compiled.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public enum Staleness {
+	/** the CSS file is newer than the template and its imports. */
+	UP_TO_DATE,
+	/** the CSS file does not exist. */
+	OUTPUT_MISSING,
+	/** the CSS file was compiled with a different configuration. */
+	CONFIG_CHANGED,
+	/** the template is newer than the CSS file. */
+	TEMPLATE_CHANGED,
+	/** an imported partial is newer than the CSS file. */
+	PARTIAL_CHANGED,
+	/** a partial imported by the last compilation no longer exists. */
+	PARTIAL_MISSING;
+
+	/**
+	 * Test if the entry point needs to be compiled.
+	 *
+	 * @return {@code true} unless up to date
+	 */
+	public boolean isStale() {
+		return this != UP_TO_DATE;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Decides per entry point whether it needs to be compiled, the way Sass'
+ * staleness checker does: when its CSS file is missing or older than the
+ * template or any of the partials it imports. Optionally an entry point is
+ * also stale when its CSS file was compiled with a different configuration,
+ * or from a partial that was removed since; a removed partial is no longer
+ * found as import, so it cannot make the entry point stale otherwise.
+ * The files are stat-ed in parallel.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class StalenessChecker {
+
+	/** number of files stat-ed by one task. */
+	private static final int CHUNK_SIZE = 64;
+
+	/** the import graph to find the partials. */
+	private final ImportGraph importGraph;
+
+	/** number of threads to stat files with. */
+	private final int threads;
+
+	/**
+	 * Create a staleness checker using a thread per processor.
+	 *
+	 * @param importGraph the import graph to find the partials
+	 */
+	public StalenessChecker(final ImportGraph importGraph) {
+		this(importGraph, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Create a staleness checker.
+	 *
+	 * @param importGraph the import graph to find the partials
+	 * @param threads number of threads to stat files with
+	 */
+	public StalenessChecker(final ImportGraph importGraph, final int threads) {
+		this.importGraph = importGraph;
+		this.threads = Math.max(1, threads);
+	}
+
+	/**
+	 * Check the entry points.
+	 *
+	 * @param entryPoints the entry points
+	 * @return the staleness by entry point, in the order of the entry points
+	 * @throws IOException if a template cannot be read or a file cannot be
+	 *             stat-ed
+	 */
+	public Map<EntryPoint, Staleness> check(final List<EntryPoint> entryPoints)
+	        throws IOException {
+		final Map<EntryPoint, Set<File>> dependencies = new HashMap<>();
+		final Set<Path> paths = new LinkedHashSet<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			final File template = new File(entryPoint.getTemplate());
+			Set<File> files = Collections.emptySet();
+			if (template.isFile()) {
+				files = this.importGraph.dependencies(template).getFiles();
+			}
+			dependencies.put(entryPoint, files);
+			paths.add(template.toPath());
+			paths.add(new File(entryPoint.getCss()).toPath());
+			for (final File file : files) {
+				paths.add(file.toPath());
+			}
+		}
+
+		final Map<Path, Long> modified = this.stat(paths);
+		final Map<EntryPoint, Staleness> result = new LinkedHashMap<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			final long css = modified.get(new File(entryPoint.getCss()).toPath());
+			Staleness staleness = Staleness.UP_TO_DATE;
+			if (css < 0) {
+				staleness = Staleness.OUTPUT_MISSING;
+			} else if (modified.get(new File(entryPoint.getTemplate()).toPath()) > css) {
+				staleness = Staleness.TEMPLATE_CHANGED;
+			} else {
+				for (final File file : dependencies.get(entryPoint)) {
+					if (modified.get(file.toPath()) > css) {
+						staleness = Staleness.PARTIAL_CHANGED;
+						break;
+					}
+				}
+			}
+			result.put(entryPoint, staleness);
+		}
+		return result;
+	}
+
+	/**
+	 * Check the entry points, including the configuration they were compiled
+	 * with.
+	 *
+	 * @param entryPoints the entry points
+	 * @param fingerprints the current configuration fingerprint by entry
+	 *            point
+	 * @param store the fingerprints and partials the CSS files were
+	 *            compiled with
+	 * @return the staleness by entry point, in the order of the entry points
+	 * @throws IOException if a template cannot be read or a file cannot be
+	 *             stat-ed
+	 */
+	public Map<EntryPoint, Staleness> check(final List<EntryPoint> entryPoints,
+	        final Map<EntryPoint, String> fingerprints, final FingerprintStore store)
+	        throws IOException {
+		final Map<EntryPoint, Staleness> result = this.check(entryPoints);
+		for (final Map.Entry<EntryPoint, Staleness> entry : result.entrySet()) {
+			final String css = entry.getKey().getCss();
+			if (entry.getValue() != Staleness.OUTPUT_MISSING
+			        && !fingerprints.get(entry.getKey()).equals(store.get(css))) {
+				entry.setValue(Staleness.CONFIG_CHANGED);
+			} else if (!entry.getValue().isStale()) {
+				for (final String file : store.getImports(css)) {
+					if (!new File(file).isFile()) {
+						entry.setValue(Staleness.PARTIAL_MISSING);
+						break;
+					}
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Get the entry points that need to be compiled.
+	 *
+	 * @param staleness the result of {@link #check(List)}
+	 * @return the stale entry points
+	 */
+	public static List<EntryPoint> getStale(final Map<EntryPoint, Staleness> staleness) {
+		final List<EntryPoint> stale = new ArrayList<>();
+		for (final Map.Entry<EntryPoint, Staleness> entry : staleness.entrySet()) {
+			if (entry.getValue().isStale()) {
+				stale.add(entry.getKey());
+			}
+		}
+		return stale;
+	}
+
+	/**
+	 * Read the modification times of files in parallel.
+	 *
+	 * @param paths the files
+	 * @return modification time in milliseconds by file, -1 for a file that
+	 *         does not exist
+	 * @throws IOException if a file cannot be stat-ed
+	 */
+	private Map<Path, Long> stat(final Collection<Path> paths) throws IOException {
+		final Map<Path, Long> modified = new ConcurrentHashMap<>();
+		final List<Path> list = new ArrayList<>(paths);
+		final List<Callable<Void>> tasks = new ArrayList<>();
+		for (int i = 0; i < list.size(); i += CHUNK_SIZE) {
+			final List<Path> chunk = list.subList(i, Math.min(i + CHUNK_SIZE, list.size()));
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws IOException {
+					for (final Path path : chunk) {
+						modified.put(path, lastModified(path));
+					}
+					return null;
+				}
+			});
+		}
+		if (tasks.size() < 2) {
+			for (final Path path : list) {
+				modified.put(path, lastModified(path));
+			}
+			return modified;
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(
+		        Math.min(this.threads, tasks.size()));
+		try {
+			for (final Future<Void> future : executor.invokeAll(tasks)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted reading file modification times", e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException(e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+		return modified;
+	}
+
+	/**
+	 * Read the modification time of a file.
+	 *
+	 * @param path the file
+	 * @return modification time in milliseconds, -1 if it does not exist
+	 * @throws IOException if the file cannot be stat-ed
+	 */
+	private static long lastModified(final Path path) throws IOException {
+		try {
+			return Files.readAttributes(path, BasicFileAttributes.class)
+			        .lastModifiedTime().toMillis();
+		} catch (NoSuchFileException e) {
+			return -1L;
+		}
+	}
+}
@@ -0,0 +1,369 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Concatenates compiled stylesheets into a bundle, in order, and merges
+ * their source maps into one for the bundle. The {@code @charset} rules and
+ * source map references of the stylesheets are left out; the bundle starts
+ * with {@code @charset "UTF-8";} if any stylesheet needed it. The plain CSS
+ * {@code @import} rules at the start of the stylesheets are moved to the
+ * start of the bundle, as browsers ignore them after other rules; the
+ * imported rules of a stylesheet then come before the rules of the
+ * stylesheets before it. The mappings of each stylesheet are moved to its
+ * lines in the bundle, with the sources made relative to the bundle's
+ * source map.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class StylesheetBundler {
+
+	/** the charset rule at the start of a stylesheet. */
+	private static final Pattern CHARSET = Pattern.compile(
+	        "\\A@charset\\s+\"[^\"]*\";(\\r?\\n)?");
+
+	/** the source map reference at the end of a stylesheet. */
+	private static final Pattern SOURCE_MAP = Pattern.compile(
+	        "/\\*# sourceMappingURL=([^\\s*]+)\\s*\\*/\\s*\\z");
+
+	/** a plain CSS import at the start of a stylesheet, after whitespace. */
+	private static final Pattern IMPORT = Pattern.compile(
+	        "\\A\\s*(@import\\s+(?:url\\([^)]*\\)|\"[^\"]*\"|'[^']*')[^;{}]*;)[ \\t]*(?:\\r?\\n)?");
+
+	/** the byte order mark, written instead of a charset rule by compressed style. */
+	private static final char BOM = '\uFEFF';
+
+	/** maven logging instance. */
+	private final Log log;
+
+	/** whether the stylesheets should have source map files. */
+	private final boolean sourceMapFiles;
+
+	/**
+	 * Create a bundler.
+	 *
+	 * @param log the maven logging instance, for stylesheets whose source
+	 *            map cannot be used
+	 * @param sourceMapFiles {@code true} if the stylesheets should refer to
+	 *            source map files, so inline and missing source maps are
+	 *            warned about, {@code false} if that is expected, eg. with
+	 *            the {@code INLINE} or {@code LAZY} source map mode
+	 */
+	public StylesheetBundler(final Log log, final boolean sourceMapFiles) {
+		this.log = log;
+		this.sourceMapFiles = sourceMapFiles;
+	}
+
+	/**
+	 * Bundle stylesheets. The source map is written next to the bundle,
+	 * with the {@code .map} extension added, if any of the stylesheets has
+	 * one.
+	 *
+	 * @param members the stylesheets, in order
+	 * @param bundle the bundle to write
+	 * @return {@code true} if a source map was written
+	 * @throws IOException if a stylesheet cannot be read or the bundle
+	 *             cannot be written
+	 */
+	public boolean bundle(final List<File> members, final File bundle) throws IOException {
+		final List<Member> parts = new ArrayList<>();
+		final Set<String> imports = new LinkedHashSet<>();
+		boolean charset = false;
+		boolean mapped = false;
+		boolean rules = false;
+		for (final File css : members) {
+			final Member member = this.read(css);
+			charset |= member.charset;
+			mapped |= member.map != null;
+			if (rules && !member.imports.isEmpty()) {
+				this.log.warn("The @import rules of " + css + " are moved to the start of "
+				        + bundle + ", before the rules of the stylesheets bundled before it.");
+			}
+			imports.addAll(member.imports);
+			rules |= !member.css.isEmpty();
+			parts.add(member);
+		}
+
+		final File mapFile = new File(bundle.getPath() + ".map");
+		final SourceMap merged = new SourceMap();
+		merged.file = bundle.getName();
+		final Map<String, Integer> sources = new HashMap<>();
+		final Map<String, Integer> names = new HashMap<>();
+		final StringBuilder out = new StringBuilder();
+		int lines = 0;
+		if (charset) {
+			out.append("@charset \"UTF-8\";\n");
+			lines++;
+		}
+		for (final String rule : imports) {
+			out.append(rule).append('\n');
+			lines++;
+		}
+		for (final Member member : parts) {
+			int length = 0;
+			for (int i = 0; i < member.css.length(); i++) {
+				if (member.css.charAt(i) == '\n') {
+					length++;
+				}
+			}
+			if (member.map != null) {
+				this.merge(member, lines, length, mapFile.getAbsoluteFile().getParentFile(),
+				        merged, sources, names);
+			}
+			out.append(member.css);
+			lines += length;
+		}
+
+		bundle.getAbsoluteFile().getParentFile().mkdirs();
+		if (mapped) {
+			out.append("\n/*# sourceMappingURL=").append(mapFile.getName()).append(" */\n");
+			Files.write(mapFile.toPath(), merged.toJson().getBytes(StandardCharsets.UTF_8));
+		} else {
+			Files.deleteIfExists(mapFile.toPath());
+		}
+		Files.write(bundle.toPath(), out.toString().getBytes(StandardCharsets.UTF_8));
+		return mapped;
+	}
+
+	/**
+	 * Read a stylesheet and its source map.
+	 *
+	 * @param css the stylesheet
+	 * @return the stylesheet without charset, leading imports and source map
+	 *         reference, ending with a line break
+	 * @throws IOException if the stylesheet cannot be read
+	 */
+	private Member read(final File css) throws IOException {
+		final Member member = new Member();
+		String text = new String(Files.readAllBytes(css.toPath()), StandardCharsets.UTF_8);
+		if (!text.isEmpty() && text.charAt(0) == BOM) {
+			text = text.substring(1);
+			member.charset = true;
+			member.skipColumns = 1;
+		}
+		final Matcher charset = CHARSET.matcher(text);
+		if (charset.find()) {
+			member.charset = true;
+			if (charset.group(1) != null) {
+				member.skipLines = 1;
+				member.skipColumns = 0;
+			} else {
+				member.skipColumns += charset.end();
+			}
+			text = text.substring(charset.end());
+		}
+		Matcher leading = IMPORT.matcher(text);
+		while (leading.find()) {
+			member.imports.add(leading.group(1));
+			final String skipped = text.substring(0, leading.end());
+			final int newline = skipped.lastIndexOf('\n');
+			if (newline < 0) {
+				member.skipColumns += skipped.length();
+			} else {
+				for (int i = 0; i <= newline; i++) {
+					if (skipped.charAt(i) == '\n') {
+						member.skipLines++;
+					}
+				}
+				member.skipColumns = skipped.length() - newline - 1;
+			}
+			text = text.substring(leading.end());
+			leading = IMPORT.matcher(text);
+		}
+
+		final Matcher reference = SOURCE_MAP.matcher(text);
+		if (reference.find()) {
+			text = text.substring(0, reference.start());
+			final String url = reference.group(1);
+			if (url.startsWith("data:")) {
+				this.warn("Inline source map of " + css + " is not bundled.");
+			} else {
+				final File mapFile = new File(css.getAbsoluteFile().getParentFile(),
+				        url.replaceFirst("[?#].*", ""));
+				try {
+					member.map = SourceMap.parse(new String(
+					        Files.readAllBytes(mapFile.toPath()), StandardCharsets.UTF_8));
+					member.mapDirectory = mapFile.getParentFile();
+				} catch (IOException e) {
+					this.warn("Source map " + mapFile + " of " + css
+					        + " is not bundled: " + e.getMessage());
+				}
+			}
+		}
+		int end = text.length();
+		while (end > 0 && Character.isWhitespace(text.charAt(end - 1))) {
+			end--;
+		}
+		member.css = end == 0 ? "" : text.substring(0, end) + "\n";
+		return member;
+	}
+
+	/**
+	 * Log a source map that is not bundled, as a warning if the stylesheets
+	 * should have source map files.
+	 *
+	 * @param message the message
+	 */
+	private void warn(final String message) {
+		if (this.sourceMapFiles) {
+			this.log.warn(message);
+		} else {
+			this.log.debug(message);
+		}
+	}
+
+	/**
+	 * Add the mappings of a stylesheet to the source map of the bundle.
+	 *
+	 * @param member the stylesheet
+	 * @param offset the line of the bundle the stylesheet starts on
+	 * @param length the number of lines of the stylesheet in the bundle
+	 * @param directory the directory of the source map of the bundle
+	 * @param merged the source map of the bundle, added to
+	 * @param sources the indexes of the sources in the bundle's map
+	 * @param names the indexes of the names in the bundle's map
+	 */
+	private void merge(final Member member, final int offset, final int length,
+	        final File directory, final SourceMap merged, final Map<String, Integer> sources,
+	        final Map<String, Integer> names) {
+		final SourceMap map = member.map;
+		final int[] sourceIndex = new int[map.sources.size()];
+		for (int s = 0; s < sourceIndex.length; s++) {
+			final String source = resolve(map.sources.get(s), map.sourceRoot,
+			        member.mapDirectory, directory);
+			Integer index = sources.get(source);
+			if (index == null) {
+				index = merged.sources.size();
+				sources.put(source, index);
+				merged.sources.add(source);
+				if (map.sourcesContent != null || merged.sourcesContent != null) {
+					if (merged.sourcesContent == null) {
+						merged.sourcesContent = new ArrayList<>();
+					}
+					while (merged.sourcesContent.size() < index) {
+						merged.sourcesContent.add(null);
+					}
+					merged.sourcesContent.add(map.sourcesContent != null
+					        && s < map.sourcesContent.size() ? map.sourcesContent.get(s) : null);
+				}
+			}
+			sourceIndex[s] = index;
+		}
+		final int[] nameIndex = new int[map.names.size()];
+		for (int n = 0; n < nameIndex.length; n++) {
+			Integer index = names.get(map.names.get(n));
+			if (index == null) {
+				index = merged.names.size();
+				names.put(map.names.get(n), index);
+				merged.names.add(map.names.get(n));
+			}
+			nameIndex[n] = index;
+		}
+
+		final int last = Math.min(map.lines.size(), member.skipLines + length);
+		for (int l = member.skipLines; l < last; l++) {
+			final int line = offset + l - member.skipLines;
+			while (merged.lines.size() <= line) {
+				merged.lines.add(new ArrayList<int[]>());
+			}
+			final int skip = l == member.skipLines ? member.skipColumns : 0;
+			for (final int[] segment : map.lines.get(l)) {
+				if (segment[0] < skip || (segment.length > 1 && segment[1] >= sourceIndex.length)
+				        || (segment.length > 4 && segment[4] >= nameIndex.length)) {
+					continue;
+				}
+				final int[] moved = segment.clone();
+				moved[0] -= skip;
+				if (moved.length > 1) {
+					moved[1] = sourceIndex[segment[1]];
+				}
+				if (moved.length > 4) {
+					moved[4] = nameIndex[segment[4]];
+				}
+				merged.lines.get(line).add(moved);
+			}
+		}
+	}
+
+	/**
+	 * Make a source of a stylesheet's source map relative to the bundle's
+	 * source map.
+	 *
+	 * @param source the source
+	 * @param sourceRoot the source root of the stylesheet's map, or
+	 *            {@code null}
+	 * @param from the directory of the stylesheet's map
+	 * @param to the directory of the bundle's map
+	 * @return the source, unchanged if it is a URL or absolute path
+	 */
+	static String resolve(final String source, final String sourceRoot, final File from,
+	        final File to) {
+		String path = source == null ? "" : source;
+		if (sourceRoot != null && !sourceRoot.isEmpty()) {
+			path = sourceRoot.endsWith("/") ? sourceRoot + path : sourceRoot + "/" + path;
+		}
+		if (path.contains(":") || path.startsWith("/")) {
+			return path;
+		}
+		final Path resolved = from.toPath().resolve(path).normalize();
+		return FilenameUtils.separatorsToUnix(to.toPath().relativize(resolved).toString());
+	}
+
+	/**
+	 * A stylesheet of a bundle.
+	 */
+	private static final class Member {
+
+		/** the CSS, ending with a line break if not empty. */
+		private String css;
+
+		/** the plain CSS imports at the start of the stylesheet. */
+		private final List<String> imports = new ArrayList<>();
+
+		/** whether the stylesheet had a charset rule or byte order mark. */
+		private boolean charset;
+
+		/** the source map, or {@code null}. */
+		private SourceMap map;
+
+		/** the directory of the source map. */
+		private File mapDirectory;
+
+		/** the number of leading lines of the map that were left out. */
+		private int skipLines;
+
+		/** the number of columns of the first line that were left out. */
+		private int skipColumns;
+	}
+}
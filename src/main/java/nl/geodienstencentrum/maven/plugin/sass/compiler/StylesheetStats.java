@@ -0,0 +1,298 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The weight of a compiled stylesheet: its size, raw and gzipped, the
+ * number of style rules and selectors and how deep rules are nested in
+ * at-rules such as {@code @media}. A top level rule has depth 1.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public final class StylesheetStats {
+
+	/** the path of the stylesheet, relative to its destination. */
+	private final String path;
+
+	/** the size in bytes. */
+	private final long size;
+
+	/** the gzipped size in bytes. */
+	private final long gzipSize;
+
+	/** the number of style rules. */
+	private int rules;
+
+	/** the number of selectors of the style rules. */
+	private int selectors;
+
+	/** the deepest block nesting. */
+	private int maxDepth;
+
+	/**
+	 * Create the statistics of a stylesheet.
+	 *
+	 * @param path the path of the stylesheet
+	 * @param css the UTF-8 encoded stylesheet
+	 * @throws IOException if the stylesheet cannot be compressed
+	 */
+	private StylesheetStats(final String path, final byte[] css) throws IOException {
+		this.path = path;
+		this.size = css.length;
+		final ByteArrayOutputStream gzipped = new ByteArrayOutputStream(css.length / 4 + 32);
+		try (OutputStream out = new GZIPOutputStream(gzipped)) {
+			out.write(css);
+		}
+		this.gzipSize = gzipped.size();
+	}
+
+	/**
+	 * Analyse a stylesheet.
+	 *
+	 * @param path the path of the stylesheet, to report
+	 * @param css the UTF-8 encoded stylesheet
+	 * @return the statistics
+	 * @throws IOException if the stylesheet cannot be compressed
+	 */
+	public static StylesheetStats analyze(final String path, final byte[] css)
+	        throws IOException {
+		final StylesheetStats stats = new StylesheetStats(path, css);
+		stats.count(new String(css, StandardCharsets.UTF_8));
+		return stats;
+	}
+
+	/**
+	 * Count the rules, selectors and nesting of a stylesheet. Comments and
+	 * strings are skipped; the keyframes of {@code @keyframes} are not style
+	 * rules.
+	 *
+	 * @param css the stylesheet
+	 */
+	private void count(final String css) {
+		// true for each open block whose nested blocks are keyframes
+		final Deque<Boolean> blocks = new ArrayDeque<>();
+		final StringBuilder prelude = new StringBuilder();
+		int i = 0;
+		while (i < css.length()) {
+			final char c = css.charAt(i);
+			if (c == '/' && i + 1 < css.length() && css.charAt(i + 1) == '*') {
+				final int end = css.indexOf("*/", i + 2);
+				i = end < 0 ? css.length() : end + 2;
+				continue;
+			}
+			if (c == '"' || c == '\'') {
+				final int end = skipString(css, i);
+				prelude.append(css, i, end);
+				i = end;
+				continue;
+			}
+			if (c == '{') {
+				final String block = prelude.toString().trim();
+				final boolean keyframe = !blocks.isEmpty() && blocks.peek();
+				if (block.startsWith("@")) {
+					blocks.push(block.matches("@(-[a-z]+-)?keyframes\\b.*"));
+				} else {
+					if (!keyframe) {
+						this.rules++;
+						this.selectors += countSelectors(block);
+					}
+					blocks.push(false);
+				}
+				this.maxDepth = Math.max(this.maxDepth, blocks.size());
+				prelude.setLength(0);
+			} else if (c == '}') {
+				blocks.poll();
+				prelude.setLength(0);
+			} else if (c == ';') {
+				prelude.setLength(0);
+			} else {
+				prelude.append(c);
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * Find the end of a string.
+	 *
+	 * @param css the stylesheet
+	 * @param start the index of the opening quote
+	 * @return the index after the closing quote
+	 */
+	private static int skipString(final String css, final int start) {
+		final char quote = css.charAt(start);
+		int i = start + 1;
+		while (i < css.length() && css.charAt(i) != quote) {
+			if (css.charAt(i) == '\\') {
+				i++;
+			}
+			i++;
+		}
+		return Math.min(i + 1, css.length());
+	}
+
+	/**
+	 * Count the selectors of a selector list, ignoring the commas in
+	 * functional pseudo classes such as {@code :not(a, b)}.
+	 *
+	 * @param selectorList the selector list
+	 * @return the number of selectors
+	 */
+	private static int countSelectors(final String selectorList) {
+		int count = 1;
+		int parentheses = 0;
+		for (int i = 0; i < selectorList.length(); i++) {
+			final char c = selectorList.charAt(i);
+			if (c == '(' || c == '[') {
+				parentheses++;
+			} else if (c == ')' || c == ']') {
+				parentheses--;
+			} else if (c == ',' && parentheses == 0) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Get the path.
+	 *
+	 * @return the path of the stylesheet
+	 */
+	public String getPath() {
+		return this.path;
+	}
+
+	/**
+	 * Get the size.
+	 *
+	 * @return the size in bytes
+	 */
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Get the gzipped size.
+	 *
+	 * @return the gzipped size in bytes
+	 */
+	public long getGzipSize() {
+		return this.gzipSize;
+	}
+
+	/**
+	 * Get the number of style rules.
+	 *
+	 * @return the number of rules
+	 */
+	public int getRules() {
+		return this.rules;
+	}
+
+	/**
+	 * Get the number of selectors.
+	 *
+	 * @return the number of selectors of all style rules
+	 */
+	public int getSelectors() {
+		return this.selectors;
+	}
+
+	/**
+	 * Get the nesting depth.
+	 *
+	 * @return the deepest nesting of blocks, 0 for an empty stylesheet
+	 */
+	public int getMaxDepth() {
+		return this.maxDepth;
+	}
+
+	/**
+	 * Write the statistics of the stylesheets as JSON, with the totals and
+	 * the statistics by path, sorted and without a timestamp so the same
+	 * stylesheets give the same file and runs can be compared.
+	 *
+	 * @param file the statistics file
+	 * @param stylesheets the statistics of the stylesheets
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(final File file, final List<StylesheetStats> stylesheets)
+	        throws IOException {
+		final Map<String, StylesheetStats> sorted = new TreeMap<>();
+		long size = 0;
+		long gzipSize = 0;
+		int rules = 0;
+		int selectors = 0;
+		int maxDepth = 0;
+		for (final StylesheetStats stats : stylesheets) {
+			sorted.put(stats.path, stats);
+			size += stats.size;
+			gzipSize += stats.gzipSize;
+			rules += stats.rules;
+			selectors += stats.selectors;
+			maxDepth = Math.max(maxDepth, stats.maxDepth);
+		}
+		file.getParentFile().mkdirs();
+		try (Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+		        StandardCharsets.UTF_8)) {
+			out.write("{\"total\":" + json(size, gzipSize, rules, selectors, maxDepth)
+			        + ",\n\"stylesheets\":{");
+			boolean first = true;
+			for (final StylesheetStats stats : sorted.values()) {
+				if (!first) {
+					out.write(",");
+				}
+				first = false;
+				out.write("\n" + Json.quote(stats.path) + ":" + json(stats.size,
+				        stats.gzipSize, stats.rules, stats.selectors, stats.maxDepth));
+			}
+			out.write("\n}}\n");
+		}
+	}
+
+	/**
+	 * Format statistics as a JSON object.
+	 *
+	 * @param size the size
+	 * @param gzipSize the gzipped size
+	 * @param rules the number of rules
+	 * @param selectors the number of selectors
+	 * @param maxDepth the nesting depth
+	 * @return the JSON object
+	 */
+	private static String json(final long size, final long gzipSize, final int rules,
+	        final int selectors, final int maxDepth) {
+		return "{\"size\":" + size + ",\"gzipSize\":" + gzipSize + ",\"rules\":" + rules
+		        + ",\"selectors\":" + selectors + ",\"maxDepth\":" + maxDepth + "}";
+	}
+}
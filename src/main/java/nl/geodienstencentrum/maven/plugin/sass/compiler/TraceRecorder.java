@@ -0,0 +1,322 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Records the phases of a build as complete events of the <a href=
+ * "https://docs.google.com/document/d/1CvAClvFfyA5R-PhYUmn5OOQtYMH4h6I0nSsKchNAySU">
+ * Chrome trace-event format</a>, to be opened in {@code chrome://tracing} or
+ * Perfetto. Spans are measured with {@link System#nanoTime()} and recorded
+ * with the id of the thread they ran on. Safe to use from multiple threads.
+ * A disabled recorder ignores everything.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class TraceRecorder {
+
+	/** name of the trace file in the build directory. */
+	public static final String FILE_NAME = "sass-trace.json";
+
+	/** span returned by a disabled recorder. */
+	private static final Span NO_SPAN = new Span(null, null, null, 0L);
+
+	/** whether events are recorded. */
+	private final boolean enabled;
+
+	/** {@link System#nanoTime()} the timestamps are relative to. */
+	private final long origin = System.nanoTime();
+
+	/** the recorded events. */
+	private final Queue<Event> events = new ConcurrentLinkedQueue<>();
+
+	/** names of the threads that recorded events, by thread id. */
+	private final ConcurrentMap<Long, String> threads = new ConcurrentHashMap<>();
+
+	/**
+	 * Create a recorder.
+	 *
+	 * @param enabled {@code false} to ignore everything
+	 */
+	public TraceRecorder(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	/**
+	 * Test if the recorder records events.
+	 *
+	 * @return {@code true} if enabled
+	 */
+	public boolean isEnabled() {
+		return this.enabled;
+	}
+
+	/**
+	 * Start a span on the current thread, to be closed on the same thread,
+	 * eg. using try-with-resources.
+	 *
+	 * @param name the name of the phase
+	 * @param category the category, eg. {@code scan} or {@code compile}
+	 * @return the span
+	 */
+	public Span begin(final String name, final String category) {
+		if (!this.enabled) {
+			return NO_SPAN;
+		}
+		return new Span(this, name, category, System.nanoTime());
+	}
+
+	/**
+	 * Record a span that ended on the current thread.
+	 *
+	 * @param name the name of the phase
+	 * @param category the category
+	 * @param startNanos {@link System#nanoTime()} when the span started
+	 * @param durationNanos duration in nanoseconds
+	 * @param args additional information shown with the span, may be empty
+	 */
+	public void record(final String name, final String category,
+	        final long startNanos, final long durationNanos,
+	        final Map<String, String> args) {
+		if (!this.enabled) {
+			return;
+		}
+		final Thread thread = Thread.currentThread();
+		this.threads.putIfAbsent(thread.getId(), thread.getName());
+		this.events.add(new Event(name, category, startNanos - this.origin,
+		        Math.max(0L, durationNanos), thread.getId(), args));
+	}
+
+	/**
+	 * Get the number of recorded events.
+	 *
+	 * @return the number of events
+	 */
+	public int size() {
+		return this.events.size();
+	}
+
+	/**
+	 * Write the recorded events, if enabled.
+	 *
+	 * @param file the trace file
+	 * @throws IOException if the file cannot be written
+	 */
+	public void write(final File file) throws IOException {
+		if (!this.enabled) {
+			return;
+		}
+		final List<Event> sorted = new ArrayList<>(this.events);
+		Collections.sort(sorted);
+		file.getParentFile().mkdirs();
+		try (Writer out = new OutputStreamWriter(Files.newOutputStream(file.toPath()),
+		        StandardCharsets.UTF_8)) {
+			out.write("{\"displayTimeUnit\":\"ns\",\"traceEvents\":[\n");
+			boolean first = true;
+			for (final Map.Entry<Long, String> thread : this.threads.entrySet()) {
+				if (!first) {
+					out.write(",\n");
+				}
+				first = false;
+				out.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":"
+				        + thread.getKey() + ",\"args\":{\"name\":"
+				        + Json.quote(thread.getValue()) + "}}");
+			}
+			for (final Event event : sorted) {
+				if (!first) {
+					out.write(",\n");
+				}
+				first = false;
+				event.write(out);
+			}
+			out.write("\n]}\n");
+		}
+	}
+
+	/**
+	 * Format nanoseconds as the microseconds of the trace format, keeping
+	 * nanosecond precision.
+	 *
+	 * @param nanos nanoseconds
+	 * @return microseconds with three decimals
+	 */
+	static String micros(final long nanos) {
+		final StringBuilder fraction = new StringBuilder(Long.toString(Math.abs(nanos % 1000)));
+		while (fraction.length() < 3) {
+			fraction.insert(0, '0');
+		}
+		String sign = "";
+		if (nanos < 0) {
+			sign = "-";
+		}
+		return sign + Math.abs(nanos / 1000) + "." + fraction;
+	}
+
+	/**
+	 * A phase that is recorded when it is closed.
+	 */
+	public static final class Span implements AutoCloseable {
+
+		/** the recorder, {@code null} if disabled. */
+		private final TraceRecorder recorder;
+
+		/** name of the phase. */
+		private final String name;
+
+		/** category of the phase. */
+		private final String category;
+
+		/** {@link System#nanoTime()} when the span started. */
+		private final long start;
+
+		/** additional information. */
+		private final Map<String, String> args = new LinkedHashMap<>();
+
+		/**
+		 * Create a span.
+		 *
+		 * @param recorder the recorder
+		 * @param name name of the phase
+		 * @param category category of the phase
+		 * @param start {@link System#nanoTime()} when the span started
+		 */
+		Span(final TraceRecorder recorder, final String name,
+		        final String category, final long start) {
+			this.recorder = recorder;
+			this.name = name;
+			this.category = category;
+			this.start = start;
+		}
+
+		/**
+		 * Add information shown with the span.
+		 *
+		 * @param key the name
+		 * @param value the value
+		 * @return this span
+		 */
+		public Span arg(final String key, final Object value) {
+			if (this.recorder != null) {
+				this.args.put(key, String.valueOf(value));
+			}
+			return this;
+		}
+
+		/**
+		 * End the span and record it.
+		 */
+		@Override
+		public void close() {
+			if (this.recorder != null) {
+				this.recorder.record(this.name, this.category, this.start,
+				        System.nanoTime() - this.start, this.args);
+			}
+		}
+	}
+
+	/**
+	 * A complete event.
+	 */
+	private static final class Event implements Comparable<Event> {
+
+		/** name of the phase. */
+		private final String name;
+
+		/** category of the phase. */
+		private final String category;
+
+		/** start, relative to the origin of the recorder. */
+		private final long start;
+
+		/** duration in nanoseconds. */
+		private final long duration;
+
+		/** id of the thread. */
+		private final long thread;
+
+		/** additional information. */
+		private final Map<String, String> args;
+
+		/**
+		 * Create an event.
+		 *
+		 * @param name name of the phase
+		 * @param category category of the phase
+		 * @param start start, relative to the origin of the recorder
+		 * @param duration duration in nanoseconds
+		 * @param thread id of the thread
+		 * @param args additional information
+		 */
+		Event(final String name, final String category, final long start,
+		        final long duration, final long thread, final Map<String, String> args) {
+			this.name = name;
+			this.category = category;
+			this.start = start;
+			this.duration = duration;
+			this.thread = thread;
+			this.args = new LinkedHashMap<>(args);
+		}
+
+		/**
+		 * Write the event as JSON.
+		 *
+		 * @param out the writer
+		 * @throws IOException if writing fails
+		 */
+		void write(final Writer out) throws IOException {
+			out.write("{\"name\":" + Json.quote(this.name) + ",\"cat\":"
+			        + Json.quote(this.category) + ",\"ph\":\"X\",\"ts\":"
+			        + micros(this.start) + ",\"dur\":" + micros(this.duration)
+			        + ",\"pid\":1,\"tid\":" + this.thread + ",\"args\":{");
+			boolean first = true;
+			for (final Map.Entry<String, String> arg : this.args.entrySet()) {
+				if (!first) {
+					out.write(',');
+				}
+				first = false;
+				out.write(Json.quote(arg.getKey()) + ":" + Json.quote(arg.getValue()));
+			}
+			out.write("}}");
+		}
+
+		/**
+		 * {@inheritDoc} Orders by start, longest first.
+		 */
+		@Override
+		public int compareTo(final Event other) {
+			if (this.start != other.start) {
+				return Long.compare(this.start, other.start);
+			}
+			return Long.compare(other.duration, this.duration);
+		}
+	}
+}
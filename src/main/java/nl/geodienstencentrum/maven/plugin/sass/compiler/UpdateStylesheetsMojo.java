@@ -22,20 +22,165 @@ package nl.geodienstencentrum.maven.plugin.sass.compiler;
 import static org.apache.maven.plugins.annotations.LifecyclePhase.PROCESS_SOURCES;
 import java.io.File;
 import java.io.IOException;
-import java.util.Collection;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import nl.geodienstencentrum.maven.plugin.sass.AbstractSassMojo;
-import org.apache.commons.io.DirectoryWalker;
+import nl.geodienstencentrum.maven.plugin.sass.CssBudget;
+import nl.geodienstencentrum.maven.plugin.sass.CssBundle;
+import nl.geodienstencentrum.maven.plugin.sass.OutputStyle;
+import nl.geodienstencentrum.maven.plugin.sass.SourcemapMode;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.TraceRecorder.Span;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
 
 /**
  * Mojo that compiles Sass sources into CSS files using
  * {@code update_stylesheets}.
  */
-@Mojo(name = "update-stylesheets", defaultPhase = PROCESS_SOURCES)
+@Mojo(name = "update-stylesheets", defaultPhase = PROCESS_SOURCES,
+        requiresDependencyResolution = ResolutionScope.COMPILE)
 public class UpdateStylesheetsMojo extends AbstractSassMojo {
 
+	/** name of the directory for the profiles in the build directory. */
+	public static final String PROFILE_DIRECTORY = "sass-profile";
+
+	/** name of the stylesheet statistics file in the build directory. */
+	public static final String STATS_FILE_NAME = "sass-css-stats.json";
+
+	/** name of the bundle fingerprints file in the build directory. */
+	public static final String BUNDLES_FILE_NAME = "sass-bundles.properties";
+
+	/**
+	 * Write the size, gzipped size, number of rules and selectors and
+	 * nesting depth of every stylesheet to {@code sass-css-stats.json} in
+	 * the build directory, to follow the weight of the CSS over builds.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.cssStats")
+	private boolean cssStats;
+
+	/**
+	 * Limits on the weight of the stylesheets, eg.
+	 *
+	 * <pre>
+	 * &lt;cssBudgets&gt;
+	 *     &lt;cssBudget&gt;
+	 *         &lt;files&gt;themes/**&#47;*.css&lt;/files&gt;
+	 *         &lt;maxGzipSize&gt;40kB&lt;/maxGzipSize&gt;
+	 *         &lt;maxSelectors&gt;4095&lt;/maxSelectors&gt;
+	 *     &lt;/cssBudget&gt;
+	 * &lt;/cssBudgets&gt;
+	 * </pre>
+	 *
+	 * All stylesheets are checked, also those that were up to date.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private List<CssBudget> cssBudgets = Collections.emptyList();
+
+	/**
+	 * Fail the build when a stylesheet exceeds its budget, instead of
+	 * logging a warning.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "true", property = "sass.failOnBudget")
+	private boolean failOnBudget = true;
+
+	/**
+	 * Extract the rules of the compiled stylesheets of each page that the
+	 * page's own markup can match, written to {@code <page>.critical.css}
+	 * to inline in the page. The page keeps loading its own stylesheets,
+	 * eg. deferred until after the first paint, so the cascade is that of
+	 * the compiled stylesheets once they are loaded; the critical rules
+	 * alone keep their order but miss the later rules that override them.
+	 * The stylesheets of a page are those of its
+	 * {@code <link rel="stylesheet">} elements, resolved against the CSS
+	 * destinations. Relative {@code url()} and {@code @import} references
+	 * are rewritten against the link of their stylesheet, so they resolve
+	 * from the page. Rules are matched by their class names, ids and element
+	 * names, as {@code prune} does, using the {@code pruneSafelist}; the
+	 * position of elements on the page is not known.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.criticalCss")
+	private boolean criticalCss;
+
+	/**
+	 * The directory with the pages to extract critical CSS for.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "${basedir}/src/main/webapp")
+	private File criticalPagesDirectory;
+
+	/**
+	 * Ant style patterns of the pages, relative to
+	 * {@code criticalPagesDirectory}.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] criticalPages = new String[] {"**/*.html"};
+
+	/**
+	 * The directory to write the critical CSS to, keeping the paths of the
+	 * pages.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "${project.build.directory}/critical-css")
+	private File criticalCssDirectory;
+
+	/**
+	 * Groups of compiled stylesheets to concatenate into one bundle each,
+	 * eg.
+	 *
+	 * <pre>
+	 * &lt;bundles&gt;
+	 *     &lt;bundle&gt;
+	 *         &lt;name&gt;portal.css&lt;/name&gt;
+	 *         &lt;files&gt;
+	 *             &lt;file&gt;reset.css&lt;/file&gt;
+	 *             &lt;file&gt;theme/**&#47;*.css&lt;/file&gt;
+	 *         &lt;/files&gt;
+	 *     &lt;/bundle&gt;
+	 * &lt;/bundles&gt;
+	 * </pre>
+	 *
+	 * The source maps of the stylesheets are merged into
+	 * {@code portal.css.map}; with the {@code INLINE} and {@code LAZY}
+	 * source map modes the bundle has no source map. Plain CSS
+	 * {@code @import} rules are moved to the start of the bundle. A bundle is
+	 * only written again when one of its stylesheets was compiled or changed.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private List<CssBundle> bundles = Collections.emptyList();
+
 	/**
 	 * Execute the compiler script.
 	 *
@@ -51,123 +196,545 @@ public class UpdateStylesheetsMojo extends AbstractSassMojo {
 			this.getLog().info("Skip compiling Sass templates");
 			return;
 		}
-		boolean buildRequired = true;
 		try {
-			buildRequired = buildRequired();
-		} catch (IOException e) {
-			throw new MojoExecutionException("Could not check file timestamps", e);
+			final List<EntryPoint> entryPoints = this.getEntryPoints();
+			final List<String> compiled = this.compile(entryPoints);
+			final List<File> bundleFiles = this.bundleStylesheets(entryPoints, compiled);
+			if (this.cssStats || !this.cssBudgets.isEmpty()) {
+				this.checkStylesheets(entryPoints, bundleFiles);
+			}
+			if (this.criticalCss) {
+				this.extractCriticalCss();
+			}
+		} finally {
+			this.reportLoadPathIndex();
+			this.writeTrace();
 		}
-		if (!buildRequired) {
+	}
+
+	/**
+	 * Compile the stale entry points and profile the selected ones.
+	 *
+	 * @param entryPoints all entry points
+	 * @return the CSS files that were compiled
+	 * @throws MojoExecutionException when the execution of the plugin
+	 *         errored
+	 * @throws MojoFailureException when the Sass compilation fails
+	 */
+	private List<String> compile(final List<EntryPoint> entryPoints)
+	        throws MojoExecutionException, MojoFailureException {
+		final ImportGraph importGraph = this.createImportGraph();
+		final Map<EntryPoint, String> fingerprints = this
+		        .getConfigurationFingerprints(entryPoints, importGraph);
+		final FingerprintStore fingerprintStore = new FingerprintStore(
+		        new File(buildDirectory, FingerprintStore.FILE_NAME), this.getLog());
+		final List<EntryPoint> profiled = this.getProfiledEntryPoints(entryPoints);
+		final List<EntryPoint> stale = this.getStaleEntryPoints(entryPoints,
+		        importGraph, fingerprints, fingerprintStore);
+		stale.removeAll(profiled);
+		if (stale.isEmpty() && profiled.isEmpty()) {
 			this.getLog().info("Skip compiling Sass templates, no changes.");
-			return;
+			return Collections.emptyList();
 		}
 
 		this.getLog().info("Compiling Sass templates");
+		final CompileStatistics statistics = new CompileStatistics(
+		        new File(buildDirectory, CompileStatistics.FILE_NAME), this.getLog());
+		final CompilerListener fingerprintListener = this
+		        .createFingerprintListener(fingerprints, fingerprintStore, importGraph);
+		final List<String> compiled = Collections.synchronizedList(new ArrayList<String>());
+		final CompilerListener compiledListener = new CompilerListener() {
+			@Override
+			public void templateCompiled(final String template, final String css,
+			        final long startNanos, final long durationNanos,
+			        final boolean success) {
+				if (success) {
+					compiled.add(css);
+				}
+			}
+		};
+		final List<CompilerListener> listeners = Arrays.asList(statistics,
+		        fingerprintListener, compiledListener);
 
 		// build sass script
 		final StringBuilder sassBuilder = new StringBuilder();
 		this.buildBasicSassScript(sassBuilder);
-		sassBuilder.append("Sass::Plugin.update_stylesheets");
+		// the stale entry points are already selected, have Sass compile
+		// all of them
+		sassBuilder.append("Sass::Plugin.options[:always_update] = true\n");
+		final String basicScript = sassBuilder.toString();
+		try {
+			if (stale.isEmpty()) {
+				this.getLog().debug("Only compiling the profiled Sass templates.");
+			} else if (this.getCompilerThreads() > 1) {
+				this.compileInParallel(basicScript, stale, statistics, listeners);
+			} else {
+				this.compileSequentially(basicScript, stale, statistics, listeners);
+			}
+			if (!profiled.isEmpty()) {
+				this.compileProfiled(basicScript, profiled,
+				        Arrays.asList(fingerprintListener, compiledListener));
+			}
+		} finally {
+			try (Span span = this.getTraceRecorder().begin("save build state", "write")) {
+				fingerprintStore.save();
+			}
+		}
+		final MarkupIndex markup = this.getMarkupIndex();
+		if (markup != null && markup.getFiles() == 0) {
+			this.getLog().warn("No markup found to prune against, the stylesheets are "
+			        + "not pruned. Check pruneMarkupDirectories and pruneMarkupIncludes.");
+		} else if (markup != null) {
+			this.pruneStylesheets(compiled, markup);
+		}
+		return compiled;
+	}
+
+	/**
+	 * Prune the compiled stylesheets and their additional output styles.
+	 * The source map references are removed and the {@code .map} files
+	 * deleted, as their mappings no longer match.
+	 *
+	 * @param compiled the compiled CSS files
+	 * @param markup the words of the markup
+	 * @throws MojoExecutionException when a stylesheet cannot be pruned or
+	 *         a safelist pattern is not valid
+	 */
+	private void pruneStylesheets(final List<String> compiled, final MarkupIndex markup)
+	        throws MojoExecutionException {
+		final CssPruner pruner = new CssPruner(markup, this.getPruneSafelist());
+
+		final List<File> files = new ArrayList<>();
+		for (final String css : compiled) {
+			files.addAll(this.getOutputs(css));
+		}
+		long before = 0;
+		long after = 0;
+		try (Span span = this.getTraceRecorder().begin("prune stylesheets", "prune")) {
+			for (final File file : files) {
+				if (!file.isFile()) {
+					continue;
+				}
+				final String css = new String(Files.readAllBytes(file.toPath()),
+				        StandardCharsets.UTF_8);
+				final CssPruner.Pruned pruned = pruner.prune(css);
+				final byte[] bytes = CssPruner.withoutSourceMap(pruned.getCss())
+				        .getBytes(StandardCharsets.UTF_8);
+				final long size = file.length();
+				Files.write(file.toPath(), bytes);
+				if (Files.deleteIfExists(new File(file.getPath() + ".map").toPath())) {
+					this.getLog().debug("Deleted the source map of pruned " + file);
+				}
+				before += size;
+				after += bytes.length;
+				this.getLog().info("Pruned " + pruned.getRemovedRules() + " of "
+				        + pruned.getRules() + " rules and " + pruned.getRemovedSelectors()
+				        + " selectors from " + file + ", " + (size - bytes.length)
+				        + " bytes removed.");
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not prune the stylesheets", e);
+		}
+		if (before > 0) {
+			this.getLog().info("Pruning removed " + (before - after) + " of " + before
+			        + " bytes (" + (100 * (before - after) / before) + "%).");
+		}
+	}
+
+	/**
+	 * Extract the critical CSS of the pages, also when no stylesheet was
+	 * compiled as the pages may have changed.
+	 *
+	 * @throws MojoExecutionException when a page or stylesheet cannot be
+	 *         read, the CSS cannot be written or a safelist pattern is not
+	 *         valid
+	 */
+	private void extractCriticalCss() throws MojoExecutionException {
+		final CriticalCssExtractor extractor = new CriticalCssExtractor(
+		        this.getDestinations(), this.getPruneSafelist(), this.criticalCssDirectory);
+		final List<CriticalCssExtractor.Page> pages;
+		try (Span span = this.getTraceRecorder().begin("extract critical css", "critical")) {
+			pages = extractor.extract(this.criticalPagesDirectory, this.criticalPages,
+			        Runtime.getRuntime().availableProcessors());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not extract the critical CSS", e);
+		}
+		int extracted = 0;
+		for (final CriticalCssExtractor.Page page : pages) {
+			if (page.getStylesheets() == 0) {
+				this.getLog().debug("No compiled stylesheets linked from " + page.getPath());
+				continue;
+			}
+			extracted++;
+			this.getLog().info("Critical CSS of " + page.getPath() + ": "
+			        + page.getCritical() + " of " + page.getSize()
+			        + " bytes, " + page.getDeferredRules() + " of "
+			        + page.getRules() + " rules not critical.");
+		}
+		this.getLog().info("Extracted the critical CSS of " + extracted + " of "
+		        + pages.size() + " pages to " + this.criticalCssDirectory);
+	}
+
+	/**
+	 * Compile the entry points in one JRuby runtime.
+	 *
+	 * @param basicScript the basic sass script
+	 * @param entryPoints the entry points to compile
+	 * @param statistics compile history, updated
+	 * @param listeners listeners for the compilation results
+	 * @throws MojoFailureException when the Sass compilation fails
+	 */
+	private void compileSequentially(final String basicScript,
+	        final List<EntryPoint> entryPoints, final CompileStatistics statistics,
+	        final List<CompilerListener> listeners) throws MojoFailureException {
+		// compile an explicit list of entry points, so Sass doesn't glob
+		// each (nested) template location on every update
+		final StringBuilder sassBuilder = new StringBuilder(basicScript);
+		this.buildEntryPointScript(sassBuilder, entryPoints);
 		final String sassScript = sassBuilder.toString();
 
 		// ...and execute
-		this.executeSassScript(sassScript);
+		final CompilerCallback compilerCallback = new CompilerCallback(this.getLog());
+		for (final CompilerListener listener : listeners) {
+			compilerCallback.addListener(listener);
+		}
+		this.runSassScript(sassScript, compilerCallback);
+		try (Span span = this.getTraceRecorder().begin("save build state", "write")) {
+			statistics.recordLibraries(compilerCallback);
+			statistics.save();
+		}
+		this.checkCompilerCallback(compilerCallback);
+	}
+
+	/**
+	 * Compile the entry points under the JRuby profiler, one at a time, in
+	 * a runtime of their own. The durations are not recorded in the compile
+	 * history, profiling slows down the compilation.
+	 *
+	 * @param basicScript the basic sass script
+	 * @param entryPoints the entry points to profile
+	 * @param listeners listeners for the compilation results, without the
+	 *        compile history
+	 * @throws MojoFailureException when the Sass compilation fails
+	 */
+	private void compileProfiled(final String basicScript,
+	        final List<EntryPoint> entryPoints, final List<CompilerListener> listeners)
+	        throws MojoFailureException {
+		final File profileDirectory = new File(buildDirectory, PROFILE_DIRECTORY);
+		profileDirectory.mkdirs();
+		final StringBuilder sassBuilder = new StringBuilder(basicScript);
+		final Map<EntryPoint, String> names = this.buildProfileScript(sassBuilder,
+		        entryPoints, profileDirectory);
+		this.getLog().info("Profiling " + entryPoints.size() + " Sass templates");
+
+		final CompilerCallback compilerCallback = new CompilerCallback(this.getLog());
+		for (final CompilerListener listener : listeners) {
+			compilerCallback.addListener(listener);
+		}
+		this.runSassScript(sassBuilder.toString(), compilerCallback, true);
+		for (final Map.Entry<EntryPoint, String> name : names.entrySet()) {
+			this.getLog().info("Profiles of " + name.getKey().getTemplate() + ": "
+			        + new File(profileDirectory, name.getValue()) + ".{flat,graph}.txt");
+		}
+		this.checkCompilerCallback(compilerCallback);
+	}
+
+	/**
+	 * Compile the entry points using multiple JRuby runtimes, longest
+	 * compile first.
+	 *
+	 * @param basicScript the basic sass script
+	 * @param entryPoints the entry points to compile
+	 * @param statistics compile history, used to schedule and updated
+	 * @param listeners listeners for the compilation results
+	 * @throws MojoExecutionException when a runtime failed
+	 * @throws MojoFailureException when the Sass compilation fails
+	 */
+	private void compileInParallel(final String basicScript,
+	        final List<EntryPoint> entryPoints, final CompileStatistics statistics,
+	        final List<CompilerListener> listeners)
+	        throws MojoExecutionException, MojoFailureException {
+		final List<List<EntryPoint>> batches = new CompileScheduler(statistics)
+		        .schedule(entryPoints, this.getCompilerThreads());
+		this.getLog().info("Compiling " + entryPoints.size()
+		        + " Sass templates using " + batches.size() + " threads");
+
+		final ExecutorService executor = Executors.newFixedThreadPool(batches.size());
+		final List<Future<CompilerCallback>> results = new ArrayList<>();
+		final List<CompilerCallback> callbacks = new ArrayList<>();
+		try {
+			for (final List<EntryPoint> batch : batches) {
+				final StringBuilder sassBuilder = new StringBuilder(basicScript);
+				this.buildEntryPointScript(sassBuilder, batch);
+				final String sassScript = sassBuilder.toString();
+				results.add(executor.submit(new Callable<CompilerCallback>() {
+					@Override
+					public CompilerCallback call() {
+						final CompilerCallback compilerCallback =
+						        new CompilerCallback(getLog());
+						for (final CompilerListener listener : listeners) {
+							compilerCallback.addListener(listener);
+						}
+						runSassScript(sassScript, compilerCallback);
+						return compilerCallback;
+					}
+				}));
+			}
+			for (final Future<CompilerCallback> result : results) {
+				callbacks.add(result.get());
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new MojoExecutionException("Interrupted compiling Sass templates", e);
+		} catch (ExecutionException e) {
+			throw new MojoExecutionException("Sass compilation failed", e.getCause());
+		} finally {
+			executor.shutdownNow();
+		}
+
+		try (Span span = this.getTraceRecorder().begin("save build state", "write")) {
+			for (final CompilerCallback compilerCallback : callbacks) {
+				statistics.recordLibraries(compilerCallback);
+			}
+			statistics.save();
+		}
+		for (final CompilerCallback compilerCallback : callbacks) {
+			this.checkCompilerCallback(compilerCallback);
+		}
+	}
+
+	/**
+	 * Gets the entry points that need to be compiled because their CSS file
+	 * is missing, older than the template or one of its partials, or was
+	 * compiled with a different configuration.
+	 *
+	 * @param entryPoints all entry points
+	 * @param importGraph the import graph
+	 * @param fingerprints the current configuration fingerprints
+	 * @param fingerprintStore the fingerprints of the existing CSS files
+	 * @return the stale entry points
+	 * @throws MojoExecutionException if the files cannot be checked
+	 */
+	private List<EntryPoint> getStaleEntryPoints(final List<EntryPoint> entryPoints,
+	        final ImportGraph importGraph, final Map<EntryPoint, String> fingerprints,
+	        final FingerprintStore fingerprintStore) throws MojoExecutionException {
+		final Map<EntryPoint, Staleness> staleness;
+		try (Span span = this.getTraceRecorder().begin("check staleness", "scan")) {
+			staleness = new StalenessChecker(importGraph)
+			        .check(entryPoints, fingerprints, fingerprintStore);
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not check file timestamps", e);
+		}
+		if (this.getLog().isDebugEnabled()) {
+			for (final Map.Entry<EntryPoint, Staleness> entry : staleness.entrySet()) {
+				this.getLog().debug(entry.getValue() + ": " + entry.getKey());
+			}
+		}
+		final List<EntryPoint> stale = StalenessChecker.getStale(staleness);
+		if (!stale.isEmpty()) {
+			this.getLog().info(stale.size() + " of " + entryPoints.size()
+			        + " Sass templates need to be compiled.");
+		}
+		return stale;
+	}
+
+	/**
+	 * Write the bundles whose stylesheets were compiled or changed, or that
+	 * are missing.
+	 *
+	 * @param entryPoints all entry points
+	 * @param compiled the CSS files compiled in this execution
+	 * @return the bundle files
+	 * @throws MojoExecutionException when a bundle is not valid or cannot be
+	 *         written
+	 */
+	private List<File> bundleStylesheets(final List<EntryPoint> entryPoints,
+	        final List<String> compiled) throws MojoExecutionException {
+		final List<File> bundleFiles = new ArrayList<>();
+		if (this.bundles.isEmpty()) {
+			return bundleFiles;
+		}
+		final List<File> roots = this.getOutputRoots();
+		final Map<String, File> outputs = new TreeMap<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			for (final File output : this.getOutputs(entryPoint.getCss())) {
+				if (output.isFile()) {
+					outputs.put(relativePath(output, roots), output);
+				}
+			}
+		}
+		final Set<File> written = new HashSet<>();
+		for (final String css : compiled) {
+			for (final File output : this.getOutputs(css)) {
+				written.add(output.getAbsoluteFile());
+			}
+		}
+
+		final FingerprintStore fingerprintStore = new FingerprintStore(
+		        new File(buildDirectory, BUNDLES_FILE_NAME), this.getLog());
+		final SourcemapMode sourcemapMode = this.getSourcemapMode();
+		final StylesheetBundler bundler = new StylesheetBundler(this.getLog(),
+		        sourcemapMode == null || sourcemapMode == SourcemapMode.EXTERNAL);
+		try (Span span = this.getTraceRecorder().begin("bundle stylesheets", "bundle")) {
+			for (final CssBundle bundle : this.bundles) {
+				bundle.validate();
+				final File target = bundle.getTarget(this.getDestinations());
+				final List<File> members = bundle.getMembers(outputs);
+				if (members.isEmpty()) {
+					this.getLog().warn("No compiled stylesheets match bundle " + bundle);
+					continue;
+				}
+				bundleFiles.add(target);
+
+				final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint()
+				        .add("bundle", bundle);
+				boolean changed = false;
+				for (int i = 0; i < members.size(); i++) {
+					final File member = members.get(i);
+					fingerprint.add("member." + i, member.getAbsolutePath() + ":"
+					        + member.length() + ":" + member.lastModified());
+					changed |= written.contains(member.getAbsoluteFile());
+				}
+				if (!changed && target.isFile() && fingerprint.digest()
+				        .equals(fingerprintStore.get(target.getPath()))) {
+					this.getLog().debug("Bundle " + target + " is up to date.");
+					continue;
+				}
+				final boolean mapped = bundler.bundle(members, target);
+				fingerprintStore.put(target.getPath(), fingerprint.digest());
+				this.getLog().info("Bundled " + members.size() + " stylesheets into " + target
+				        + (mapped ? " with a merged source map." : "."));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not bundle the stylesheets", e);
+		} finally {
+			fingerprintStore.save();
+		}
+		return bundleFiles;
+	}
+
+	/**
+	 * Gets the CSS file of an entry point and its additional output styles.
+	 *
+	 * @param css the CSS file
+	 * @return the CSS files
+	 */
+	private List<File> getOutputs(final String css) {
+		final List<File> outputs = new ArrayList<>();
+		outputs.add(new File(css));
+		for (final OutputStyle style : this.getOutputStyles()) {
+			outputs.add(new File(style.getTarget(css, this.getDestinations())));
+		}
+		return outputs;
+	}
+
+	/**
+	 * Gets the directories the CSS paths are relative to: the CSS
+	 * destinations and the destinations of the output styles and bundles.
+	 *
+	 * @return the directories
+	 */
+	private List<File> getOutputRoots() {
+		final List<File> roots = new ArrayList<>(this.getDestinations());
+		for (final OutputStyle style : this.getOutputStyles()) {
+			if (style.getDestination() != null) {
+				roots.add(style.getDestination());
+			}
+		}
+		for (final CssBundle bundle : this.bundles) {
+			if (bundle.getDestination() != null) {
+				roots.add(bundle.getDestination());
+			}
+		}
+		return roots;
 	}
 
 	/**
-	 * Returns true if a build is required.
+	 * Collect the statistics of the stylesheets of the entry points, their
+	 * additional output styles and the bundles, write them if requested and
+	 * check them against the budgets.
 	 *
-	 * @return true if a build is required
-	 * @throws IOException if one occurs checking the files and directories
+	 * @param entryPoints all entry points
+	 * @param bundleFiles the bundles
+	 * @throws MojoExecutionException when a stylesheet cannot be read or a
+	 *         budget is not valid
+	 * @throws MojoFailureException when a stylesheet exceeds its budget and
+	 *         {@code failOnBudget} is set
 	 */
-	private boolean buildRequired() throws IOException {
-		// If the target directory does not exist we need a build
-		if (!buildDirectory.exists()) {
-			return true;
+	private void checkStylesheets(final List<EntryPoint> entryPoints,
+	        final List<File> bundleFiles) throws MojoExecutionException, MojoFailureException {
+		for (final CssBudget budget : this.cssBudgets) {
+			budget.validate();
 		}
+		final List<File> roots = this.getOutputRoots();
+		final List<File> outputs = new ArrayList<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			outputs.addAll(this.getOutputs(entryPoint.getCss()));
+		}
+		outputs.addAll(bundleFiles);
 
-		final LastModifiedWalker sourceWalker =
-		        new LastModifiedWalker(getSassSourceDirectory());
-		final LastModifiedWalker targetWalker = new LastModifiedWalker(destination);
-		// If either directory is empty, we do a build to make sure
-		if (sourceWalker.getCount() == 0 || targetWalker.getCount() == 0) {
-			return true;
+		final List<StylesheetStats> stylesheets = new ArrayList<>();
+		try (Span span = this.getTraceRecorder().begin("analyze stylesheets", "stats")) {
+			for (final File output : outputs) {
+				if (output.isFile()) {
+					stylesheets.add(StylesheetStats.analyze(relativePath(output, roots),
+					        Files.readAllBytes(output.toPath())));
+				}
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not analyze the stylesheets", e);
 		}
 
-		return sourceWalker.getYoungest() > targetWalker.getYoungest();
+		if (this.cssStats) {
+			final File statsFile = new File(buildDirectory, STATS_FILE_NAME);
+			try {
+				StylesheetStats.write(statsFile, stylesheets);
+				this.getLog().info("Wrote the statistics of " + stylesheets.size()
+				        + " stylesheets to " + statsFile);
+			} catch (IOException e) {
+				this.getLog().warn("Could not write stylesheet statistics " + statsFile
+				        + ": " + e.getMessage());
+			}
+		}
+
+		final List<String> exceeded = new ArrayList<>();
+		for (final StylesheetStats stats : stylesheets) {
+			for (final CssBudget budget : this.cssBudgets) {
+				if (budget.matches(stats.getPath())) {
+					exceeded.addAll(budget.check(stats));
+				}
+			}
+		}
+		for (final String message : exceeded) {
+			if (this.failOnBudget) {
+				this.getLog().error(message);
+			} else {
+				this.getLog().warn(message);
+			}
+		}
+		if (this.failOnBudget && !exceeded.isEmpty()) {
+			throw new MojoFailureException(exceeded.size()
+			        + " CSS budgets exceeded, see the messages above.");
+		}
 	}
 
 	/**
-	 * Directorywalker that looks at the lastModified timestamp of files.
-	 *
-	 * @see File#lastModified()
-	 */
-	private class LastModifiedWalker extends DirectoryWalker<Void> {
-		/**
-		 * timestamp of the youngest file.
-		 */
-		private Long youngest;
-		/**
-		 * timestamp of the oldest file.
-		 */
-		private Long oldest;
-		/**
-		 * number of files in the directory.
-		 */
-		private int count = 0;
-
-		/**
-		 * Create a "last modified" directory walker.
-		 * @param startDirectory The direcoty to start walking.
-		 * @throws IOException if any occurs while walking the directory tree.
-		 */
-		public LastModifiedWalker(final File startDirectory) throws IOException {
-			walk(startDirectory, null);
-			getLog().info("Checked " + count + " files for " + startDirectory);
-		}
-
-		/**
-		 * {@inheritDoc}
-		 */
-		@Override
-		protected void handleFile(final File file, final int depth,
-		        final Collection<Void> results) throws IOException {
-			long lastMod = file.lastModified();
-			// CHECKSTYLE:OFF:AvoidInlineConditionals
-			youngest = (youngest == null ? lastMod : Math.max(youngest, lastMod));
-			oldest = (oldest == null ? lastMod : Math.min(oldest, lastMod));
-			// CHECKSTYLE:ON
-			count++;
-			super.handleFile(file, depth, results);
-		}
-
-		/**
-		 * Get timestamp of the youngest file in the directory.
-		 *
-		 * @return timestamp of youngest file
-		 * @see File#lastModified()
-		 */
-		public Long getYoungest() {
-			return youngest;
-		}
-
-		/**
-		 * Get timestamp of the oldest file in the directory.
-		 *
-		 * @return timestamp of oldest file
-		 * @see File#lastModified()
-		 */
-		public Long getOldest() {
-			return oldest;
-		}
-
-		/**
-		 * get number of files in the directory.
-		 *
-		 * @return number of files
-		 */
-		public int getCount() {
-			return count;
+	 * Get the path of a stylesheet relative to the destination containing
+	 * it.
+	 *
+	 * @param file the stylesheet
+	 * @param roots the destinations
+	 * @return the relative path using {@code /}, or the absolute path if no
+	 *         destination contains the stylesheet
+	 */
+	private static String relativePath(final File file, final List<File> roots) {
+		final Path path = file.getAbsoluteFile().toPath().normalize();
+		for (final File root : roots) {
+			final Path rootPath = root.getAbsoluteFile().toPath().normalize();
+			if (path.startsWith(rootPath)) {
+				return FilenameUtils.separatorsToUnix(rootPath.relativize(path).toString());
+			}
 		}
+		return FilenameUtils.separatorsToUnix(path.toString());
 	}
 }
@@ -19,22 +19,111 @@
  */
 package nl.geodienstencentrum.maven.plugin.sass.compiler;
 
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
 import nl.geodienstencentrum.maven.plugin.sass.AbstractSassMojo;
+import nl.geodienstencentrum.maven.plugin.sass.OutputStyle;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.ImportGraph.Dependencies;
 
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+import org.jruby.embed.EvalFailedException;
+import org.jruby.embed.ScriptingContainer;
 
 /**
  * The Class WatchMojo runs the Sass compiler's {@code watch} process.
  */
-@Mojo(name = "watch")
+@Mojo(name = "watch", requiresDependencyResolution = ResolutionScope.COMPILE)
 public class WatchMojo extends AbstractSassMojo {
 
 	/** true when we are running on Windows. */
 	private static final boolean IS_WINDOWS = 
 	        System.getProperty("os.name").toLowerCase().contains("win");
 
+	/** time to wait for more changes before compiling, in milliseconds. */
+	private static final long QUIET_PERIOD = 50L;
+
+	/**
+	 * Keep one JRuby runtime and the parsed templates in memory between
+	 * changes, instead of using Sass's own watcher. Changes are picked up
+	 * with the Java file watcher; only the templates that import a changed
+	 * file, according to the import graph, are compiled, and the parse
+	 * trees of unchanged partials are reused from memory. Note that the Java
+	 * file watcher polls on some platforms, eg. macOS.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.warmWatch")
+	private boolean warmWatch;
+
+	/**
+	 * Push updated stylesheets to the browsers, so they are swapped without
+	 * reloading the page. Include
+	 * {@code <script src="http://127.0.0.1:35730/livereload.js"></script>}
+	 * in the pages during development.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.liveReload")
+	private boolean liveReload;
+
+	/**
+	 * The loopback port of the live reload server, 0 for any free port.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "35730", property = "sass.liveReloadPort")
+	private int liveReloadPort;
+
+	/**
+	 * Push the content of updated stylesheets to the browsers instead of
+	 * only their path, saving a request per stylesheet.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.liveReloadContent")
+	private boolean liveReloadContent;
+
+	/**
+	 * The origins of pages that may use live reload besides those served
+	 * from the loopback address, eg. {@code http://myapp.test:8080}. Other
+	 * pages can not listen, as the events can carry the stylesheets.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter
+	private String[] liveReloadOrigins = new String[0];
+
+	/** the live reload server while watching, may be {@code null}. */
+	private LiveReloadServer liveReloadServer;
+
 	/**
 	 * Start the watch process.
 	 * 
@@ -48,17 +137,329 @@ public class WatchMojo extends AbstractSassMojo {
 			return;
 		}
 		this.getLog().info("Watching Sass Templates");
+		if (this.liveReload) {
+			this.liveReloadServer = this.createLiveReloadServer();
+			this.liveReloadServer.start();
+		}
+		try {
+			if (this.warmWatch) {
+				this.watchWarm();
+				return;
+			}
+
+			// build sass script
+			final StringBuilder sassBuilder = new StringBuilder();
+			this.buildBasicSassScript(sassBuilder);
+			if (IS_WINDOWS) {
+				sassBuilder.append("require 'listen'\nSass::Plugin.options.merge!(:poll => true)\n");
+			}
+			sassBuilder.append("Sass::Plugin.watch");
+			final String sassScript = sassBuilder.toString();
+
+			// ...and execute
+			this.executeSassScript(sassScript);
+		} finally {
+			if (this.liveReloadServer != null) {
+				this.liveReloadServer.stop();
+				this.liveReloadServer = null;
+			}
+		}
+	}
+
+	/**
+	 * {@inheritDoc} The callback pushes updated stylesheets to the live
+	 * reload server, if any.
+	 */
+	@Override
+	protected CompilerCallback createCompilerCallback() {
+		final CompilerCallback compilerCallback = super.createCompilerCallback();
+		compilerCallback.setLiveReloadServer(this.liveReloadServer);
+		return compilerCallback;
+	}
+
+	/**
+	 * Create the live reload server, pushing stylesheet paths relative to
+	 * the output directories.
+	 *
+	 * @return the server, not started
+	 * @throws MojoExecutionException if the port cannot be opened
+	 */
+	private LiveReloadServer createLiveReloadServer() throws MojoExecutionException {
+		try {
+			return new LiveReloadServer(this.liveReloadPort, this.getDestinations(),
+			        this.liveReloadContent, Arrays.asList(this.liveReloadOrigins),
+			        this.getLog());
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not start the live reload server on port "
+			        + this.liveReloadPort, e);
+		}
+	}
+
+	/**
+	 * Compile the stale templates, including those compiled with a different
+	 * configuration, then compile the templates affected by each change in
+	 * the same runtime until the thread is interrupted. A change that cannot
+	 * be processed, eg. a partial that is gone by the time it is read, is
+	 * logged and the next change is watched for.
+	 *
+	 * @throws MojoExecutionException when the templates cannot be watched
+	 */
+	private void watchWarm() throws MojoExecutionException {
+		final ImportGraph importGraph = this.createImportGraph();
+		List<EntryPoint> entryPoints = this.getEntryPoints();
+		final Map<EntryPoint, Set<File>> dependencies = new HashMap<>();
+		final Map<EntryPoint, String> fingerprints = this.getConfigurationFingerprints(
+		        entryPoints, importGraph);
+		final FingerprintStore fingerprintStore = new FingerprintStore(
+		        new File(this.buildDirectory, FingerprintStore.FILE_NAME), this.getLog());
+		final List<EntryPoint> stale;
+		try {
+			stale = StalenessChecker.getStale(new StalenessChecker(importGraph)
+			        .check(entryPoints, fingerprints, fingerprintStore));
+			for (final EntryPoint entryPoint : entryPoints) {
+				dependencies.put(entryPoint, dependencies(entryPoint, importGraph));
+			}
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not check file timestamps", e);
+		}
 
-		// build sass script
 		final StringBuilder sassBuilder = new StringBuilder();
 		this.buildBasicSassScript(sassBuilder);
-		if (IS_WINDOWS) {
-			sassBuilder.append("require 'listen'\nSass::Plugin.options.merge!(:poll => true)\n");
+		this.buildMemoryCacheScript(sassBuilder);
+		// the import graph selects the templates to compile
+		sassBuilder.append("Sass::Plugin.options[:always_update] = true\n");
+		this.buildEntryPointScript(sassBuilder, stale);
+		final long started = System.nanoTime();
+		final CompilerCallback compilerCallback = this.createCompilerCallback();
+		compilerCallback.addListener(this.createFingerprintListener(fingerprints,
+		        fingerprintStore, importGraph));
+		final ScriptingContainer runtime = this.runSassScript(sassBuilder.toString(),
+		        compilerCallback, false);
+		fingerprintStore.save();
+		this.getLog().info("Compiled " + stale.size() + " of " + entryPoints.size()
+		        + " Sass templates in " + millis(started) + " ms, watching for changes.");
+
+		try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+			final Map<WatchKey, Path> directories = new HashMap<>();
+			final Set<Path> roots = new LinkedHashSet<>();
+			for (final File loadPath : importGraph.getLoadPaths()) {
+				roots.add(loadPath.getAbsoluteFile().toPath());
+			}
+			for (final Path root : roots) {
+				register(watcher, root, directories);
+			}
+
+			while (!Thread.currentThread().isInterrupted()) {
+				final WatchKey first = watcher.take();
+				try {
+					final Set<File> changed = new LinkedHashSet<>();
+					boolean structural = this.collect(first, watcher, directories, changed);
+					WatchKey key;
+					while ((key = watcher.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+						structural |= this.collect(key, watcher, directories, changed);
+					}
+					final long cycle = System.nanoTime();
+
+					for (final File file : changed) {
+						if (this.liveReloadServer != null) {
+							this.liveReloadServer.fileChanged(file);
+						}
+						importGraph.invalidate(file);
+						if (this.getLoadPathIndex() != null) {
+							this.getLoadPathIndex().invalidate(file.getPath());
+						}
+					}
+					if (structural) {
+						final List<EntryPoint> scanned = this.getEntryPoints();
+						for (final EntryPoint removed : entryPoints) {
+							if (!scanned.contains(removed)) {
+								this.deleteOutput(removed);
+								dependencies.remove(removed);
+							}
+						}
+						entryPoints = scanned;
+					}
+
+					final List<EntryPoint> affected = affected(entryPoints, changed,
+					        structural, importGraph, dependencies);
+					if (affected.isEmpty()) {
+						this.getLog().debug("No Sass templates affected by " + changed);
+						continue;
+					}
+					final StringBuilder update = new StringBuilder(
+					        "Sass::Plugin.update_stylesheets([\n");
+					for (final EntryPoint entryPoint : affected) {
+						update.append("    ['").append(entryPoint.getTemplate())
+						        .append("', '").append(entryPoint.getCss()).append("'],\n");
+					}
+					update.append("])\n");
+					try {
+						runtime.runScriptlet(update.toString());
+					} catch (EvalFailedException e) {
+						// eg. a Ruby error in a Sass function, keep watching for the fix
+						this.getLog().error("Could not compile the Sass templates affected by "
+						        + changed + ": " + e.getMessage(), e);
+						continue;
+					}
+					fingerprintStore.save();
+					this.getLog().info("Compiled " + affected.size() + " of "
+					        + entryPoints.size() + " Sass templates in " + millis(cycle)
+					        + " ms after changes to " + changed.size() + " files.");
+				} catch (IOException e) {
+					// eg. a partial renamed by an editor saving atomically
+					this.getLog().error("Could not process the changes, watching for the next "
+					        + "change: " + e.getMessage(), e);
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (IOException e) {
+			throw new MojoExecutionException("Could not watch the Sass templates", e);
+		} finally {
+			runtime.terminate();
+		}
+	}
+
+	/**
+	 * Find the entry points affected by changed files: new and changed entry
+	 * points and those that import a changed file, before or after the
+	 * change. The imports of the changed files must be invalidated in the
+	 * import graph first. Only the dependencies of possibly affected entry
+	 * points are resolved again, unless files were created or deleted.
+	 *
+	 * @param entryPoints the current entry points
+	 * @param changed the changed, created and deleted files
+	 * @param structural {@code true} if files were created or deleted, so
+	 *            any import may resolve differently
+	 * @param importGraph the import graph
+	 * @param dependencies the dependencies by entry point, updated
+	 * @return the affected entry points
+	 * @throws IOException if a template cannot be read
+	 */
+	static List<EntryPoint> affected(final List<EntryPoint> entryPoints,
+	        final Set<File> changed, final boolean structural,
+	        final ImportGraph importGraph, final Map<EntryPoint, Set<File>> dependencies)
+	        throws IOException {
+		final List<EntryPoint> affected = new ArrayList<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			final File template = new File(entryPoint.getTemplate()).getAbsoluteFile();
+			final Set<File> before = dependencies.get(entryPoint);
+			boolean stale = before == null || changed.contains(template)
+			        || !Collections.disjoint(before, changed);
+			if (stale || structural) {
+				final Set<File> after = dependencies(entryPoint, importGraph);
+				dependencies.put(entryPoint, after);
+				stale |= !Collections.disjoint(after, changed);
+			}
+			if (stale && template.isFile()) {
+				affected.add(entryPoint);
+			}
+		}
+		return affected;
+	}
+
+	/**
+	 * Get the files an entry point imports.
+	 *
+	 * @param entryPoint the entry point
+	 * @param importGraph the import graph
+	 * @return the imported files, an empty set if the template is gone
+	 * @throws IOException if a template cannot be read
+	 */
+	private static Set<File> dependencies(final EntryPoint entryPoint,
+	        final ImportGraph importGraph) throws IOException {
+		final File template = new File(entryPoint.getTemplate());
+		if (!template.isFile()) {
+			return Collections.emptySet();
+		}
+		final Dependencies dependencies = importGraph.dependencies(template);
+		return new LinkedHashSet<>(dependencies.getFiles());
+	}
+
+	/**
+	 * Collect the changed files of a watch key and watch created
+	 * directories.
+	 *
+	 * @param key the signalled key
+	 * @param watcher the watch service
+	 * @param directories the watched directories by key
+	 * @param changed the changed files, added to
+	 * @return {@code true} if files were created or deleted
+	 * @throws IOException if a created directory cannot be watched
+	 */
+	private boolean collect(final WatchKey key, final WatchService watcher,
+	        final Map<WatchKey, Path> directories, final Set<File> changed)
+	        throws IOException {
+		final Path dir = directories.get(key);
+		boolean structural = false;
+		for (final WatchEvent<?> event : key.pollEvents()) {
+			if (event.kind() == OVERFLOW || dir == null) {
+				structural = true;
+				continue;
+			}
+			final Path path = dir.resolve((Path) event.context());
+			if (event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+				register(watcher, path, directories);
+			}
+			structural |= event.kind() != ENTRY_MODIFY;
+			changed.add(path.toFile().getAbsoluteFile());
+		}
+		if (!key.reset()) {
+			directories.remove(key);
+		}
+		return structural;
+	}
+
+	/**
+	 * Watch a directory and its subdirectories.
+	 *
+	 * @param watcher the watch service
+	 * @param root the directory
+	 * @param directories the watched directories by key, added to
+	 * @throws IOException if a directory cannot be watched
+	 */
+	private static void register(final WatchService watcher, final Path root,
+	        final Map<WatchKey, Path> directories) throws IOException {
+		if (!Files.isDirectory(root)) {
+			return;
 		}
-		sassBuilder.append("Sass::Plugin.watch");
-		final String sassScript = sassBuilder.toString();
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir,
+			        final BasicFileAttributes attrs) throws IOException {
+				directories.put(dir.register(watcher, ENTRY_CREATE, ENTRY_DELETE,
+				        ENTRY_MODIFY), dir);
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
 
-		// ...and execute
-		this.executeSassScript(sassScript);
+	/**
+	 * Delete the CSS and source map of a deleted template, like Sass's
+	 * watcher does, and the stylesheets of the additional output styles.
+	 *
+	 * @param entryPoint the deleted entry point
+	 */
+	private void deleteOutput(final EntryPoint entryPoint) {
+		final List<File> outputs = new ArrayList<>(Arrays.asList(new File(entryPoint.getCss()),
+		        new File(entryPoint.getCss() + ".map")));
+		for (final OutputStyle style : this.getOutputStyles()) {
+			outputs.add(new File(style.getTarget(entryPoint.getCss(), this.getDestinations())));
+		}
+		for (final File output : outputs) {
+			if (output.isFile() && output.delete()) {
+				this.getLog().info("Deleted " + output);
+			}
+		}
+	}
+
+	/**
+	 * Get the milliseconds since a time.
+	 *
+	 * @param started {@link System#nanoTime()} at the start
+	 * @return elapsed milliseconds
+	 */
+	private static long millis(final long started) {
+		return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
 	}
 }
@@ -29,6 +29,7 @@ import javax.script.ScriptEngineManager;
 import javax.script.ScriptException;
 import nl.geodienstencentrum.maven.plugin.sass.AbstractSassMojo;
 import nl.geodienstencentrum.maven.plugin.sass.Resource;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.logging.Log;
@@ -155,11 +156,16 @@ public class SCSSLintMojo extends AbstractSassMojo {
 		context.setAttribute(ScriptEngine.ARGV,
 				argv.toArray(new String[argv.size()]),
 				ScriptContext.GLOBAL_SCOPE);
+		final FlightRecorderEvents.Event lintEvent = this.getFlightRecorderEvents()
+		        .begin(FlightRecorderEvents.Type.LINT);
 		try {
 			log.info("Reporting scss lint in: " + this.outputFile.getAbsolutePath());
 			ExitCode result = ExitCode.getExitCode(
 			        Ints.checkedCast((Long) jruby.eval(sassScript.toString(),
 			                             context)));
+			lintEvent.template(argv.toString()).bytesOut(this.outputFile.length())
+			        .success(result == ExitCode.CODE_0 || result == ExitCode.CODE_1)
+			        .commit();
 			log.debug("scss-lint result: " + result.toString());
 			switch (result) {
 				case CODE_0:
@@ -189,6 +195,7 @@ public class SCSSLintMojo extends AbstractSassMojo {
 				// CHECKSTYLE:ON
 			}
 		} catch (final ScriptException e) {
+			lintEvent.template(argv.toString()).success(false).commit();
 			throw new MojoExecutionException(
 					"Failed to execute scss-lint Ruby script:\n" + sassScript, e);
 		}
@@ -19,6 +19,7 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import javax.xml.transform.Result;
 import javax.xml.transform.Source;
 import javax.xml.transform.SourceLocator;
@@ -29,6 +30,7 @@ import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.stream.StreamResult;
 import javax.xml.transform.stream.StreamSource;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents;
 import org.apache.maven.doxia.sink.Sink;
 import org.apache.maven.plugin.logging.Log;
 
@@ -42,6 +44,7 @@ public class SCSSLintReportGenerator {
 	private final String description;
 	private final File xmlFile;
 	private final Log log;
+	private final FlightRecorderEvents flightRecorderEvents;
 
 	/**
 	 * Construct a configured instance of the report generator.
@@ -53,10 +56,28 @@ public class SCSSLintReportGenerator {
 	 */
 	public SCSSLintReportGenerator(final Sink sink, final String description,
 	        final File xmlFile, final Log log) {
+		this(sink, description, xmlFile, log, FlightRecorderEvents.create(false, log));
+	}
+
+	/**
+	 * Construct a configured instance of the report generator that emits a
+	 * Flight Recorder event for the transformation.
+	 *
+	 * @param sink (html) doxia sink to use
+	 * @param description description for the report
+	 * @param xmlFile input xml file to convert
+	 * @param log maven log
+	 * @param flightRecorderEvents the Flight Recorder events
+	 * @since 2.21
+	 */
+	public SCSSLintReportGenerator(final Sink sink, final String description,
+	        final File xmlFile, final Log log,
+	        final FlightRecorderEvents flightRecorderEvents) {
 		this.sink = sink;
 		this.description = description;
 		this.xmlFile = xmlFile;
 		this.log = log;
+		this.flightRecorderEvents = flightRecorderEvents;
 	}
 
 	/**
@@ -81,6 +102,8 @@ public class SCSSLintReportGenerator {
 	 */
 	private String translateXML() {
 		String translated = null;
+		final FlightRecorderEvents.Event event = this.flightRecorderEvents
+		        .begin(FlightRecorderEvents.Type.LINT_REPORT);
 		try {
 			final TransformerFactory factory = TransformerFactory.newInstance();
 			final Templates template = factory.newTemplates(
@@ -93,6 +116,9 @@ public class SCSSLintReportGenerator {
 			final Result result = new StreamResult(outWriter);
 			xformer.transform(source, result);
 			translated = outWriter.toString();
+			if (event.isRecording()) {
+				event.bytesOut(translated.getBytes(StandardCharsets.UTF_8).length);
+			}
 		} catch (FileNotFoundException | TransformerConfigurationException e) {
 			// error in the XSL file
 			log.error("Error during xml conversion of " + this.xmlFile, e);
@@ -105,6 +131,8 @@ public class SCSSLintReportGenerator {
 					+ "line: " + line + ", col: " + col, e);
 		}
 
+		event.template(this.xmlFile.getPath()).bytesIn(this.xmlFile.length())
+		        .success(translated != null).commit();
 		log.debug("Transformed scss-lint xml:\n" + translated);
 		return translated;
 	}
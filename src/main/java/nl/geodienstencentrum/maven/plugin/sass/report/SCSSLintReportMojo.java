@@ -22,6 +22,7 @@ import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
 import nl.geodienstencentrum.maven.plugin.sass.Resource;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents;
 import org.apache.maven.doxia.siterenderer.Renderer;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Execute;
@@ -151,6 +152,15 @@ public class SCSSLintReportMojo extends AbstractMavenReport {
 	@Parameter(defaultValue = "false")
 	private boolean skip;
 
+	/**
+	 * Emit a JDK Flight Recorder event for the transformation of the
+	 * scss-lint results. Needs Java 11 or later and a running recording.
+	 *
+	 * @since 2.21
+	 */
+	@Parameter(defaultValue = "false", property = "sass.flightRecorderEvents")
+	private boolean flightRecorderEvents;
+
 	/**
 	 * Build the report, for now ignoring the locale.
 	 *
@@ -169,7 +179,8 @@ public class SCSSLintReportMojo extends AbstractMavenReport {
                     getSink(),
                     this.getDescription(locale),
                     new File(getProject().getBasedir() + "/target", "scss-lint.xml"),
-                    getLog());
+                    getLog(),
+                    FlightRecorderEvents.create(this.flightRecorderEvents, getLog()));
 			generator.generateReport();
 		} catch (Exception t) {
 			getLog().error("Error during SCSS Lint report generation", t);
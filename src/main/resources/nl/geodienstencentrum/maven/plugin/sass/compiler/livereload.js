@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+/*
+ * Live reload client of the sass:watch goal, include it in a page with
+ * <script src="http://127.0.0.1:35730/livereload.js"></script>
+ * Stylesheets are swapped when they are updated, without reloading the page.
+ */
+(function () {
+	'use strict';
+	var script = document.currentScript
+			|| document.querySelector('script[src$="/livereload.js"]');
+	var base = script.src.substring(0, script.src.lastIndexOf('/') + 1);
+
+	var URL_FUNCTION = /url\(\s*(['"]?)([^'")]*)\1\s*\)/g;
+
+	// the injected CSS resolves urls against the page, resolve them against the stylesheet
+	function rebase(css, href) {
+		return css.replace(URL_FUNCTION, function (match, quote, url) {
+			if (url === '' || /^(data:|#)/i.test(url)) {
+				return match;
+			}
+			try {
+				return 'url(' + quote + new URL(url, href).href + quote + ')';
+			} catch (e) {
+				return match;
+			}
+		});
+	}
+
+	function matches(href, path) {
+		var file = href.split('#')[0].split('?')[0];
+		return file === path || file.slice(-path.length - 1) === '/' + path;
+	}
+
+	function swap(sheet) {
+		var links = document.querySelectorAll('link[rel="stylesheet"]');
+		for (var i = 0; i < links.length; i++) {
+			var link = links[i];
+			if (!matches(link.href, sheet.path)) {
+				continue;
+			}
+			if (typeof sheet.css === 'string') {
+				var style = link.livereloadStyle;
+				if (!style) {
+					style = document.createElement('style');
+					style.setAttribute('data-livereload', sheet.path);
+					link.parentNode.insertBefore(style, link.nextSibling);
+					link.livereloadStyle = style;
+					link.disabled = true;
+				}
+				style.textContent = rebase(sheet.css, link.href);
+			} else {
+				var clone = link.cloneNode(false);
+				clone.href = link.href.split('#')[0].split('?')[0] + '?livereload=' + Date.now();
+				clone.onload = (function (old) {
+					return function () {
+						if (old.parentNode) {
+							old.parentNode.removeChild(old);
+						}
+					};
+				})(link);
+				link.parentNode.insertBefore(clone, link.nextSibling);
+			}
+		}
+	}
+
+	var source = new EventSource(base + 'events');
+	source.addEventListener('css', function (event) {
+		var stylesheets = JSON.parse(event.data).stylesheets;
+		for (var i = 0; i < stylesheets.length; i++) {
+			swap(stylesheets[i]);
+		}
+	});
+})();
@@ -0,0 +1,47 @@
+#
+# Copyright 2016 Mark Prins, GeoDienstenCentrum
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Holds back the CSS until its source map is rendered, then writes the CSS
+# with the source map as data URL instead of writing the .map file. Loaded
+# after output_styles.rb, so the other output styles pass through.
+class Sass::Plugin::Compiler
+  def self.inline_sourcemap(css, json)
+    css.sub(%r{/\*# sourceMappingURL=\S* \*/\s*\z}) { "/*# sourceMappingURL=data:application/json;base64,#{[json].pack('m0')} */\n" }
+  end
+  alias_method :external_sourcemap_update_stylesheet, :update_stylesheet
+  def update_stylesheet(filename, css, sourcemap)
+    Thread.current[:maven_plugin_inline] = [css, sourcemap]
+    external_sourcemap_update_stylesheet(filename, css, sourcemap)
+  ensure
+    inline = Thread.current[:maven_plugin_inline]
+    Thread.current[:maven_plugin_inline] = nil
+    # no source map was rendered, eg. for a failed compilation
+    external_sourcemap_write_file(css, inline[2]) if inline && inline[2]
+  end
+  alias_method :external_sourcemap_write_file, :write_file
+  def write_file(file_name, content)
+    inline = Thread.current[:maven_plugin_inline]
+    if inline && file_name == inline[0]
+      inline[2] = content
+    elsif inline && file_name == inline[1] && inline[2]
+      external_sourcemap_write_file(inline[0], Sass::Plugin::Compiler.inline_sourcemap(inline[2], content))
+      inline[2] = nil
+      File.delete(file_name) if File.exist?(file_name)
+    else
+      external_sourcemap_write_file(file_name, content)
+    end
+  end
+  private :update_stylesheet, :external_sourcemap_update_stylesheet, :write_file, :external_sourcemap_write_file
+end
@@ -0,0 +1,25 @@
+#
+# Copyright 2016 Mark Prins, GeoDienstenCentrum
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Removes the source map of an earlier build, which no longer matches; only
+# serve creates lazy source maps, when they are requested.
+class Sass::Plugin::Compiler
+  alias_method :eager_sourcemap_update_stylesheet, :update_stylesheet
+  def update_stylesheet(filename, css, sourcemap)
+    File.delete(sourcemap) if sourcemap && File.exist?(sourcemap)
+    eager_sourcemap_update_stylesheet(filename, css, sourcemap)
+  end
+  private :update_stylesheet, :eager_sourcemap_update_stylesheet
+end
@@ -0,0 +1,29 @@
+#
+# Copyright 2016 Mark Prins, GeoDienstenCentrum
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Asks the LoadPathIndex passed as $load_path_index for imported files
+# before Sass probes the filesystem, and keeps it up to date when watching.
+class Sass::Importers::Filesystem
+  alias_method :unindexed_find_real_file, :find_real_file
+  def find_real_file(dir, name, options)
+    found = $load_path_index.find(dir.to_s, name.to_s)
+    return unindexed_find_real_file(dir, name, options) if found.nil?
+    return nil if found.length == 0
+    [found[0], found[1].to_sym]
+  end
+  protected :find_real_file, :unindexed_find_real_file
+end
+Sass::Plugin.on_template_created {|template| $load_path_index.invalidate(template) }
+Sass::Plugin.on_template_deleted {|template| $load_path_index.invalidate(template) }
@@ -0,0 +1,64 @@
+#
+# Copyright 2016 Mark Prins, GeoDienstenCentrum
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Renders the OutputStyles passed as $output_styles after each stylesheet.
+# The parse tree that css_tree is called on for the regular stylesheet is
+# kept and evaluated again with the options of each style, so the template is
+# parsed once. Evaluation depends on the style, eg. colors and numbers are
+# written shorter when compressed, so only reformatting the evaluated tree
+# would not give the same CSS as a compilation in that style. Evaluation
+# copies the nodes it visits and options propagate through the tree, so the
+# parse tree can be evaluated again after setting the options on the root.
+# If the parse tree is not available, eg. when the template comes from the
+# Sass cache of a different Sass version, the stylesheet is compiled again.
+class Sass::Tree::RootNode
+  alias_method :single_style_css_tree, :css_tree
+  def css_tree
+    Thread.current[:maven_plugin_root] = self
+    single_style_css_tree
+  end
+  private :css_tree, :single_style_css_tree
+end
+Sass::Plugin.on_compilation_error {|error, template, css| Thread.current[:maven_plugin_root] = :failed }
+class Sass::Plugin::Compiler
+  alias_method :single_style_update_stylesheet, :update_stylesheet
+  def update_stylesheet(filename, css, sourcemap)
+    Thread.current[:maven_plugin_root] = nil
+    single_style_update_stylesheet(filename, css, sourcemap)
+    root = Thread.current[:maven_plugin_root]
+    Thread.current[:maven_plugin_root] = nil
+    return if root == :failed
+    original = root.options if root
+    $output_styles.each do |output|
+      style = output.getStyle.to_sym
+      if root
+        begin
+          root.options = original.merge(:style => style, :sourcemap => :none)
+          rendered = root.send(:single_style_css_tree).css
+        ensure
+          root.options = original
+        end
+      else
+        rendered = Sass::Engine.for_file(filename, engine_options(:css_filename => css, :style => style, :sourcemap => :none)).render
+      end
+      rendered += "\n" unless rendered.end_with?("\n")
+      target = output.getTarget(css, $output_roots)
+      FileUtils.mkdir_p(File.dirname(target))
+      write_file(target, rendered)
+      $compiler_callback.outputStyleWritten(filename, target, output.getStyle)
+    end
+  end
+  private :update_stylesheet, :single_style_update_stylesheet
+end
@@ -0,0 +1,26 @@
+#
+# Copyright 2016 Mark Prins, GeoDienstenCentrum
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+# http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+# Reports the time spent writing each CSS and source map file. Loaded first,
+# so the later patches of write_file call it for the files actually written.
+class Sass::Plugin::Compiler
+  alias_method :untraced_write_file, :write_file
+  def write_file(file_name, content)
+    started = java.lang.System.nano_time
+    untraced_write_file(file_name, content)
+    $compiler_callback.outputWritten(file_name, started, java.lang.System.nano_time - started)
+  end
+  private :write_file, :untraced_write_file
+end
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import nl.geodienstencentrum.maven.plugin.sass.compiler.StylesheetStats;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.CssBudget }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssBudgetTest {
+
+	/**
+	 * Test parsing sizes.
+	 *
+	 * @throws MojoExecutionException if any
+	 */
+	@Test
+	public void testParseSize() throws MojoExecutionException {
+		assertEquals(Long.valueOf(4096), CssBudget.parseSize("4096"));
+		assertEquals(Long.valueOf(200 * 1024), CssBudget.parseSize("200kB"));
+		assertEquals(Long.valueOf(1024 * 1024), CssBudget.parseSize(" 1 MB "));
+		assertEquals(null, CssBudget.parseSize(null));
+	}
+
+	/**
+	 * Test an invalid size.
+	 *
+	 * @throws MojoExecutionException expected
+	 */
+	@Test(expected = MojoExecutionException.class)
+	public void testInvalidSize() throws MojoExecutionException {
+		new CssBudget("**/*.css", "200 kilobytes", null).validate();
+	}
+
+	/**
+	 * Test matching stylesheets.
+	 */
+	@Test
+	public void testMatches() {
+		final CssBudget budget = new CssBudget("themes/**/*.css", null, null);
+		assertTrue(budget.matches("themes/dark/main.css"));
+		assertFalse(budget.matches("print.css"));
+		assertTrue(new CssBudget("**/*.css", null, null).matches("print.css"));
+	}
+
+	/**
+	 * Test checking a stylesheet.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testCheck() throws Exception {
+		final StylesheetStats stats = StylesheetStats.analyze("main.css",
+		        ".a, .b { color: red; }".getBytes(StandardCharsets.UTF_8));
+		assertTrue(new CssBudget("**/*.css", "1kB", "1kB").check(stats).isEmpty());
+
+		final CssBudget budget = new CssBudget("**/*.css", "10", null);
+		budget.maxSelectors = 1;
+		final List<String> exceeded = budget.check(stats);
+		assertEquals(exceeded.toString(), 2, exceeded.size());
+		assertEquals("main.css: size 22 exceeds the budget of 10 (**/*.css)", exceeded.get(0));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.CssBundle }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssBundleTest {
+
+	/**
+	 * Test the stylesheets are in the configured order, once.
+	 */
+	@Test
+	public void testGetMembers() {
+		final Map<String, File> outputs = new TreeMap<>();
+		for (final String path : Arrays.asList("theme/b.css", "print.css", "reset.css",
+		        "theme/a.css", "theme/dark/c.css")) {
+			outputs.put(path, new File("/build/css", path));
+		}
+		final CssBundle bundle = new CssBundle("portal.css", new String[] {"reset.css",
+		        "theme/b.css", "theme/**/*.css", "missing.css"}, null);
+		assertEquals(Arrays.asList(outputs.get("reset.css"), outputs.get("theme/b.css"),
+		        outputs.get("theme/a.css"), outputs.get("theme/dark/c.css")),
+		        bundle.getMembers(outputs));
+	}
+
+	/**
+	 * Test the bundle is written to the first destination by default.
+	 */
+	@Test
+	public void testGetTarget() {
+		assertEquals(new File("/build/css/bundles/portal.css"), new CssBundle(
+		        "bundles/portal.css", new String[] {"*.css"}, null).getTarget(
+		                Arrays.asList(new File("/build/css"), new File("/build/print"))));
+		assertEquals(new File("/dist/portal.css"), new CssBundle("portal.css",
+		        new String[] {"*.css"}, new File("/dist")).getTarget(
+		                Collections.singletonList(new File("/build/css"))));
+	}
+
+	/**
+	 * Test a bundle needs files.
+	 *
+	 * @throws MojoExecutionException expected
+	 */
+	@Test(expected = MojoExecutionException.class)
+	public void testValidate() throws MojoExecutionException {
+		new CssBundle("portal.css", new String[0], null).validate();
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.Digests }.
+ *
+ * @author mprins
+ */
+public class DigestsTest {
+
+	/**
+	 * Test the known hashes of "abc".
+	 */
+	@Test
+	public void testDigests() {
+		final byte[] abc = "abc".getBytes(StandardCharsets.UTF_8);
+		assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", Digests.sha1Hex(abc));
+		assertEquals("ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad",
+		        Digests.sha256Hex(abc));
+	}
+
+	/**
+	 * Every byte is encoded as two lower case digits.
+	 */
+	@Test
+	public void testHex() {
+		assertEquals("", Digests.hex(new byte[0]));
+		assertEquals("00017f80ff", Digests.hex(new byte[] {0, 1, 127, -128, -1}));
+	}
+}
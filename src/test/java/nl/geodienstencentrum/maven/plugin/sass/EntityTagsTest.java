@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.EntityTags }.
+ *
+ * @author mprins
+ */
+public class EntityTagsTest {
+
+	/**
+	 * Test the forms of the {@code If-None-Match} header.
+	 */
+	@Test
+	public void testMatches() {
+		assertTrue(EntityTags.matches("\"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("W/\"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("\"x\", W/\"abc\"", "\"abc\""));
+		assertTrue(EntityTags.matches("*", "\"abc\""));
+		assertFalse(EntityTags.matches(null, "\"abc\""));
+		assertFalse(EntityTags.matches("\"abcd\", \"x\"", "\"abc\""));
+		assertFalse(EntityTags.matches("abc", "\"abc\""));
+	}
+}
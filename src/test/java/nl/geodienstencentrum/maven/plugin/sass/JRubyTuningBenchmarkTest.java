@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Stopwatch;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerCallback;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerListener;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.jruby.RubyInstanceConfig.CompileMode;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Benchmark the JRuby tuning parameters. For each combination the
+ * {@code complete-test} project is compiled a number of times in one runtime;
+ * the first pass shows the cost for a short-lived build, the last pass the
+ * cost in a long running watch session. Only runs when
+ * {@code -DJRubyTuningBenchmarkTest.enabled=true} is set, eg. using the
+ * {@code benchmark} profile. Use -DJRubyTuningBenchmarkTest.passes=n to set
+ * the number of compiles per runtime (defaults to 5).
+ *
+ * @author mprins
+ */
+public class JRubyTuningBenchmarkTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	private static boolean ENABLED;
+
+	private static int PASSES;
+
+	@BeforeClass
+	public static void readEnvironment() {
+		ENABLED = Boolean.getBoolean("JRubyTuningBenchmarkTest.enabled");
+		try {
+			PASSES = Integer.parseInt(System.getProperty("JRubyTuningBenchmarkTest.passes"));
+			if (PASSES < 2) {
+				PASSES = 2;
+			}
+		} catch (NumberFormatException e) {
+			PASSES = 5;
+		}
+	}
+
+	/**
+	 * Compile under every combination of compile mode, object space and
+	 * frozen string literals. JRuby reads the invokedynamic setting once per
+	 * JVM, compare it with separate builds setting {@code jrubyInvokeDynamic}.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testTuningCombinations() throws Exception {
+		assumeTrue("JRuby tuning benchmark is not enabled.", ENABLED);
+
+		final List<String> report = new ArrayList<>();
+		report.add(String.format("%-6s %-9s %-11s %-6s %10s %10s %10s",
+				"mode", "threshold", "objectspace", "frozen",
+				"total ms", "first ms", "last ms"));
+		final Object[][] modes = {
+			{CompileMode.JIT, null}, {CompileMode.JIT, 10},
+			{CompileMode.FORCE, null}, {CompileMode.OFF, null}};
+		for (final Object[] mode : modes) {
+			for (final boolean objectSpace : new boolean[] {false, true}) {
+				for (final boolean frozen : new boolean[] {false, true}) {
+					report.add(this.run((CompileMode) mode[0], (Integer) mode[1],
+							objectSpace, frozen));
+				}
+			}
+		}
+
+		System.out.println("------------------------------------------------------------------------");
+		System.out.println("JRuby tuning benchmark, " + PASSES + " passes per runtime");
+		for (final String line : report) {
+			System.out.println(line);
+		}
+		System.out.println("------------------------------------------------------------------------");
+	}
+
+	/**
+	 * Compile the project {@code PASSES} times in one runtime.
+	 *
+	 * @return a report line
+	 */
+	private String run(final CompileMode mode, final Integer threshold,
+			final boolean objectSpace, final boolean frozen)
+			throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "jrubyCompileMode", mode);
+		this.rule.setVariableValueToObject(myMojo, "jrubyJitThreshold", threshold);
+		this.rule.setVariableValueToObject(myMojo, "jrubyObjectSpace", objectSpace);
+		this.rule.setVariableValueToObject(myMojo, "jrubyFrozenStringLiteral", frozen);
+
+		final StringBuilder sassScript = new StringBuilder();
+		myMojo.buildBasicSassScript(sassScript);
+		sassScript.append(PASSES).append(".times { Sass::Plugin.update_stylesheets }\n");
+
+		// sum of the template compile times per pass
+		final List<Long> passes = new ArrayList<>();
+		final int templates = 2;
+		final CompilerCallback callback = new CompilerCallback(myMojo.getLog());
+		callback.addListener(new CompilerListener() {
+			private int count;
+
+			@Override
+			public void templateCompiled(final String template, final String css,
+					final long startNanos, final long durationNanos, final boolean success) {
+				if (this.count++ % templates == 0) {
+					passes.add(0L);
+				}
+				passes.set(passes.size() - 1, passes.get(passes.size() - 1) + durationNanos);
+			}
+		});
+
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		myMojo.runSassScript(sassScript.toString(), callback);
+		stopwatch.stop();
+
+		TestResources.assertDirectoryContents(
+				new File(projectCopy.getAbsolutePath() + "/target/css/"),
+				"compiled.css.map", "compiled.css", "print.css.map",
+				"print.css");
+
+		return String.format("%-6s %-9s %-11s %-6s %10d %10d %10d",
+				mode, threshold, objectSpace, frozen,
+				stopwatch.elapsed(MILLISECONDS),
+				MILLISECONDS.convert(passes.get(0), NANOSECONDS),
+				MILLISECONDS.convert(passes.get(passes.size() - 1), NANOSECONDS));
+	}
+}
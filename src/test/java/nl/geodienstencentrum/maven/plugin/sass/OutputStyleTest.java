@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.OutputStyle }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class OutputStyleTest {
+
+	/** the CSS destinations. */
+	private final List<File> roots = Arrays.asList(new File("/build/css"),
+	        new File("/build/print"));
+
+	/**
+	 * Test the default suffixes.
+	 */
+	@Test
+	public void testGetSuffix() {
+		assertEquals(".min.css", new OutputStyle("compressed", null, null).getSuffix());
+		assertEquals(".compact.css", new OutputStyle("compact", null, null).getSuffix());
+		assertEquals("-small.css", new OutputStyle("compressed", "-small.css", null)
+		        .getSuffix());
+	}
+
+	/**
+	 * Test a target next to the CSS.
+	 */
+	@Test
+	public void testGetTarget() {
+		assertEquals(new File("/build/css/theme/main.min.css").getPath(),
+		        new OutputStyle("compressed", null, null).getTarget(
+		                new File("/build/css/theme/main.css").getPath(), this.roots));
+	}
+
+	/**
+	 * Test a target in a destination, keeping the path relative to the root
+	 * of the CSS.
+	 */
+	@Test
+	public void testGetTargetDestination() {
+		final OutputStyle style = new OutputStyle("compressed", ".css", new File("/dist"));
+		assertEquals(new File("/dist/theme/main.css").getPath(), style.getTarget(
+		        new File("/build/css/theme/main.css").getPath(), this.roots));
+		assertEquals(new File("/dist/print.css").getPath(), style.getTarget(
+		        new File("/build/print/print.css").getPath(), this.roots));
+		assertEquals(new File("/dist/other.css").getPath(), style.getTarget(
+		        new File("/elsewhere/other.css").getPath(), Collections.<File>emptyList()));
+	}
+
+	/**
+	 * Test an unknown style is rejected.
+	 *
+	 * @throws MojoExecutionException expected
+	 */
+	@Test(expected = MojoExecutionException.class)
+	public void testValidateStyle() throws MojoExecutionException {
+		new OutputStyle("minified", null, null).validate();
+	}
+
+	/**
+	 * Test a style that would overwrite the CSS is rejected.
+	 *
+	 * @throws MojoExecutionException expected
+	 */
+	@Test(expected = MojoExecutionException.class)
+	public void testValidateOverwrite() throws MojoExecutionException {
+		new OutputStyle("compressed", ".css", null).validate();
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.codehaus.plexus.util.DirectoryScanner;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.ResourceScanner}.
+ *
+ * @author mprins
+ */
+public class ResourceScannerTest {
+
+	/** temporary folder for the tree. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Log log = new SystemStreamLog();
+
+	private File root;
+
+	@Before
+	public void createTree() throws Exception {
+		ResourceScanner.clearCache();
+		this.root = this.folder.newFolder("webapp");
+		for (final String dir : new String[] {"a/scss/x", "a/css", "b/scss",
+				"b/.git/scss", "c/d/scss/e/scss", "CVS/scss", "scss"}) {
+			new File(this.root, dir).mkdirs();
+		}
+	}
+
+	@After
+	public void clearCache() {
+		ResourceScanner.clearCache();
+	}
+
+	/**
+	 * The included directories are the same as those of plexus'
+	 * DirectoryScanner.
+	 */
+	@Test
+	public void testSameAsDirectoryScanner() {
+		final String[][][] patterns = {
+			{{"**/*.scss"}, {}},
+			{{"**/scss"}, {}},
+			{{"**/scss", "**/scss/**"}, {}},
+			{{"*"}, {}},
+			{{"a/"}, {}},
+			{{"**/scss/"}, {"c/**"}},
+			{{"**"}, {"**/x"}},
+			{{"c/*/scss"}, {}}};
+		for (final String[][] pattern : patterns) {
+			final DirectoryScanner scanner = new DirectoryScanner();
+			scanner.setBasedir(this.root);
+			scanner.setIncludes(pattern[0]);
+			scanner.setExcludes(pattern[1]);
+			scanner.addDefaultExcludes();
+			scanner.scan();
+			final List<String> expected = new ArrayList<>();
+			for (final String dir : scanner.getIncludedDirectories()) {
+				if (!dir.isEmpty()) {
+					expected.add(dir);
+				}
+			}
+			Collections.sort(expected);
+
+			assertEquals(Arrays.toString(pattern[0]), expected,
+					new ResourceScanner(this.root, Arrays.asList(pattern[0]),
+							Arrays.asList(pattern[1])).getIncludedDirectories(this.log));
+		}
+	}
+
+	/**
+	 * An unchanged tree is not scanned again, a new directory is found.
+	 */
+	@Test
+	public void testCache() {
+		// make the tree old enough to cache
+		this.age(this.root);
+		final ResourceScanner scanner = new ResourceScanner(this.root,
+				Arrays.asList("**/scss"), Collections.<String>emptyList());
+		final List<String> first = scanner.getIncludedDirectories(this.log);
+		assertSame(first, scanner.getIncludedDirectories(this.log));
+
+		assertTrue(new File(this.root, "a/css/scss").mkdir());
+		final List<String> second = scanner.getIncludedDirectories(this.log);
+		assertNotSame(first, second);
+		assertTrue(second.contains("a" + File.separator + "css"
+				+ File.separator + "scss"));
+	}
+
+	/**
+	 * A symbolic link to a directory being walked is not followed.
+	 */
+	@Test
+	public void testSymbolicLinkLoop() {
+		final File link = new File(this.root, "b/scss/up");
+		try {
+			Files.createSymbolicLink(link.toPath(), new File(this.root, "b").toPath());
+		} catch (IOException | UnsupportedOperationException e) {
+			assumeTrue("symbolic links are not supported", false);
+		}
+		final List<String> found = new ResourceScanner(this.root,
+				Arrays.asList("**/scss"), Collections.<String>emptyList())
+				.getIncludedDirectories(this.log);
+		assertTrue(found.toString(), found.contains("b" + File.separator + "scss"));
+		for (final String dir : found) {
+			assertFalse(dir, dir.contains("up"));
+		}
+	}
+
+	/**
+	 * Set the modification time of a tree a minute back.
+	 */
+	private void age(final File dir) {
+		for (final File child : dir.listFiles()) {
+			if (child.isDirectory()) {
+				this.age(child);
+			}
+		}
+		dir.setLastModified(System.currentTimeMillis() - 60000L);
+	}
+}
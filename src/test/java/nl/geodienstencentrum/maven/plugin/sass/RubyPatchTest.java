@@ -0,0 +1,71 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.EnumSet;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.RubyPatch }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class RubyPatchTest {
+
+	/**
+	 * Every patch is a resource that ends its last line.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testResources() throws Exception {
+		for (final RubyPatch patch : RubyPatch.values()) {
+			final StringBuilder script = new StringBuilder();
+			RubyPatch.append(script, EnumSet.of(patch));
+			assertTrue(patch.getResource(), script.toString().contains("alias_method"));
+			assertTrue(patch.getResource(), script.toString().endsWith("end\n")
+			        || script.toString().endsWith("}\n"));
+		}
+	}
+
+	/**
+	 * Patches are appended in the order of the constants, whatever the order
+	 * of the set.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testOrder() throws Exception {
+		final StringBuilder script = new StringBuilder();
+		RubyPatch.append(script, EnumSet.of(RubyPatch.INLINE_SOURCEMAP,
+		        RubyPatch.WRITE_TRACE, RubyPatch.OUTPUT_STYLES, RubyPatch.LOAD_PATH_INDEX));
+		final String ruby = script.toString();
+		final int trace = ruby.indexOf(":untraced_write_file, :write_file");
+		final int index = ruby.indexOf(":unindexed_find_real_file, :find_real_file");
+		final int styles = ruby.indexOf(":single_style_update_stylesheet, :update_stylesheet");
+		final int inline = ruby.indexOf(":external_sourcemap_write_file, :write_file");
+		assertTrue(trace >= 0);
+		assertTrue(trace < index);
+		assertTrue(index < styles);
+		assertTrue(styles < inline);
+		assertEquals(-1, ruby.indexOf(":eager_sourcemap_update_stylesheet"));
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Stopwatch;
+import java.io.File;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerCallback;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Benchmark the startup time of a runtime, loading the gems from the
+ * classpath versus from an extracted runtime. Only runs when
+ * {@code -DRuntimeCacheBenchmarkTest.enabled=true} is set, eg. using the
+ * {@code benchmark} profile. Use -DRuntimeCacheBenchmarkTest.iterations=n to
+ * set the number of runtimes started per mode (defaults to 5).
+ *
+ * @author mprins
+ */
+public class RuntimeCacheBenchmarkTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	private static boolean ENABLED;
+
+	private static int ITERATIONS;
+
+	@BeforeClass
+	public static void readEnvironment() {
+		ENABLED = Boolean.getBoolean("RuntimeCacheBenchmarkTest.enabled");
+		try {
+			ITERATIONS = Integer.parseInt(System.getProperty("RuntimeCacheBenchmarkTest.iterations"));
+			if (ITERATIONS < 1) {
+				ITERATIONS = 1;
+			}
+		} catch (NumberFormatException e) {
+			ITERATIONS = 5;
+		}
+	}
+
+	/**
+	 * Start runtimes that require Sass and Compass in both modes.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testStartupTime() throws Exception {
+		assumeTrue("Runtime cache benchmark is not enabled.", ENABLED);
+
+		final long classpath = this.startup(false);
+		final long extracted = this.startup(true);
+
+		System.out.println("------------------------------------------------------------------------");
+		System.out.println("Runtime startup, average of " + ITERATIONS + " runtimes");
+		System.out.println("  uri:classloader : " + classpath + "ms");
+		System.out.println("  extracted       : " + extracted + "ms");
+		System.out.println("------------------------------------------------------------------------");
+	}
+
+	/**
+	 * Time booting a runtime and loading the gems.
+	 *
+	 * @param extract use the extracted runtime
+	 * @return average startup time in ms
+	 */
+	private long startup(final boolean extract) throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "extractRuntime", extract);
+		this.rule.setVariableValueToObject(myMojo, "runtimeCacheDirectory",
+				new File(projectCopy, "target/runtime-cache"));
+		this.rule.setVariableValueToObject(myMojo, "pluginVersion", "benchmark");
+
+		// extraction is a one time cost, keep it out of the measurement
+		myMojo.getRuntimeHome();
+		final StringBuilder sassScript = new StringBuilder();
+		myMojo.buildBasicSassScript(sassScript);
+
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		for (int i = 0; i < ITERATIONS; i++) {
+			myMojo.runSassScript(sassScript.toString(), new CompilerCallback(myMojo.getLog()));
+		}
+		stopwatch.stop();
+		return stopwatch.elapsed(MILLISECONDS) / ITERATIONS;
+	}
+}
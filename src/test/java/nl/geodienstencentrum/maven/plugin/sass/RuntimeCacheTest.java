@@ -0,0 +1,122 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.RuntimeCache }.
+ *
+ * @author mprins
+ */
+public class RuntimeCacheTest {
+
+	/** temporary folder for the jars and the cache. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The runtime is extracted once and re-extracted when a source changes,
+	 * replacing the stale runtime.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testExtract() throws Exception {
+		final File jruby = this.jar("jruby-complete.jar",
+				RuntimeCache.JRUBY_HOME + "/lib/ruby/stdlib/rubygems.rb");
+		final File gems = this.jar("plugin.jar",
+				"gems/sass-3.4.22/lib/sass.rb",
+				"specifications/sass-3.4.22.gemspec",
+				"scss-report.xsl");
+		final File cacheDir = this.folder.newFolder("cache");
+		final RuntimeCache cache = new RuntimeCache(cacheDir, new SystemStreamLog());
+
+		final File runtime = cache.extract("2.21", jruby.toURI().toURL(), gems.toURI().toURL());
+		assertEquals(new File(cacheDir, "2.21"), runtime.getParentFile());
+		assertTrue(new File(runtime, "jruby.home/lib/ruby/stdlib/rubygems.rb").isFile());
+		assertTrue(new File(runtime, "gems/gems/sass-3.4.22/lib/sass.rb").isFile());
+		assertTrue(new File(runtime, "gems/specifications/sass-3.4.22.gemspec").isFile());
+		assertFalse(new File(runtime, "scss-report.xsl").exists());
+
+		// unchanged sources, the existing extraction is used
+		final File marker = new File(runtime, "marker");
+		assertTrue(marker.createNewFile());
+		assertEquals(runtime, cache.extract("2.21", jruby.toURI().toURL(),
+				gems.toURI().toURL()));
+		assertTrue(marker.exists());
+
+		// changed source, extract again and remove the stale runtime and an
+		// extraction that did not complete
+		final File abandoned = new File(cacheDir, "2.21/.extracting123");
+		assertTrue(abandoned.mkdirs());
+		assertTrue(gems.setLastModified(gems.lastModified() - 10000));
+		final File changed = cache.extract("2.21", jruby.toURI().toURL(),
+				gems.toURI().toURL());
+		assertFalse(runtime.equals(changed));
+		assertFalse("the stale runtime is removed", runtime.exists());
+		assertFalse(abandoned.exists());
+		assertTrue(new File(changed, "gems/gems/sass-3.4.22/lib/sass.rb").isFile());
+		assertEquals("only the runtime and the lock are left", 2,
+				new File(cacheDir, "2.21").list().length);
+	}
+
+	/**
+	 * A runtime without plugin version is extracted.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testExtractUnversioned() throws Exception {
+		final File jruby = this.jar("jruby-complete.jar",
+				RuntimeCache.JRUBY_HOME + "/lib/ruby/stdlib/rubygems.rb");
+		final File gems = this.jar("plugin.jar", "gems/sass-3.4.22/lib/sass.rb");
+		final File cacheDir = this.folder.newFolder("cache");
+
+		final File runtime = new RuntimeCache(cacheDir, new SystemStreamLog()).extract(null,
+				jruby.toURI().toURL(), gems.toURI().toURL());
+		assertEquals(new File(cacheDir, "unversioned"), runtime.getParentFile());
+		assertTrue(new File(runtime, "gems/gems/sass-3.4.22/lib/sass.rb").isFile());
+	}
+
+	private File jar(final String name, final String... entries) throws IOException {
+		final File jar = new File(this.folder.getRoot(), name);
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(jar))) {
+			for (final String entry : entries) {
+				out.putNextEntry(new JarEntry(entry));
+				out.write(entry.getBytes(StandardCharsets.UTF_8));
+				out.closeEntry();
+			}
+		}
+		assertTrue(Files.size(jar.toPath()) > 0);
+		return jar;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.SassRuntimeFactory }.
+ *
+ * @author mprins
+ */
+public class SassRuntimeFactoryTest {
+
+	/**
+	 * Without gem paths only Rubygems is loaded.
+	 */
+	@Test
+	public void testAppendRubygems() {
+		final StringBuilder sassScript = new StringBuilder();
+		SassRuntimeFactory.appendRubygems(sassScript, Collections.<String>emptyList());
+		assertEquals("require 'rubygems'\n", sassScript.toString());
+	}
+
+	/**
+	 * The gem paths are set before any gem is loaded, without duplicates.
+	 */
+	@Test
+	public void testAppendRubygemsGemPaths() {
+		final StringBuilder sassScript = new StringBuilder();
+		SassRuntimeFactory.appendRubygems(sassScript, Arrays.asList("/a", "/b", "/a"));
+		final String script = sassScript.toString();
+		final String env = System.getenv("GEM_PATH");
+		assertTrue(script, script.startsWith("require 'rubygems'\n"
+		        + "Gem.paths = { 'GEM_PATH' => '/a" + File.pathSeparator + "/b"));
+		assertTrue(script, script.endsWith("' }\n"));
+		if (env == null) {
+			assertEquals("require 'rubygems'\nGem.paths = { 'GEM_PATH' => '/a"
+			        + File.pathSeparator + "/b' }\n", script);
+		}
+	}
+}
@@ -0,0 +1,44 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.SourcemapMode }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SourcemapModeTest {
+
+	/**
+	 * Test the Sass option of each mode.
+	 */
+	@Test
+	public void testGetSassOption() {
+		assertEquals(":none", SourcemapMode.NONE.getSassOption(":file"));
+		assertEquals(":auto", SourcemapMode.EXTERNAL.getSassOption(null));
+		assertEquals(":auto", SourcemapMode.EXTERNAL.getSassOption(":none"));
+		assertEquals("the configured URL type is kept", ":file",
+		        SourcemapMode.EXTERNAL.getSassOption(":file"));
+		assertEquals(":inline", SourcemapMode.INLINE.getSassOption(null));
+		assertEquals("the reference is added by the plugin", ":none",
+		        SourcemapMode.LAZY.getSassOption(":auto"));
+	}
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Stopwatch;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.CompilerCallback;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.EntryPoint;
+import nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.model.FileSet;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Benchmark compiling a generated tree of 1000 directories, 100 modules with
+ * a {@code scss} directory of 8 sub directories each, included using
+ * {@code **}{@code /scss} and {@code **}{@code /scss/**}. Compares scanning
+ * every template location against scanning the outermost locations once, and
+ * letting Sass glob the template locations against passing it the list of
+ * entry points. Only runs when
+ * {@code -DTemplateLocationBenchmarkTest.enabled=true} is set, eg. using the
+ * {@code benchmark} profile. Use -DTemplateLocationBenchmarkTest.passes=n to
+ * set the number of update passes per runtime (defaults to 5).
+ *
+ * @author mprins
+ */
+public class TemplateLocationBenchmarkTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	/** temporary folder for the generated tree. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static final int MODULES = 100;
+
+	private static final int PARTS = 8;
+
+	private static boolean ENABLED;
+
+	private static int PASSES;
+
+	@BeforeClass
+	public static void readEnvironment() {
+		ENABLED = Boolean.getBoolean("TemplateLocationBenchmarkTest.enabled");
+		try {
+			PASSES = Integer.parseInt(System.getProperty("TemplateLocationBenchmarkTest.passes"));
+			if (PASSES < 1) {
+				PASSES = 1;
+			}
+		} catch (NumberFormatException e) {
+			PASSES = 5;
+		}
+	}
+
+	/**
+	 * Scan and compile the generated tree both ways.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testTemplateLocations() throws Exception {
+		assumeTrue("Template location benchmark is not enabled.", ENABLED);
+
+		final File source = this.generateTree();
+		final File destination = this.folder.newFolder("css");
+		final Resource resource = new Resource();
+		resource.source = new FileSet();
+		resource.source.setDirectory(source.getAbsolutePath());
+		resource.source.setIncludes(Arrays.asList("**/scss", "**/scss/**"));
+		resource.destination = destination;
+
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		final Map<String, String> sassOptions = new HashMap<>();
+		sassOptions.put("style", ":expanded");
+		this.rule.setVariableValueToObject(myMojo, "sassOptions", sassOptions);
+		this.rule.setVariableValueToObject(myMojo, "useCompass", false);
+		this.rule.setVariableValueToObject(myMojo, "resources",
+				Collections.singletonList(resource));
+
+		// java side: scan each template location or the outermost once
+		final List<Entry<String, String>> locations = new ArrayList<>(resource
+				.getDirectoriesAndDestinations(myMojo.getLog()).entrySet());
+		Stopwatch stopwatch = Stopwatch.createStarted();
+		final Set<EntryPoint> perLocation = new LinkedHashSet<>();
+		for (final Entry<String, String> location : locations) {
+			perLocation.addAll(EntryPoint.scan(location.getKey(), location.getValue()));
+		}
+		final long perLocationMillis = stopwatch.elapsed(MILLISECONDS);
+		stopwatch = Stopwatch.createStarted();
+		final List<EntryPoint> entryPoints = EntryPoint.scan(locations);
+		final long onceMillis = stopwatch.elapsed(MILLISECONDS);
+		assertEquals(perLocation, new LinkedHashSet<>(entryPoints));
+
+		// ruby side: first pass compiles, the others only check staleness
+		final StringBuilder basicScript = new StringBuilder();
+		myMojo.buildBasicSassScript(basicScript);
+
+		final StringBuilder globScript = new StringBuilder(basicScript);
+		globScript.append(PASSES).append(".times { Sass::Plugin.update_stylesheets }\n");
+		final long globMillis = this.time(myMojo, globScript, destination);
+
+		final StringBuilder listScript = new StringBuilder(basicScript);
+		myMojo.buildEntryPointScript(listScript, entryPoints);
+		listScript.append(PASSES - 1)
+				.append(".times { Sass::Plugin.update_stylesheets($entry_points) }\n");
+		final long listMillis = this.time(myMojo, listScript, destination);
+
+		System.out.println("------------------------------------------------------------------------");
+		System.out.println("Template locations, " + (MODULES * (PARTS + 2))
+				+ " directories, " + locations.size() + " template locations, "
+				+ entryPoints.size() + " entry points");
+		System.out.println("  scan per location    : " + perLocationMillis + "ms");
+		System.out.println("  scan outermost once  : " + onceMillis + "ms");
+		System.out.println("  Sass globs locations : " + globMillis + "ms (" + PASSES + " passes)");
+		System.out.println("  entry point list     : " + listMillis + "ms (" + PASSES + " passes)");
+		System.out.println("------------------------------------------------------------------------");
+	}
+
+	/**
+	 * Run a script on an empty destination.
+	 *
+	 * @return elapsed time in ms
+	 */
+	private long time(final UpdateStylesheetsMojo myMojo,
+			final StringBuilder sassScript, final File destination) throws Exception {
+		FileUtils.cleanDirectory(destination);
+		final Stopwatch stopwatch = Stopwatch.createStarted();
+		myMojo.runSassScript(sassScript.toString(), new CompilerCallback(myMojo.getLog()));
+		return stopwatch.elapsed(MILLISECONDS);
+	}
+
+	/**
+	 * Generate the modules, each with one entry point and a partial per sub
+	 * directory.
+	 *
+	 * @return the root of the tree
+	 */
+	private File generateTree() throws Exception {
+		final File root = this.folder.newFolder("webapp");
+		for (int m = 0; m < MODULES; m++) {
+			final File scss = new File(root, "module" + m + "/scss");
+			final StringBuilder main = new StringBuilder();
+			for (int p = 0; p < PARTS; p++) {
+				final File part = new File(scss, "part" + p);
+				part.mkdirs();
+				this.write(new File(part, "_part.scss"),
+						".module" + m + "-part" + p + " { margin: " + p + "px; }\n");
+				main.append("@import 'part").append(p).append("/part';\n");
+			}
+			this.write(new File(scss, "style.scss"), main.toString());
+		}
+		return root;
+	}
+
+	/**
+	 * Write a file.
+	 */
+	private void write(final File file, final String content) throws Exception {
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+	}
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.ClasspathImporter }.
+ *
+ * @author mprins
+ */
+public class ClasspathImporterTest {
+
+	/** the import roots. */
+	private static final List<String> ROOTS = Arrays.asList("", "META-INF/resources");
+
+	/** temporary folder for the classpath elements. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Don't share indexes between tests.
+	 */
+	@After
+	public void clearCache() {
+		ClasspathImporter.clearCache();
+	}
+
+	/**
+	 * Imports resolve below the roots of a jar, relative imports against the
+	 * importing file.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testResolveJar() throws Exception {
+		final File jar = this.createJar();
+		final ClasspathImporter importer = ClasspathImporter.get(
+		        Collections.singletonList(jar.getPath()), ROOTS);
+		assertEquals(2, importer.size());
+
+		final String key = importer.resolve("design/buttons");
+		assertEquals("META-INF/resources/design/_buttons.scss", key);
+		assertEquals(key, importer.resolve(ClasspathImporter.PREFIX + key));
+		assertNull(importer.resolve("design/missing"));
+		assertNull(importer.resolve(ClasspathImporter.PREFIX + "design/_buttons.scss"));
+
+		assertEquals("META-INF/resources/design/_colors.scss",
+		        importer.resolveRelative("colors", ClasspathImporter.PREFIX + key));
+		assertNull(importer.resolveRelative("colors", "/tmp/design/_buttons.scss"));
+
+		assertTrue(importer.read(key).contains(".button"));
+		assertEquals("scss", importer.getSyntax(key));
+		assertEquals(jar.getPath() + "!/" + key, importer.getLocation(key));
+		assertTrue(importer.lastModified(key) > 0);
+	}
+
+	/**
+	 * Directories are indexed too; the first element with a file wins.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testResolveDirectory() throws Exception {
+		final File dir = this.folder.newFolder("classes");
+		final File partial = new File(dir, "design/_buttons.scss");
+		partial.getParentFile().mkdirs();
+		Files.write(partial.toPath(), ".local { color: red; }".getBytes(StandardCharsets.UTF_8));
+
+		final ClasspathImporter importer = ClasspathImporter.get(
+		        Arrays.asList(dir.getPath(), this.createJar().getPath()), ROOTS);
+		assertEquals(3, importer.size());
+		final String key = importer.resolve("design/buttons");
+		assertEquals("design/_buttons.scss", key);
+		assertEquals(".local { color: red; }", importer.read(key));
+		assertEquals(partial.getPath(), importer.getLocation(key));
+	}
+
+	/**
+	 * The index is reused until a classpath element changes.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testCache() throws Exception {
+		final File jar = this.createJar();
+		final List<String> elements = Collections.singletonList(jar.getPath());
+		final ClasspathImporter importer = ClasspathImporter.get(elements, ROOTS);
+		assertSame(importer, ClasspathImporter.get(elements, ROOTS));
+
+		jar.setLastModified(jar.lastModified() - 10000);
+		assertTrue(importer != ClasspathImporter.get(elements, ROOTS));
+	}
+
+	/**
+	 * Editing a nested file of a directory changes its stamp, so the index
+	 * is not reused, and a file that was read is read again.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDirectoryChanged() throws Exception {
+		final File dir = this.folder.newFolder("classes");
+		final File partial = new File(dir, "design/_buttons.scss");
+		partial.getParentFile().mkdirs();
+		Files.write(partial.toPath(), ".a { color: red; }".getBytes(StandardCharsets.UTF_8));
+		final long modified = dir.lastModified();
+		final List<String> elements = Collections.singletonList(dir.getPath());
+		final ClasspathImporter importer = ClasspathImporter.get(elements, ROOTS);
+		final String stamp = ClasspathImporter.stamp(dir.getPath());
+		assertEquals(".a { color: red; }", importer.read("design/_buttons.scss"));
+
+		Files.write(partial.toPath(), ".a { color: blue; }".getBytes(StandardCharsets.UTF_8));
+		partial.setLastModified(partial.lastModified() + 10000);
+		dir.setLastModified(modified);
+		assertFalse(stamp.equals(ClasspathImporter.stamp(dir.getPath())));
+		assertTrue(importer != ClasspathImporter.get(elements, ROOTS));
+		assertEquals(".a { color: blue; }", importer.read("design/_buttons.scss"));
+	}
+
+	/**
+	 * Create a jar with two partials below {@code META-INF/resources}.
+	 *
+	 * @return the jar
+	 * @throws Exception if any
+	 */
+	private File createJar() throws Exception {
+		final File jar = new File(this.folder.getRoot(), "design.jar");
+		try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(jar))) {
+			zip.putNextEntry(new ZipEntry("META-INF/resources/design/"));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("META-INF/resources/design/_buttons.scss"));
+			zip.write("@import 'colors';\n.button { color: $primary; }\n"
+			        .getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+			zip.putNextEntry(new ZipEntry("META-INF/resources/design/_colors.scss"));
+			zip.write("$primary: #336699;\n".getBytes(StandardCharsets.UTF_8));
+			zip.closeEntry();
+		}
+		return jar;
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.CompileScheduler }.
+ *
+ * @author mprins
+ */
+public class CompileSchedulerTest {
+
+	/** temporary folder for templates and statistics. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Without history the largest templates are scheduled first.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScheduleBySize() throws Exception {
+		final EntryPoint big = this.template("big.scss", 4000);
+		final EntryPoint medium = this.template("medium.scss", 2000);
+		final EntryPoint small1 = this.template("small1.scss", 1000);
+		final EntryPoint small2 = this.template("small2.scss", 1000);
+
+		final CompileScheduler scheduler = new CompileScheduler(this.statistics());
+		final List<List<EntryPoint>> batches = scheduler.schedule(
+				Arrays.asList(small1, medium, big, small2), 2);
+
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList(big), batches.get(0));
+		assertEquals(Arrays.asList(medium, small1, small2), batches.get(1));
+	}
+
+	/**
+	 * Historical durations take precedence over the template size.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScheduleByHistory() throws Exception {
+		final EntryPoint big = this.template("big.scss", 4000);
+		final EntryPoint slow = this.template("slow.scss", 100);
+		final EntryPoint fresh = this.template("fresh.scss", 200);
+
+		final CompileStatistics statistics = this.statistics();
+		statistics.record(big.getTemplate(), 400);
+		statistics.record(slow.getTemplate(), 5000);
+
+		final List<List<EntryPoint>> batches = new CompileScheduler(statistics)
+				.schedule(Arrays.asList(big, slow, fresh), 2);
+
+		assertEquals(2, batches.size());
+		assertEquals(Arrays.asList(slow), batches.get(0));
+		assertEquals(Arrays.asList(big, fresh), batches.get(1));
+	}
+
+	/**
+	 * No more batches than entry points.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testMoreWorkersThanTemplates() throws Exception {
+		final EntryPoint one = this.template("one.scss", 10);
+		final List<List<EntryPoint>> batches = new CompileScheduler(this.statistics())
+				.schedule(Arrays.asList(one), 4);
+		assertEquals(1, batches.size());
+	}
+
+	/**
+	 * Recorded durations survive a save and load.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testStatisticsRoundTrip() throws Exception {
+		final File file = new File(this.folder.getRoot(), CompileStatistics.FILE_NAME);
+		final CompileStatistics statistics = new CompileStatistics(file, new SystemStreamLog());
+		statistics.record("src/main/sass/compiled.scss", 1234);
+		statistics.save();
+
+		final CompileStatistics loaded = new CompileStatistics(file, new SystemStreamLog());
+		assertEquals(Long.valueOf(1234),
+				loaded.getDuration(new File("src/main/sass/compiled.scss").getAbsolutePath()));
+	}
+
+	private CompileStatistics statistics() {
+		return new CompileStatistics(new File(this.folder.getRoot(),
+				CompileStatistics.FILE_NAME), new SystemStreamLog());
+	}
+
+	private EntryPoint template(final String name, final int size) throws IOException {
+		final File file = new File(this.folder.getRoot(), name);
+		Files.write(file.toPath(), new byte[size]);
+		return new EntryPoint(file.getPath(), file.getPath().replace(".scss", ".css"));
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.ConfigurationFingerprint }.
+ *
+ * @author mprins
+ */
+public class ConfigurationFingerprintTest {
+
+	/** temporary folder for a configuration file. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The fingerprint does not depend on the order of the parts, but on
+	 * their values.
+	 */
+	@Test
+	public void testDigest() {
+		final String digest = new ConfigurationFingerprint()
+				.add("style", ":expanded").add("gems", "[susy]").digest();
+		assertEquals(digest, new ConfigurationFingerprint()
+				.add("gems", "[susy]").add("style", ":expanded").digest());
+		assertFalse(digest.equals(new ConfigurationFingerprint()
+				.add("gems", "[susy]").add("style", ":compressed").digest()));
+		assertEquals(64, digest.length());
+	}
+
+	/**
+	 * A copy can be extended without changing the original.
+	 */
+	@Test
+	public void testCopy() {
+		final ConfigurationFingerprint fingerprint = new ConfigurationFingerprint()
+				.add("style", ":expanded");
+		final String digest = fingerprint.digest();
+		assertFalse(digest.equals(fingerprint.copy().add("useBourbon", true).digest()));
+		assertEquals(digest, fingerprint.digest());
+	}
+
+	/**
+	 * The content of a file is part of the fingerprint.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testAddFile() throws Exception {
+		final File config = this.folder.newFile("config.rb");
+		Files.write(config.toPath(), "images_dir = 'img'\n".getBytes(StandardCharsets.UTF_8));
+		final String digest = new ConfigurationFingerprint().addFile("config", config).digest();
+
+		Files.write(config.toPath(), "images_dir = 'images'\n".getBytes(StandardCharsets.UTF_8));
+		assertFalse(digest.equals(new ConfigurationFingerprint().addFile("config", config).digest()));
+		assertFalse(digest.equals(new ConfigurationFingerprint().addFile("config", null).digest()));
+	}
+}
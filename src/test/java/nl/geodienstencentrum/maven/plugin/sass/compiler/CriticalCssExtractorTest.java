@@ -0,0 +1,149 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.CriticalCssExtractor }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CriticalCssExtractorTest {
+
+	/** temporary directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test finding the stylesheet links.
+	 */
+	@Test
+	public void testStylesheets() {
+		assertEquals(Arrays.asList("css/main.css", "/app/print.css?v=2"),
+		        CriticalCssExtractor.stylesheets("<head>"
+		                + "<link rel=\"stylesheet\" href=\"css/main.css\">"
+		                + "<link href='/app/print.css?v=2' REL='stylesheet' media=print/>"
+		                + "<link rel=\"icon\" href=\"favicon.ico\">"
+		                + "<!-- <link rel=\"stylesheet\" href=\"old.css\"> -->"
+		                + "</head>"));
+	}
+
+	/**
+	 * Test the markup leaves out scripts and comments.
+	 */
+	@Test
+	public void testMarkup() {
+		final MarkupIndex index = CriticalCssExtractor.markup("<div class=\"header\">"
+		        + "<!-- <p class=\"old\"> --></div>"
+		        + "<script>el.className = 'later';</script>");
+		assertTrue(index.contains("header"));
+		assertFalse(index.contains("old"));
+		assertFalse(index.contains("later"));
+	}
+
+	/**
+	 * Test extracting the critical CSS of pages.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testExtract() throws Exception {
+		final File css = this.folder.newFolder("css");
+		FileUtils.writeStringToFile(new File(css, "theme/main.css"),
+		        ".header, .footer {\n  color: red;\n}\n\n.footer {\n  margin: 0;\n}\n\n"
+		        + "/*# sourceMappingURL=main.css.map */\n", "UTF-8");
+		final File webapp = this.folder.newFolder("webapp");
+		FileUtils.writeStringToFile(new File(webapp, "portal/index.html"),
+		        "<link rel=\"stylesheet\" href=\"${ctx}/theme/main.css\">"
+		        + "<div class=\"header\"></div>", "UTF-8");
+		FileUtils.writeStringToFile(new File(webapp, "plain.html"), "<p>text</p>", "UTF-8");
+		final File out = new File(this.folder.getRoot(), "critical");
+
+		final List<CriticalCssExtractor.Page> pages = new CriticalCssExtractor(
+		        Collections.singletonList(css), Collections.<Pattern>emptyList(), out)
+		        .extract(webapp, new String[] {"**/*.html"}, 2);
+		assertEquals(2, pages.size());
+		for (final CriticalCssExtractor.Page page : pages) {
+			if (page.getPath().equals("plain.html")) {
+				assertEquals(0, page.getStylesheets());
+			} else {
+				assertEquals("portal/index.html", page.getPath());
+				assertEquals(1, page.getStylesheets());
+				assertEquals(2, page.getRules());
+				assertEquals(1, page.getDeferredRules());
+			}
+		}
+		assertEquals(".header {\n  color: red;\n}\n", FileUtils.readFileToString(
+		        new File(out, "portal/index.critical.css"), "UTF-8"));
+		assertFalse(new File(out, "portal/index.deferred.css").exists());
+		assertFalse(new File(out, "plain.critical.css").exists());
+	}
+
+	/**
+	 * Test rewriting the relative references of critical CSS for the page.
+	 */
+	@Test
+	public void testRelocate() {
+		assertEquals(".a{background:url(\"../css/img/a.png\")}"
+		        + ".b{background:url( ../css/b.svg#x)}"
+		        + ".c{background:url(/img/c.png)}"
+		        + ".d{background:url(data:image/png;base64,AA==)}"
+		        + ".e{background:url('https://cdn.example.com/e.png')}",
+		        CriticalCssExtractor.relocate(".a{background:url(\"img/a.png\")}"
+		                + ".b{background:url( b.svg#x)}"
+		                + ".c{background:url(/img/c.png)}"
+		                + ".d{background:url(data:image/png;base64,AA==)}"
+		                + ".e{background:url('https://cdn.example.com/e.png')}",
+		                "../css/main.css?v=2"));
+		assertEquals("@import \"${ctx}/theme/fonts.css\";",
+		        CriticalCssExtractor.relocate("@import \"fonts.css\";", "${ctx}/theme/main.css"));
+		assertEquals(".a{background:url(a.png)}",
+		        CriticalCssExtractor.relocate(".a{background:url(a.png)}", "main.css"));
+	}
+
+	/**
+	 * Test links that are not compiled stylesheets.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testResolve() throws Exception {
+		final File css = this.folder.newFolder("css");
+		FileUtils.writeStringToFile(new File(css, "main.css"), "", "UTF-8");
+		final CriticalCssExtractor extractor = new CriticalCssExtractor(
+		        Collections.singletonList(css), Collections.<Pattern>emptyList(), css);
+		assertEquals(new File(css, "main.css"),
+		        extractor.resolve("https://cdn.example.com/css/main.css#x"));
+		assertNull(extractor.resolve("https://cdn.example.com/css/other.css"));
+	}
+}
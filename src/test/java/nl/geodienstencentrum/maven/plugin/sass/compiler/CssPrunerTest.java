@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.CssPruner }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class CssPrunerTest {
+
+	/** the pruner, for markup using a few names. */
+	private final CssPruner pruner = new CssPruner(markup(
+	        "<div id=\"map\" class=\"toolbar active\"><a href=\"#\">x</a></div>"
+	        + "<script>el.classList.add('is-open');</script>"),
+	        Collections.singletonList(Pattern.compile("ol-.*")));
+
+	/**
+	 * Index markup.
+	 *
+	 * @param html the markup
+	 * @return the index
+	 */
+	private static MarkupIndex markup(final String html) {
+		final Set<String> words = new HashSet<>();
+		MarkupIndex.index(html, words);
+		return new MarkupIndex(words, 1);
+	}
+
+	/**
+	 * Test matching selectors.
+	 */
+	@Test
+	public void testCanMatch() {
+		assertTrue(this.pruner.canMatch(".toolbar a:hover"));
+		assertTrue(this.pruner.canMatch("DIV#map > .is-open::before"));
+		assertTrue(this.pruner.canMatch("*"));
+		assertTrue(this.pruner.canMatch("[type=\"checkbox\"]"));
+		assertTrue(this.pruner.canMatch("a:not(.disabled)"));
+		assertTrue(this.pruner.canMatch(".ol-zoom"));
+		assertTrue(this.pruner.canMatch(".sm\\:hidden"));
+		assertFalse(this.pruner.canMatch(".toolbar .disabled"));
+		assertFalse(this.pruner.canMatch("table td"));
+		assertFalse(this.pruner.canMatch("#legend"));
+	}
+
+	/**
+	 * Test pruning an expanded stylesheet.
+	 */
+	@Test
+	public void testPruneExpanded() {
+		final CssPruner.Pruned pruned = this.pruner.prune("@charset \"UTF-8\";\n"
+		        + ".toolbar, .legend {\n  color: red;\n}\n\n"
+		        + ".legend {\n  content: \"}\";\n}\n\n"
+		        + "@media print {\n  .legend {\n    display: none;\n  }\n}\n\n"
+		        + "@media screen {\n  #map {\n    height: 100%;\n  }\n}\n\n"
+		        + "@font-face {\n  font-family: f;\n}\n\n"
+		        + "/*# sourceMappingURL=test.css.map */\n");
+		assertEquals("@charset \"UTF-8\";\n"
+		        + ".toolbar {\n  color: red;\n}\n\n"
+		        + "@media screen {\n  #map {\n    height: 100%;\n  }\n}\n\n"
+		        + "@font-face {\n  font-family: f;\n}\n\n"
+		        + "/*# sourceMappingURL=test.css.map */\n", pruned.getCss());
+		assertEquals("@charset \"UTF-8\";\n"
+		        + ".legend {\n  color: red;\n}\n\n"
+		        + ".legend {\n  content: \"}\";\n}\n\n"
+		        + "@media print {\n  .legend {\n    display: none;\n  }\n}", pruned.getRemainder());
+		assertEquals(4, pruned.getRules());
+		assertEquals(2, pruned.getRemovedRules());
+		assertEquals(3, pruned.getRemovedSelectors());
+	}
+
+	/**
+	 * Test pruning a compressed stylesheet.
+	 */
+	@Test
+	public void testPruneCompressed() {
+		assertEquals(".toolbar{color:red}@keyframes spin{from{x:y}to{x:z}}",
+		        this.pruner.prune(".toolbar,.legend{color:red}@media print{.legend{x:y}}"
+		                + "@keyframes spin{from{x:y}to{x:z}}").getCss());
+	}
+
+	/**
+	 * The source map reference of a pruned stylesheet is removed.
+	 */
+	@Test
+	public void testWithoutSourceMap() {
+		assertEquals(".toolbar {\n  color: red;\n}\n\n", CssPruner.withoutSourceMap(
+		        ".toolbar {\n  color: red;\n}\n\n/*# sourceMappingURL=test.css.map */\n"));
+		assertEquals(".toolbar{color:red}\n", CssPruner.withoutSourceMap(
+		        ".toolbar{color:red}/*# sourceMappingURL=data:application/json;base64,e30= */"));
+		assertEquals(".toolbar{color:red}", CssPruner.withoutSourceMap(".toolbar{color:red}"));
+	}
+
+	/**
+	 * Names with non-ASCII letters are read the same way in the markup and in
+	 * the selectors.
+	 */
+	@Test
+	public void testNonAsciiNames() {
+		final CssPruner accented = new CssPruner(markup(
+		        "<p class=\"caf\u00e9 gr\u00f6\u00dfe-2\">"),
+		        Collections.<Pattern>emptyList());
+		assertTrue(accented.canMatch(".caf\u00e9"));
+		assertTrue(accented.canMatch("p.gr\u00f6\u00dfe-2"));
+		assertFalse(accented.canMatch(".caf"));
+		assertFalse(accented.canMatch(".gr\u00f6\u00dfe"));
+		assertEquals(".caf\u00e9{color:red}", accented.prune(
+		        ".caf\u00e9{color:red}.gr\u00f6\u00dfe{color:blue}").getCss());
+	}
+}
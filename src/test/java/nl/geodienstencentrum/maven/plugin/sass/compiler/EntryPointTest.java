@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.EntryPoint }.
+ *
+ * @author mprins
+ */
+public class EntryPointTest {
+
+	/** temporary folder for templates. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Partials and hidden directories are skipped.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScan() throws Exception {
+		final String root = this.tree("main.scss", "_partial.scss",
+				"sub/print.sass", ".hidden/skipped.scss");
+
+		assertEquals(Arrays.asList(
+				new EntryPoint(root + "/main.scss", "/css/main.css"),
+				new EntryPoint(root + "/sub/print.sass", "/css/sub/print.css")),
+				EntryPoint.scan(root, "/css"));
+	}
+
+	/**
+	 * Scanning nested template locations at once gives the same entry points
+	 * as scanning each location.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScanNested() throws Exception {
+		final String root = this.tree("main.scss", "a/scss/a.scss",
+				"a/scss/sub/b.scss", "a/scss/_c.scss", "b/.hidden/scss/d.scss");
+		final List<Entry<String, String>> locations = new ArrayList<>();
+		locations.add(new SimpleImmutableEntry<>(root, "/css"));
+		locations.add(new SimpleImmutableEntry<>(root + "/a/scss", "/css/a/scss/.."));
+		locations.add(new SimpleImmutableEntry<>(root + "/a/scss/sub", "/css/a/scss/sub"));
+		locations.add(new SimpleImmutableEntry<>(root + "/b/.hidden/scss", "/hidden"));
+
+		final Set<EntryPoint> expected = new HashSet<>();
+		for (final Entry<String, String> location : locations) {
+			expected.addAll(EntryPoint.scan(location.getKey(), location.getValue()));
+		}
+		final List<EntryPoint> actual = EntryPoint.scan(locations);
+		assertEquals(expected, new LinkedHashSet<>(actual));
+		assertEquals(expected.size(), actual.size());
+		assertEquals(6, actual.size());
+	}
+
+	/**
+	 * Create a tree of empty files.
+	 *
+	 * @return the root of the tree, using unix separators
+	 */
+	private String tree(final String... files) throws IOException {
+		final File root = this.folder.newFolder("sass");
+		for (final String file : files) {
+			final File f = new File(root, file);
+			f.getParentFile().mkdirs();
+			f.createNewFile();
+		}
+		return FilenameUtils.separatorsToUnix(root.getAbsolutePath());
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+import nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents.Type;
+
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.FlightRecorderEvents }.
+ * The recording is accessed reflectively, the tests are compiled for Java 7.
+ *
+ * @author mprins
+ */
+public class FlightRecorderEventsTest {
+
+	/** temporary folder for the recording. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private final Log log = new SystemStreamLog();
+
+	/**
+	 * Disabled events do nothing.
+	 */
+	@Test
+	public void testDisabled() {
+		final FlightRecorderEvents events = FlightRecorderEvents.create(false, this.log);
+		assertFalse(events.isEnabled());
+		final FlightRecorderEvents.Event event = events.begin(Type.TEMPLATE_COMPILE);
+		assertFalse(event.isRecording());
+		event.template("a.scss").bytesIn(1L).bytesOut(2L).success(true).commit();
+	}
+
+	/**
+	 * Enabled events are recorded by a running recording, and only then.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testRecording() throws Exception {
+		final FlightRecorderEvents events = FlightRecorderEvents.create(true, this.log);
+		assumeTrue("Flight Recorder is not available.", events.isEnabled());
+
+		assertFalse("no recording wants the event",
+				events.begin(Type.TEMPLATE_COMPILE).isRecording());
+
+		final Class<?> recordingClass = Class.forName("jdk.jfr.Recording");
+		final Object recording = recordingClass.getConstructor().newInstance();
+		recordingClass.getMethod("enable", String.class).invoke(recording,
+				Type.TEMPLATE_COMPILE.getEventName());
+		recordingClass.getMethod("start").invoke(recording);
+		final FlightRecorderEvents.Event event = events.begin(Type.TEMPLATE_COMPILE);
+		assertTrue(event.isRecording());
+		event.template("a.scss").bytesIn(10L).bytesOut(20L).success(true).commit();
+		recordingClass.getMethod("stop").invoke(recording);
+		final File file = new File(this.folder.getRoot(), "sass.jfr");
+		recordingClass.getMethod("dump", Class.forName("java.nio.file.Path"))
+				.invoke(recording, file.toPath());
+		recordingClass.getMethod("close").invoke(recording);
+
+		final List<?> recorded = (List<?>) Class.forName("jdk.jfr.consumer.RecordingFile")
+				.getMethod("readAllEvents", Class.forName("java.nio.file.Path"))
+				.invoke(null, file.toPath());
+		final List<Object> compiles = new ArrayList<>();
+		for (final Object e : recorded) {
+			final Object type = e.getClass().getMethod("getEventType").invoke(e);
+			final String name = (String) type.getClass().getMethod("getName").invoke(type);
+			if (Type.TEMPLATE_COMPILE.getEventName().equals(name)) {
+				compiles.add(e);
+			}
+		}
+		assertEquals(1, compiles.size());
+		final Method getValue = compiles.get(0).getClass().getMethod("getValue", String.class);
+		assertEquals("a.scss", getValue.invoke(compiles.get(0), "template"));
+		assertEquals(20L, getValue.invoke(compiles.get(0), "bytesOut"));
+		assertEquals(true, getValue.invoke(compiles.get(0), "success"));
+	}
+}
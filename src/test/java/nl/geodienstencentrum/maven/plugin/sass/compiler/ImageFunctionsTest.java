@@ -0,0 +1,168 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import javax.imageio.ImageIO;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.ImageFunctions }.
+ *
+ * @author mprins
+ */
+public class ImageFunctionsTest {
+
+	/** the test webapp. */
+	private static final File WEBAPP = new File("src/test/projects/maven-sass-test/src/main/webapp");
+
+	/** temporary folder for copies of the image. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * The size of an image is read once, however often it is asked for.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDimensions() throws Exception {
+		final ImageFunctions functions = new ImageFunctions(WEBAPP);
+		for (int i = 0; i < 100; i++) {
+			assertEquals(24, functions.getWidth("img/error.png"));
+			assertEquals(12, functions.getHeight("img/error.png?v=1"));
+		}
+		assertEquals(1, functions.getDecoded());
+	}
+
+	/**
+	 * Data URIs are cached by content, so copies of an image share them.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDataUri() throws Exception {
+		final File copy = this.folder.newFile("copy.png");
+		FileUtils.copyFile(new File(WEBAPP, "img/error.png"), copy);
+		final ImageFunctions functions = new ImageFunctions(WEBAPP);
+
+		final String uri = functions.getDataUri("img/error.png", null);
+		assertTrue(uri, uri.startsWith("data:image/png;base64,iVBOR"));
+		assertEquals(uri, functions.getDataUri(copy.getAbsolutePath(), null));
+		assertTrue(functions.getDataUri("img/error.png", "image/x-png")
+		        .startsWith("data:image/x-png;base64,"));
+		assertEquals(2, functions.getEncoded());
+	}
+
+	/**
+	 * A changed image is read again.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testChanged() throws Exception {
+		final File image = this.folder.newFile("image.png");
+		ImageIO.write(new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB), "png", image);
+		final ImageFunctions functions = new ImageFunctions(this.folder.getRoot());
+		assertEquals(8, functions.getWidth("image.png"));
+
+		ImageIO.write(new BufferedImage(16, 4, BufferedImage.TYPE_INT_RGB), "png", image);
+		image.setLastModified(image.lastModified() + 10000);
+		assertEquals(16, functions.getWidth("image.png"));
+		assertEquals(2, functions.getDecoded());
+	}
+
+	/**
+	 * A path with a leading slash that is not a file is relative to the
+	 * images directory, which can be set later, like the Compass images
+	 * path.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testLeadingSlash() throws Exception {
+		final File image = new File(this.folder.newFolder("images"), "image.png");
+		ImageIO.write(new BufferedImage(8, 4, BufferedImage.TYPE_INT_RGB), "png", image);
+		final ImageFunctions functions = new ImageFunctions(WEBAPP);
+		functions.setImagesDirectory(image.getParentFile());
+		assertEquals(8, functions.getWidth("/image.png"));
+		assertEquals(4, functions.getHeight("image.png"));
+		assertEquals(8, functions.getWidth(image.getAbsolutePath()));
+	}
+
+	/**
+	 * Missing images and unknown types fail with a message for the template
+	 * author.
+	 */
+	@Test
+	public void testErrors() {
+		final ImageFunctions functions = new ImageFunctions(WEBAPP);
+		try {
+			functions.getWidth("img/missing.png");
+			fail("a missing image should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Image not found"));
+		}
+		try {
+			functions.getDataUri("WEB-INF/web.xml", null);
+			fail("an unknown type should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("mime type"));
+		}
+	}
+
+	/**
+	 * The functions convert their results to Sass values.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testFunctions() throws Exception {
+		final SassFunctions registry = new SassFunctions()
+		        .registerAll(new ImageFunctions(WEBAPP).getFunctions());
+		final String[] image = new String[] {"img/error.png"};
+		assertEquals("24px", registry.call("image-width", image).toString());
+		assertEquals("12px", registry.call("image-height", image).toString());
+		final SassValue inline = registry.call("inline-image", new String[] {"img/error.png", null});
+		assertFalse(inline.isQuoted());
+		assertTrue(inline.getText(), inline.getText().startsWith("url('data:image/png;base64,"));
+	}
+
+	/**
+	 * Base64 encoding pads to a multiple of four.
+	 */
+	@Test
+	public void testBase64() {
+		assertEquals("", ImageFunctions.base64(new byte[0]));
+		assertEquals("TQ==", ImageFunctions.base64("M".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("TWE=", ImageFunctions.base64("Ma".getBytes(StandardCharsets.US_ASCII)));
+		assertEquals("TWFu", ImageFunctions.base64("Man".getBytes(StandardCharsets.US_ASCII)));
+	}
+}
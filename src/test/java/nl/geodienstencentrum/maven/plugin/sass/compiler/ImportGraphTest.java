@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.ImportGraph }.
+ *
+ * @author mprins
+ */
+public class ImportGraphTest {
+
+	/** temporary folder for templates. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Comments, CSS imports and media queries are ignored, lists are split.
+	 */
+	@Test
+	public void testParseImports() {
+		assertEquals(Arrays.asList("a", "b/c", "compass/css3"),
+				ImportGraph.parseImports("// @import 'commented';\n"
+						+ "/* @import 'commented'; */\n"
+						+ "@import 'a', \"b/c\";\n"
+						+ "@import \"print.css\";\n"
+						+ "@import url(foo);\n"
+						+ "@import 'http://example.com/x';\n"
+						+ "@import 'screen' screen;\n"
+						+ "@import \"compass/css3\";\n"
+						+ "a { background: url(http://example.com/x.png); }\n"));
+	}
+
+	/**
+	 * Imports are resolved relative to the importing file, then against the
+	 * load paths; partials are preferred.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDependencies() throws Exception {
+		final File root = this.folder.newFolder("sass");
+		final File lib = this.folder.newFolder("lib");
+		final File main = this.write(root, "main.scss",
+				"@import 'base', 'shared';\n@import 'compass/css3';\n");
+		final File base = this.write(root, "_base.scss", "@import 'mixins/colors';\n");
+		final File colors = this.write(root, "mixins/_colors.scss", "$a: red;\n");
+		final File shared = this.write(lib, "shared.sass", "$b: blue\n");
+
+		final ImportGraph.Dependencies dependencies = new ImportGraph(
+				Collections.singletonList(lib)).dependencies(main);
+		assertEquals(new LinkedHashSet<>(Arrays.asList(base, shared, colors)),
+				dependencies.getFiles());
+		assertEquals(Collections.singleton("compass/css3"),
+				dependencies.getUnresolved());
+	}
+
+	/**
+	 * Changed files are parsed again after they are invalidated.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testInvalidate() throws Exception {
+		final File root = this.folder.newFolder("sass");
+		final File main = this.write(root, "main.scss", "@import 'a';\n");
+		final ImportGraph importGraph = new ImportGraph(
+				Collections.<File>emptyList());
+		assertEquals(Arrays.asList("a"), importGraph.getImports(main));
+
+		this.write(root, "main.scss", "@import 'b';\n");
+		assertEquals(Arrays.asList("a"), importGraph.getImports(main));
+		importGraph.invalidate(main);
+		assertEquals(Arrays.asList("b"), importGraph.getImports(main));
+		assertTrue(importGraph.dependencies(main).getUnresolved().contains("b"));
+	}
+
+	/**
+	 * Write a template.
+	 *
+	 * @return the template file
+	 */
+	private File write(final File dir, final String name, final String content)
+			throws IOException {
+		final File file = new File(dir, name);
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		return file.getAbsoluteFile();
+	}
+}
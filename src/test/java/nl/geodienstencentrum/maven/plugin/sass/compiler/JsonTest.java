@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+/**
+ * Testcase for {@link nl.geodienstencentrum.maven.plugin.sass.compiler.Json }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class JsonTest {
+
+	/**
+	 * Test quoting strings.
+	 */
+	@Test
+	public void testQuote() {
+		assertEquals("\"a \\\"b\\\" \\\\ c\\n\\t\\u0001\"", Json.quote("a \"b\" \\ c\n\t\u0001"));
+		assertEquals("\"\"", Json.quote(""));
+	}
+
+	/**
+	 * Test a quoted string parses to the original string.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testParse() throws Exception {
+		final String value = "a \"b\" \\ c\n\t\u0001\u00e9";
+		assertEquals(value, Json.parse(Json.quote(value)));
+		assertEquals(Collections.singletonMap("a", Arrays.asList(1.0, true, null)),
+		        Json.parse(" {\"a\": [1, true, null]} "));
+	}
+
+	/**
+	 * Test invalid JSON.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test(expected = IOException.class)
+	public void testParseInvalid() throws Exception {
+		Json.parse("{\"a\": 1} x");
+	}
+}
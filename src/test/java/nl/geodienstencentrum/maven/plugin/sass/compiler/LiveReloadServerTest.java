@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.LiveReloadServer }.
+ *
+ * @author mprins
+ */
+public class LiveReloadServerTest {
+
+	/** temporary output directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** the server under test. */
+	private LiveReloadServer server;
+
+	/**
+	 * Start a server on a free port.
+	 *
+	 * @throws Exception if any
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.server = new LiveReloadServer(0, Collections.singleton(this.folder.getRoot()),
+		        false, Collections.singleton("http://myapp.test:8080/"), new SystemStreamLog());
+		this.server.start();
+	}
+
+	/**
+	 * Stop the server.
+	 */
+	@After
+	public void tearDown() {
+		this.server.stop();
+	}
+
+	/**
+	 * A burst of updates is pushed to a browser as one event.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testBatchedPush() throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+		        "http://127.0.0.1:" + this.server.getPort() + "/events").openConnection();
+		assertEquals("text/event-stream", connection.getContentType());
+		try (BufferedReader events = new BufferedReader(new InputStreamReader(
+		        connection.getInputStream(), StandardCharsets.UTF_8))) {
+			assertEquals(": connected", events.readLine());
+			assertEquals("", events.readLine());
+			final long timeout = System.currentTimeMillis() + 5000L;
+			while (this.server.getClients() == 0 && System.currentTimeMillis() < timeout) {
+				Thread.sleep(10L);
+			}
+
+			final File saved = this.folder.newFile("style.scss");
+			this.server.fileChanged(saved);
+			this.server.stylesheetUpdated(new File(this.folder.getRoot(), "style.css").getPath());
+			this.server.stylesheetUpdated(new File(this.folder.getRoot(), "print/print.css")
+			        .getPath());
+
+			assertEquals("event: css", events.readLine());
+			final String data = events.readLine();
+			assertTrue(data, data.startsWith("data: "));
+			assertTrue(data, data.contains("\"path\":\"style.css\""));
+			assertTrue(data, data.contains("\"path\":\"print/print.css\""));
+			assertFalse(data, data.contains("\"css\""));
+		} finally {
+			connection.disconnect();
+		}
+		assertEquals(1, this.server.getPushes());
+		assertTrue(this.server.getLastLatency() >= LiveReloadServer.BATCH_MILLIS);
+	}
+
+	/**
+	 * The content of stylesheets is pushed if configured.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testPushContent() throws Exception {
+		final File css = this.folder.newFile("style.css");
+		FileUtils.write(css, "a {\n  color: \"red\"; }\n", StandardCharsets.UTF_8);
+		final LiveReloadServer content = new LiveReloadServer(0,
+		        Collections.singleton(this.folder.getRoot()), true,
+		        Collections.<String>emptyList(), new SystemStreamLog());
+		try {
+			assertEquals("event: css\ndata: {\"stylesheets\":[{\"path\":\"style.css\","
+			        + "\"css\":\"a {\\n  color: \\\"red\\\"; }\\n\"}]}\n\n",
+			        content.event(Arrays.asList(css)));
+		} finally {
+			content.stop();
+		}
+	}
+
+	/**
+	 * Only pages of the loopback address and the configured origins may
+	 * listen, the allowed origin is sent back instead of any origin.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testOrigins() throws Exception {
+		assertTrue(this.server.isAllowed(null));
+		assertTrue(this.server.isAllowed("http://localhost:8080"));
+		assertTrue(this.server.isAllowed("https://127.0.0.1"));
+		assertTrue(this.server.isAllowed("http://[::1]:9000"));
+		assertTrue(this.server.isAllowed("http://myapp.test:8080"));
+		assertFalse(this.server.isAllowed("http://localhost.evil.example"));
+		assertFalse(this.server.isAllowed("http://evil.example"));
+
+		assertTrue(this.request("http://evil.example").startsWith("HTTP/1.1 403"));
+		final String allowed = this.request("http://localhost:8080");
+		assertTrue(allowed, allowed.startsWith("HTTP/1.1 200"));
+		assertTrue(allowed, allowed.contains(
+		        "Access-control-allow-origin: http://localhost:8080"));
+	}
+
+	/**
+	 * Request the events with an {@code Origin} header, which
+	 * {@link HttpURLConnection} does not send.
+	 *
+	 * @param origin the origin
+	 * @return the response status line and headers
+	 * @throws Exception if any
+	 */
+	private String request(final String origin) throws Exception {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(),
+		        this.server.getPort())) {
+			socket.getOutputStream().write(("GET /events HTTP/1.1\r\nHost: 127.0.0.1\r\n"
+			        + "Origin: " + origin + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
+			final BufferedReader response = new BufferedReader(new InputStreamReader(
+			        socket.getInputStream(), StandardCharsets.UTF_8));
+			final StringBuilder head = new StringBuilder();
+			for (String line = response.readLine(); line != null && !line.isEmpty();
+			        line = response.readLine()) {
+				head.append(line).append('\n');
+			}
+			return head.toString();
+		}
+	}
+
+	/**
+	 * The server serves the client script.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScript() throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+		        "http://127.0.0.1:" + this.server.getPort() + "/livereload.js").openConnection();
+		try {
+			assertEquals(200, connection.getResponseCode());
+			final String script = IOUtils.toString(connection.getInputStream(),
+			        StandardCharsets.UTF_8);
+			assertTrue(script.contains("EventSource"));
+			assertTrue("url() of pushed content is rebased", script.contains("rebase("));
+		} finally {
+			connection.disconnect();
+		}
+	}
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FilenameUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.LoadPathIndex }.
+ *
+ * @author mprins
+ */
+public class LoadPathIndexTest {
+
+	/** temporary folder for the load path. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/** the load path. */
+	private String loadPath;
+
+	/**
+	 * Create a load path with some partials.
+	 *
+	 * @throws Exception if any
+	 */
+	@Before
+	public void setUp() throws Exception {
+		this.loadPath = FilenameUtils.separatorsToUnix(this.folder.getRoot().getPath());
+		this.folder.newFile("_colors.scss");
+		this.folder.newFile("layout.sass");
+		this.folder.newFolder("mixins");
+		this.folder.newFile("mixins/_grid.scss");
+		this.folder.newFile("_both.scss");
+		this.folder.newFile("both.scss");
+	}
+
+	/**
+	 * Imports resolve to the file Sass would find, from one listing per
+	 * directory.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testFind() throws Exception {
+		final LoadPathIndex index = new LoadPathIndex();
+		assertArrayEquals(new String[] {this.loadPath + "/_colors.scss", "scss"},
+		        index.find(this.loadPath, "colors"));
+		assertArrayEquals(new String[] {this.loadPath + "/layout.sass", "sass"},
+		        index.find(this.loadPath, "layout"));
+		assertArrayEquals(new String[] {this.loadPath + "/_colors.scss", "scss"},
+		        index.find(this.loadPath, "colors.scss"));
+		assertArrayEquals(new String[] {this.loadPath + "/mixins/_grid.scss", "scss"},
+		        index.find(this.loadPath, "mixins/grid"));
+		assertArrayEquals(new String[] {this.loadPath + "/mixins/_grid.scss", "scss"},
+		        index.find(this.loadPath + "/mixins", "../mixins/grid"));
+		assertEquals(0, index.find(this.loadPath, "missing").length);
+		assertEquals(0, index.find(this.loadPath + "/nowhere", "missing").length);
+
+		assertEquals(7, index.getLookups());
+		assertEquals(3, index.getListings());
+		assertEquals(7 * 4 - 2 - 3, index.getProbesSaved());
+	}
+
+	/**
+	 * Lookups the index can't answer exactly are left to Sass.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testFallback() throws Exception {
+		final LoadPathIndex index = new LoadPathIndex();
+		assertNull(index.find(this.loadPath, "both"));
+		assertNull(index.find(this.loadPath, "col*"));
+		assertNull(index.find(this.loadPath, this.loadPath + "/colors"));
+		assertEquals(0, index.getLookups());
+	}
+
+	/**
+	 * Created files are found after the directory is invalidated.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testInvalidate() throws Exception {
+		final LoadPathIndex index = new LoadPathIndex();
+		assertEquals(0, index.find(this.loadPath, "buttons").length);
+		final File created = this.folder.newFile("_buttons.scss");
+		assertEquals(0, index.find(this.loadPath, "buttons").length);
+
+		index.invalidate(created.getPath());
+		assertEquals(this.loadPath + "/_buttons.scss", index.find(this.loadPath, "buttons")[0]);
+		assertEquals(2, index.getListings());
+	}
+
+	/**
+	 * Candidates are tried in Sass's order.
+	 */
+	@Test
+	public void testCandidates() {
+		assertEquals(Arrays.asList("_a.sass", "a.sass", "_a.scss", "a.scss"),
+		        LoadPathIndex.candidates("dir/a"));
+		assertEquals(Arrays.asList("_a.scss", "a.scss"), LoadPathIndex.candidates("a.scss"));
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.MarkupIndex }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class MarkupIndexTest {
+
+	/** temporary directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test scanning directories in parallel.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testScan() throws Exception {
+		final File webapp = this.folder.newFolder("webapp");
+		for (int i = 0; i < 200; i++) {
+			FileUtils.writeStringToFile(new File(webapp, "WEB-INF/jsp/page" + i + ".jsp"),
+			        "<c:if test=\"${x}\"><div class=\"page-" + i + "\"></div></c:if>", "UTF-8");
+		}
+		FileUtils.writeStringToFile(new File(webapp, "index.html"),
+		        "<BODY><span id=\"Title\"></span></BODY>", "UTF-8");
+		FileUtils.writeStringToFile(new File(webapp, "css/site.css"), ".unused {}", "UTF-8");
+
+		final MarkupIndex index = MarkupIndex.scan(Arrays.asList(webapp,
+		        new File(webapp, "missing")), new String[] {"**/*.jsp", "**/*.html"}, 4);
+		assertEquals(201, index.getFiles());
+		assertTrue(index.contains("page-199"));
+		assertTrue(index.contains("Title"));
+		assertTrue(index.contains("body"));
+		assertFalse(index.contains("unused"));
+	}
+
+	/**
+	 * Test the digest changes with the words only.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDigest() throws Exception {
+		final File markup = this.folder.newFile("index.html");
+		FileUtils.writeStringToFile(markup, "<p class=\"a b\">", "UTF-8");
+		final String[] includes = {"*.html"};
+		final String digest = MarkupIndex.scan(Arrays.asList(this.folder.getRoot()),
+		        includes, 1).digest();
+		FileUtils.writeStringToFile(markup, "<p class=\"b a\">\n", "UTF-8");
+		assertEquals(digest, MarkupIndex.scan(Arrays.asList(this.folder.getRoot()),
+		        includes, 1).digest());
+		FileUtils.writeStringToFile(markup, "<p class=\"b a c\">", "UTF-8");
+		assertFalse(digest.equals(MarkupIndex.scan(Arrays.asList(this.folder.getRoot()),
+		        includes, 1).digest()));
+	}
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.PathPropertiesStore }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class PathPropertiesStoreTest {
+
+	/** temporary directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Test saving and reading the properties again.
+	 */
+	@Test
+	public void testSave() {
+		final File file = new File(this.folder.getRoot(), "target/test.properties");
+		final PathPropertiesStore store = new PathPropertiesStore(file, "test", "Test",
+		        new SystemStreamLog());
+		assertNull(store.get("missing"));
+		store.put(PathPropertiesStore.key("src/main/sass/main.scss"), "42");
+		store.save();
+
+		final PathPropertiesStore read = new PathPropertiesStore(file, "test", "Test",
+		        new SystemStreamLog());
+		assertEquals("42", read.get(PathPropertiesStore.key("src/main/sass/../sass/main.scss")));
+	}
+
+	/**
+	 * Test the keys are normalised absolute paths.
+	 */
+	@Test
+	public void testKey() {
+		final String key = PathPropertiesStore.key("a/./b/../c.css");
+		assertEquals(new File("a/c.css").getAbsolutePath().replace('\\', '/'), key);
+	}
+}
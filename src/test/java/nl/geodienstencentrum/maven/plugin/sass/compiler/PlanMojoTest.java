@@ -0,0 +1,104 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.File;
+import java.util.List;
+
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.PlanMojo }.
+ *
+ * @author mprins
+ */
+public class PlanMojoTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.PlanMojo#execute() }
+	 * before and after compiling.
+	 *
+	 * @throws Exception if any
+	 * @see nl.geodienstencentrum.maven.plugin.sass.compiler.PlanMojo#execute()
+	 */
+	@Test
+	public void testExecute() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final PlanMojo plan = (PlanMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "plan");
+		assumeNotNull(plan);
+		List<String> lines = plan.createPlan();
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0), lines.get(0).endsWith(": output missing"));
+		assertTrue(lines.get(1), lines.get(1).endsWith(": output missing"));
+		assertEquals("2 of 2 Sass templates would be compiled, there is no compile "
+				+ "history to estimate the time.", lines.get(2));
+		plan.execute();
+		assertFalse("the plan should not compile",
+				new File(projectCopy, "target/css").exists());
+
+		final UpdateStylesheetsMojo update = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(update);
+		update.execute();
+
+		// make the outputs newer than the templates, then change a partial
+		final long now = System.currentTimeMillis();
+		for (final File template : new File(projectCopy, "src/main/sass").listFiles()) {
+			template.setLastModified(now - 60000L);
+		}
+		new File(projectCopy, "target/css/compiled.css").setLastModified(now - 30000L);
+		new File(projectCopy, "target/css/print.css").setLastModified(now - 30000L);
+		new File(projectCopy, "src/main/sass/_layout.scss").setLastModified(now);
+
+		lines = plan.createPlan();
+		assertEquals(3, lines.size());
+		assertTrue(lines.get(0), lines.get(0).startsWith("compile ")
+				&& lines.get(0).contains("_layout.scss changed (~"));
+		assertTrue(lines.get(1), lines.get(1).startsWith("skip ")
+				&& lines.get(1).endsWith("print.scss: up to date"));
+		assertTrue(lines.get(2), lines.get(2).startsWith(
+				"1 of 2 Sass templates would be compiled, taking about "));
+	}
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.SassFunctions }.
+ *
+ * @author mprins
+ */
+public class SassFunctionsTest {
+
+	/**
+	 * Functions can be registered by class name and are called by their Sass
+	 * name.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testRegisterClass() throws Exception {
+		final SassFunctions registry = new SassFunctions().register(Shout.class.getName());
+		assertEquals(1, registry.getFunctions().size());
+		final SassFunction function = registry.getFunctions().iterator().next();
+		assertEquals("shout_it", SassFunctions.getMethodName(function));
+		assertEquals("\"HELLO\"", registry.call("shout-it", new String[] {"hello"}).toString());
+	}
+
+	/**
+	 * Classes that are not Sass functions are rejected.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test(expected = ClassCastException.class)
+	public void testRegisterOtherClass() throws Exception {
+		new SassFunctions().register(String.class.getName());
+	}
+
+	/**
+	 * Calling an unknown function fails.
+	 */
+	@Test
+	public void testUnknown() {
+		try {
+			new SassFunctions().call("shout-it", new String[0]);
+			fail("an unknown function should fail");
+		} catch (IOException e) {
+			assertTrue(e.getMessage(), e.getMessage().contains("shout-it"));
+		}
+	}
+
+	/**
+	 * Values are formatted as CSS.
+	 */
+	@Test
+	public void testValues() {
+		assertEquals("16px", SassValue.number(16, "px").toString());
+		assertEquals("1.5", SassValue.number(1.5, null).toString());
+		assertEquals("url(a.png)", SassValue.string("url(a.png)", false).toString());
+		assertEquals("\"a\"", SassValue.string("a", true).toString());
+	}
+
+	/**
+	 * A function to register by class name.
+	 */
+	public static class Shout implements SassFunction {
+
+		@Override
+		public String getName() {
+			return "shout-it";
+		}
+
+		@Override
+		public String[] getParameters() {
+			return new String[] {"text"};
+		}
+
+		@Override
+		public int getRequiredParameters() {
+			return 1;
+		}
+
+		@Override
+		public SassValue call(final String[] arguments) {
+			return SassValue.string(arguments[0].toUpperCase(), true);
+		}
+	}
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+
+import nl.geodienstencentrum.maven.plugin.sass.SourcemapMode;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.ServeMojo }.
+ *
+ * @author mprins
+ */
+public class ServeMojoTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	/**
+	 * Stylesheets are compiled when they are first requested and served from
+	 * memory until their template or imports change.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testServe() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assertTrue("POM file should exist as file.", pom.exists() && pom.isFile());
+
+		final ServeMojo myMojo = (ServeMojo) this.rule.lookupConfiguredMojo(projectCopy,
+				"serve");
+		assertNotNull("the 'serve' mojo should exist", myMojo);
+		this.rule.setVariableValueToObject(myMojo, "servePort", 0);
+		myMojo.start();
+		try {
+			assertEquals("nothing is compiled up front", 0, myMojo.getCompiles());
+
+			HttpURLConnection connection = this.open(myMojo, "compiled.css", null);
+			assertEquals(200, connection.getResponseCode());
+			assertEquals("text/css; charset=utf-8", connection.getContentType());
+			final String etag = connection.getHeaderField("ETag");
+			assertNotNull(etag);
+			final String css = IOUtils.toString(connection.getInputStream(),
+					StandardCharsets.UTF_8);
+			assertTrue(css, css.startsWith("/* Compass mixins */"));
+			assertFalse(css, css.contains("sourceMappingURL"));
+			assertEquals(1, myMojo.getCompiles());
+			assertFalse("served from memory",
+					new File(projectCopy, "target/css/compiled.css").exists());
+
+			connection = this.open(myMojo, "compiled.css", etag);
+			assertEquals(304, connection.getResponseCode());
+			assertEquals(1, myMojo.getCompiles());
+
+			final File layout = new File(projectCopy, "src/main/sass/_layout.scss");
+			FileUtils.writeStringToFile(layout, FileUtils.readFileToString(layout, "UTF-8")
+					+ "\n.served { color: red; }\n", "UTF-8");
+			connection = this.open(myMojo, "compiled.css", etag);
+			assertEquals("an import changed", 200, connection.getResponseCode());
+			assertTrue(IOUtils.toString(connection.getInputStream(), StandardCharsets.UTF_8)
+					.contains(".served"));
+			assertEquals(2, myMojo.getCompiles());
+
+			assertEquals(404, this.open(myMojo, "missing.css", null).getResponseCode());
+		} finally {
+			myMojo.stop();
+		}
+	}
+
+	/**
+	 * A lazy source map is created and written when it is first requested.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testServeLazySourcemap() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assertTrue("POM file should exist as file.", pom.exists() && pom.isFile());
+
+		final ServeMojo myMojo = (ServeMojo) this.rule.lookupConfiguredMojo(projectCopy,
+				"serve");
+		assertNotNull("the 'serve' mojo should exist", myMojo);
+		this.rule.setVariableValueToObject(myMojo, "servePort", 0);
+		this.rule.setVariableValueToObject(myMojo, "sourcemapMode", SourcemapMode.LAZY);
+		myMojo.start();
+		try {
+			HttpURLConnection connection = this.open(myMojo, "compiled.css", null);
+			final String css = IOUtils.toString(connection.getInputStream(),
+					StandardCharsets.UTF_8);
+			assertTrue(css, css.endsWith("/*# sourceMappingURL=compiled.css.map */\n"));
+			final File map = new File(projectCopy, "target/css/compiled.css.map");
+			assertFalse("not written before it is requested", map.exists());
+
+			connection = this.open(myMojo, "compiled.css.map", null);
+			assertEquals(200, connection.getResponseCode());
+			assertEquals("application/json; charset=utf-8", connection.getContentType());
+			final String json = IOUtils.toString(connection.getInputStream(),
+					StandardCharsets.UTF_8);
+			assertTrue(json, json.contains("\"sourcesContent\""));
+			assertEquals(json, FileUtils.readFileToString(map, "UTF-8"));
+			assertEquals("the stylesheet is not compiled again", 1, myMojo.getCompiles());
+
+			assertEquals(404, this.open(myMojo, "missing.css.map", null).getResponseCode());
+		} finally {
+			myMojo.stop();
+		}
+	}
+
+	/**
+	 * Request a stylesheet.
+	 *
+	 * @param mojo the serving mojo
+	 * @param path the path of the stylesheet
+	 * @param etag the entity tag of an earlier response or {@code null}
+	 * @return the connection
+	 * @throws Exception if any
+	 */
+	private HttpURLConnection open(final ServeMojo mojo, final String path,
+			final String etag) throws Exception {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(
+				"http://127.0.0.1:" + mojo.getPort() + "/" + path).openConnection();
+		if (etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		return connection;
+	}
+}
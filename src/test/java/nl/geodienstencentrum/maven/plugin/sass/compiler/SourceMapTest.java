@@ -0,0 +1,115 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.SourceMap }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class SourceMapTest {
+
+	/**
+	 * Test decoding relative mappings to absolute segments.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDecode() throws Exception {
+		final List<List<int[]>> lines = SourceMap.decode("AAAA;AACA,IAAI;;EACEA");
+		assertEquals(4, lines.size());
+		assertEquals("[0, 0, 0, 0]", Arrays.toString(lines.get(0).get(0)));
+		assertEquals("[0, 0, 1, 0]", Arrays.toString(lines.get(1).get(0)));
+		assertEquals("[4, 0, 1, 4]", Arrays.toString(lines.get(1).get(1)));
+		assertEquals(0, lines.get(2).size());
+		assertEquals("[2, 0, 2, 6, 0]", Arrays.toString(lines.get(3).get(0)));
+	}
+
+	/**
+	 * Test encoding large and decreasing values.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testEncode() throws Exception {
+		final List<List<int[]>> lines = new ArrayList<>();
+		lines.add(Arrays.asList(new int[] {0, 2, 1000, 40}, new int[] {17}));
+		lines.add(Collections.<int[]>emptyList());
+		lines.add(Arrays.asList(new int[] {3, 0, 7, 0, 1}));
+		final String mappings = SourceMap.encode(lines);
+		assertEquals(mappings, SourceMap.encode(SourceMap.decode(mappings)));
+		assertEquals("[3, 0, 7, 0, 1]",
+		        Arrays.toString(SourceMap.decode(mappings).get(2).get(0)));
+		assertEquals("AAAA;AACA,IAAI;;EACEA", SourceMap.encode(
+		        SourceMap.decode("AAAA;AACA,IAAI;;EACEA")));
+	}
+
+	/**
+	 * Test parsing and formatting a source map.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testParse() throws Exception {
+		final SourceMap map = SourceMap.parse("{\n\"version\": 3,\n\"mappings\": \"AAAA\",\n"
+		        + "\"sources\": [\"../sass/a b.scss\", null],\n"
+		        + "\"sourcesContent\": [\"a {\\n  b: \\\"\\u00e9\\\";\\n}\"],\n"
+		        + "\"names\": [], \"x_extension\": {\"nested\": [1.5e2, true, false]},\n"
+		        + "\"file\": \"a.css\"\n}");
+		assertEquals(Arrays.asList("../sass/a b.scss", null), map.sources);
+		assertEquals("a {\n  b: \"\u00e9\";\n}", map.sourcesContent.get(0));
+		assertEquals("a.css", map.file);
+		assertNull(map.sourceRoot);
+
+		final SourceMap copy = SourceMap.parse(map.toJson());
+		assertEquals(map.sources, copy.sources);
+		assertEquals(map.sourcesContent, copy.sourcesContent);
+		assertEquals("AAAA", SourceMap.encode(copy.lines));
+	}
+
+	/**
+	 * Test an index map is not read.
+	 *
+	 * @throws Exception expected
+	 */
+	@Test(expected = IOException.class)
+	public void testParseIndexMap() throws Exception {
+		SourceMap.parse("{\"version\": 3, \"sections\": []}");
+	}
+
+	/**
+	 * Test invalid mappings.
+	 *
+	 * @throws Exception expected
+	 */
+	@Test(expected = IOException.class)
+	public void testDecodeInvalid() throws Exception {
+		SourceMap.decode("AA");
+	}
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static org.junit.Assume.assumeNotNull;
+import static org.junit.Assume.assumeTrue;
+
+import com.google.common.base.Stopwatch;
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import nl.geodienstencentrum.maven.plugin.sass.SourcemapMode;
+import org.apache.maven.plugin.testing.MojoRule;
+import org.apache.maven.plugin.testing.resources.TestResources;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+
+/**
+ * Benchmark the source map modes. After a warm up pass, that is not
+ * reported, {@code update-stylesheets} compiles the {@code complete-test}
+ * project a number of times for each mode, removing the fingerprints of the
+ * earlier execution so every execution compiles all stylesheets, and the
+ * size of the written stylesheets and source maps is reported; then
+ * {@code serve} compiles {@code compiled.css} and creates its source map on
+ * request, which is where a lazy source map is paid for. Only runs when
+ * {@code -DSourcemapModeBenchmarkTest.enabled=true} is set, eg. using the
+ * {@code benchmark} profile. Use -DSourcemapModeBenchmarkTest.passes=n to set
+ * the number of executions per mode (defaults to 5).
+ *
+ * @author mprins
+ */
+public class SourcemapModeBenchmarkTest {
+
+	/**
+	 * Test resources.
+	 */
+	@Rule
+	public TestResources resources = new TestResources();
+
+	/**
+	 * test rule.
+	 */
+	@Rule
+	public MojoRule rule = new MojoRule();
+
+	private static boolean ENABLED;
+
+	private static int PASSES;
+
+	@BeforeClass
+	public static void readEnvironment() {
+		ENABLED = Boolean.getBoolean("SourcemapModeBenchmarkTest.enabled");
+		try {
+			PASSES = Integer.parseInt(System.getProperty("SourcemapModeBenchmarkTest.passes"));
+			if (PASSES < 2) {
+				PASSES = 2;
+			}
+		} catch (NumberFormatException e) {
+			PASSES = 5;
+		}
+	}
+
+	/**
+	 * Compile and serve in every source map mode.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testSourcemapModes() throws Exception {
+		assumeTrue("Source map mode benchmark is not enabled.", ENABLED);
+
+		final List<String> report = new ArrayList<>();
+		report.add(String.format("%-8s %10s %10s %10s %10s %10s %10s",
+				"mode", "total ms", "first ms", "last ms", "bytes", "serve ms", "map ms"));
+		// warm up the JVM and JRuby, so the first mode is not penalized
+		this.run(SourcemapMode.EXTERNAL);
+		for (final SourcemapMode mode : SourcemapMode.values()) {
+			report.add(this.run(mode));
+		}
+
+		System.out.println("------------------------------------------------------------------------");
+		System.out.println("Source map mode benchmark, " + PASSES + " executions per mode");
+		for (final String line : report) {
+			System.out.println(line);
+		}
+		System.out.println("------------------------------------------------------------------------");
+	}
+
+	/**
+	 * Compile the project {@code PASSES} times, then serve
+	 * {@code compiled.css} and its source map.
+	 *
+	 * @return a report line
+	 */
+	private String run(final SourcemapMode mode) throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "sourcemapMode", mode);
+		final File fingerprints = new File((File) this.rule.getVariableValueFromObject(
+				myMojo, "buildDirectory"), FingerprintStore.FILE_NAME);
+
+		// execute the mojo a number of times and time each execution,
+		// without fingerprints every stylesheet is compiled again
+		final List<Long> runs = new ArrayList<>();
+		final Stopwatch stopwatch = Stopwatch.createUnstarted();
+		for (int i = 0; i < PASSES; i++) {
+			Files.deleteIfExists(fingerprints.toPath());
+			final long started = System.nanoTime();
+			stopwatch.start();
+			myMojo.execute();
+			stopwatch.stop();
+			runs.add(System.nanoTime() - started);
+		}
+
+		long bytes = 0;
+		final File[] written = new File(projectCopy, "target/css").listFiles();
+		if (written != null) {
+			for (final File file : written) {
+				bytes += file.length();
+			}
+		}
+
+		final ServeMojo serveMojo = (ServeMojo) this.rule.lookupConfiguredMojo(projectCopy,
+				"serve");
+		assumeNotNull(serveMojo);
+		this.rule.setVariableValueToObject(serveMojo, "servePort", 0);
+		this.rule.setVariableValueToObject(serveMojo, "sourcemapMode", mode);
+		serveMojo.start();
+		final Stopwatch serve = Stopwatch.createUnstarted();
+		final Stopwatch map = Stopwatch.createUnstarted();
+		try {
+			serve.start();
+			serveMojo.get("compiled.css");
+			serve.stop();
+			map.start();
+			serveMojo.getSourcemap("compiled.css.map");
+			map.stop();
+		} finally {
+			serveMojo.stop();
+		}
+
+		return String.format("%-8s %10d %10d %10d %10d %10d %10d",
+				mode, stopwatch.elapsed(MILLISECONDS),
+				MILLISECONDS.convert(runs.get(0), NANOSECONDS),
+				MILLISECONDS.convert(runs.get(runs.size() - 1), NANOSECONDS),
+				bytes, serve.elapsed(MILLISECONDS), map.elapsed(MILLISECONDS));
+	}
+}
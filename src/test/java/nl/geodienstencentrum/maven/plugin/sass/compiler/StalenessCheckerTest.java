@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.StalenessChecker }.
+ *
+ * @author mprins
+ */
+public class StalenessCheckerTest {
+
+	/** temporary folder for templates and css. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private File sass;
+
+	private File css;
+
+	private final long now = System.currentTimeMillis();
+
+	@Before
+	public void createTemplates() throws Exception {
+		this.sass = this.folder.newFolder("sass");
+		this.css = this.folder.newFolder("css");
+		this.write(this.sass, "_colours.scss", "$c: red;\n", -60);
+		for (final String name : new String[] {"a", "b", "c", "d"}) {
+			this.write(this.sass, name + ".scss", "@import 'colours';\n", -60);
+			this.write(this.css, name + ".css", "", -30);
+		}
+	}
+
+	/**
+	 * Each reason is detected, using one or more threads.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testCheck() throws Exception {
+		final List<EntryPoint> entryPoints = EntryPoint.scan(
+				this.sass.getPath(), this.css.getPath());
+		new File(this.css, "b.css").delete();
+		new File(this.sass, "c.scss").setLastModified(this.now);
+		for (final int threads : new int[] {1, 4}) {
+			final Map<EntryPoint, Staleness> staleness = new StalenessChecker(
+					new ImportGraph(Collections.<File>emptyList()), threads)
+					.check(entryPoints);
+			assertEquals(Arrays.asList(Staleness.UP_TO_DATE,
+					Staleness.OUTPUT_MISSING, Staleness.TEMPLATE_CHANGED,
+					Staleness.UP_TO_DATE), Arrays.asList(staleness.values()
+					.toArray(new Staleness[4])));
+			assertEquals(entryPoints.subList(1, 3),
+					StalenessChecker.getStale(staleness));
+		}
+	}
+
+	/**
+	 * A changed partial makes every template importing it stale.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testPartialChanged() throws Exception {
+		new File(this.sass, "_colours.scss").setLastModified(this.now);
+		final Map<EntryPoint, Staleness> staleness = new StalenessChecker(
+				new ImportGraph(Collections.<File>emptyList()))
+				.check(EntryPoint.scan(this.sass.getPath(), this.css.getPath()));
+		assertEquals(Collections.singleton(Staleness.PARTIAL_CHANGED),
+				new HashSet<>(staleness.values()));
+	}
+
+	/**
+	 * A removed partial that was imported by the last compilation makes the
+	 * template stale, although the import is no longer resolved.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testPartialMissing() throws Exception {
+		final List<EntryPoint> entryPoints = EntryPoint.scan(
+				this.sass.getPath(), this.css.getPath());
+		final FingerprintStore store = new FingerprintStore(
+				new File(this.folder.getRoot(), FingerprintStore.FILE_NAME),
+				new SystemStreamLog());
+		final Map<EntryPoint, String> fingerprints = new HashMap<>();
+		for (final EntryPoint entryPoint : entryPoints) {
+			fingerprints.put(entryPoint, "fingerprint");
+			store.put(entryPoint.getCss(), "fingerprint");
+		}
+		final File partial = new File(this.sass, "_colours.scss");
+		store.putImports(entryPoints.get(0).getCss(), Collections.singleton(partial));
+		partial.delete();
+
+		final Map<EntryPoint, Staleness> staleness = new StalenessChecker(
+				new ImportGraph(Collections.<File>emptyList()))
+				.check(entryPoints, fingerprints, store);
+		assertEquals(Arrays.asList(Staleness.PARTIAL_MISSING,
+				Staleness.UP_TO_DATE, Staleness.UP_TO_DATE,
+				Staleness.UP_TO_DATE), Arrays.asList(staleness.values()
+				.toArray(new Staleness[4])));
+	}
+
+	/**
+	 * Write a file with a modification time relative to now.
+	 */
+	private void write(final File dir, final String name, final String content,
+			final int seconds) throws IOException {
+		final File file = new File(dir, name);
+		Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+		file.setLastModified(this.now + seconds * 1000L);
+	}
+}
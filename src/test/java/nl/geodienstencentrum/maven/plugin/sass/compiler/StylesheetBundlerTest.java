@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.StylesheetBundler }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class StylesheetBundlerTest {
+
+	/** temporary directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Write a file.
+	 *
+	 * @param path the path in the temporary directory
+	 * @param content the content
+	 * @return the file
+	 * @throws Exception if any
+	 */
+	private File write(final String path, final String content) throws Exception {
+		final File file = new File(this.folder.getRoot(), path);
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		return file;
+	}
+
+	/**
+	 * Test bundling expanded and compressed stylesheets with source maps.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testBundle() throws Exception {
+		final File a = this.write("css/a.css", "@charset \"UTF-8\";\n.a {\n  color: red;\n}\n\n"
+		        + "/*# sourceMappingURL=a.css.map */\n");
+		this.write("css/a.css.map", "{\"version\": 3, \"mappings\": \";AAAA;EACE\", "
+		        + "\"sources\": [\"../sass/a.scss\"], \"names\": [], \"file\": \"a.css\"}");
+		final File b = this.write("css/sub/b.css", "\uFEFF.b{x:y}\n\n"
+		        + "/*# sourceMappingURL=b.css.map */");
+		this.write("css/sub/b.css.map", "{\"version\": 3, \"mappings\": \"CAAA,IAAGA\", "
+		        + "\"sources\": [\"../../sass/b.scss\"], \"names\": [\"x\"], "
+		        + "\"file\": \"b.css\"}");
+		final File plain = this.write("css/plain.css", ".p {\n  margin: 0;\n}\n");
+		final File bundle = new File(this.folder.getRoot(), "css/bundle/all.css");
+
+		assertTrue(new StylesheetBundler(new SystemStreamLog(), true).bundle(
+		        Arrays.asList(a, plain, b), bundle));
+
+		assertEquals("@charset \"UTF-8\";\n.a {\n  color: red;\n}\n.p {\n  margin: 0;\n}\n"
+		        + ".b{x:y}\n\n/*# sourceMappingURL=all.css.map */\n",
+		        FileUtils.readFileToString(bundle, "UTF-8"));
+		final SourceMap map = SourceMap.parse(FileUtils.readFileToString(
+		        new File(this.folder.getRoot(), "css/bundle/all.css.map"), "UTF-8"));
+		assertEquals("all.css", map.file);
+		assertEquals(Arrays.asList("../../sass/a.scss", "../../sass/b.scss"), map.sources);
+		assertEquals(Arrays.asList("x"), map.names);
+		// a starts on line 1 after its charset, b on line 7 without its
+		// byte order mark
+		assertEquals(";AAAA;EACE;;;;;ACDF,IAAGA", SourceMap.encode(map.lines));
+		assertEquals("[4, 1, 0, 3, 0]", Arrays.toString(map.lines.get(7).get(1)));
+	}
+
+	/**
+	 * Test bundling stylesheets without source maps.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testBundleWithoutSourceMaps() throws Exception {
+		final File a = this.write("a.css", ".a{x:y}");
+		final File b = this.write("b.css", "\n");
+		final File c = this.write("c.css", ".c{x:y}\n");
+		final File bundle = new File(this.folder.getRoot(), "all.css");
+		this.write("all.css.map", "{}");
+
+		assertFalse(new StylesheetBundler(new SystemStreamLog(), true).bundle(
+		        Arrays.asList(a, b, c), bundle));
+		assertEquals(".a{x:y}\n.c{x:y}\n", FileUtils.readFileToString(bundle, "UTF-8"));
+		assertFalse("the old source map is removed",
+		        new File(this.folder.getRoot(), "all.css.map").exists());
+	}
+
+	/**
+	 * Test moving the imports of the stylesheets to the start of the bundle.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testBundleImports() throws Exception {
+		final File a = this.write("a.css", "@charset \"UTF-8\";\n"
+		        + "@import url(fonts.css);\n.a {\n  x: y;\n}\n\n"
+		        + "/*# sourceMappingURL=a.css.map */\n");
+		this.write("a.css.map", "{\"version\": 3, \"mappings\": \";;AAAA;EACE\", "
+		        + "\"sources\": [\"a.scss\"], \"names\": [], \"file\": \"a.css\"}");
+		final File b = this.write("b.css", "@import \"print.css\" print;@import url(fonts.css);"
+		        + ".b{x:y}\n\n/*# sourceMappingURL=b.css.map */");
+		this.write("b.css.map", "{\"version\": 3, \"mappings\": \"iDAAA\", "
+		        + "\"sources\": [\"b.scss\"], \"names\": [], \"file\": \"b.css\"}");
+		final File bundle = new File(this.folder.getRoot(), "all.css");
+		final List<CharSequence> warnings = new ArrayList<>();
+
+		assertTrue(new StylesheetBundler(new WarningLog(warnings), true).bundle(
+		        Arrays.asList(a, b), bundle));
+		assertEquals("@charset \"UTF-8\";\n@import url(fonts.css);\n"
+		        + "@import \"print.css\" print;\n.a {\n  x: y;\n}\n.b{x:y}\n\n"
+		        + "/*# sourceMappingURL=all.css.map */\n",
+		        FileUtils.readFileToString(bundle, "UTF-8"));
+		final SourceMap map = SourceMap.parse(FileUtils.readFileToString(
+		        new File(this.folder.getRoot(), "all.css.map"), "UTF-8"));
+		// a starts on line 3 after the charset and imports, b on line 6
+		// without its imports
+		assertEquals(";;;AAAA;EACE;;ACDF", SourceMap.encode(map.lines));
+		assertEquals(1, warnings.size());
+		assertTrue(warnings.get(0).toString(), warnings.get(0).toString().contains("b.css"));
+	}
+
+	/**
+	 * Test inline and missing source maps are expected without source map
+	 * files.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testBundleWithoutSourceMapFiles() throws Exception {
+		final File a = this.write("a.css", ".a{x:y}\n\n"
+		        + "/*# sourceMappingURL=data:application/json;base64,e30= */\n");
+		final File b = this.write("b.css", ".b{x:y}\n\n/*# sourceMappingURL=b.css.map */\n");
+		final File bundle = new File(this.folder.getRoot(), "all.css");
+		final List<CharSequence> warnings = new ArrayList<>();
+
+		assertFalse(new StylesheetBundler(new WarningLog(warnings), false).bundle(
+		        Arrays.asList(a, b), bundle));
+		assertTrue(warnings.toString(), warnings.isEmpty());
+		assertFalse(new StylesheetBundler(new WarningLog(warnings), true).bundle(
+		        Arrays.asList(a, b), bundle));
+		assertEquals(2, warnings.size());
+	}
+
+	/**
+	 * Test making sources relative to the bundle's source map.
+	 */
+	@Test
+	public void testResolve() {
+		final File root = new File("/project/target");
+		assertEquals("../../../src/main/sass/a.scss", StylesheetBundler.resolve(
+		        "../src/main/sass/a.scss", null, root, new File(root, "css/bundles")));
+		assertEquals("../sass/a.scss", StylesheetBundler.resolve("a.scss", "sass/", root,
+		        new File(root, "css")));
+		assertEquals("file:///project/a.scss", StylesheetBundler.resolve(
+		        "file:///project/a.scss", null, root, root));
+	}
+
+	/**
+	 * A log keeping the warnings.
+	 */
+	private static final class WarningLog extends SystemStreamLog {
+
+		/** the warnings. */
+		private final List<CharSequence> warnings;
+
+		/**
+		 * Create a log.
+		 *
+		 * @param warnings the warnings, added to
+		 */
+		WarningLog(final List<CharSequence> warnings) {
+			this.warnings = warnings;
+		}
+
+		@Override
+		public void warn(final CharSequence content) {
+			this.warnings.add(content);
+		}
+	}
+}
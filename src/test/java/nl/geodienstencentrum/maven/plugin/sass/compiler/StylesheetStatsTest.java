@@ -0,0 +1,125 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.StylesheetStats }.
+ *
+ * @author mprins
+ * @since 2.21
+ */
+public class StylesheetStatsTest {
+
+	/** temporary directory. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Analyze a stylesheet.
+	 *
+	 * @param css the stylesheet
+	 * @return the statistics
+	 * @throws Exception if any
+	 */
+	private static StylesheetStats analyze(final String css) throws Exception {
+		return StylesheetStats.analyze("test.css", css.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Test counting rules and selectors.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testRulesAndSelectors() throws Exception {
+		final StylesheetStats stats = analyze("a, b:not(.c, .d) { color: red; }\n"
+		        + "/* e { } */\n"
+		        + ".f[title=\"g,h{\"] { content: '}'; }\n");
+		assertEquals(2, stats.getRules());
+		assertEquals(3, stats.getSelectors());
+		assertEquals(1, stats.getMaxDepth());
+	}
+
+	/**
+	 * Test nesting in at-rules, keyframes are not rules.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testNesting() throws Exception {
+		final StylesheetStats stats = analyze("@charset \"UTF-8\";\n"
+		        + "@media print { @supports (display: grid) { .a { x: y } } .b { x: y } }\n"
+		        + "@-webkit-keyframes spin { from { x: y } to { x: z } }\n"
+		        + "@font-face { font-family: f; }\n");
+		assertEquals(2, stats.getRules());
+		assertEquals(2, stats.getSelectors());
+		assertEquals(3, stats.getMaxDepth());
+	}
+
+	/**
+	 * Test the sizes.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testSizes() throws Exception {
+		final StringBuilder css = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			css.append(".icon-").append(i).append(" { background: url(icons.png); }\n");
+		}
+		final StylesheetStats stats = analyze(css.toString());
+		assertEquals(css.length(), stats.getSize());
+		assertTrue(stats.getGzipSize() < stats.getSize() / 4);
+		assertEquals(100, stats.getRules());
+		assertEquals(0, analyze("").getMaxDepth());
+	}
+
+	/**
+	 * Test writing the statistics.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testWrite() throws Exception {
+		final File file = new File(this.folder.getRoot(), "stats/sass-css-stats.json");
+		StylesheetStats.write(file, Arrays.asList(
+		        StylesheetStats.analyze("print.css", ".a { x: y }".getBytes(StandardCharsets.UTF_8)),
+		        StylesheetStats.analyze("main.css", ".b, .c { x: y }".getBytes(StandardCharsets.UTF_8))));
+		final String json = FileUtils.readFileToString(file, "UTF-8");
+		assertTrue(json, json.startsWith("{\"total\":{\"size\":26,"));
+		assertTrue(json, json.contains("\"rules\":2,\"selectors\":3,\"maxDepth\":1}"));
+		assertTrue(json, json.indexOf("\"main.css\"") < json.indexOf("\"print.css\""));
+
+		// the same stylesheets give the same file
+		StylesheetStats.write(file, Arrays.asList(
+		        StylesheetStats.analyze("main.css", ".b, .c { x: y }".getBytes(StandardCharsets.UTF_8)),
+		        StylesheetStats.analyze("print.css", ".a { x: y }".getBytes(StandardCharsets.UTF_8))));
+		assertEquals(json, FileUtils.readFileToString(file, "UTF-8"));
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2016 Mark Prins, GeoDienstenCentrum
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package nl.geodienstencentrum.maven.plugin.sass.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+
+import nl.geodienstencentrum.maven.plugin.sass.compiler.TraceRecorder.Span;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Testcase for
+ * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.TraceRecorder }.
+ *
+ * @author mprins
+ */
+public class TraceRecorderTest {
+
+	/** temporary folder for the trace file. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	/**
+	 * Spans are written as complete events with the thread they ran on.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testWrite() throws Exception {
+		final TraceRecorder recorder = new TraceRecorder(true);
+		try (Span span = recorder.begin("scan \"sass\"", "scan")) {
+			span.arg("dir", "C:\\sass");
+		}
+		recorder.record("compile a.scss", "compile", System.nanoTime(), 1500L,
+				Collections.<String, String>emptyMap());
+		assertEquals(2, recorder.size());
+
+		final File file = new File(this.folder.getRoot(), "target/" + TraceRecorder.FILE_NAME);
+		recorder.write(file);
+		final String json = new String(Files.readAllBytes(file.toPath()),
+				StandardCharsets.UTF_8);
+		assertTrue(json, json.startsWith("{\"displayTimeUnit\":\"ns\",\"traceEvents\":["));
+		assertTrue(json, json.contains("\"name\":\"thread_name\",\"ph\":\"M\""));
+		assertTrue(json, json.contains("\"name\":\"scan \\\"sass\\\"\",\"cat\":\"scan\",\"ph\":\"X\""));
+		assertTrue(json, json.contains("\"args\":{\"dir\":\"C:\\\\sass\"}"));
+		assertTrue(json, json.contains("\"dur\":1.500,\"pid\":1,\"tid\":"
+				+ Thread.currentThread().getId()));
+		assertTrue(json, json.indexOf("scan") < json.indexOf("compile a.scss"));
+	}
+
+	/**
+	 * A disabled recorder records and writes nothing.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testDisabled() throws Exception {
+		final TraceRecorder recorder = new TraceRecorder(false);
+		try (Span span = recorder.begin("scan", "scan")) {
+			span.arg("dir", "sass");
+		}
+		assertEquals(0, recorder.size());
+		final File file = new File(this.folder.getRoot(), TraceRecorder.FILE_NAME);
+		recorder.write(file);
+		assertFalse(file.exists());
+	}
+
+	/**
+	 * Nanoseconds are written as microseconds without losing precision.
+	 */
+	@Test
+	public void testMicros() {
+		assertEquals("0.000", TraceRecorder.micros(0L));
+		assertEquals("0.007", TraceRecorder.micros(7L));
+		assertEquals("1234.567", TraceRecorder.micros(1234567L));
+		assertEquals("-1.500", TraceRecorder.micros(-1500L));
+	}
+}
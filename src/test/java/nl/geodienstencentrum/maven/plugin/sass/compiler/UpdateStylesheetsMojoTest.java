@@ -15,6 +15,7 @@
  */
 package nl.geodienstencentrum.maven.plugin.sass.compiler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.assertFalse;
@@ -23,7 +24,18 @@ import static org.junit.Assume.assumeNotNull;
 import static org.junit.Assume.assumeTrue;
 
 import java.io.File;
-
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import nl.geodienstencentrum.maven.plugin.sass.CssBudget;
+import nl.geodienstencentrum.maven.plugin.sass.CssBundle;
+import nl.geodienstencentrum.maven.plugin.sass.OutputStyle;
+import nl.geodienstencentrum.maven.plugin.sass.SourcemapMode;
+
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.testing.MojoRule;
 import org.apache.maven.plugin.testing.resources.TestResources;
@@ -31,6 +43,8 @@ import org.apache.maven.plugin.testing.resources.TestResources;
 import org.junit.Rule;
 import org.junit.Test;
 
+import com.google.common.io.BaseEncoding;
+
 /**
  * Testcase for
  * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo }
@@ -123,6 +137,707 @@ public class UpdateStylesheetsMojoTest {
 				"target/css/print.css");
 	}
 
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * . This compiles the two stylesheets of the complete example in parallel.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteParallel() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "compilerThreads", 2);
+
+		myMojo.execute();
+		TestResources.assertDirectoryContents(
+				new File(projectCopy.getAbsolutePath() + "/target/css/"),
+				"compiled.css.map", "compiled.css", "print.css.map",
+				"print.css");
+		TestResources.assertFileContents(projectCopy, "expected_compiled.css",
+				"target/css/compiled.css");
+		TestResources.assertFileContents(projectCopy, "expected_print.css",
+				"target/css/print.css");
+		// durations of both templates should have been recorded
+		final CompileStatistics statistics = new CompileStatistics(
+				new File(projectCopy, "target/" + CompileStatistics.FILE_NAME),
+				myMojo.getLog());
+		assertNotNull(statistics.getDuration(projectCopy.getAbsolutePath()
+				+ "/src/main/sass/compiled.scss"));
+		assertNotNull(statistics.getDuration(projectCopy.getAbsolutePath()
+				+ "/src/main/sass/print.scss"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * loading Compass when it is first imported.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteLazyCompass() throws Exception {
+		final File projectCopy = this.resources
+				.getBasedir("maven-compass-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "lazyLoadLibraries", true);
+
+		myMojo.execute();
+		TestResources.assertFileContents(projectCopy, "expected.css",
+				"target/maven-compass-test-1.0-SNAPSHOT/css/compiled.css");
+		// the load time of Compass should have been recorded
+		final CompileStatistics statistics = new CompileStatistics(
+				new File(projectCopy, "target/" + CompileStatistics.FILE_NAME),
+				myMojo.getLog());
+		assertNotNull(statistics.getLibraryDuration("compass"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * compiling only the stale entry points.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteIncremental() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		myMojo.execute();
+
+		// make the outputs newer than the templates, then change print.scss
+		final long now = System.currentTimeMillis();
+		for (final File template : new File(projectCopy, "src/main/sass").listFiles()) {
+			template.setLastModified(now - 60000L);
+		}
+		final File compiled = new File(projectCopy, "target/css/compiled.css");
+		final File print = new File(projectCopy, "target/css/print.css");
+		compiled.setLastModified(now - 30000L);
+		print.setLastModified(now - 30000L);
+		final long before = compiled.lastModified();
+		new File(projectCopy, "src/main/sass/print.scss").setLastModified(now);
+
+		myMojo.execute();
+		assertEquals("compiled.css should not be compiled again", before,
+				compiled.lastModified());
+		assertTrue("print.css should be compiled again",
+				print.lastModified() > before);
+		TestResources.assertFileContents(projectCopy, "expected_print.css",
+				"target/css/print.css");
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * writing a trace.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteTrace() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "trace", true);
+		myMojo.execute();
+
+		final String trace = FileUtils.readFileToString(
+				new File(projectCopy, "target/" + TraceRecorder.FILE_NAME), "UTF-8");
+		for (final String phase : new String[] {"scan entry points", "build Ruby script",
+				"boot JRuby", "compile compiled.scss", "write compiled.css", "save build state"}) {
+			assertTrue(phase + " should be traced", trace.contains("\"" + phase + "\""));
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * profiling a template.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteProfile() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "profileTemplates",
+				new String[] {"**/print.scss"});
+		myMojo.execute();
+
+		TestResources.assertFileContents(projectCopy, "expected_print.css",
+				"target/css/print.css");
+		TestResources.assertFileContents(projectCopy, "expected_compiled.css",
+				"target/css/compiled.css");
+		final File profiles = new File(projectCopy, "target/"
+				+ UpdateStylesheetsMojo.PROFILE_DIRECTORY);
+		for (final String profile : new String[] {"print.flat.txt", "print.graph.txt"}) {
+			assertTrue(profile + " should be written",
+					new File(profiles, profile).length() > 0);
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * compiling again after a Sass option changed.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteConfigurationChanged() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		myMojo.execute();
+
+		// make the outputs newer than the templates, then change the style
+		final long now = System.currentTimeMillis();
+		for (final File template : new File(projectCopy, "src/main/sass").listFiles()) {
+			template.setLastModified(now - 60000L);
+		}
+		final File compiled = new File(projectCopy, "target/css/compiled.css");
+		compiled.setLastModified(now - 30000L);
+		new File(projectCopy, "target/css/print.css").setLastModified(now - 30000L);
+		final long before = compiled.lastModified();
+
+		@SuppressWarnings("unchecked")
+		final Map<String, String> sassOptions = new HashMap<>((Map<String, String>) this.rule
+				.getVariableValueFromObject(myMojo, "sassOptions"));
+		sassOptions.put("style", ":compressed");
+		this.rule.setVariableValueToObject(myMojo, "sassOptions", sassOptions);
+
+		myMojo.execute();
+		assertTrue("compiled.css should be compiled again",
+				compiled.lastModified() > before);
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * importing a partial from a classpath element.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteClasspathImports() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final File dependency = new File(projectCopy, "dependency");
+		FileUtils.writeStringToFile(new File(dependency,
+				"META-INF/resources/design/_buttons.scss"),
+				".button { color: #336699; }\n", "UTF-8");
+		FileUtils.writeStringToFile(new File(projectCopy, "src/main/sass/shared.scss"),
+				"@import 'design/buttons';\n", "UTF-8");
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "classpathImports", true);
+		this.rule.setVariableValueToObject(myMojo, "classpathElements",
+				Collections.singletonList(dependency.getPath()));
+		myMojo.execute();
+
+		final String css = FileUtils.readFileToString(
+				new File(projectCopy, "target/css/shared.css"), "UTF-8");
+		assertTrue(css, css.contains(".button"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * resolving imports from the load path index.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteIndexLoadPaths() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "indexLoadPaths", true);
+		myMojo.execute();
+
+		TestResources.assertFileContents(projectCopy, "expected_compiled.css",
+				"target/css/compiled.css");
+		TestResources.assertFileContents(projectCopy, "expected_print.css",
+				"target/css/print.css");
+		final LoadPathIndex index = (LoadPathIndex) this.rule
+				.getVariableValueFromObject(myMojo, "loadPathIndex");
+		assertTrue("imports should be answered from the index", index.getLookups() > 0);
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * using the Java image functions.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteJavaFunctions() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final File images = new File(projectCopy, "src/main/webapp");
+		FileUtils.copyFile(new File("src/test/projects/maven-sass-test/src/main/webapp/img/error.png"),
+				new File(images, "img/error.png"));
+		FileUtils.writeStringToFile(new File(projectCopy, "src/main/sass/icons.scss"),
+				".error { width: image-width('img/error.png'); "
+				+ "height: image-height('img/error.png'); "
+				+ "background: inline-image('img/error.png'); }\n"
+				+ ".warning { width: image-width('img/error.png'); }\n", "UTF-8");
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "javaFunctions", true);
+		this.rule.setVariableValueToObject(myMojo, "imagesDirectory", images);
+		myMojo.execute();
+
+		final String css = FileUtils.readFileToString(
+				new File(projectCopy, "target/css/icons.css"), "UTF-8");
+		assertTrue(css, css.contains("width: 24px;"));
+		assertTrue(css, css.contains("height: 12px;"));
+		assertTrue(css, css.contains("background: url('data:image/png;base64,iVBOR"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * with additional output styles.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteOutputStyles() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		final File expandedDir = new File(projectCopy, "target/expanded");
+		this.rule.setVariableValueToObject(myMojo, "outputStyles", Arrays.asList(
+				new OutputStyle("compressed", null, null),
+				new OutputStyle("expanded", null, expandedDir)));
+		myMojo.execute();
+
+		final File cssDir = new File(projectCopy, "target/css");
+		final String css = FileUtils.readFileToString(new File(cssDir, "compiled.css"), "UTF-8");
+		final String minified = FileUtils.readFileToString(
+				new File(cssDir, "compiled.min.css"), "UTF-8");
+		final String expanded = FileUtils.readFileToString(
+				new File(expandedDir, "compiled.expanded.css"), "UTF-8");
+		assertTrue(minified, minified.length() < css.length());
+		assertEquals(minified, 1, minified.split("\n").length);
+		assertFalse(minified, minified.contains("sourceMappingURL"));
+		assertTrue(expanded, expanded.contains("}\n\n"));
+		assertTrue(new File(cssDir, "print.min.css").isFile());
+		assertTrue(new File(expandedDir, "print.expanded.css").isFile());
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * rendering the same compressed CSS as a compilation in the compressed
+	 * style.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testExecuteOutputStylesCompressed() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "outputStyles", Arrays.asList(
+				new OutputStyle("compressed", null, null)));
+		myMojo.execute();
+
+		myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		final File compressedDir = new File(projectCopy, "target/compressed");
+		this.rule.setVariableValueToObject(myMojo, "destination", compressedDir);
+		final Map<String, String> sassOptions = new HashMap<>((Map<String, String>) this.rule
+				.getVariableValueFromObject(myMojo, "sassOptions"));
+		sassOptions.put("style", ":compressed");
+		sassOptions.put("sourcemap", ":none");
+		this.rule.setVariableValueToObject(myMojo, "sassOptions", sassOptions);
+		myMojo.execute();
+
+		for (final String name : new String[] {"compiled", "print"}) {
+			final String minified = FileUtils.readFileToString(
+					new File(projectCopy, "target/css/" + name + ".min.css"), "UTF-8");
+			final String compressed = FileUtils.readFileToString(
+					new File(compressedDir, name + ".css"), "UTF-8");
+			assertEquals(name, compressed.trim(), minified.trim());
+		}
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * writing the stylesheet statistics and checking the budgets.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteCssBudgets() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "cssStats", true);
+		this.rule.setVariableValueToObject(myMojo, "cssBudgets", Arrays.asList(
+				new CssBudget("**/*.css", "1MB", "100kB")));
+		myMojo.execute();
+
+		final String json = FileUtils.readFileToString(new File(projectCopy,
+				"target/" + UpdateStylesheetsMojo.STATS_FILE_NAME), "UTF-8");
+		assertTrue(json, json.contains("\"compiled.css\":{\"size\":"));
+		assertTrue(json, json.contains("\"print.css\":{\"size\":"));
+
+		// the stylesheets are up to date, but still checked
+		myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		this.rule.setVariableValueToObject(myMojo, "cssBudgets", Arrays.asList(
+				new CssBudget("print.css", "10", null)));
+		try {
+			myMojo.execute();
+			fail("print.css exceeds its budget");
+		} catch (MojoFailureException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("1 CSS budgets exceeded"));
+		}
+		this.rule.setVariableValueToObject(myMojo, "failOnBudget", false);
+		myMojo.execute();
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * pruning the selectors the markup does not use.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecutePrune() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+		final File markup = new File(projectCopy, "src/main/webapp/index.jsp");
+		FileUtils.writeStringToFile(markup,
+				"<body><a class=\"skipLink\" href=\"#kaart\">kaart</a></body>", "UTF-8");
+
+		UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "prune", true);
+		myMojo.execute();
+
+		final String css = FileUtils.readFileToString(
+				new File(projectCopy, "target/css/compiled.css"), "UTF-8");
+		assertTrue(css, css.contains("a.skipLink {"));
+		final File print = new File(projectCopy, "target/css/print.css");
+		String printCss = FileUtils.readFileToString(print, "UTF-8");
+		assertFalse(printCss, printCss.contains("#toggleSize"));
+		assertFalse(printCss, printCss.contains(".olControlZoom"));
+
+		// an id added to the markup compiles and prunes again
+		FileUtils.writeStringToFile(markup, "<body><a class=\"skipLink\">kaart</a>"
+				+ "<div id=\"toggleSize\"></div></body>", "UTF-8");
+		myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		this.rule.setVariableValueToObject(myMojo, "prune", true);
+		myMojo.execute();
+		printCss = FileUtils.readFileToString(print, "UTF-8");
+		assertTrue(printCss, printCss.contains("#toggleSize"));
+		assertFalse(printCss, printCss.contains(".olControlZoom"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * extracting the critical CSS of a page.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteCriticalCss() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+		FileUtils.writeStringToFile(new File(projectCopy, "src/main/webapp/portal/index.html"),
+				"<head><link rel=\"stylesheet\" href=\"/app/css/compiled.css?v=1\"></head>"
+				+ "<body><a class=\"skipLink\" href=\"#kaart\">kaart</a></body>", "UTF-8");
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "criticalCss", true);
+		myMojo.execute();
+
+		final File criticalCss = new File(projectCopy,
+				"target/critical-css/portal/index.critical.css");
+		assertTrue("Critical CSS should exist.", criticalCss.isFile());
+		final String critical = FileUtils.readFileToString(criticalCss, "UTF-8");
+		assertTrue(critical, critical.contains("a.skipLink {"));
+		assertFalse(critical, critical.contains("#toggleSize"));
+		assertFalse(critical, critical.contains("sourceMappingURL"));
+		// the page loads the compiled stylesheet itself
+		assertFalse("No deferred CSS should be written.", new File(projectCopy,
+				"target/critical-css/portal/index.deferred.css").exists());
+		// the stylesheet itself is left as compiled
+		final String css = FileUtils.readFileToString(
+				new File(projectCopy, "target/css/compiled.css"), "UTF-8");
+		assertTrue(css, css.contains("#toggleSize {"));
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * bundling stylesheets.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteBundles() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+		final List<CssBundle> bundles = Arrays.asList(new CssBundle("bundles/all.css",
+				new String[] {"print.css", "compiled.css"}, null));
+
+		UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "bundles", bundles);
+		myMojo.execute();
+
+		final File bundle = new File(projectCopy, "target/css/bundles/all.css");
+		final String css = FileUtils.readFileToString(bundle, "UTF-8");
+		assertTrue(css, css.indexOf("#toggleSize") < css.indexOf("a.skipLink {"));
+		assertTrue(css, css.endsWith("/*# sourceMappingURL=all.css.map */\n"));
+		final String map = FileUtils.readFileToString(
+				new File(projectCopy, "target/css/bundles/all.css.map"), "UTF-8");
+		assertTrue(map, map.contains("\"file\": \"all.css\""));
+		assertTrue(map, map.contains("src/main/sass/print.scss\""));
+		assertTrue(map, map.contains("src/main/sass/compiled.scss\""));
+
+		// an up to date bundle is not written again
+		assertTrue(bundle.setLastModified(1000L));
+		myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		this.rule.setVariableValueToObject(myMojo, "bundles", bundles);
+		myMojo.execute();
+		assertEquals(1000L, bundle.lastModified());
+	}
+
+	/**
+	 * Test the source map modes; changing the mode compiles the stylesheets
+	 * again.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testExecuteSourcemapModes() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+		final File map = new File(projectCopy, "target/css/compiled.css.map");
+
+		String css = this.executeWithSourcemapMode(projectCopy, SourcemapMode.EXTERNAL);
+		assertTrue(css, css.endsWith("/*# sourceMappingURL=compiled.css.map */\n"));
+		assertTrue("the source map is written", map.isFile());
+
+		css = this.executeWithSourcemapMode(projectCopy, SourcemapMode.LAZY);
+		assertFalse("only serve writes lazy source maps", css.contains("sourceMappingURL"));
+		assertFalse("the old source map is removed", map.exists());
+
+		css = this.executeWithSourcemapMode(projectCopy, SourcemapMode.INLINE);
+		final String prefix = "/*# sourceMappingURL=data:application/json;base64,";
+		assertTrue(css, css.contains(prefix));
+		final String data = css.substring(css.indexOf(prefix) + prefix.length(),
+				css.lastIndexOf(" */"));
+		final String inline = new String(BaseEncoding.base64().decode(data), "UTF-8");
+		assertTrue(inline, inline.contains("\"sourcesContent\""));
+		assertFalse(map.exists());
+
+		css = this.executeWithSourcemapMode(projectCopy, SourcemapMode.NONE);
+		assertFalse(css, css.contains("sourceMappingURL"));
+		assertFalse(map.exists());
+	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
+	 * with all the patches of the Sass compiler that wrap the same methods.
+	 *
+	 * @throws Exception if any
+	 * @see
+	 * nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute()
+	 */
+	@Test
+	public void testExecuteCombinedPatches() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assumeNotNull("POM file should not be null.", pom);
+		assumeTrue("POM file should exist as file.",
+				pom.exists() && pom.isFile());
+
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "outputStyles", Arrays.asList(
+				new OutputStyle("compressed", null, null)));
+		this.rule.setVariableValueToObject(myMojo, "sourcemapMode", SourcemapMode.INLINE);
+		this.rule.setVariableValueToObject(myMojo, "trace", true);
+		this.rule.setVariableValueToObject(myMojo, "indexLoadPaths", true);
+		myMojo.execute();
+
+		final File cssDir = new File(projectCopy, "target/css");
+		final String css = FileUtils.readFileToString(new File(cssDir, "compiled.css"), "UTF-8");
+		assertTrue(css, css.contains("/*# sourceMappingURL=data:application/json;base64,"));
+		assertFalse(new File(cssDir, "compiled.css.map").exists());
+		final String minified = FileUtils.readFileToString(
+				new File(cssDir, "compiled.min.css"), "UTF-8");
+		assertEquals(minified, 1, minified.split("\n").length);
+		assertFalse(minified, minified.contains("sourceMappingURL"));
+		final LoadPathIndex index = (LoadPathIndex) this.rule
+				.getVariableValueFromObject(myMojo, "loadPathIndex");
+		assertTrue("imports should be answered from the index", index.getLookups() > 0);
+		final String trace = FileUtils.readFileToString(
+				new File(projectCopy, "target/" + TraceRecorder.FILE_NAME), "UTF-8");
+		assertTrue(trace, trace.contains("\"write compiled.css\""));
+		assertTrue(trace, trace.contains("\"write compiled.min.css\""));
+		assertFalse("the inlined source map is not written",
+				trace.contains("\"write compiled.css.map\""));
+	}
+
+	/**
+	 * Compile the project with a source map mode.
+	 *
+	 * @param projectCopy the project
+	 * @param mode the source map mode
+	 * @return the compiled CSS of {@code compiled.scss}
+	 * @throws Exception if any
+	 */
+	private String executeWithSourcemapMode(final File projectCopy, final SourcemapMode mode)
+			throws Exception {
+		final UpdateStylesheetsMojo myMojo = (UpdateStylesheetsMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "update-stylesheets");
+		assumeNotNull(myMojo);
+		this.rule.setVariableValueToObject(myMojo, "sourcemapMode", mode);
+		myMojo.execute();
+		return FileUtils.readFileToString(new File(projectCopy, "target/css/compiled.css"),
+				"UTF-8");
+	}
+
 	/**
 	 * Test method for
 	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.UpdateStylesheetsMojo#execute() }
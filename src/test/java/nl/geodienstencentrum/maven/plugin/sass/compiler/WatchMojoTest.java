@@ -15,11 +15,20 @@
  */
 package nl.geodienstencentrum.maven.plugin.sass.compiler;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.MojoFailureException;
 import org.apache.maven.plugin.testing.MojoRule;
@@ -27,6 +36,7 @@ import org.apache.maven.plugin.testing.resources.TestResources;
 import org.junit.BeforeClass;
 import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * Testcase for
@@ -48,6 +58,10 @@ public class WatchMojoTest {
 	@Rule
 	public MojoRule rule = new MojoRule();
 
+	/** temporary folder for templates. */
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
 	/** sleep time for the watcher. */
 	private static long SLEEP_TIME;
 
@@ -146,4 +160,118 @@ public class WatchMojoTest {
 				"print.css",
 				"target/maven-compass-test-1.0-SNAPSHOT/css/print.css");
 	}
+
+	/**
+	 * Test method for
+	 * {@link nl.geodienstencentrum.maven.plugin.sass.compiler.WatchMojo#execute() }
+	 * keeping the runtime warm.
+	 *
+	 * @throws Exception if any
+	 * @see nl.geodienstencentrum.maven.plugin.sass.compiler.WatchMojo#execute()
+	 */
+	@Test
+	public void testExecuteWarm() throws Exception {
+		final File projectCopy = this.resources.getBasedir("complete-test");
+		final File pom = new File(projectCopy, "pom.xml");
+		assertTrue("POM file should exist as file.", pom.exists() && pom.isFile());
+
+		final WatchMojo myMojo = (WatchMojo) this.rule
+				.lookupConfiguredMojo(projectCopy, "watch");
+		assertNotNull("the 'watch' mojo should exist", myMojo);
+		this.rule.setVariableValueToObject(myMojo, "warmWatch", true);
+		final Thread watcher = new Thread("warmSassWatcher") {
+			@Override
+			public void run() {
+				try {
+					myMojo.execute();
+				} catch (MojoExecutionException | MojoFailureException e) {
+					System.out.println("Sass watcher thread execution failed: " + e);
+				}
+			}
+		};
+		watcher.start();
+		try {
+			final File compiled = new File(projectCopy, "target/css/compiled.css");
+			final File print = new File(projectCopy, "target/css/print.css");
+			waitFor(compiled, 0L);
+			waitFor(print, 0L);
+			final long compiledBefore = compiled.lastModified();
+			final long printBefore = print.lastModified();
+			// the watch service needs a moment after the first compile
+			Thread.sleep(1000L);
+
+			final File layout = new File(projectCopy, "src/main/sass/_layout.scss");
+			FileUtils.writeStringToFile(layout, FileUtils.readFileToString(layout, "UTF-8")
+					+ "\n$unused: 1px;\n", "UTF-8");
+			waitFor(compiled, compiledBefore);
+			assertEquals("print.scss does not import the partial", printBefore,
+					print.lastModified());
+		} finally {
+			watcher.interrupt();
+			watcher.join(SLEEP_TIME);
+		}
+	}
+
+	/**
+	 * The entry points affected by a change are those importing the changed
+	 * files.
+	 *
+	 * @throws Exception if any
+	 */
+	@Test
+	public void testAffected() throws Exception {
+		final File main = this.write("main.scss", "@import 'a', 'missing';");
+		final File other = this.write("other.scss", ".other { color: red; }");
+		this.write("_a.scss", "@import 'b';");
+		final File b = this.write("_b.scss", ".b { color: blue; }");
+		final EntryPoint mainEntry = new EntryPoint(main.getPath(), "main.css");
+		final EntryPoint otherEntry = new EntryPoint(other.getPath(), "other.css");
+		final List<EntryPoint> entryPoints = Arrays.asList(mainEntry, otherEntry);
+		final ImportGraph importGraph = new ImportGraph(Collections.<File>emptyList());
+		final Map<EntryPoint, Set<File>> dependencies = new HashMap<>();
+
+		assertEquals("everything is new", entryPoints, WatchMojo.affected(entryPoints,
+				Collections.<File>emptySet(), false, importGraph, dependencies));
+		assertEquals(Arrays.asList(mainEntry), WatchMojo.affected(entryPoints,
+				Collections.singleton(b.getAbsoluteFile()), false, importGraph, dependencies));
+		assertEquals(Collections.emptyList(), WatchMojo.affected(entryPoints,
+				Collections.singleton(new File(this.folder.getRoot(), "x.css")),
+				true, importGraph, dependencies));
+
+		final File missing = this.write("_missing.scss", ".m { color: green; }");
+		final Set<File> created = new HashSet<>(Arrays.asList(missing.getAbsoluteFile()));
+		assertEquals("a created partial is imported", Arrays.asList(mainEntry),
+				WatchMojo.affected(entryPoints, created, true, importGraph, dependencies));
+	}
+
+	/**
+	 * Write a template.
+	 *
+	 * @param name the file name
+	 * @param content the content
+	 * @return the file
+	 * @throws Exception if any
+	 */
+	private File write(final String name, final String content) throws Exception {
+		final File file = new File(this.folder.getRoot(), name);
+		FileUtils.writeStringToFile(file, content, "UTF-8");
+		return file;
+	}
+
+	/**
+	 * Wait until a file is written after a time.
+	 *
+	 * @param file the file
+	 * @param after the time it was last written
+	 * @throws InterruptedException if interrupted
+	 */
+	private static void waitFor(final File file, final long after)
+			throws InterruptedException {
+		final long timeout = System.currentTimeMillis() + SLEEP_TIME * 2;
+		while (!(file.isFile() && file.lastModified() > after)
+				&& System.currentTimeMillis() < timeout) {
+			Thread.sleep(100L);
+		}
+		assertTrue(file + " should be written", file.isFile() && file.lastModified() > after);
+	}
 }